@@ -1,99 +1,123 @@
 package com.example.ragchat.config;
 
+import com.example.ragchat.model.AccessLogRecord;
+import com.example.ragchat.model.ApiKeyInfo;
+import com.example.ragchat.service.AccessLogPipeline;
+import com.example.ragchat.service.ApiKeyRegistry;
+import com.example.ragchat.service.ClusterPeerAuth;
 import jakarta.servlet.*;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.annotation.Order;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 import org.springframework.web.util.ContentCachingRequestWrapper;
-import org.springframework.web.util.ContentCachingResponseWrapper;
 
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
-
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Records one structured access log entry per request into the {@link AccessLogPipeline}.
+ *
+ * The response is never wrapped, so bodies stream straight to the client. Request
+ * bodies of sampled POST/PUT/PATCH requests are captured only up to the body limit,
+ * as the handler reads them. Sampling applies to successful requests; errors are
+ * always logged. The API key is logged by its registry ID, never its value.
+ * Requests forwarded by a cluster peer are logged by that peer, not again here.
+ */
 @Component
+@Order(FilterOrder.ACCESS_LOG)
 public class ApiLoggingFilter extends OncePerRequestFilter {
 
-    private static final Logger API_LOGGER = LoggerFactory.getLogger("API_ACCESS_LOGGER");
+    private final AccessLogPipeline pipeline;
+    private final ApiKeyRegistry registry;
+    private final ClusterPeerAuth peerAuth;
+    private final boolean enabled;
+    private final double sampleRate;
+    private final int bodyLimit;
+
+    public ApiLoggingFilter(AccessLogPipeline pipeline,
+                            ApiKeyRegistry registry,
+                            ClusterPeerAuth peerAuth,
+                            @Value("${access-log.enabled:true}") boolean enabled,
+                            @Value("${access-log.sample-rate:1.0}") double sampleRate,
+                            @Value("${access-log.body-limit:1000}") int bodyLimit) {
+        this.pipeline = pipeline;
+        this.registry = registry;
+        this.peerAuth = peerAuth;
+        this.enabled = enabled;
+        this.sampleRate = sampleRate;
+        this.bodyLimit = bodyLimit;
+    }
 
     @Override
     protected void doFilterInternal(HttpServletRequest request,
                                     HttpServletResponse response,
                                     FilterChain filterChain) throws ServletException, IOException {
 
-        long startTime = System.currentTimeMillis();
-        
-        // Wrap request and response for content caching
-        ContentCachingRequestWrapper wrappedRequest = new ContentCachingRequestWrapper(request);
-        ContentCachingResponseWrapper wrappedResponse = new ContentCachingResponseWrapper(response);
+        if (!enabled || peerAuth.isPeerForwarded(request)) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        long timestamp = System.currentTimeMillis();
+        long startTime = System.nanoTime();
+        boolean sampled = sampleRate >= 1 || ThreadLocalRandom.current().nextDouble() < sampleRate;
 
+        // Cache at most bodyLimit bytes of what the handler reads; nothing is buffered beyond that
+        ContentCachingRequestWrapper captured = sampled && bodyLimit > 0 && hasBody(request.getMethod())
+                ? new ContentCachingRequestWrapper(request, bodyLimit + 1)
+                : null;
+
+        boolean failed = true;
         try {
-            // Continue with the filter chain
-            filterChain.doFilter(wrappedRequest, wrappedResponse);
+            filterChain.doFilter(captured != null ? captured : request, response);
+            failed = false;
         } finally {
-            long duration = System.currentTimeMillis() - startTime;
-            
-            // Log API access details
-            logApiAccess(wrappedRequest, wrappedResponse, duration);
-            
-            // Copy response content back to original response
-            wrappedResponse.copyBodyToResponse();
+            // An exception leaving the chain becomes a 500 after this filter has run
+            int status = failed ? HttpServletResponse.SC_INTERNAL_SERVER_ERROR : response.getStatus();
+            if (sampled || status >= 400) {
+                record(request, captured, status, timestamp, System.nanoTime() - startTime);
+            } else {
+                pipeline.recordSampledOut();
+            }
         }
     }
 
-    private void logApiAccess(ContentCachingRequestWrapper request,
-                             ContentCachingResponseWrapper response,
-                             long duration) {
+    private void record(HttpServletRequest request, ContentCachingRequestWrapper captured,
+                        int status, long timestamp, long durationNanos) {
+        long seq = pipeline.claim();
+        if (seq < 0) {
+            return;
+        }
         try {
-            String method = request.getMethod();
-            String uri = request.getRequestURI();
-            String queryString = request.getQueryString();
-            int status = response.getStatus();
-            String clientIp = getClientIp(request);
-            String userAgent = request.getHeader("User-Agent");
-            String apiKey = request.getHeader("X-API-KEY");
-
-            // Build log message
-            StringBuilder logMessage = new StringBuilder();
-            logMessage.append("API_ACCESS | ");
-            logMessage.append("Method=").append(method).append(" | ");
-            logMessage.append("URI=").append(uri);
-            
-            if (queryString != null) {
-                logMessage.append("?").append(queryString);
+            AccessLogRecord record = pipeline.slot(seq);
+            record.setTimestamp(timestamp);
+            record.setMethod(request.getMethod());
+            record.setUri(request.getRequestURI());
+            record.setQuery(request.getQueryString());
+            record.setStatus(status);
+            record.setDurationNanos(durationNanos);
+            record.setClientIp(getClientIp(request));
+            record.setKeyId(registry.resolve(request).map(ApiKeyInfo::getId).orElse(null));
+            record.setUserAgent(request.getHeader("User-Agent"));
+            record.setRequestBytes(request.getContentLengthLong());
+            if (captured != null) {
+                byte[] body = captured.getContentAsByteArray();
+                record.setBody(body, body.length);
             }
-            
-            logMessage.append(" | Status=").append(status).append(" | ");
-            logMessage.append("Duration=").append(duration).append("ms | ");
-            logMessage.append("IP=").append(clientIp).append(" | ");
-            
-            if (apiKey != null && !apiKey.isEmpty()) {
-                // Mask API key for security (show first 4 and last 4 chars)
-                String maskedKey = maskApiKey(apiKey);
-                logMessage.append("APIKey=").append(maskedKey).append(" | ");
-            }
-            
-            if (userAgent != null) {
-                logMessage.append("UserAgent=").append(userAgent);
-            }
-
-            // Log request body for POST/PUT/PATCH (excluding sensitive data)
-            if (shouldLogRequestBody(method)) {
-                String requestBody = getRequestBody(request);
-                if (requestBody != null && !requestBody.isEmpty()) {
-                    logMessage.append(" | RequestBody=").append(requestBody);
-                }
-            }
-
-            API_LOGGER.info(logMessage.toString());
-
-        } catch (Exception e) {
-            API_LOGGER.error("Error logging API access", e);
+        } finally {
+            pipeline.publish(seq);
         }
     }
 
+    private boolean hasBody(String method) {
+        return "POST".equalsIgnoreCase(method) ||
+               "PUT".equalsIgnoreCase(method) ||
+               "PATCH".equalsIgnoreCase(method);
+    }
+
     private String getClientIp(HttpServletRequest request) {
         String ip = request.getHeader("X-Forwarded-For");
         if (ip == null || ip.isEmpty() || "unknown".equalsIgnoreCase(ip)) {
@@ -108,36 +132,4 @@ public class ApiLoggingFilter extends OncePerRequestFilter {
         }
         return ip;
     }
-
-    private String maskApiKey(String apiKey) {
-        if (apiKey == null || apiKey.length() <= 8) {
-            return "****";
-        }
-        String firstPart = apiKey.substring(0, 4);
-        String lastPart = apiKey.substring(apiKey.length() - 4);
-        return firstPart + "****" + lastPart;
-    }
-
-    private boolean shouldLogRequestBody(String method) {
-        return "POST".equalsIgnoreCase(method) || 
-               "PUT".equalsIgnoreCase(method) || 
-               "PATCH".equalsIgnoreCase(method);
-    }
-
-    private String getRequestBody(ContentCachingRequestWrapper request) {
-        try {
-            byte[] content = request.getContentAsByteArray();
-            if (content.length > 0) {
-                String body = new String(content, StandardCharsets.UTF_8);
-                // Limit body length in logs to prevent huge log files
-                if (body.length() > 1000) {
-                    return body.substring(0, 1000) + "... (truncated)";
-                }
-                return body;
-            }
-        } catch (Exception e) {
-            API_LOGGER.warn("Could not read request body", e);
-        }
-        return null;
-    }
-}
\ No newline at end of file
+}
@@ -0,0 +1,254 @@
+package com.example.ragchat.config;
+
+import com.example.ragchat.service.ClusterMembership;
+import com.example.ragchat.service.ClusterPeerAuth;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.ConnectException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpConnectTimeoutException;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Cluster mode: sends requests for a session to the node that owns it.
+ *
+ * Only session-scoped paths are forwarded; everything else is served where it
+ * lands. A forwarded request is always served by the receiving node, so a brief
+ * disagreement about ownership cannot bounce requests around. If the owner cannot
+ * be reached it is taken off the ring and the request is served locally.
+ *
+ * Peers sign the forwarded header with the cluster secret; a client-supplied header
+ * that does not verify is ignored and never copied onto a forward. Owner responses
+ * are streamed through without buffering.
+ */
+@Component
+@Order(FilterOrder.CLUSTER_FORWARD)
+@ConditionalOnProperty(name = "chat.cluster.enabled", havingValue = "true")
+@Slf4j
+public class ClusterForwardingFilter extends OncePerRequestFilter {
+
+    private static final Pattern SESSION_PATH = Pattern.compile("^/api/sessions/(\\d+)(/.*)?$");
+
+    // Hop-by-hop and transport headers that must not be copied across
+    private static final Set<String> SKIPPED_HEADERS = Set.of("host", "connection", "content-length",
+            "transfer-encoding", "keep-alive", "upgrade", "expect", "te", "trailer", "proxy-connection",
+            ClusterMembership.FORWARDED_HEADER.toLowerCase());
+
+    private final ClusterMembership membership;
+    private final ClusterPeerAuth peerAuth;
+    private final HttpClient client;
+    private final Duration timeout;
+
+    public ClusterForwardingFilter(ClusterMembership membership,
+                                   ClusterPeerAuth peerAuth,
+                                   @Value("${chat.cluster.forward-timeout-ms:30000}") long timeoutMillis) {
+        this.membership = membership;
+        this.peerAuth = peerAuth;
+        this.timeout = Duration.ofMillis(timeoutMillis);
+        this.client = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofMillis(Math.min(timeoutMillis, 2000)))
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .build();
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request,
+                                    HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+
+        Matcher matcher = SESSION_PATH.matcher(request.getRequestURI());
+        boolean forwardedHere = peerAuth.isPeerForwarded(request);
+        if (!matcher.matches() || forwardedHere) {
+            if (matcher.matches()) {
+                membership.recordLocal(true);
+            }
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        Long sessionId;
+        try {
+            sessionId = Long.valueOf(matcher.group(1));
+        } catch (NumberFormatException e) {
+            // Not a valid ID; let the controller reject it
+            filterChain.doFilter(request, response);
+            return;
+        }
+        String owner = membership.ownerOf(sessionId);
+        if (owner.equals(membership.self())) {
+            membership.recordLocal(false);
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        byte[] body = request.getInputStream().readAllBytes();
+        HttpResponse<InputStream> forwarded;
+        try {
+            forwarded = forward(owner, request, body);
+        } catch (ConnectException | HttpConnectTimeoutException e) {
+            // Nothing reached the owner, so serving here cannot apply the request twice
+            log.warn("Cluster node {} unreachable for session {}: {}", owner, sessionId, e.getMessage());
+            membership.markDown(owner);
+            membership.recordLocal(false);
+            filterChain.doFilter(new CachedBodyRequest(request, body), response);
+            return;
+        } catch (IOException e) {
+            // The owner may have applied the request; let the client decide whether to retry
+            log.warn("Forwarding session {} to {} failed: {}", sessionId, owner, e.getMessage());
+            response.setStatus(HttpServletResponse.SC_BAD_GATEWAY);
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            response.getWriter().write("{\"error\": \"Session owner did not respond\", \"status\": 502}");
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ServletException("Interrupted while forwarding to " + owner, e);
+        }
+        membership.recordForward(owner);
+
+        response.setStatus(forwarded.statusCode());
+        forwarded.headers().map().forEach((name, values) -> {
+            if (!SKIPPED_HEADERS.contains(name.toLowerCase()) && !name.startsWith(":")) {
+                values.forEach(value -> response.addHeader(name, value));
+            }
+        });
+        forwarded.headers().firstValueAsLong("content-length").ifPresent(response::setContentLengthLong);
+        try (InputStream stream = forwarded.body()) {
+            // The status is committed by now; a failure here can only cut the response short
+            stream.transferTo(response.getOutputStream());
+        }
+    }
+
+    private HttpResponse<InputStream> forward(String owner, HttpServletRequest request, byte[] body)
+            throws IOException, InterruptedException {
+        String uri = request.getRequestURI()
+                + (request.getQueryString() != null ? "?" + request.getQueryString() : "");
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(owner + uri))
+                .timeout(timeout)
+                .method(request.getMethod(), body.length == 0
+                        ? HttpRequest.BodyPublishers.noBody()
+                        : HttpRequest.BodyPublishers.ofByteArray(body));
+        for (String name : Collections.list(request.getHeaderNames())) {
+            if (SKIPPED_HEADERS.contains(name.toLowerCase())) {
+                continue;
+            }
+            for (String value : Collections.list(request.getHeaders(name))) {
+                builder.header(name, value);
+            }
+        }
+        builder.header(ClusterMembership.FORWARDED_HEADER, peerAuth.sign(membership.self(), request.getMethod(), uri));
+        return client.send(builder.build(), HttpResponse.BodyHandlers.ofInputStream());
+    }
+
+    /**
+     * Request whose body was already read for forwarding, replayed to the local handler
+     */
+    private static class CachedBodyRequest extends HttpServletRequestWrapper {
+
+        private final byte[] body;
+
+        CachedBodyRequest(HttpServletRequest request, byte[] body) {
+            super(request);
+            this.body = body;
+        }
+
+        @Override
+        public ServletInputStream getInputStream() {
+            ByteArrayInputStream in = new ByteArrayInputStream(body);
+            return new ServletInputStream() {
+
+                private ReadListener listener;
+
+                @Override
+                public boolean isFinished() {
+                    return in.available() == 0;
+                }
+
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+
+                /**
+                 * The body is in memory, so it is available at once and complete when read
+                 */
+                @Override
+                public void setReadListener(ReadListener listener) {
+                    this.listener = listener;
+                    try {
+                        if (!isFinished()) {
+                            listener.onDataAvailable();
+                        }
+                        if (isFinished()) {
+                            allRead();
+                        }
+                    } catch (IOException e) {
+                        listener.onError(e);
+                    }
+                }
+
+                @Override
+                public int read() throws IOException {
+                    int b = in.read();
+                    allRead();
+                    return b;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    int n = in.read(b, off, len);
+                    allRead();
+                    return n;
+                }
+
+                private void allRead() throws IOException {
+                    if (listener != null && isFinished()) {
+                        ReadListener done = listener;
+                        listener = null;
+                        done.onAllDataRead();
+                    }
+                }
+            };
+        }
+
+        @Override
+        public BufferedReader getReader() {
+            return new BufferedReader(new InputStreamReader(getInputStream(), StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public int getContentLength() {
+            return body.length;
+        }
+
+        @Override
+        public long getContentLengthLong() {
+            return body.length;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.example.ragchat.config;
+
+import com.example.ragchat.service.ReplicaRouter;
+import com.example.ragchat.service.ShardRouter;
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * The application data source picks a database per connection: the current shard
+ * from {@link ShardRouter}, and on shard 0 the primary or a read replica through
+ * {@link ReplicaRouter}. With no shards or replicas configured everything goes to the primary.
+ */
+@Configuration
+public class DataSourceConfig {
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(ShardRouter shardRouter, ReplicaRouter replicaRouter) {
+        return new AbstractDataSource() {
+            @Override
+            public Connection getConnection() throws SQLException {
+                return shardRouter.select(replicaRouter::select).getConnection();
+            }
+
+            @Override
+            public Connection getConnection(String username, String password) throws SQLException {
+                return shardRouter.select(replicaRouter::select).getConnection(username, password);
+            }
+        };
+    }
+}
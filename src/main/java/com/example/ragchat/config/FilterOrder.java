@@ -0,0 +1,24 @@
+package com.example.ragchat.config;
+
+import org.springframework.core.Ordered;
+
+/**
+ * Order of the application's servlet filters: rate limiting, authentication, then
+ * cluster forwarding, with the access log recording the outcome of all three.
+ *
+ * The limiter runs before authentication so requests with a missing or unknown key
+ * are charged to their address before they are rejected, which bounds key guessing.
+ * The access log wraps the others so its entry is written last; inside the forwarding
+ * filter it would never see requests sent on to another node. Requests a peer
+ * forwarded here were already limited and logged by that peer.
+ */
+public final class FilterOrder {
+
+    public static final int ACCESS_LOG = Ordered.HIGHEST_PRECEDENCE + 10;
+    public static final int RATE_LIMIT = ACCESS_LOG + 1;
+    public static final int AUTH = RATE_LIMIT + 1;
+    public static final int CLUSTER_FORWARD = AUTH + 1;
+
+    private FilterOrder() {
+    }
+}
@@ -0,0 +1,21 @@
+package com.example.ragchat.config;
+
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Mongo client for the bucketed message store; only created when that backend is selected
+ */
+@Configuration
+@ConditionalOnProperty(name = "chat.storage.backend", havingValue = "mongo")
+public class MongoConfig {
+
+    @Bean(destroyMethod = "close")
+    public MongoClient mongoClient(@Value("${spring.data.mongodb.uri}") String uri) {
+        return MongoClients.create(uri);
+    }
+}
@@ -1,44 +1,147 @@
 package com.example.ragchat.config;
 
+import com.example.ragchat.model.ApiKeyInfo;
+import com.example.ragchat.service.ApiKeyRegistry;
+import com.example.ragchat.service.ClusterPeerAuth;
+import com.example.ragchat.util.GcraRateLimiter;
+import com.example.ragchat.util.GcraRateLimiter.Decision;
+import com.example.ragchat.util.RateLimitStore;
+import com.example.ragchat.util.SharedRateLimiter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
 import jakarta.servlet.*;
 import jakarta.servlet.http.*;
 import java.io.IOException;
-import java.time.Instant;
 import java.util.Map;
+import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
 
+/**
+ * Per-client rate limiting with separate budgets per route class.
+ *
+ * Clients are identified by registered API key, or by IP address otherwise. Chat
+ * and LLM routes, which call the model, have their own stricter budget, and keys
+ * may carry their own quotas for either. Every response carries RateLimit-*
+ * headers describing the budget that applied.
+ *
+ * With rate-limit.shared.enabled the budgets are shared by all nodes: each node
+ * still decides locally and reconciles with the shared store every sync interval.
+ * Requests forwarded by a cluster peer were charged there and pass unmetered.
+ */
 @Component
+@Order(FilterOrder.RATE_LIMIT)
+@Slf4j
 public class RateLimiterConfig implements Filter {
 
-    @Value("${RATE_LIMIT:10}")
-    private int rateLimit;
-    private final Map<String, UserRequest> requests = new ConcurrentHashMap<>();
+    private static final Pattern CHAT_ROUTE = Pattern.compile("^/api/(sessions/[^/]+/chat|llm/query)$");
+
+    private final ApiKeyRegistry registry;
+    private final ClusterPeerAuth peerAuth;
+    private final int requestsPerMinute;
+    private final int chatRequestsPerMinute;
+    private final int maxKeys;
+    private final RateLimitStore sharedStore;
+
+    // One limiter per route class and quota, created on first use
+    private final Map<String, GcraRateLimiter> limiters = new ConcurrentHashMap<>();
+
+    @Autowired
+    public RateLimiterConfig(ApiKeyRegistry registry,
+                             ClusterPeerAuth peerAuth,
+                             @Value("${rate-limit.requests-per-minute:${RATE_LIMIT:10}}") int requestsPerMinute,
+                             @Value("${rate-limit.chat.requests-per-minute:5}") int chatRequestsPerMinute,
+                             @Value("${rate-limit.max-keys:100000}") int maxKeys,
+                             ObjectProvider<RateLimitStore> sharedStore) {
+        this(registry, peerAuth, requestsPerMinute, chatRequestsPerMinute, maxKeys, sharedStore.getIfAvailable());
+    }
+
+    RateLimiterConfig(ApiKeyRegistry registry, ClusterPeerAuth peerAuth, int requestsPerMinute, int chatRequestsPerMinute, int maxKeys,
+                      RateLimitStore sharedStore) {
+        this.registry = registry;
+        this.peerAuth = peerAuth;
+        this.requestsPerMinute = requestsPerMinute;
+        this.chatRequestsPerMinute = chatRequestsPerMinute;
+        this.maxKeys = maxKeys;
+        this.sharedStore = sharedStore;
+    }
+
+    private GcraRateLimiter limiter(String route, int quota) {
+        return limiters.computeIfAbsent(route + "-" + quota, name -> sharedStore == null
+                ? new GcraRateLimiter(quota, 1, TimeUnit.MINUTES, maxKeys)
+                : new SharedRateLimiter(name, quota, 1, TimeUnit.MINUTES, maxKeys, sharedStore));
+    }
 
     @Override
     public void doFilter(ServletRequest req, ServletResponse res, FilterChain chain) throws IOException, ServletException {
         HttpServletRequest request = (HttpServletRequest) req;
-        String clientIp = request.getRemoteAddr();
-        UserRequest userReq = requests.getOrDefault(clientIp, new UserRequest());
-        long now = Instant.now().getEpochSecond();
-        if (now - userReq.lastReset > 60) {
-            userReq.lastReset = now;
-            userReq.count = 1;
+        HttpServletResponse response = (HttpServletResponse) res;
+
+        if (peerAuth.isPeerForwarded(request)) {
+            chain.doFilter(req, res);
+            return;
+        }
+
+        Optional<ApiKeyInfo> key = registry.resolve(request);
+        GcraRateLimiter limiter;
+        if (CHAT_ROUTE.matcher(request.getRequestURI()).matches()) {
+            limiter = limiter("chat", key.map(ApiKeyInfo::getChatRequestsPerMinute).orElse(chatRequestsPerMinute));
         } else {
-            userReq.count++;
+            limiter = limiter("default", key.map(ApiKeyInfo::getRequestsPerMinute).orElse(requestsPerMinute));
         }
-        requests.put(clientIp, userReq);
-        if (userReq.count > rateLimit) {
-            ((HttpServletResponse) res).setStatus(429);
-            res.getWriter().write("Too Many Requests");
+        // Unknown keys count against the address, so guessing keys is limited too
+        Decision decision = limiter.tryAcquire(key.map(k -> "key:" + k.getId())
+                .orElseGet(() -> "ip:" + request.getRemoteAddr()));
+
+        response.setHeader("RateLimit-Policy", limiter.getLimit() + ";w=" + limiter.getPeriodSeconds());
+        response.setHeader("RateLimit-Limit", String.valueOf(decision.limit()));
+        response.setHeader("RateLimit-Remaining", String.valueOf(decision.remaining()));
+        response.setHeader("RateLimit-Reset", String.valueOf(seconds(decision.resetNanos())));
+        if (!decision.allowed()) {
+            response.setHeader("Retry-After", String.valueOf(seconds(decision.retryAfterNanos())));
+            response.setStatus(429);
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            response.getWriter().write("{\"error\": \"Too Many Requests\", \"status\": 429}");
             return;
         }
         chain.doFilter(req, res);
     }
-    static class UserRequest {
-        long lastReset = Instant.now().getEpochSecond();
-        int count = 0;
+
+    /**
+     * Forget clients whose budget has fully refilled
+     */
+    @Scheduled(fixedDelayString = "${rate-limit.sweep-ms:60000}")
+    public void evictIdle() {
+        limiters.values().forEach(GcraRateLimiter::evictIdle);
+    }
+
+    /**
+     * Exchange consumption with the other nodes when budgets are shared
+     */
+    @Scheduled(fixedDelayString = "${rate-limit.shared.sync-ms:250}")
+    public void sync() {
+        for (GcraRateLimiter limiter : limiters.values()) {
+            if (limiter instanceof SharedRateLimiter shared) {
+                try {
+                    shared.sync();
+                } catch (RuntimeException e) {
+                    // Budgets stay per node until the store is back; counts are kept for the next sync
+                    log.warn("Rate limit sync failed: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    private static long seconds(long nanos) {
+        // Round up so clients never retry early
+        return (nanos + 999_999_999L) / 1_000_000_000L;
     }
-}
\ No newline at end of file
+}
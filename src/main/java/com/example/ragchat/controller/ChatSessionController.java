@@ -1,8 +1,16 @@
 package com.example.ragchat.controller;
 
+import com.example.ragchat.dto.BatchDeleteRequest;
+import com.example.ragchat.dto.BatchDeleteResult;
+import com.example.ragchat.dto.BulkInsertResult;
+import com.example.ragchat.dto.BulkMessageRequest;
 import com.example.ragchat.dto.ChatMessageDTO;
 import com.example.ragchat.dto.ChatQueryRequest;
 import com.example.ragchat.dto.ChatSessionDTO;
+import com.example.ragchat.dto.HistorySearchResult;
+import com.example.ragchat.dto.MessagePage;
+import com.example.ragchat.dto.MessageSearchPage;
+import com.example.ragchat.dto.SessionPage;
 import com.example.ragchat.model.ChatMessage;
 import com.example.ragchat.model.ChatSession;
 import com.example.ragchat.service.ChatSessionService;
@@ -56,6 +64,20 @@ public class ChatSessionController {
         return ResponseEntity.ok(sessions);
     }
 
+    /**
+     * Get a user's sessions one page at a time
+     */
+    @GetMapping("/sessions/page")
+    public ResponseEntity<SessionPage> getSessionPage(
+            @RequestParam String userId,
+            @RequestParam(defaultValue = "false") boolean favoritesFirst,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int limit) {
+        log.info("Retrieving session page for user {} (favoritesFirst={}, cursor={}, limit={})",
+                userId, favoritesFirst, cursor, limit);
+        return ResponseEntity.ok(service.getSessionPage(userId, favoritesFirst, cursor, limit));
+    }
+
     /**
      * Rename a session
      */
@@ -90,6 +112,15 @@ public class ChatSessionController {
         return ResponseEntity.noContent().build();
     }
 
+    /**
+     * Delete many sessions at once
+     */
+    @PostMapping("/sessions/batch-delete")
+    public ResponseEntity<BatchDeleteResult> deleteSessions(@Valid @RequestBody BatchDeleteRequest request) {
+        log.info("Deleting {} sessions", request.getSessionIds().size());
+        return ResponseEntity.ok(service.deleteSessions(request.getSessionIds()));
+    }
+
     /**
      * Add a message to a session (without LLM)
      */
@@ -107,6 +138,16 @@ public class ChatSessionController {
         return ResponseEntity.status(HttpStatus.CREATED).body(message);
     }
 
+    /**
+     * Add many messages across sessions in one request
+     */
+    @PostMapping("/messages/bulk")
+    public ResponseEntity<BulkInsertResult> addMessagesBulk(@Valid @RequestBody BulkMessageRequest request) {
+        log.info("Bulk adding {} messages", request.getMessages().size());
+        BulkInsertResult result = service.addMessagesBulk(request.getMessages());
+        return ResponseEntity.status(HttpStatus.CREATED).body(result);
+    }
+
     /**
      * Query LLM and save both user query and LLM response
      */
@@ -129,7 +170,7 @@ public class ChatSessionController {
             // Get conversation history if requested
             String llmResponse;
             if (Boolean.TRUE.equals(request.getIncludeHistory())) {
-                List<ChatMessage> history = service.getMessages(id, 0, 10);
+                List<ChatMessage> history = service.getLatestMessages(id, 10);
                 List<Map<String, String>> conversationHistory = history.stream()
                         .map(msg -> {
                             Map<String, String> m = new HashMap<>();
@@ -220,6 +261,55 @@ public class ChatSessionController {
         return ResponseEntity.ok(messages);
     }
 
+    /**
+     * Retrieve one message with its full content and context
+     */
+    @GetMapping("/sessions/{id}/messages/{messageId}")
+    public ResponseEntity<ChatMessage> getMessage(@PathVariable Long id, @PathVariable Long messageId) {
+        log.info("Retrieving message {} of session {}", messageId, id);
+        return ResponseEntity.ok(service.getMessage(id, messageId));
+    }
+
+    /**
+     * Retrieve messages for a session with cursor-based pagination
+     */
+    @GetMapping("/sessions/{id}/messages/page")
+    public ResponseEntity<MessagePage> getMessagePage(
+            @PathVariable Long id,
+            @RequestParam(required = false) String after,
+            @RequestParam(required = false) String before,
+            @RequestParam(defaultValue = "false") boolean latest,
+            @RequestParam(defaultValue = "20") int limit) {
+        log.info("Retrieving message page for session {} (after={}, before={}, latest={}, limit={})",
+                id, after, before, latest, limit);
+        return ResponseEntity.ok(service.getMessagePage(id, after, before, latest, limit));
+    }
+
+    /**
+     * Search a user's past conversations
+     */
+    @GetMapping("/history/search")
+    public ResponseEntity<List<HistorySearchResult>> searchHistory(
+            @RequestParam String userId,
+            @RequestParam String query,
+            @RequestParam(defaultValue = "10") int limit) {
+        log.info("Searching history for user {}: '{}'", userId, query);
+        return ResponseEntity.ok(service.searchHistory(userId, query, limit));
+    }
+
+    /**
+     * Full-text search over a user's messages with highlighted snippets
+     */
+    @GetMapping("/search/messages")
+    public ResponseEntity<MessageSearchPage> searchMessages(
+            @RequestParam String userId,
+            @RequestParam String q,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int limit) {
+        log.info("Full-text search for user {}: '{}'", userId, q);
+        return ResponseEntity.ok(service.searchMessages(userId, q, cursor, limit));
+    }
+
     /**
      * Health check endpoint
      */
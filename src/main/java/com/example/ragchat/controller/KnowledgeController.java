@@ -0,0 +1,45 @@
+package com.example.ragchat.controller;
+
+import com.example.ragchat.dto.DocumentIngestRequest;
+import com.example.ragchat.dto.IngestionStats;
+import com.example.ragchat.service.IngestionService;
+import jakarta.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/knowledge")
+@RequiredArgsConstructor
+@Slf4j
+public class KnowledgeController {
+
+    private final IngestionService ingestionService;
+
+    /**
+     * Ingest a document into the retrieval index
+     */
+    @PostMapping("/documents")
+    public ResponseEntity<Map<String, Object>> ingestDocument(@Valid @RequestBody DocumentIngestRequest request) {
+        log.info("Ingesting document {}", request.getDocumentId());
+        int indexed = ingestionService.ingestDocument(request.getDocumentId(), request.getText());
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("documentId", request.getDocumentId());
+        response.put("chunksIndexed", indexed);
+        return ResponseEntity.status(HttpStatus.CREATED).body(response);
+    }
+
+    /**
+     * Ingestion and dedup statistics
+     */
+    @GetMapping("/stats")
+    public ResponseEntity<IngestionStats> getStats() {
+        return ResponseEntity.ok(ingestionService.getStats());
+    }
+}
@@ -0,0 +1,159 @@
+package com.example.ragchat.controller;
+
+import com.example.ragchat.dto.AccessLogStats;
+import com.example.ragchat.dto.ApiKeyRegistryStats;
+import com.example.ragchat.dto.ArchiveStats;
+import com.example.ragchat.dto.BlobStats;
+import com.example.ragchat.dto.CacheStats;
+import com.example.ragchat.dto.ClusterStats;
+import com.example.ragchat.dto.OutboxStats;
+import com.example.ragchat.dto.RoutingStats;
+import com.example.ragchat.dto.ShardMoveResult;
+import com.example.ragchat.dto.ShardingStats;
+import com.example.ragchat.dto.WriteBehindStats;
+import com.example.ragchat.service.AccessLogPipeline;
+import com.example.ragchat.service.ApiKeyRegistry;
+import com.example.ragchat.service.BlobStore;
+import com.example.ragchat.service.ClusterBus;
+import com.example.ragchat.service.ConversationBuffer;
+import com.example.ragchat.service.MessageArchive;
+import com.example.ragchat.service.MessageWriteBehindQueue;
+import com.example.ragchat.service.OutboxRelay;
+import com.example.ragchat.service.ReplicaRouter;
+import com.example.ragchat.service.SessionMetadataCache;
+import com.example.ragchat.service.ShardRebalancer;
+import com.example.ragchat.service.ShardRouter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+/**
+ * Operational statistics for background subsystems
+ */
+@RestController
+@RequestMapping("/api/ops")
+@RequiredArgsConstructor
+@Slf4j
+public class OperationsController {
+
+    private final MessageWriteBehindQueue writeBehind;
+    private final SessionMetadataCache sessionCache;
+    private final ConversationBuffer conversationBuffer;
+    private final MessageArchive messageArchive;
+    private final BlobStore blobStore;
+    private final ReplicaRouter replicaRouter;
+    private final ShardRouter shardRouter;
+    private final ShardRebalancer shardRebalancer;
+    private final ClusterBus clusterBus;
+    private final OutboxRelay outboxRelay;
+    private final ApiKeyRegistry apiKeyRegistry;
+    private final AccessLogPipeline accessLog;
+
+    /**
+     * Write-behind queue depth, flush latency and journal size
+     */
+    @GetMapping("/write-behind")
+    public ResponseEntity<WriteBehindStats> getWriteBehindStats() {
+        return ResponseEntity.ok(writeBehind.getStats());
+    }
+
+    /**
+     * Session metadata cache hit/miss counters
+     */
+    @GetMapping("/session-cache")
+    public ResponseEntity<CacheStats> getSessionCacheStats() {
+        return ResponseEntity.ok(sessionCache.getStats());
+    }
+
+    /**
+     * Hot conversation buffer occupancy and hit rate
+     */
+    @GetMapping("/history-buffer")
+    public ResponseEntity<CacheStats> getHistoryBufferStats() {
+        return ResponseEntity.ok(conversationBuffer.getStats());
+    }
+
+    /**
+     * Cold-tier archival and rehydration counters
+     */
+    @GetMapping("/archive")
+    public ResponseEntity<ArchiveStats> getArchiveStats() {
+        return ResponseEntity.ok(messageArchive.getStats());
+    }
+
+    /**
+     * Out-of-line blob store dedup and compression counters
+     */
+    @GetMapping("/blobs")
+    public ResponseEntity<BlobStats> getBlobStats() {
+        return ResponseEntity.ok(blobStore.getStats());
+    }
+
+    /**
+     * Connections per route, read-your-writes pins and replica lag
+     */
+    @GetMapping("/datasource")
+    public ResponseEntity<RoutingStats> getRoutingStats() {
+        return ResponseEntity.ok(replicaRouter.getStats());
+    }
+
+    /**
+     * Shard sizes, ring ownership and moved users
+     */
+    @GetMapping("/shards")
+    public ResponseEntity<ShardingStats> getShardingStats() {
+        return ResponseEntity.ok(shardRouter.getStats());
+    }
+
+    /**
+     * Move a user and all their sessions to another shard online
+     */
+    @PostMapping("/shards/move")
+    public ResponseEntity<ShardMoveResult> moveUser(@RequestParam String userId, @RequestParam int target) {
+        log.info("Moving user {} to shard {}", userId, target);
+        return ResponseEntity.ok(shardRebalancer.moveUser(userId, target));
+    }
+
+    /**
+     * Cluster nodes, session ownership shares, forwarding and invalidation counters
+     */
+    @GetMapping("/cluster")
+    public ResponseEntity<ClusterStats> getClusterStats() {
+        return ResponseEntity.ok(clusterBus.getStats());
+    }
+
+    /**
+     * Outbox backlog and change-event delivery counters
+     */
+    @GetMapping("/outbox")
+    public ResponseEntity<OutboxStats> getOutboxStats() {
+        return ResponseEntity.ok(outboxRelay.getStats());
+    }
+
+    /**
+     * Registered API keys with their metadata and request counts
+     */
+    @GetMapping("/api-keys")
+    public ResponseEntity<ApiKeyRegistryStats> getApiKeyStats() {
+        return ResponseEntity.ok(apiKeyRegistry.getStats());
+    }
+
+    /**
+     * Re-read the key file and table now instead of at the next reload interval
+     */
+    @PostMapping("/api-keys/reload")
+    public ResponseEntity<ApiKeyRegistryStats> reloadApiKeys() {
+        int keys = apiKeyRegistry.load();
+        log.info("API keys reloaded on request: {} keys", keys);
+        return ResponseEntity.ok(apiKeyRegistry.getStats());
+    }
+
+    /**
+     * Access log buffer occupancy, written, dropped and sampled-out records
+     */
+    @GetMapping("/access-log")
+    public ResponseEntity<AccessLogStats> getAccessLogStats() {
+        return ResponseEntity.ok(accessLog.getStats());
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.ragchat.controller;
+
+import com.example.ragchat.dto.ImportResult;
+import com.example.ragchat.service.SessionTransferService;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Bulk NDJSON export and import of a user's sessions
+ */
+@RestController
+@RequestMapping("/api/users/{userId}")
+@RequiredArgsConstructor
+@Slf4j
+public class TransferController {
+
+    private static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+
+    private final SessionTransferService transferService;
+
+    /**
+     * Stream every message of a user; resume with the last checkpoint cursor
+     */
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> export(
+            @PathVariable String userId,
+            @RequestParam(required = false) String after,
+            @RequestParam(defaultValue = "false") boolean gzip) {
+        log.info("Exporting messages for user {} (after={}, gzip={})", userId, after, gzip);
+
+        StreamingResponseBody body = out -> {
+            if (gzip) {
+                try (GZIPOutputStream compressed = new GZIPOutputStream(out, 64 * 1024)) {
+                    transferService.export(userId, after, compressed);
+                }
+            } else {
+                transferService.export(userId, after, out);
+            }
+        };
+        String fileName = "export-" + userId + (gzip ? ".ndjson.gz" : ".ndjson");
+        return ResponseEntity.ok()
+                .contentType(gzip ? MediaType.parseMediaType("application/gzip") : NDJSON)
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + fileName + "\"")
+                .body(body);
+    }
+
+    /**
+     * Load an export into new sessions of the user
+     */
+    @PostMapping("/import")
+    public ResponseEntity<ImportResult> importMessages(
+            @PathVariable String userId,
+            @RequestParam(defaultValue = "false") boolean gzip,
+            @RequestParam(required = false) Long resumeSourceSessionId,
+            @RequestParam(required = false) Long resumeTargetSessionId,
+            HttpServletRequest request) throws IOException {
+        log.info("Importing messages for user {} (gzip={})", userId, gzip);
+
+        boolean compressed = gzip || "gzip".equalsIgnoreCase(request.getHeader(HttpHeaders.CONTENT_ENCODING));
+        try (InputStream in = compressed
+                ? new GZIPInputStream(request.getInputStream(), 64 * 1024)
+                : request.getInputStream()) {
+            ImportResult result = transferService.importMessages(userId, in,
+                    resumeSourceSessionId, resumeTargetSessionId);
+            return ResponseEntity.status(result.isCompleted() ? HttpStatus.CREATED : HttpStatus.UNPROCESSABLE_ENTITY)
+                    .body(result);
+        }
+    }
+}
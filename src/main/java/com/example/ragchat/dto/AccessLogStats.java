@@ -0,0 +1,21 @@
+package com.example.ragchat.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class AccessLogStats {
+    private int capacity;
+    // Records claimed but not yet written
+    private long buffered;
+    private long written;
+    // Records lost because the buffer was full
+    private long dropped;
+    private long sampledOut;
+    private long writeFailures;
+}
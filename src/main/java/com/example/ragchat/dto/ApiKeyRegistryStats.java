@@ -0,0 +1,25 @@
+package com.example.ragchat.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Date;
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ApiKeyRegistryStats {
+    private int keys;
+    private String file;
+    private boolean databaseEnabled;
+    private Date loadedAt;
+    private long reloads;
+    private long reloadFailures;
+    // Requests refused for a missing or unknown key
+    private long rejected;
+    private List<ApiKeyStats> perKey;
+}
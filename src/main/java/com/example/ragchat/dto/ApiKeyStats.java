@@ -0,0 +1,19 @@
+package com.example.ragchat.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ApiKeyStats {
+    private String id;
+    private String tenant;
+    private String tier;
+    private Integer requestsPerMinute;
+    private Integer chatRequestsPerMinute;
+    private long requests;
+}
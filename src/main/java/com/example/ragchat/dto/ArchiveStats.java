@@ -0,0 +1,19 @@
+package com.example.ragchat.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ArchiveStats {
+    private boolean enabled;
+    private long archivedSessions;
+    private long archivedMessages;
+    private long rehydratedSessions;
+    private long rehydratedMessages;
+    private long failures;
+}
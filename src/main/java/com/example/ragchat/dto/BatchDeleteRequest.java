@@ -0,0 +1,19 @@
+package com.example.ragchat.dto;
+
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@NoArgsConstructor
+@AllArgsConstructor
+@Data
+public class BatchDeleteRequest {
+
+    @NotEmpty(message = "Session IDs are required and cannot be empty")
+    @Size(max = 1000, message = "At most 1000 sessions can be deleted per request")
+    private List<Long> sessionIds;
+}
@@ -0,0 +1,20 @@
+package com.example.ragchat.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchDeleteResult {
+    // Sessions removed together with their messages
+    private int deleted;
+    // Large sessions hidden immediately and purged in the background
+    private int tombstoned;
+    private List<Long> notFound;
+}
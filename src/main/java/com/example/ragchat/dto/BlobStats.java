@@ -0,0 +1,19 @@
+package com.example.ragchat.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BlobStats {
+    private long writes;
+    private long dedupHits;
+    private long reads;
+    private long rawBytes;
+    private long storedBytes;
+    private double compressionRatio;
+}
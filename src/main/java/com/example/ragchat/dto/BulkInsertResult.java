@@ -0,0 +1,17 @@
+package com.example.ragchat.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BulkInsertResult {
+    private int inserted;
+    private int sessions;
+    private long elapsedMillis;
+    private double rowsPerSecond;
+}
@@ -0,0 +1,20 @@
+package com.example.ragchat.dto;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@NoArgsConstructor
+@AllArgsConstructor
+@Data
+public class BulkMessageRequest {
+
+    @NotEmpty(message = "Messages are required and cannot be empty")
+    @Size(max = 10000, message = "At most 10000 messages can be imported per request")
+    private List<@Valid BulkMessageDTO> messages;
+}
@@ -0,0 +1,19 @@
+package com.example.ragchat.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ClusterNodeStats {
+    private String url;
+    private boolean local;
+    // False while forwarding to the node is failing; its sessions are served by the others
+    private boolean healthy;
+    private double ringShare;
+    private long forwarded;
+}
@@ -0,0 +1,27 @@
+package com.example.ragchat.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ClusterStats {
+    private boolean enabled;
+    private String self;
+    private String discovery;
+    // Requests for sessions owned by this node, including ones forwarded by peers
+    private long servedLocally;
+    private long receivedForwards;
+    private long forwardFailures;
+    private boolean listening;
+    private long notificationsSent;
+    private long notificationsReceived;
+    private long invalidationsApplied;
+    private List<ClusterNodeStats> nodes;
+}
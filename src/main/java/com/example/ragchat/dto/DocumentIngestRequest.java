@@ -0,0 +1,21 @@
+package com.example.ragchat.dto;
+
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@NoArgsConstructor
+@AllArgsConstructor
+@Data
+public class DocumentIngestRequest {
+
+    @NotBlank(message = "Document ID is required and cannot be empty")
+    @Size(min = 1, max = 200, message = "Document ID must be between 1 and 200 characters")
+    private String documentId;
+
+    @NotBlank(message = "Document text is required and cannot be empty")
+    @Size(min = 1, max = 1000000, message = "Document text must be between 1 and 1000000 characters")
+    private String text;
+}
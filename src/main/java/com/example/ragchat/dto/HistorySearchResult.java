@@ -0,0 +1,23 @@
+package com.example.ragchat.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Date;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class HistorySearchResult {
+    private Long messageId;
+    private Long sessionId;
+    private String sender;
+    private String content;
+    // Matching fragment with query terms wrapped in <mark></mark>
+    private String snippet;
+    private Date timestamp;
+    private double score;
+}
@@ -0,0 +1,25 @@
+package com.example.ragchat.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ImportResult {
+    private boolean completed;
+    // Why the import stopped early; everything up to lastCursor is committed
+    private String error;
+    private long imported;
+    private int sessions;
+    private long elapsedMillis;
+    private double rowsPerSecond;
+    // Source cursor of the last committed message; export again with after=lastCursor to resume
+    private String lastCursor;
+    // Pass both as resumeSourceSessionId/resumeTargetSessionId so the resumed import continues that session
+    private Long lastSourceSessionId;
+    private Long lastTargetSessionId;
+}
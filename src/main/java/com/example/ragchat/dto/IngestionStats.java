@@ -0,0 +1,21 @@
+package com.example.ragchat.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class IngestionStats {
+    private long chunksReceived;
+    private long chunksIndexed;
+    private long duplicatesDropped;
+    private long bytesReceived;
+    private long bytesIndexed;
+    private double indexSizeSavings;
+    private double dedupChunksPerSecond;
+    private int trackedSignatures;
+}
@@ -0,0 +1,21 @@
+package com.example.ragchat.dto;
+
+import com.example.ragchat.model.ChatMessage;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class MessagePage {
+    private List<ChatMessage> messages;
+    // Cursor for the next (newer) page, null when there is none
+    private String nextCursor;
+    // Cursor for the previous (older) page, null when there is none
+    private String prevCursor;
+}
@@ -0,0 +1,18 @@
+package com.example.ragchat.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class MessageSearchPage {
+    private List<HistorySearchResult> results;
+    // Cursor for the next (lower ranked) page, null when there is none
+    private String nextCursor;
+}
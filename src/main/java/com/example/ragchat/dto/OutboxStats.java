@@ -0,0 +1,23 @@
+package com.example.ragchat.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class OutboxStats {
+    private boolean enabled;
+    private String sink;
+    private String consumer;
+    // Events not yet received by every consumer, over all shards
+    private long backlog;
+    private long delivered;
+    private long batches;
+    private long failures;
+    private long lastBatchMillis;
+    private String lastError;
+}
@@ -0,0 +1,17 @@
+package com.example.ragchat.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReplicaStats {
+    private String name;
+    private boolean healthy;
+    private long lagMillis;
+    private long routedReads;
+}
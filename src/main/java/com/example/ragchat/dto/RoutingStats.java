@@ -0,0 +1,24 @@
+package com.example.ragchat.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class RoutingStats {
+    private long primaryConnections;
+    private long replicaConnections;
+    // Reads kept on the primary because the session or user was written within the pin window
+    private long pinnedReads;
+    // Reads that wanted a replica but found none healthy
+    private long fallbackReads;
+    private long pinWindowMillis;
+    private int pinnedKeys;
+    private List<ReplicaStats> replicas;
+}
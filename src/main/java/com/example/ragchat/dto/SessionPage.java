@@ -0,0 +1,18 @@
+package com.example.ragchat.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class SessionPage {
+    private List<SessionSummary> sessions;
+    // Cursor for the next page, null when there is none
+    private String nextCursor;
+}
@@ -0,0 +1,24 @@
+package com.example.ragchat.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Date;
+
+/**
+ * Lightweight session row for listings; read straight from the covering index
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class SessionSummary {
+    private Long id;
+    private String name;
+    private boolean favorite;
+    private Date updatedAt;
+    private long messageCount;
+    private Date lastMessageAt;
+}
@@ -0,0 +1,27 @@
+package com.example.ragchat.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Date;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ShardMoveResult {
+    private String userId;
+    private int sourceShard;
+    private int targetShard;
+    private int sessions;
+    private long messagesCopied;
+    // Copy passes before the cutover, including the initial bulk copy
+    private int passes;
+    // Time writes were held for the final sync and directory switch
+    private long cutoverMillis;
+    private long elapsedMillis;
+    // The source copy is kept until then, for instances still routing by their old directory
+    private Date sourcePurgeAt;
+}
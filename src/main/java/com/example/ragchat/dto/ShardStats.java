@@ -0,0 +1,19 @@
+package com.example.ragchat.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ShardStats {
+    private int shard;
+    private long connections;
+    // Share of the hash ring owned by this shard, before moved users
+    private double ringShare;
+    private long usersMovedIn;
+    private long usersMovedOut;
+}
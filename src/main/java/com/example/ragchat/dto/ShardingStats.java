@@ -0,0 +1,20 @@
+package com.example.ragchat.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ShardingStats {
+    private int shardCount;
+    private int movedUsers;
+    private int relocatedSessions;
+    private int activeMoves;
+    private List<ShardStats> shards;
+}
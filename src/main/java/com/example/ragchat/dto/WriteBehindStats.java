@@ -0,0 +1,26 @@
+package com.example.ragchat.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class WriteBehindStats {
+    private boolean enabled;
+    private int queueDepth;
+    private long appended;
+    private long flushed;
+    private long flushBatches;
+    private long flushFailures;
+    // Rows set aside after the database refused them or the retries ran out
+    private long deadLettered;
+    private long syncFallbacks;
+    private double lastFlushMillis;
+    private double avgFlushMillis;
+    private long journalBytes;
+    private int journalSegments;
+}
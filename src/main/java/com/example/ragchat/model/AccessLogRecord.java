@@ -0,0 +1,54 @@
+package com.example.ragchat.model;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * One slot of the access log ring buffer. Slots are allocated once and reused, so
+ * recording a request allocates nothing; string fields only reference values the
+ * request already holds.
+ */
+@Getter
+@Setter
+public class AccessLogRecord {
+
+    private long timestamp;
+    private String method;
+    private String uri;
+    private String query;
+    private int status;
+    private long durationNanos;
+    private String clientIp;
+    private String keyId;
+    private String userAgent;
+    private long requestBytes;
+
+    @Setter(AccessLevel.NONE)
+    private final byte[] body;
+    @Setter(AccessLevel.NONE)
+    private int bodyLength;
+    @Setter(AccessLevel.NONE)
+    private boolean bodyTruncated;
+
+    public AccessLogRecord(int bodyLimit) {
+        this.body = new byte[bodyLimit];
+    }
+
+    /**
+     * Copy up to the slot's body limit from a captured request body
+     */
+    public void setBody(byte[] content, int length) {
+        bodyLength = Math.min(length, body.length);
+        bodyTruncated = length > body.length;
+        System.arraycopy(content, 0, body, 0, bodyLength);
+    }
+
+    public void clear() {
+        method = uri = query = clientIp = keyId = userAgent = null;
+        status = 0;
+        requestBytes = -1;
+        bodyLength = 0;
+        bodyTruncated = false;
+    }
+}
@@ -0,0 +1,22 @@
+package com.example.ragchat.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A registered API key, without its secret. Quotas left null use the configured defaults.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ApiKeyInfo {
+    // Stable, non-secret name used in logs, counters and rate limit buckets
+    private String id;
+    private String tenant;
+    private String tier;
+    private Integer requestsPerMinute;
+    private Integer chatRequestsPerMinute;
+}
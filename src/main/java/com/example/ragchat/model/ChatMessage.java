@@ -11,13 +11,19 @@ import java.util.Date;
 @Setter
 public class ChatMessage {
 
+    // Pooled sequence (allocation 50) so inserts can be JDBC-batched, unlike IDENTITY
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "chat_messages_seq")
+    @SequenceGenerator(name = "chat_messages_seq", sequenceName = "chat_messages_seq", allocationSize = 50)
     private Long id;
 
     @Column(nullable = false)
     private Long sessionId; // foreign key reference to ChatSession.id
 
+    // Per-session monotonic sequence assigned by the session's single writer
+    @Column
+    private Long seq;
+
     @Column(nullable = false)
     private String sender;
 
@@ -27,6 +33,14 @@ public class ChatMessage {
     @Column(length = 1000)
     private String context;
 
+    // SHA-256 of context stored out of line in message_blobs; context is then null
+    @Column(length = 64)
+    private String contextRef;
+
+    // SHA-256 of the full content when it exceeds the column; content holds a prefix
+    @Column(length = 64)
+    private String contentRef;
+
     @Column(nullable = false)
     @Temporal(TemporalType.TIMESTAMP)
     private Date timestamp = new Date();
@@ -31,4 +31,25 @@ public class ChatSession {
     @Column(nullable = false)
     @Temporal(TemporalType.TIMESTAMP)
     private Date updatedAt = new Date();
+
+    // Denormalized statistics, maintained incrementally by the message write path
+    @Column(nullable = false)
+    private long messageCount = 0;
+
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date lastMessageAt;
+
+    @Column(nullable = false)
+    private long promptTokens = 0;
+
+    @Column(nullable = false)
+    private long completionTokens = 0;
+
+    // Set when a large session is deleted; its rows are purged in the background
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date deletedAt;
+
+    // Set while the session's messages live in the cold-tier archive instead of chat_messages
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date archivedAt;
 }
@@ -0,0 +1,40 @@
+package com.example.ragchat.model;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * A chunk of ingested knowledge or chat history held by the in-process retrieval index
+ */
+@Getter
+@Setter
+public class KnowledgeChunk {
+
+    private Long id;
+
+    private String documentId;
+
+    private int position;
+
+    private String text;
+
+    // Documents whose near-duplicate copies were merged into this chunk
+    private Set<String> mergedDocuments = new LinkedHashSet<>();
+
+    private int duplicateCount = 0;
+
+    // Set only for indexed chat messages; such chunks are visible to their owner only
+    private String userId;
+
+    private Long sessionId;
+
+    private Long messageId;
+
+    private String sender;
+
+    private Date timestamp;
+}
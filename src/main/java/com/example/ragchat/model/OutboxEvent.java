@@ -0,0 +1,35 @@
+package com.example.ragchat.model;
+
+import com.fasterxml.jackson.annotation.JsonRawValue;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Date;
+
+/**
+ * Change event read from outbox_events. Events are ordered by (txId, id) within a
+ * shard; consumers can use (shard, txId, id) to drop redeliveries.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class OutboxEvent {
+
+    public static final String SESSION_CREATED = "session.created";
+    public static final String SESSION_DELETED = "session.deleted";
+    public static final String MESSAGE_ADDED = "message.added";
+
+    private int shard;
+    private long txId;
+    private long id;
+    private String type;
+    private Long sessionId;
+    private String userId;
+    private Date createdAt;
+    // JSON object, written through unchanged
+    @JsonRawValue
+    private String data;
+}
@@ -0,0 +1,15 @@
+package com.example.ragchat.model;
+
+import java.util.Date;
+
+/**
+ * Immutable snapshot of the session fields needed on the message paths
+ */
+public record SessionMetadata(Long id, String userId, String name, boolean favorite, Date updatedAt,
+                              boolean archived) {
+
+    public static SessionMetadata of(ChatSession session) {
+        return new SessionMetadata(session.getId(), session.getUserId(), session.getName(),
+                session.isFavorite(), session.getUpdatedAt(), session.getArchivedAt() != null);
+    }
+}
@@ -0,0 +1,45 @@
+package com.example.ragchat.model;
+
+import com.example.ragchat.util.TextVectors;
+import lombok.Getter;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Change to a session's denormalized statistics caused by a batch of new messages.
+ *
+ * Token totals are estimates: assistant messages count as completion tokens and
+ * everything else as prompt tokens. Reconciliation uses the same rule.
+ */
+@Getter
+public class SessionStatsDelta {
+
+    private long messageCount;
+    private Date lastMessageAt;
+    private long promptTokens;
+    private long completionTokens;
+
+    public void add(ChatMessage message) {
+        messageCount++;
+        if (lastMessageAt == null || message.getTimestamp().after(lastMessageAt)) {
+            lastMessageAt = message.getTimestamp();
+        }
+        long tokens = TextVectors.estimateTokens(message.getContent());
+        if ("assistant".equals(message.getSender())) {
+            completionTokens += tokens;
+        } else {
+            promptTokens += tokens;
+        }
+    }
+
+    public static Map<Long, SessionStatsDelta> of(Collection<ChatMessage> messages) {
+        Map<Long, SessionStatsDelta> deltas = new LinkedHashMap<>();
+        for (ChatMessage message : messages) {
+            deltas.computeIfAbsent(message.getSessionId(), id -> new SessionStatsDelta()).add(message);
+        }
+        return deltas;
+    }
+}
@@ -2,10 +2,64 @@ package com.example.ragchat.repository;
 
 import com.example.ragchat.model.ChatMessage;
 import org.springframework.data.jpa.repository.JpaRepository;
-import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+import java.util.Collection;
+import java.util.Date;
 import java.util.List;
+import java.util.Optional;
 
-public interface ChatMessageRepository extends JpaRepository<ChatMessage, Long> {
-    List<ChatMessage> findBySessionIdOrderByTimestampAsc(Long sessionId, Pageable pageable);
-    void deleteBySessionId(Long sessionId);
+public interface ChatMessageRepository extends JpaRepository<ChatMessage, Long>, ChatMessageRepositoryCustom {
+
+    // Explicit columns so native reads never drag along the content_tsv search vector
+    String MESSAGE_COLUMNS = "SELECT id, session_id, seq, sender, content, context, context_ref, content_ref, " +
+            "timestamp FROM chat_messages ";
+    // Primary-key lookup; the key is (session_id, id) on the partitioned table
+    Optional<ChatMessage> findBySessionIdAndId(Long sessionId, Long id);
+
+    // One bulk statement; never loads the messages into the persistence context
+    @Modifying
+    @Query("DELETE FROM ChatMessage m WHERE m.sessionId IN :sessionIds")
+    int deleteBySessionIdIn(@Param("sessionIds") Collection<Long> sessionIds);
+
+    // Deletes at most :limit rows of a session in its own short transaction
+    @Modifying
+    @Transactional
+    @Query(value = "DELETE FROM chat_messages WHERE session_id = :sessionId AND id IN " +
+            "(SELECT id FROM chat_messages WHERE session_id = :sessionId LIMIT :limit)", nativeQuery = true)
+    int deleteChunkBySessionId(@Param("sessionId") Long sessionId, @Param("limit") int limit);
+
+    // Offset paging; kept for the skip/limit API, prefer the keyset queries below
+    @Query(value = MESSAGE_COLUMNS + "WHERE session_id = :sessionId " +
+            "ORDER BY timestamp ASC, id ASC LIMIT :limit OFFSET :skip", nativeQuery = true)
+    List<ChatMessage> findBySessionIdWithOffset(@Param("sessionId") Long sessionId,
+                                                @Param("skip") int skip,
+                                                @Param("limit") int limit);
+
+    // Keyset (seek) paging over the (session_id, timestamp, id) index
+    @Query(value = MESSAGE_COLUMNS + "WHERE session_id = :sessionId " +
+            "ORDER BY timestamp ASC, id ASC LIMIT :limit", nativeQuery = true)
+    List<ChatMessage> findOldest(@Param("sessionId") Long sessionId, @Param("limit") int limit);
+
+    @Query(value = MESSAGE_COLUMNS + "WHERE session_id = :sessionId " +
+            "ORDER BY timestamp DESC, id DESC LIMIT :limit", nativeQuery = true)
+    List<ChatMessage> findLatest(@Param("sessionId") Long sessionId, @Param("limit") int limit);
+
+    @Query(value = MESSAGE_COLUMNS + "WHERE session_id = :sessionId " +
+            "AND (timestamp, id) > (:timestamp, :id) " +
+            "ORDER BY timestamp ASC, id ASC LIMIT :limit", nativeQuery = true)
+    List<ChatMessage> findAfter(@Param("sessionId") Long sessionId,
+                                @Param("timestamp") Date timestamp,
+                                @Param("id") Long id,
+                                @Param("limit") int limit);
+
+    @Query(value = MESSAGE_COLUMNS + "WHERE session_id = :sessionId " +
+            "AND (timestamp, id) < (:timestamp, :id) " +
+            "ORDER BY timestamp DESC, id DESC LIMIT :limit", nativeQuery = true)
+    List<ChatMessage> findBefore(@Param("sessionId") Long sessionId,
+                                 @Param("timestamp") Date timestamp,
+                                 @Param("id") Long id,
+                                 @Param("limit") int limit);
 }
@@ -0,0 +1,13 @@
+package com.example.ragchat.repository;
+
+import com.example.ragchat.model.ChatMessage;
+
+import java.util.List;
+
+public interface ChatMessageRepositoryCustom {
+    /**
+     * Persist messages through JDBC batches, flushing and clearing the persistence
+     * context every batch so memory stays flat for large imports.
+     */
+    List<ChatMessage> saveAllBatched(List<ChatMessage> messages);
+}
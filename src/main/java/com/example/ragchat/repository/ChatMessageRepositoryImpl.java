@@ -0,0 +1,53 @@
+package com.example.ragchat.repository;
+
+import com.example.ragchat.model.ChatMessage;
+import com.example.ragchat.model.SessionStatsDelta;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+import java.util.Map;
+
+public class ChatMessageRepositoryImpl implements ChatMessageRepositoryCustom {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Value("${spring.jpa.properties.hibernate.jdbc.batch_size:500}")
+    private int batchSize;
+
+    @Override
+    @Transactional
+    public List<ChatMessage> saveAllBatched(List<ChatMessage> messages) {
+        for (int i = 0; i < messages.size(); i++) {
+            entityManager.persist(messages.get(i));
+            if ((i + 1) % batchSize == 0) {
+                entityManager.flush();
+                entityManager.clear();
+            }
+        }
+        entityManager.flush();
+        entityManager.clear();
+
+        // Session counters move in the same transaction as the rows they count
+        for (Map.Entry<Long, SessionStatsDelta> entry : SessionStatsDelta.of(messages).entrySet()) {
+            SessionStatsDelta delta = entry.getValue();
+            entityManager.createQuery(
+                    "UPDATE ChatSession s SET s.messageCount = s.messageCount + :count, " +
+                    "s.lastMessageAt = CASE WHEN s.lastMessageAt IS NULL OR s.lastMessageAt < :lastAt " +
+                    "THEN :lastAt ELSE s.lastMessageAt END, " +
+                    "s.promptTokens = s.promptTokens + :prompt, " +
+                    "s.completionTokens = s.completionTokens + :completion " +
+                    "WHERE s.id = :id")
+                    .setParameter("count", delta.getMessageCount())
+                    .setParameter("lastAt", delta.getLastMessageAt())
+                    .setParameter("prompt", delta.getPromptTokens())
+                    .setParameter("completion", delta.getCompletionTokens())
+                    .setParameter("id", entry.getKey())
+                    .executeUpdate();
+        }
+        return messages;
+    }
+}
@@ -2,8 +2,124 @@ package com.example.ragchat.repository;
 
 import com.example.ragchat.model.ChatSession;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+import java.util.Collection;
+import java.util.Date;
 import java.util.List;
 
 public interface ChatSessionRepository extends JpaRepository<ChatSession, Long> {
     List<ChatSession> findByUserId(String userId);
+
+    // Most recently active first; matches idx_chat_sessions_user_last_message
+    @Query("SELECT s FROM ChatSession s WHERE s.userId = :userId AND s.deletedAt IS NULL " +
+           "ORDER BY s.lastMessageAt DESC NULLS LAST, s.id DESC")
+    List<ChatSession> findByUserIdOrderByActivity(@Param("userId") String userId);
+
+    // Set lookup of which sessions exist, with their owner, in one round trip
+    @Query("SELECT s.id AS id, s.userId AS userId, s.archivedAt AS archivedAt FROM ChatSession s " +
+           "WHERE s.id IN :ids AND s.deletedAt IS NULL")
+    List<SessionOwner> findOwnersByIdIn(@Param("ids") Collection<Long> ids);
+
+    // Single-statement updates instead of read-modify-write through the entity
+    @Modifying
+    @Transactional
+    @Query("UPDATE ChatSession s SET s.name = :name, s.updatedAt = :updatedAt " +
+           "WHERE s.id = :id AND s.deletedAt IS NULL")
+    int updateName(@Param("id") Long id, @Param("name") String name, @Param("updatedAt") Date updatedAt);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE ChatSession s SET s.favorite = :favorite, s.updatedAt = :updatedAt " +
+           "WHERE s.id = :id AND s.deletedAt IS NULL")
+    int updateFavorite(@Param("id") Long id, @Param("favorite") boolean favorite, @Param("updatedAt") Date updatedAt);
+
+    // Keyset-paginated listing projected from the covering listing indexes
+    String SUMMARY_COLUMNS = "SELECT id AS \"id\", name AS \"name\", favorite AS \"favorite\", " +
+            "updated_at AS \"updatedAt\", message_count AS \"messageCount\", " +
+            "last_message_at AS \"lastMessageAt\" FROM chat_sessions WHERE user_id = :userId AND deleted_at IS NULL ";
+
+    @Query(value = SUMMARY_COLUMNS +
+            "ORDER BY updated_at DESC, id DESC LIMIT :limit", nativeQuery = true)
+    List<SessionSummaryView> findSummaries(@Param("userId") String userId, @Param("limit") int limit);
+
+    @Query(value = SUMMARY_COLUMNS + "AND (updated_at, id) < (:updatedAt, :id) " +
+            "ORDER BY updated_at DESC, id DESC LIMIT :limit", nativeQuery = true)
+    List<SessionSummaryView> findSummariesAfter(@Param("userId") String userId,
+                                                @Param("updatedAt") Date updatedAt,
+                                                @Param("id") Long id,
+                                                @Param("limit") int limit);
+
+    @Query(value = SUMMARY_COLUMNS +
+            "ORDER BY favorite DESC, updated_at DESC, id DESC LIMIT :limit", nativeQuery = true)
+    List<SessionSummaryView> findSummariesFavoritesFirst(@Param("userId") String userId, @Param("limit") int limit);
+
+    @Query(value = SUMMARY_COLUMNS + "AND (favorite, updated_at, id) < (:favorite, :updatedAt, :id) " +
+            "ORDER BY favorite DESC, updated_at DESC, id DESC LIMIT :limit", nativeQuery = true)
+    List<SessionSummaryView> findSummariesFavoritesFirstAfter(@Param("userId") String userId,
+                                                              @Param("favorite") boolean favorite,
+                                                              @Param("updatedAt") Date updatedAt,
+                                                              @Param("id") Long id,
+                                                              @Param("limit") int limit);
+
+    // Deletion: live sessions with their size, tombstoning and the bulk delete itself
+    @Query("SELECT s.id AS id, s.userId AS userId, s.messageCount AS messageCount FROM ChatSession s " +
+           "WHERE s.id IN :ids AND s.deletedAt IS NULL")
+    List<SessionSize> findSizesByIdIn(@Param("ids") Collection<Long> ids);
+
+    // Same counter update saveAllBatched runs, for message stores outside Postgres
+    @Modifying
+    @Transactional
+    @Query("UPDATE ChatSession s SET s.messageCount = s.messageCount + :count, " +
+           "s.lastMessageAt = CASE WHEN s.lastMessageAt IS NULL OR s.lastMessageAt < :lastAt " +
+           "THEN :lastAt ELSE s.lastMessageAt END, " +
+           "s.promptTokens = s.promptTokens + :prompt, s.completionTokens = s.completionTokens + :completion " +
+           "WHERE s.id = :id")
+    int addStats(@Param("id") Long id, @Param("count") long count, @Param("lastAt") Date lastAt,
+                 @Param("prompt") long prompt, @Param("completion") long completion);
+
+    @Modifying
+    @Query("UPDATE ChatSession s SET s.deletedAt = :deletedAt WHERE s.id IN :ids AND s.deletedAt IS NULL")
+    int tombstone(@Param("ids") Collection<Long> ids, @Param("deletedAt") Date deletedAt);
+
+    @Modifying
+    @Query("DELETE FROM ChatSession s WHERE s.id IN :ids")
+    int deleteByIdIn(@Param("ids") Collection<Long> ids);
+
+    @Query(value = "SELECT id FROM chat_sessions WHERE deleted_at IS NOT NULL ORDER BY deleted_at LIMIT :limit",
+           nativeQuery = true)
+    List<Long> findTombstonedIds(@Param("limit") int limit);
+
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM ChatSession s WHERE s.id = :id AND s.deletedAt IS NOT NULL")
+    int deleteTombstoned(@Param("id") Long id);
+
+    // Idle sessions whose messages can move to the cold tier, oldest activity first
+    @Query(value = "SELECT id FROM chat_sessions WHERE archived_at IS NULL AND deleted_at IS NULL " +
+            "AND last_message_at < :cutoff ORDER BY last_message_at LIMIT :limit", nativeQuery = true)
+    List<Long> findArchiveCandidates(@Param("cutoff") Date cutoff, @Param("limit") int limit);
+
+    interface SessionSize {
+        Long getId();
+        String getUserId();
+        Long getMessageCount();
+    }
+
+    interface SessionSummaryView {
+        Long getId();
+        String getName();
+        Boolean getFavorite();
+        Date getUpdatedAt();
+        Long getMessageCount();
+        Date getLastMessageAt();
+    }
+
+    interface SessionOwner {
+        Long getId();
+        String getUserId();
+        Date getArchivedAt();
+    }
 }
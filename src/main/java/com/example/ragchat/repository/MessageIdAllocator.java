@@ -0,0 +1,35 @@
+package com.example.ragchat.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Hands out message IDs from chat_messages_seq for paths that bypass Hibernate
+ * (write-behind, non-JPA message stores). Allocation is pooled exactly like
+ * Hibernate's pooled optimizer, so IDs never collide with entity inserts.
+ */
+@Repository
+@RequiredArgsConstructor
+public class MessageIdAllocator {
+
+    // Must match allocationSize of the chat_messages_seq generator on ChatMessage
+    private static final int ALLOCATION_SIZE = 50;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private long hi = 0;
+    private long next = 1;
+
+    /**
+     * nextval is the top of a block of ALLOCATION_SIZE IDs
+     */
+    public synchronized long next() {
+        if (next > hi) {
+            Long top = jdbcTemplate.queryForObject("SELECT nextval('chat_messages_seq')", Long.class);
+            hi = top;
+            next = top - ALLOCATION_SIZE + 1;
+        }
+        return next++;
+    }
+}
@@ -0,0 +1,45 @@
+package com.example.ragchat.repository;
+
+import com.example.ragchat.model.ChatMessage;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Storage backend for chat messages, selected with chat.storage.backend.
+ *
+ * Ordering is always (timestamp, id): ascending for findOldest/findAfter/findPage,
+ * descending for findLatest/findBefore. Implementations keep the denormalized
+ * session statistics in step with saveAll.
+ */
+public interface MessageStore {
+
+    /**
+     * Persist new messages, assigning IDs where missing
+     */
+    List<ChatMessage> saveAll(List<ChatMessage> messages);
+
+    Optional<ChatMessage> findById(Long sessionId, Long id);
+
+    List<ChatMessage> findPage(Long sessionId, int skip, int limit);
+
+    List<ChatMessage> findOldest(Long sessionId, int limit);
+
+    List<ChatMessage> findLatest(Long sessionId, int limit);
+
+    List<ChatMessage> findAfter(Long sessionId, Date timestamp, Long id, int limit);
+
+    List<ChatMessage> findBefore(Long sessionId, Date timestamp, Long id, int limit);
+
+    /**
+     * Remove all messages of the given sessions, returning the number removed
+     */
+    int deleteBySessionIds(Collection<Long> sessionIds);
+
+    /**
+     * Remove up to roughly limit messages of a session; zero means nothing is left
+     */
+    int deleteChunk(Long sessionId, int limit);
+}
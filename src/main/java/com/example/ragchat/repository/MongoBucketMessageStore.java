@@ -0,0 +1,288 @@
+package com.example.ragchat.repository;
+
+import com.example.ragchat.model.ChatMessage;
+import com.example.ragchat.model.SessionStatsDelta;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.Sorts;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.Updates;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Predicate;
+
+/**
+ * Message store keeping each session's messages in bucket documents.
+ *
+ * A bucket holds the messages of one session that fall in the same time window,
+ * up to a fixed count: {sessionId, start, count, messages: [...]}. An append is a
+ * single upsert that pushes into the open bucket, so a turn costs one round trip
+ * and reading the latest messages usually touches one document instead of one
+ * row per message. Sessions themselves stay in Postgres.
+ */
+@Repository
+@Slf4j
+@ConditionalOnProperty(name = "chat.storage.backend", havingValue = "mongo")
+public class MongoBucketMessageStore implements MessageStore {
+
+    static final String COLLECTION = "message_buckets";
+
+    private static final Comparator<ChatMessage> ORDER =
+            Comparator.comparing(ChatMessage::getTimestamp).thenComparing(ChatMessage::getId);
+
+    private final MongoCollection<Document> buckets;
+    private final MessageIdAllocator idAllocator;
+    private final ChatSessionRepository sessionRepo;
+    private final OutboxRepository outbox;
+    private final long bucketMillis;
+    private final int bucketMaxMessages;
+
+    public MongoBucketMessageStore(MongoClient mongoClient,
+                                   MessageIdAllocator idAllocator,
+                                   ChatSessionRepository sessionRepo,
+                                   OutboxRepository outbox,
+                                   @Value("${chat.storage.mongo.database:ragchat}") String database,
+                                   @Value("${chat.storage.mongo.bucket-minutes:60}") long bucketMinutes,
+                                   @Value("${chat.storage.mongo.bucket-max-messages:200}") int bucketMaxMessages,
+                                   @Value("${chat.write-behind.enabled:false}") boolean writeBehindEnabled) {
+        if (writeBehindEnabled) {
+            throw new IllegalStateException("chat.write-behind.enabled requires chat.storage.backend=postgres");
+        }
+        this.buckets = mongoClient.getDatabase(database).getCollection(COLLECTION);
+        this.idAllocator = idAllocator;
+        this.sessionRepo = sessionRepo;
+        this.outbox = outbox;
+        this.bucketMillis = bucketMinutes * 60_000L;
+        this.bucketMaxMessages = bucketMaxMessages;
+        buckets.createIndex(Indexes.ascending("sessionId", "start"));
+    }
+
+    @Override
+    public List<ChatMessage> saveAll(List<ChatMessage> messages) {
+        // Group by (session, bucket window), keeping arrival order inside each group
+        Map<Long, Map<Long, List<ChatMessage>>> groups = new LinkedHashMap<>();
+        for (ChatMessage message : messages) {
+            if (message.getId() == null) {
+                message.setId(idAllocator.next());
+            }
+            groups.computeIfAbsent(message.getSessionId(), id -> new LinkedHashMap<>())
+                    .computeIfAbsent(bucketStart(message.getTimestamp()), start -> new ArrayList<>())
+                    .add(message);
+        }
+
+        for (Map.Entry<Long, Map<Long, List<ChatMessage>>> session : groups.entrySet()) {
+            for (Map.Entry<Long, List<ChatMessage>> window : session.getValue().entrySet()) {
+                List<ChatMessage> group = window.getValue();
+                for (int from = 0; from < group.size(); from += bucketMaxMessages) {
+                    append(session.getKey(), window.getKey(), group.subList(from,
+                            Math.min(group.size(), from + bucketMaxMessages)));
+                }
+            }
+        }
+
+        for (Map.Entry<Long, SessionStatsDelta> entry : SessionStatsDelta.of(messages).entrySet()) {
+            SessionStatsDelta delta = entry.getValue();
+            sessionRepo.addStats(entry.getKey(), delta.getMessageCount(), delta.getLastMessageAt(),
+                    delta.getPromptTokens(), delta.getCompletionTokens());
+        }
+        // Not atomic with the bucket writes: a crash in between loses these events
+        outbox.messagesAdded(messages);
+        return messages;
+    }
+
+    /**
+     * Push into a bucket of the window with room for all of them, or open a new one
+     */
+    private void append(Long sessionId, long start, List<ChatMessage> chunk) {
+        List<Document> docs = chunk.stream().map(MongoBucketMessageStore::toDocument).toList();
+        buckets.updateOne(
+                Filters.and(Filters.eq("sessionId", sessionId), Filters.eq("start", new Date(start)),
+                        Filters.lte("count", bucketMaxMessages - chunk.size())),
+                Updates.combine(Updates.pushEach("messages", docs), Updates.inc("count", chunk.size())),
+                new UpdateOptions().upsert(true));
+    }
+
+    @Override
+    public Optional<ChatMessage> findById(Long sessionId, Long id) {
+        Document bucket = buckets.find(Filters.and(Filters.eq("sessionId", sessionId), Filters.eq("messages.id", id)))
+                .projection(Projections.elemMatch("messages", Filters.eq("id", id)))
+                .first();
+        if (bucket == null) {
+            return Optional.empty();
+        }
+        return bucket.getList("messages", Document.class).stream()
+                .map(doc -> fromDocument(sessionId, doc))
+                .findFirst();
+    }
+
+    @Override
+    public List<ChatMessage> findPage(Long sessionId, int skip, int limit) {
+        return scan(sessionId, Filters.eq("sessionId", sessionId), true, m -> true, skip, limit);
+    }
+
+    @Override
+    public List<ChatMessage> findOldest(Long sessionId, int limit) {
+        return scan(sessionId, Filters.eq("sessionId", sessionId), true, m -> true, 0, limit);
+    }
+
+    @Override
+    public List<ChatMessage> findLatest(Long sessionId, int limit) {
+        return scan(sessionId, Filters.eq("sessionId", sessionId), false, m -> true, 0, limit);
+    }
+
+    @Override
+    public List<ChatMessage> findAfter(Long sessionId, Date timestamp, Long id, int limit) {
+        ChatMessage cursor = cursor(timestamp, id);
+        // A bucket's start never exceeds its messages' timestamps
+        Bson filter = Filters.and(Filters.eq("sessionId", sessionId),
+                Filters.gte("start", new Date(bucketStart(timestamp))));
+        return scan(sessionId, filter, true, m -> ORDER.compare(m, cursor) > 0, 0, limit);
+    }
+
+    @Override
+    public List<ChatMessage> findBefore(Long sessionId, Date timestamp, Long id, int limit) {
+        ChatMessage cursor = cursor(timestamp, id);
+        Bson filter = Filters.and(Filters.eq("sessionId", sessionId), Filters.lte("start", timestamp));
+        return scan(sessionId, filter, false, m -> ORDER.compare(m, cursor) < 0, 0, limit);
+    }
+
+    @Override
+    public int deleteBySessionIds(Collection<Long> sessionIds) {
+        if (sessionIds.isEmpty()) {
+            return 0;
+        }
+        Bson filter = Filters.in("sessionId", sessionIds);
+        int count = 0;
+        for (Document bucket : buckets.find(filter).projection(Projections.include("count"))) {
+            count += bucket.getInteger("count", 0);
+        }
+        buckets.deleteMany(filter);
+        return count;
+    }
+
+    @Override
+    public int deleteChunk(Long sessionId, int limit) {
+        // Buckets are the unit of deletion; remove whole buckets until about limit messages are gone
+        int removed = 0;
+        for (Document bucket : buckets.find(Filters.eq("sessionId", sessionId))
+                .projection(Projections.include("count"))
+                .sort(Sorts.ascending("start"))) {
+            if (removed >= limit) {
+                break;
+            }
+            buckets.deleteOne(Filters.eq("_id", bucket.get("_id")));
+            removed += bucket.getInteger("count", 0);
+        }
+        return removed;
+    }
+
+    /**
+     * Walk buckets in (start) order and their messages in (timestamp, id) order.
+     * Windows do not overlap, so bucket order is message order except for buckets
+     * sharing a window, which are merged before emitting.
+     */
+    private List<ChatMessage> scan(Long sessionId, Bson filter, boolean ascending,
+                                   Predicate<ChatMessage> accept, int skip, int limit) {
+        Comparator<ChatMessage> order = ascending ? ORDER : ORDER.reversed();
+        List<ChatMessage> result = new ArrayList<>(Math.min(limit, 256));
+        List<ChatMessage> window = new ArrayList<>();
+        Object windowStart = null;
+        int skipped = 0;
+
+        for (Document bucket : buckets.find(filter)
+                .sort(ascending ? Sorts.ascending("start") : Sorts.descending("start"))) {
+            if (windowStart != null && !windowStart.equals(bucket.get("start"))) {
+                skipped = emit(window, order, accept, skip, skipped, result, limit);
+                if (result.size() >= limit) {
+                    return result;
+                }
+                window.clear();
+            }
+            windowStart = bucket.get("start");
+            for (Document doc : bucket.getList("messages", Document.class)) {
+                window.add(fromDocument(sessionId, doc));
+            }
+        }
+        emit(window, order, accept, skip, skipped, result, limit);
+        return result;
+    }
+
+    private static int emit(List<ChatMessage> window, Comparator<ChatMessage> order, Predicate<ChatMessage> accept,
+                            int skip, int skipped, List<ChatMessage> result, int limit) {
+        window.sort(order);
+        for (ChatMessage message : window) {
+            if (result.size() >= limit) {
+                break;
+            }
+            if (!accept.test(message)) {
+                continue;
+            }
+            if (skipped < skip) {
+                skipped++;
+                continue;
+            }
+            result.add(message);
+        }
+        return skipped;
+    }
+
+    private long bucketStart(Date timestamp) {
+        long millis = timestamp.getTime();
+        return millis - Math.floorMod(millis, bucketMillis);
+    }
+
+    private static ChatMessage cursor(Date timestamp, Long id) {
+        ChatMessage cursor = new ChatMessage();
+        cursor.setTimestamp(timestamp);
+        cursor.setId(id);
+        return cursor;
+    }
+
+    private static Document toDocument(ChatMessage message) {
+        Document doc = new Document("id", message.getId())
+                .append("seq", message.getSeq())
+                .append("sender", message.getSender())
+                .append("content", message.getContent())
+                .append("ts", message.getTimestamp());
+        if (message.getContext() != null) {
+            doc.append("context", message.getContext());
+        }
+        if (message.getContextRef() != null) {
+            doc.append("contextRef", message.getContextRef());
+        }
+        if (message.getContentRef() != null) {
+            doc.append("contentRef", message.getContentRef());
+        }
+        return doc;
+    }
+
+    private static ChatMessage fromDocument(Long sessionId, Document doc) {
+        ChatMessage message = new ChatMessage();
+        message.setId(doc.getLong("id"));
+        message.setSessionId(sessionId);
+        message.setSeq(doc.getLong("seq"));
+        message.setSender(doc.getString("sender"));
+        message.setContent(doc.getString("content"));
+        message.setContext(doc.getString("context"));
+        message.setContextRef(doc.getString("contextRef"));
+        message.setContentRef(doc.getString("contentRef"));
+        message.setTimestamp(doc.getDate("ts"));
+        return message;
+    }
+}
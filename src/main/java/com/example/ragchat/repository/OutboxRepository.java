@@ -0,0 +1,157 @@
+package com.example.ragchat.repository;
+
+import com.example.ragchat.model.ChatMessage;
+import com.example.ragchat.model.ChatSession;
+import com.example.ragchat.model.OutboxEvent;
+import com.example.ragchat.repository.ChatSessionRepository.SessionSize;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Writes change events into outbox_events and serves the relay's reads.
+ *
+ * Writers must call these methods inside the transaction that makes the change,
+ * so an event exists exactly when its change committed. Nothing is written while
+ * the outbox is disabled.
+ */
+@Repository
+public class OutboxRepository {
+
+    private static final String INSERT_SQL =
+            "INSERT INTO outbox_events (event_type, session_id, user_id, payload) VALUES (?, ?, ?, ?)";
+
+    // Message rows do not carry the user; take it from the session in the same statement
+    private static final String INSERT_MESSAGE_SQL =
+            "INSERT INTO outbox_events (event_type, session_id, user_id, payload) " +
+            "VALUES (?, ?, (SELECT user_id FROM chat_sessions WHERE id = ?), ?)";
+
+    // Only events of transactions older than every running one; later commits sort after them
+    private static final String FETCH_SQL =
+            "SELECT id, tx_id, event_type, session_id, user_id, payload, created_at FROM outbox_events " +
+            "WHERE (tx_id, id) > (?, ?) AND tx_id < txid_snapshot_xmin(txid_current_snapshot()) " +
+            "ORDER BY tx_id, id LIMIT ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final boolean enabled;
+
+    public OutboxRepository(JdbcTemplate jdbcTemplate,
+                            ObjectMapper objectMapper,
+                            @Value("${chat.outbox.enabled:false}") boolean enabled) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.objectMapper = objectMapper;
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void sessionCreated(ChatSession session) {
+        if (!enabled) {
+            return;
+        }
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("name", session.getName());
+        data.put("favorite", session.isFavorite());
+        data.put("createdAt", session.getCreatedAt());
+        jdbcTemplate.update(INSERT_SQL, OutboxEvent.SESSION_CREATED, session.getId(), session.getUserId(),
+                json(data));
+    }
+
+    public void sessionsDeleted(List<SessionSize> sessions) {
+        if (!enabled || sessions.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(INSERT_SQL, sessions, sessions.size(), (ps, session) -> {
+            Map<String, Object> data = new LinkedHashMap<>();
+            data.put("messageCount", session.getMessageCount());
+            ps.setString(1, OutboxEvent.SESSION_DELETED);
+            ps.setLong(2, session.getId());
+            ps.setString(3, session.getUserId());
+            ps.setString(4, json(data));
+        });
+    }
+
+    public void messagesAdded(List<ChatMessage> messages) {
+        if (!enabled || messages.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(INSERT_MESSAGE_SQL, messages, messages.size(), (ps, msg) -> {
+            Map<String, Object> data = new LinkedHashMap<>();
+            data.put("messageId", msg.getId());
+            data.put("seq", msg.getSeq());
+            data.put("sender", msg.getSender());
+            data.put("content", msg.getContent());
+            data.put("contentRef", msg.getContentRef());
+            data.put("contextRef", msg.getContextRef());
+            data.put("timestamp", msg.getTimestamp());
+            ps.setString(1, OutboxEvent.MESSAGE_ADDED);
+            ps.setLong(2, msg.getSessionId());
+            ps.setLong(3, msg.getSessionId());
+            ps.setString(4, json(data));
+        });
+    }
+
+    /**
+     * Lock a consumer's offset for this transaction; empty if another relay holds it
+     */
+    public Optional<Offset> lockOffset(String consumer) {
+        jdbcTemplate.update("INSERT INTO outbox_offsets (consumer) VALUES (?) ON CONFLICT (consumer) DO NOTHING",
+                consumer);
+        return jdbcTemplate.query(
+                "SELECT tx_id, event_id FROM outbox_offsets WHERE consumer = ? FOR UPDATE SKIP LOCKED",
+                (rs, i) -> new Offset(rs.getLong(1), rs.getLong(2)), consumer).stream().findFirst();
+    }
+
+    public List<OutboxEvent> fetch(Offset after, int limit) {
+        return jdbcTemplate.query(FETCH_SQL, (rs, i) -> OutboxEvent.builder()
+                .id(rs.getLong("id"))
+                .txId(rs.getLong("tx_id"))
+                .type(rs.getString("event_type"))
+                .sessionId(rs.getLong("session_id"))
+                .userId(rs.getString("user_id"))
+                .data(rs.getString("payload"))
+                .createdAt(rs.getTimestamp("created_at"))
+                .build(), after.txId(), after.eventId(), limit);
+    }
+
+    public void commit(String consumer, OutboxEvent last, int delivered) {
+        jdbcTemplate.update("UPDATE outbox_offsets SET tx_id = ?, event_id = ?, delivered = delivered + ?, " +
+                "updated_at = ? WHERE consumer = ?", last.getTxId(), last.getId(), delivered,
+                new Timestamp(System.currentTimeMillis()), consumer);
+    }
+
+    /**
+     * Remove events every consumer has received
+     */
+    public int deleteDelivered() {
+        return jdbcTemplate.update("DELETE FROM outbox_events WHERE (tx_id, id) <= " +
+                "(SELECT tx_id, event_id FROM outbox_offsets ORDER BY tx_id, event_id LIMIT 1)");
+    }
+
+    public long backlog() {
+        Long count = jdbcTemplate.queryForObject("SELECT count(*) FROM outbox_events", Long.class);
+        return count != null ? count : 0;
+    }
+
+    private String json(Map<String, Object> data) {
+        try {
+            return objectMapper.writeValueAsString(data);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot serialize outbox event", e);
+        }
+    }
+
+    public record Offset(long txId, long eventId) {
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.ragchat.repository;
+
+import com.example.ragchat.model.ChatMessage;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Default message store: rows in the partitioned chat_messages table
+ */
+@Repository
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "chat.storage.backend", havingValue = "postgres", matchIfMissing = true)
+public class PostgresMessageStore implements MessageStore {
+
+    private final ChatMessageRepository messageRepo;
+    private final OutboxRepository outbox;
+
+    @Override
+    @Transactional
+    public List<ChatMessage> saveAll(List<ChatMessage> messages) {
+        List<ChatMessage> saved = messageRepo.saveAllBatched(messages);
+        outbox.messagesAdded(saved);
+        return saved;
+    }
+
+    @Override
+    public Optional<ChatMessage> findById(Long sessionId, Long id) {
+        return messageRepo.findBySessionIdAndId(sessionId, id);
+    }
+
+    @Override
+    public List<ChatMessage> findPage(Long sessionId, int skip, int limit) {
+        return messageRepo.findBySessionIdWithOffset(sessionId, skip, limit);
+    }
+
+    @Override
+    public List<ChatMessage> findOldest(Long sessionId, int limit) {
+        return messageRepo.findOldest(sessionId, limit);
+    }
+
+    @Override
+    public List<ChatMessage> findLatest(Long sessionId, int limit) {
+        return messageRepo.findLatest(sessionId, limit);
+    }
+
+    @Override
+    public List<ChatMessage> findAfter(Long sessionId, Date timestamp, Long id, int limit) {
+        return messageRepo.findAfter(sessionId, timestamp, id, limit);
+    }
+
+    @Override
+    public List<ChatMessage> findBefore(Long sessionId, Date timestamp, Long id, int limit) {
+        return messageRepo.findBefore(sessionId, timestamp, id, limit);
+    }
+
+    @Override
+    @Transactional
+    public int deleteBySessionIds(Collection<Long> sessionIds) {
+        return messageRepo.deleteBySessionIdIn(sessionIds);
+    }
+
+    @Override
+    public int deleteChunk(Long sessionId, int limit) {
+        return messageRepo.deleteChunkBySessionId(sessionId, limit);
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.ragchat.repository;
+
+import com.example.ragchat.util.RateLimitStore;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCallback;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Repository;
+
+import javax.sql.DataSource;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Array;
+import java.sql.ResultSet;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
+
+/**
+ * Rate limit buckets shared by all nodes in the rate_limits table on the primary.
+ *
+ * A sync is one statement for the whole batch. Times come from the database clock,
+ * so node clocks need not agree. Client keys are stored as SHA-256 digests, since
+ * they may be API keys.
+ */
+@Repository
+@ConditionalOnProperty(name = "rate-limit.shared.enabled", havingValue = "true")
+public class PostgresRateLimitStore implements RateLimitStore {
+
+    private static final String NOW_US = "(extract(epoch FROM now()) * 1000000)::bigint";
+
+    private static final String CONSUME_SQL =
+            "INSERT INTO rate_limits (limiter, client_key, tat_us) " +
+            "SELECT ?, t.k, " + NOW_US + " + t.n * ? FROM unnest(?::text[], ?::bigint[]) AS t(k, n) " +
+            "ON CONFLICT (limiter, client_key) DO UPDATE SET tat_us = EXCLUDED.tat_us + " +
+            "greatest(rate_limits.tat_us - " + NOW_US + ", 0) " +
+            "RETURNING client_key, tat_us - " + NOW_US;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public PostgresRateLimitStore(@Qualifier("primaryDataSource") DataSource primary) {
+        this.jdbcTemplate = new JdbcTemplate(primary);
+    }
+
+    @Override
+    public Map<String, Long> consume(String limiter, Map<String, Long> consumed, long emissionNanos) {
+        Map<String, String> keysByDigest = new HashMap<>();
+        String[] digests = new String[consumed.size()];
+        Long[] counts = new Long[consumed.size()];
+        int i = 0;
+        for (Map.Entry<String, Long> entry : consumed.entrySet()) {
+            digests[i] = digest(entry.getKey());
+            counts[i] = entry.getValue();
+            keysByDigest.put(digests[i], entry.getKey());
+            i++;
+        }
+        Map<String, Long> ahead = new HashMap<>();
+        jdbcTemplate.execute(CONSUME_SQL, (PreparedStatementCallback<Void>) ps -> {
+            Array keyArray = ps.getConnection().createArrayOf("text", digests);
+            Array countArray = ps.getConnection().createArrayOf("bigint", counts);
+            ps.setString(1, limiter);
+            ps.setLong(2, emissionNanos / 1000);
+            ps.setArray(3, keyArray);
+            ps.setArray(4, countArray);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    ahead.put(keysByDigest.get(rs.getString(1)), rs.getLong(2) * 1000);
+                }
+            }
+            return null;
+        });
+        return ahead;
+    }
+
+    /**
+     * Drop buckets that have refilled; they are the same as absent rows
+     */
+    @Scheduled(fixedDelayString = "${rate-limit.shared.purge-ms:60000}")
+    public int purge() {
+        return jdbcTemplate.update("DELETE FROM rate_limits WHERE tat_us < " + NOW_US);
+    }
+
+    private static String digest(String key) {
+        try {
+            MessageDigest sha = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(sha.digest(key.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.example.ragchat.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Raw row access used to copy a user between shards.
+ *
+ * Every method runs against the shard current in {@link com.example.ragchat.util.ShardContext};
+ * rows are plain column arrays in the order of {@link #SESSION_COLUMNS} and
+ * {@link #MESSAGE_COLUMNS}, so they can be written back unchanged on another shard.
+ */
+@Repository
+public class ShardCopyRepository {
+
+    public static final String SESSION_COLUMNS = "id, user_id, name, favorite, created_at, updated_at, " +
+            "message_count, last_message_at, prompt_tokens, completion_tokens, deleted_at, archived_at";
+
+    public static final String MESSAGE_COLUMNS =
+            "id, session_id, seq, sender, content, context, context_ref, content_ref, timestamp";
+
+    // Index of the blob reference columns in a message row
+    public static final int CONTEXT_REF = 6;
+    public static final int CONTENT_REF = 7;
+
+    private static final String UPSERT_SESSION_SQL =
+            "INSERT INTO chat_sessions (" + SESSION_COLUMNS + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?) " +
+            "ON CONFLICT (id) DO UPDATE SET name = EXCLUDED.name, favorite = EXCLUDED.favorite, " +
+            "updated_at = EXCLUDED.updated_at, message_count = EXCLUDED.message_count, " +
+            "last_message_at = EXCLUDED.last_message_at, prompt_tokens = EXCLUDED.prompt_tokens, " +
+            "completion_tokens = EXCLUDED.completion_tokens, deleted_at = EXCLUDED.deleted_at, " +
+            "archived_at = EXCLUDED.archived_at " +
+            "WHERE (chat_sessions.name, chat_sessions.favorite, chat_sessions.updated_at, " +
+            "chat_sessions.message_count, chat_sessions.last_message_at, chat_sessions.prompt_tokens, " +
+            "chat_sessions.completion_tokens, chat_sessions.deleted_at, chat_sessions.archived_at) " +
+            "IS DISTINCT FROM (EXCLUDED.name, EXCLUDED.favorite, EXCLUDED.updated_at, EXCLUDED.message_count, " +
+            "EXCLUDED.last_message_at, EXCLUDED.prompt_tokens, EXCLUDED.completion_tokens, " +
+            "EXCLUDED.deleted_at, EXCLUDED.archived_at)";
+
+    private static final String INSERT_MESSAGE_SQL =
+            "INSERT INTO chat_messages (" + MESSAGE_COLUMNS + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?) " +
+            "ON CONFLICT (session_id, id) DO NOTHING";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public ShardCopyRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public List<Object[]> findSessions(String userId) {
+        return jdbcTemplate.query("SELECT " + SESSION_COLUMNS + " FROM chat_sessions WHERE user_id = ?",
+                (rs, i) -> row(rs, 12), userId);
+    }
+
+    public List<Long> findSessionIds(String userId) {
+        return jdbcTemplate.queryForList("SELECT id FROM chat_sessions WHERE user_id = ?", Long.class, userId);
+    }
+
+    /**
+     * Insert or update session rows; a row's count is 0 when it was already identical
+     */
+    public int[] upsertSessions(List<Object[]> sessions) {
+        return jdbcTemplate.batchUpdate(UPSERT_SESSION_SQL, sessions);
+    }
+
+    /**
+     * Remove a session and its messages; returns the sessions removed
+     */
+    public int deleteSession(Long sessionId) {
+        jdbcTemplate.update("DELETE FROM chat_messages WHERE session_id = ?", sessionId);
+        return jdbcTemplate.update("DELETE FROM chat_sessions WHERE id = ?", sessionId);
+    }
+
+    public Set<Long> findMessageIds(Long sessionId) {
+        return new HashSet<>(jdbcTemplate.queryForList(
+                "SELECT id FROM chat_messages WHERE session_id = ?", Long.class, sessionId));
+    }
+
+    public List<Object[]> findMessages(Long sessionId, Collection<Long> ids) {
+        return jdbcTemplate.query("SELECT " + MESSAGE_COLUMNS + " FROM chat_messages " +
+                "WHERE session_id = ? AND id = ANY(?)", (rs, i) -> row(rs, 9), sessionId, ids.toArray(new Long[0]));
+    }
+
+    /**
+     * Insert message rows, skipping any already present; returns the rows inserted
+     */
+    public int insertMessages(List<Object[]> messages) {
+        int inserted = 0;
+        for (int count : jdbcTemplate.batchUpdate(INSERT_MESSAGE_SQL, messages)) {
+            inserted += Math.max(count, 0);
+        }
+        return inserted;
+    }
+
+    public int deleteMessages(Long sessionId, Collection<Long> ids) {
+        return jdbcTemplate.update("DELETE FROM chat_messages WHERE session_id = ? AND id = ANY(?)",
+                sessionId, ids.toArray(new Long[0]));
+    }
+
+    /**
+     * A blob as (hash, codec, raw_length, data)
+     */
+    public Optional<Object[]> findBlob(String hash) {
+        return jdbcTemplate.query("SELECT hash, codec, raw_length, data FROM message_blobs WHERE hash = ?",
+                (rs, i) -> row(rs, 4), hash).stream().findFirst();
+    }
+
+    public void insertBlob(Object[] blob) {
+        jdbcTemplate.update("INSERT INTO message_blobs (hash, codec, raw_length, data) VALUES (?, ?, ?, ?) " +
+                "ON CONFLICT (hash) DO NOTHING", blob);
+    }
+
+    private static Object[] row(ResultSet rs, int columns) throws SQLException {
+        Object[] row = new Object[columns];
+        for (int i = 0; i < columns; i++) {
+            row[i] = rs.getObject(i + 1);
+        }
+        return row;
+    }
+}
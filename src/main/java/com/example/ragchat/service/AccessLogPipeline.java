@@ -0,0 +1,229 @@
+package com.example.ragchat.service;
+
+import com.example.ragchat.dto.AccessLogStats;
+import com.example.ragchat.model.AccessLogRecord;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Access log ring buffer: request threads fill preallocated slots, one writer thread
+ * encodes them as JSON lines and hands them to the access logger in batches.
+ *
+ * Request threads claim a slot with a CAS on the claim sequence and publish it by
+ * storing its sequence, so they never lock and never wait for the writer or the disk.
+ * When the buffer is full the record is dropped and counted instead.
+ */
+@Service
+@Slf4j
+public class AccessLogPipeline {
+
+    private static final Logger API_LOGGER = LoggerFactory.getLogger("API_ACCESS_LOGGER");
+
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final AccessLogRecord[] slots;
+    // Sequence each slot was last published under
+    private final AtomicLongArray published;
+    private final int mask;
+    private final int batchSize;
+    private final Consumer<String> sink;
+
+    private final AtomicLong claimed = new AtomicLong();
+    // Next sequence to encode; only the writer advances it
+    private final AtomicLong consumed = new AtomicLong();
+
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder sampledOut = new LongAdder();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong writeFailures = new AtomicLong();
+
+    private final StringBuilder line = new StringBuilder(1024);
+    private volatile boolean running = true;
+    private final Thread writer;
+
+    @Autowired
+    public AccessLogPipeline(@Value("${access-log.capacity:8192}") int capacity,
+                             @Value("${access-log.body-limit:1000}") int bodyLimit,
+                             @Value("${access-log.batch-size:256}") int batchSize) {
+        this(capacity, bodyLimit, batchSize, API_LOGGER::info);
+    }
+
+    public AccessLogPipeline(int capacity, int bodyLimit, int batchSize, Consumer<String> sink) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalStateException("access-log.capacity must be a power of two: " + capacity);
+        }
+        this.slots = new AccessLogRecord[capacity];
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = new AccessLogRecord(bodyLimit);
+        }
+        this.published = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            published.set(i, -1);
+        }
+        this.mask = capacity - 1;
+        this.batchSize = batchSize;
+        this.sink = sink;
+        this.writer = new Thread(this::run, "access-log-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Reserve a slot for one record; -1 if the buffer is full and the record was dropped.
+     * A claimed sequence must always be published.
+     */
+    public long claim() {
+        while (true) {
+            long seq = claimed.get();
+            if (seq - consumed.get() >= slots.length) {
+                dropped.increment();
+                return -1;
+            }
+            if (claimed.compareAndSet(seq, seq + 1)) {
+                AccessLogRecord slot = slots[(int) seq & mask];
+                slot.clear();
+                return seq;
+            }
+        }
+    }
+
+    public AccessLogRecord slot(long seq) {
+        return slots[(int) seq & mask];
+    }
+
+    public void publish(long seq) {
+        published.set((int) seq & mask, seq);
+    }
+
+    public void recordSampledOut() {
+        sampledOut.increment();
+    }
+
+    private void run() {
+        while (running || consumed.get() < claimed.get()) {
+            if (drain() == 0) {
+                if (!running) {
+                    // Only a producer stopped mid-record can be left; do not wait for it
+                    return;
+                }
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+        }
+    }
+
+    /**
+     * Encode and write up to one batch of published records
+     */
+    private int drain() {
+        long next = consumed.get();
+        int count = 0;
+        line.setLength(0);
+        while (count < batchSize && published.get((int) next & mask) == next) {
+            if (count > 0) {
+                line.append('\n');
+            }
+            encode(slots[(int) next & mask], line);
+            // Hand the slot back only after it has been read
+            consumed.lazySet(++next);
+            count++;
+        }
+        if (count > 0) {
+            try {
+                // One call per batch, so the appender flushes once per batch rather than per line
+                sink.accept(line.toString());
+                written.addAndGet(count);
+            } catch (RuntimeException e) {
+                writeFailures.incrementAndGet();
+                log.warn("Writing {} access log records failed: {}", count, e.getMessage());
+            }
+        }
+        return count;
+    }
+
+    static void encode(AccessLogRecord record, StringBuilder out) {
+        out.append("{\"ts\":\"").append(Instant.ofEpochMilli(record.getTimestamp())).append('"');
+        field(out, "method", record.getMethod());
+        field(out, "uri", record.getUri());
+        field(out, "query", record.getQuery());
+        out.append(",\"status\":").append(record.getStatus());
+        out.append(",\"durationUs\":").append(record.getDurationNanos() / 1000);
+        field(out, "ip", record.getClientIp());
+        field(out, "key", record.getKeyId());
+        field(out, "userAgent", record.getUserAgent());
+        if (record.getRequestBytes() >= 0) {
+            out.append(",\"requestBytes\":").append(record.getRequestBytes());
+        }
+        if (record.getBodyLength() > 0) {
+            field(out, "body", new String(record.getBody(), 0, record.getBodyLength(), StandardCharsets.UTF_8));
+            if (record.isBodyTruncated()) {
+                out.append(",\"bodyTruncated\":true");
+            }
+        }
+        out.append('}');
+    }
+
+    private static void field(StringBuilder out, String name, String value) {
+        if (value == null) {
+            return;
+        }
+        out.append(",\"").append(name).append("\":\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> out.append("\\\"");
+                case '\\' -> out.append("\\\\");
+                case '\n' -> out.append("\\n");
+                case '\r' -> out.append("\\r");
+                case '\t' -> out.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+                }
+            }
+        }
+        out.append('"');
+    }
+
+    /**
+     * Stop the writer once it has written what is buffered
+     */
+    @PreDestroy
+    public void stop() {
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public AccessLogStats getStats() {
+        long consumedSeq = consumed.get();
+        return AccessLogStats.builder()
+                .capacity(slots.length)
+                .buffered(claimed.get() - consumedSeq)
+                .written(written.get())
+                .dropped(dropped.sum())
+                .sampledOut(sampledOut.sum())
+                .writeFailures(writeFailures.get())
+                .build();
+    }
+}
@@ -0,0 +1,312 @@
+package com.example.ragchat.service;
+
+import com.example.ragchat.dto.ApiKeyRegistryStats;
+import com.example.ragchat.dto.ApiKeyStats;
+import com.example.ragchat.model.ApiKeyInfo;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Valid API keys and their metadata, held as an immutable map from key digest.
+ *
+ * Keys come from api.keys, an optional key file and optionally the api_keys table;
+ * the file and table are re-read periodically and the map swapped whole, so keys
+ * rotate without a restart. Only SHA-256 digests are kept. A presented key is hashed,
+ * looked up by digest and confirmed with a constant-time comparison.
+ *
+ * Key file lines: {@code <key or sha256:<hex>> [id=..] [tenant=..] [tier=..] [rpm=..] [chat-rpm=..]};
+ * blank lines and lines starting with # are ignored.
+ */
+@Service
+@Slf4j
+public class ApiKeyRegistry {
+
+    public static final String HEADER = "X-API-KEY";
+
+    private static final String ATTRIBUTE = ApiKeyRegistry.class.getName() + ".key";
+    private static final Object UNKNOWN = new Object();
+    private static final String DIGEST_PREFIX = "sha256:";
+    private static final HexFormat HEX = HexFormat.of();
+
+    private static final ThreadLocal<MessageDigest> SHA256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    });
+
+    private final String inlineKeys;
+    private final Path file;
+    private final JdbcTemplate jdbcTemplate;
+
+    private volatile Map<ByteBuffer, Entry> keys = Map.of();
+    private volatile FileTime fileModified;
+    private volatile Date loadedAt;
+
+    private final Map<String, LongAdder> requests = new ConcurrentHashMap<>();
+    private final LongAdder rejected = new LongAdder();
+    private final AtomicLong reloads = new AtomicLong();
+    private final AtomicLong reloadFailures = new AtomicLong();
+
+    @Autowired
+    public ApiKeyRegistry(@Value("${api.keys:}") String inlineKeys,
+                          @Value("${api.keys.file:}") String file,
+                          @Value("${api.keys.db-enabled:false}") boolean databaseEnabled,
+                          ObjectProvider<JdbcTemplate> jdbcTemplate) {
+        // The shared JdbcTemplate is only created after Flyway has run, so api_keys exists
+        this(inlineKeys, file, databaseEnabled ? jdbcTemplate.getObject() : null);
+    }
+
+    public ApiKeyRegistry(String inlineKeys, String file, JdbcTemplate jdbcTemplate) {
+        this.inlineKeys = inlineKeys;
+        this.file = file == null || file.isBlank() ? null : Path.of(file);
+        this.jdbcTemplate = jdbcTemplate;
+        // A broken key source at startup is a configuration error, not something to run without
+        load();
+    }
+
+    /**
+     * The key presented on a request, resolved once per request and remembered on it,
+     * so every filter that needs the caller's identity or quotas shares one lookup
+     */
+    public Optional<ApiKeyInfo> resolve(HttpServletRequest request) {
+        Object cached = request.getAttribute(ATTRIBUTE);
+        if (cached == null) {
+            cached = find(request.getHeader(HEADER)).map(Object.class::cast).orElse(UNKNOWN);
+            request.setAttribute(ATTRIBUTE, cached);
+        }
+        return cached == UNKNOWN ? Optional.empty() : Optional.of((ApiKeyInfo) cached);
+    }
+
+    public Optional<ApiKeyInfo> find(String presented) {
+        if (presented == null || presented.isBlank()) {
+            return Optional.empty();
+        }
+        byte[] digest = sha256(presented);
+        Entry entry = keys.get(ByteBuffer.wrap(digest));
+        if (entry == null || !MessageDigest.isEqual(entry.digest(), digest)) {
+            return Optional.empty();
+        }
+        return Optional.of(entry.info());
+    }
+
+    public void recordRequest(ApiKeyInfo key) {
+        requests.computeIfAbsent(key.getId(), id -> new LongAdder()).increment();
+    }
+
+    public void recordRejected() {
+        rejected.increment();
+    }
+
+    /**
+     * Pick up changes to the key file and table; the database is re-read every time
+     */
+    @Scheduled(fixedDelayString = "${api.keys.reload-ms:10000}")
+    public void reloadIfChanged() {
+        if (jdbcTemplate == null && (file == null || fileModified().equals(fileModified))) {
+            return;
+        }
+        try {
+            load();
+        } catch (RuntimeException e) {
+            // Keep serving the last good set of keys
+            reloadFailures.incrementAndGet();
+            log.warn("API key reload failed, keeping {} keys: {}", keys.size(), e.getMessage());
+        }
+    }
+
+    /**
+     * Rebuild the key map from every source and swap it in
+     */
+    public synchronized int load() {
+        FileTime modified = file != null ? fileModified() : null;
+        Map<ByteBuffer, Entry> next = new HashMap<>();
+        if (inlineKeys != null) {
+            for (String key : inlineKeys.split(",")) {
+                if (!key.isBlank()) {
+                    byte[] digest = sha256(key.trim());
+                    add(next, digest, ApiKeyInfo.builder().id(defaultId(digest)).build(), "api.keys");
+                }
+            }
+        }
+        if (file != null) {
+            loadFile(next);
+        }
+        if (jdbcTemplate != null) {
+            loadTable(next);
+        }
+        if (next.isEmpty()) {
+            log.warn("No API keys configured; every authenticated request will be refused");
+        }
+        boolean changed = !next.keySet().equals(keys.keySet());
+        keys = Map.copyOf(next);
+        fileModified = modified;
+        loadedAt = new Date();
+        reloads.incrementAndGet();
+        if (changed) {
+            log.info("Loaded {} API keys", next.size());
+        }
+        return next.size();
+    }
+
+    private void loadFile(Map<ByteBuffer, Entry> next) {
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read API key file " + file, e);
+        }
+        for (int n = 0; n < lines.size(); n++) {
+            String line = lines.get(n).trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String source = file + ":" + (n + 1);
+            String[] fields = line.split("\\s+");
+            byte[] digest = fields[0].startsWith(DIGEST_PREFIX)
+                    ? parseDigest(fields[0].substring(DIGEST_PREFIX.length()), source)
+                    : sha256(fields[0]);
+            ApiKeyInfo.ApiKeyInfoBuilder info = ApiKeyInfo.builder().id(defaultId(digest));
+            for (int i = 1; i < fields.length; i++) {
+                String[] attribute = fields[i].split("=", 2);
+                if (attribute.length != 2) {
+                    throw new IllegalStateException("Expected name=value at " + source + ": " + fields[i]);
+                }
+                switch (attribute[0]) {
+                    case "id" -> info.id(attribute[1]);
+                    case "tenant" -> info.tenant(attribute[1]);
+                    case "tier" -> info.tier(attribute[1]);
+                    case "rpm" -> info.requestsPerMinute(parseQuota(attribute[1], source));
+                    case "chat-rpm" -> info.chatRequestsPerMinute(parseQuota(attribute[1], source));
+                    default -> throw new IllegalStateException("Unknown key attribute at " + source + ": "
+                            + attribute[0]);
+                }
+            }
+            add(next, digest, info.build(), source);
+        }
+    }
+
+    private void loadTable(Map<ByteBuffer, Entry> next) {
+        try {
+            jdbcTemplate.query("SELECT id, key_sha256, tenant, tier, requests_per_minute, chat_requests_per_minute " +
+                    "FROM api_keys WHERE enabled", rs -> {
+                        String id = rs.getString("id");
+                        add(next, parseDigest(rs.getString("key_sha256"), "api_keys." + id), ApiKeyInfo.builder()
+                                .id(id)
+                                .tenant(rs.getString("tenant"))
+                                .tier(rs.getString("tier"))
+                                .requestsPerMinute(rs.getObject("requests_per_minute", Integer.class))
+                                .chatRequestsPerMinute(rs.getObject("chat_requests_per_minute", Integer.class))
+                                .build(), "api_keys." + id);
+                    });
+        } catch (DataAccessException e) {
+            throw new IllegalStateException("Cannot read api_keys: " + e.getMessage(), e);
+        }
+    }
+
+    private static void add(Map<ByteBuffer, Entry> next, byte[] digest, ApiKeyInfo info, String source) {
+        if (next.putIfAbsent(ByteBuffer.wrap(digest), new Entry(digest, info)) != null) {
+            throw new IllegalStateException("Duplicate API key at " + source);
+        }
+    }
+
+    private FileTime fileModified() {
+        try {
+            return Files.getLastModifiedTime(file);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    private static byte[] parseDigest(String hex, String source) {
+        try {
+            byte[] digest = HEX.parseHex(hex.trim());
+            if (digest.length == 32) {
+                return digest;
+            }
+        } catch (IllegalArgumentException e) {
+            // Reported below
+        }
+        throw new IllegalStateException("Expected a SHA-256 hex digest at " + source);
+    }
+
+    private static Integer parseQuota(String value, String source) {
+        try {
+            int quota = Integer.parseInt(value);
+            if (quota > 0) {
+                return quota;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        throw new IllegalStateException("Expected a positive quota at " + source + ": " + value);
+    }
+
+    private static String defaultId(byte[] digest) {
+        // A digest prefix names the key without revealing it
+        return HEX.formatHex(digest, 0, 6);
+    }
+
+    private static byte[] sha256(String key) {
+        return SHA256.get().digest(key.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public ApiKeyRegistryStats getStats() {
+        List<ApiKeyStats> perKey = new ArrayList<>();
+        for (Entry entry : keys.values()) {
+            ApiKeyInfo info = entry.info();
+            LongAdder count = requests.get(info.getId());
+            perKey.add(ApiKeyStats.builder()
+                    .id(info.getId())
+                    .tenant(info.getTenant())
+                    .tier(info.getTier())
+                    .requestsPerMinute(info.getRequestsPerMinute())
+                    .chatRequestsPerMinute(info.getChatRequestsPerMinute())
+                    .requests(count != null ? count.sum() : 0)
+                    .build());
+        }
+        perKey.sort(Comparator.comparing(ApiKeyStats::getId));
+        return ApiKeyRegistryStats.builder()
+                .keys(keys.size())
+                .file(file != null ? file.toString() : null)
+                .databaseEnabled(jdbcTemplate != null)
+                .loadedAt(loadedAt)
+                .reloads(reloads.get())
+                .reloadFailures(reloadFailures.get())
+                .rejected(rejected.sum())
+                .perKey(perKey)
+                .build();
+    }
+
+    private record Entry(byte[] digest, ApiKeyInfo info) {
+    }
+}
@@ -0,0 +1,227 @@
+package com.example.ragchat.service;
+
+import com.example.ragchat.dto.BlobStats;
+import com.example.ragchat.model.ChatMessage;
+import com.example.ragchat.util.ShardContext;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Content-addressed store for large message context and oversized content.
+ *
+ * Text is keyed by its SHA-256 and stored once, compressed, in message_blobs;
+ * messages keep only the hash. Since clients resend the same context on every
+ * turn, most puts are satisfied by the in-memory set of recently committed hashes
+ * without touching the database.
+ */
+@Service
+@Slf4j
+public class BlobStore {
+
+    static final short CODEC_RAW = 0;
+    static final short CODEC_DEFLATE = 1;
+
+    // Must match the length of ChatMessage.content
+    private static final int CONTENT_COLUMN_LENGTH = 1000;
+
+    private static final String INSERT_SQL =
+            "INSERT INTO message_blobs (hash, codec, raw_length, data) VALUES (?, ?, ?, ?) " +
+            "ON CONFLICT (hash) DO NOTHING";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int contextInlineThreshold;
+    private final int knownHashesLimit;
+    private final Map<String, Boolean> knownHashes;
+
+    private final AtomicLong writes = new AtomicLong();
+    private final AtomicLong dedupHits = new AtomicLong();
+    private final AtomicLong reads = new AtomicLong();
+    private final AtomicLong rawBytes = new AtomicLong();
+    private final AtomicLong storedBytes = new AtomicLong();
+
+    public BlobStore(JdbcTemplate jdbcTemplate,
+                     @Value("${chat.blobs.context-inline-threshold:256}") int contextInlineThreshold,
+                     @Value("${chat.blobs.known-hashes:100000}") int knownHashesLimit) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.contextInlineThreshold = contextInlineThreshold;
+        this.knownHashesLimit = knownHashesLimit;
+        this.knownHashes = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > BlobStore.this.knownHashesLimit;
+            }
+        };
+    }
+
+    /**
+     * Move large context and oversized content of a new message out of line.
+     * Oversized content keeps a prefix inline so listings and history still have text.
+     */
+    public void externalize(ChatMessage message) {
+        String context = message.getContext();
+        if (context != null && context.length() > contextInlineThreshold) {
+            message.setContextRef(put(context));
+            message.setContext(null);
+        }
+        String content = message.getContent();
+        if (content != null && content.length() > CONTENT_COLUMN_LENGTH) {
+            message.setContentRef(put(content));
+            int end = Character.isHighSurrogate(content.charAt(CONTENT_COLUMN_LENGTH - 1))
+                    ? CONTENT_COLUMN_LENGTH - 1 : CONTENT_COLUMN_LENGTH;
+            message.setContent(content.substring(0, end));
+        }
+    }
+
+    /**
+     * Load the out-of-line parts of a message back into it
+     */
+    public ChatMessage resolve(ChatMessage message) {
+        if (message.getContextRef() != null) {
+            get(message.getContextRef()).ifPresent(message::setContext);
+        }
+        if (message.getContentRef() != null) {
+            get(message.getContentRef()).ifPresent(message::setContent);
+        }
+        return message;
+    }
+
+    /**
+     * Store text, returning its hash; a blob with the same hash is stored only once
+     */
+    public String put(String text) {
+        byte[] raw = text.getBytes(StandardCharsets.UTF_8);
+        String hash = sha256(raw);
+        // Blobs live on the shard of the messages referencing them
+        String known = ShardContext.current() + ":" + hash;
+        synchronized (knownHashes) {
+            if (knownHashes.get(known) != null) {
+                dedupHits.incrementAndGet();
+                return hash;
+            }
+        }
+
+        byte[] compressed = deflate(raw);
+        boolean useCompressed = compressed.length < raw.length;
+        byte[] data = useCompressed ? compressed : raw;
+        int inserted = jdbcTemplate.update(INSERT_SQL, hash, useCompressed ? CODEC_DEFLATE : CODEC_RAW,
+                raw.length, data);
+        if (inserted > 0) {
+            writes.incrementAndGet();
+            rawBytes.addAndGet(raw.length);
+            storedBytes.addAndGet(data.length);
+        } else {
+            dedupHits.incrementAndGet();
+        }
+        // A rolled-back insert leaves no row, so the hash is only trusted once committed
+        afterCommit(() -> {
+            synchronized (knownHashes) {
+                knownHashes.put(known, Boolean.TRUE);
+            }
+        });
+        return hash;
+    }
+
+    public Optional<String> get(String hash) {
+        List<String> found = jdbcTemplate.query("SELECT codec, data FROM message_blobs WHERE hash = ?",
+                (rs, i) -> decode(rs.getShort("codec"), rs.getBytes("data")), hash);
+        reads.incrementAndGet();
+        if (found.isEmpty()) {
+            log.warn("Blob {} not found", hash);
+            return Optional.empty();
+        }
+        return Optional.of(found.get(0));
+    }
+
+    public BlobStats getStats() {
+        long raw = rawBytes.get();
+        long stored = storedBytes.get();
+        return BlobStats.builder()
+                .writes(writes.get())
+                .dedupHits(dedupHits.get())
+                .reads(reads.get())
+                .rawBytes(raw)
+                .storedBytes(stored)
+                .compressionRatio(stored == 0 ? 0.0 : (double) raw / stored)
+                .build();
+    }
+
+    static byte[] deflate(byte[] raw) {
+        // Fastest level: context blobs are large and highly repetitive, speed matters more than ratio
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, raw.length / 2));
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    static String decode(short codec, byte[] data) {
+        if (codec == CODEC_RAW) {
+            return new String(data, StandardCharsets.UTF_8);
+        }
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length * 4);
+            byte[] buffer = new byte[8192];
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buffer);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalStateException("Truncated blob data");
+                }
+                out.write(buffer, 0, n);
+            }
+            return out.toString(StandardCharsets.UTF_8);
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupt blob data", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    private static String sha256(byte[] raw) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(raw));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -1,30 +1,78 @@
 package com.example.ragchat.service;
 
+import com.example.ragchat.dto.BatchDeleteResult;
+import com.example.ragchat.dto.BulkInsertResult;
+import com.example.ragchat.dto.BulkMessageDTO;
 import com.example.ragchat.dto.ChatMessageDTO;
 import com.example.ragchat.dto.ChatSessionDTO;
+import com.example.ragchat.dto.HistorySearchResult;
+import com.example.ragchat.dto.MessagePage;
+import com.example.ragchat.dto.MessageSearchPage;
+import com.example.ragchat.dto.SessionPage;
+import com.example.ragchat.dto.SessionSummary;
 import com.example.ragchat.exception.InvalidInputException;
+import com.example.ragchat.exception.MessageNotFoundException;
 import com.example.ragchat.exception.SessionNotFoundException;
 import com.example.ragchat.model.ChatSession;
 import com.example.ragchat.model.ChatMessage;
+import com.example.ragchat.model.SessionMetadata;
 import com.example.ragchat.repository.ChatSessionRepository;
-import com.example.ragchat.repository.ChatMessageRepository;
+import com.example.ragchat.repository.ChatSessionRepository.SessionSize;
+import com.example.ragchat.repository.ChatSessionRepository.SessionSummaryView;
+import com.example.ragchat.repository.MessageStore;
+import com.example.ragchat.repository.OutboxRepository;
+import com.example.ragchat.util.MessageCursor;
+import com.example.ragchat.util.SearchCursor;
+import com.example.ragchat.util.SessionCursor;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.modelmapper.ModelMapper;
-import org.springframework.data.domain.PageRequest;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class ChatSessionService {
     private final ChatSessionRepository sessionRepo;
-    private final ChatMessageRepository messageRepo;
+    private final MessageStore messageStore;
     private final ModelMapper modelMapper;
+    private final RetrievalIndex retrievalIndex;
+    private final HistoryIndexer historyIndexer;
+    private final MessageWriteBehindQueue writeBehind;
+    private final SessionMetadataCache sessionCache;
+    private final ConversationBuffer conversationBuffer;
+    private final SessionWriteExecutor sessionWriters;
+    private final MessageArchive messageArchive;
+    private final BlobStore blobStore;
+    private final MessageSearchBackend messageSearch;
+    private final ReplicaRouter replicaRouter;
+    private final ShardRouter shardRouter;
+    private final ClusterBus clusterBus;
+    private final OutboxRepository outbox;
+    private final TransactionTemplate transactionTemplate;
+
+    // Sessions with at least this many messages are tombstoned and purged in the background
+    @Value("${session.delete.async-threshold:10000}")
+    private long asyncDeleteThreshold;
 
     /**
      * Create a new chat session
@@ -45,7 +93,15 @@ public class ChatSessionService {
         session.setCreatedAt(new Date());
         session.setUpdatedAt(new Date());
 
-        return sessionRepo.save(session);
+        ChatSession saved = shardRouter.writeUser(userId, () -> shardRouter.onUser(userId,
+                () -> transactionTemplate.execute(status -> {
+                    ChatSession created = sessionRepo.save(session);
+                    outbox.sessionCreated(created);
+                    return created;
+                })));
+        sessionCache.put(saved);
+        replicaRouter.recordWrite(saved.getId(), userId);
+        return saved;
     }
 
     /**
@@ -58,12 +114,14 @@ public class ChatSessionService {
             throw new InvalidInputException("Session name cannot be empty");
         }
 
-        ChatSession session = sessionRepo.findById(sessionId)
-                .orElseThrow(() -> new SessionNotFoundException(String.valueOf(sessionId)));
-
-        session.setName(name);
-        session.setUpdatedAt(new Date());
-        sessionRepo.save(session);
+        int updated = writeSession(sessionId,
+                () -> sessionWriters.execute(sessionId, () -> sessionRepo.updateName(sessionId, name, new Date())));
+        if (updated == 0) {
+            throw new SessionNotFoundException(String.valueOf(sessionId));
+        }
+        recordWrite(sessionId);
+        sessionCache.invalidate(sessionId);
+        clusterBus.sessionChanged(sessionId);
     }
 
     /**
@@ -72,27 +130,118 @@ public class ChatSessionService {
     public void markFavorite(Long sessionId, boolean favorite) {
         log.info("Service: Marking session {} as favorite={}", sessionId, favorite);
 
-        ChatSession session = sessionRepo.findById(sessionId)
-                .orElseThrow(() -> new SessionNotFoundException(String.valueOf(sessionId)));
-
-        session.setFavorite(favorite);
-        session.setUpdatedAt(new Date());
-        sessionRepo.save(session);
+        int updated = writeSession(sessionId, () -> sessionWriters.execute(sessionId,
+                () -> sessionRepo.updateFavorite(sessionId, favorite, new Date())));
+        if (updated == 0) {
+            throw new SessionNotFoundException(String.valueOf(sessionId));
+        }
+        recordWrite(sessionId);
+        sessionCache.invalidate(sessionId);
+        clusterBus.sessionChanged(sessionId);
     }
 
     /**
      * Delete a session and all its messages
      */
-    @Transactional
     public void deleteSession(Long sessionId) {
         log.info("Service: Deleting session {}", sessionId);
 
-        if (!sessionRepo.existsById(sessionId)) {
-            throw new SessionNotFoundException(String.valueOf(sessionId));
+        writeSession(sessionId, () -> transactionTemplate.execute(status -> {
+            List<SessionSize> sessions = sessionRepo.findSizesByIdIn(List.of(sessionId));
+            if (sessions.isEmpty()) {
+                throw new SessionNotFoundException(String.valueOf(sessionId));
+            }
+            return delete(sessions);
+        }));
+    }
+
+    /**
+     * Delete many sessions at once; unknown IDs are reported rather than failing the batch.
+     * Each shard's sessions are deleted in their own transaction.
+     */
+    public BatchDeleteResult deleteSessions(List<Long> sessionIds) {
+        log.info("Service: Deleting {} sessions", sessionIds.size());
+
+        Set<Long> requested = new LinkedHashSet<>(sessionIds);
+        requested.remove(null);
+        if (requested.isEmpty()) {
+            throw new InvalidInputException("Session IDs cannot be empty");
         }
 
-        messageRepo.deleteBySessionId(sessionId);
-        sessionRepo.deleteById(sessionId);
+        BatchDeleteResult result = BatchDeleteResult.builder().build();
+        shardRouter.writeSessions(requested, () -> {
+            shardRouter.groupSessions(requested).forEach((shard, ids) -> {
+                BatchDeleteResult part = shardRouter.onShard(shard, () -> transactionTemplate.execute(status -> {
+                    List<SessionSize> sessions = sessionRepo.findSizesByIdIn(ids);
+                    sessions.forEach(session -> requested.remove(session.getId()));
+                    return delete(sessions);
+                }));
+                result.setDeleted(result.getDeleted() + part.getDeleted());
+                result.setTombstoned(result.getTombstoned() + part.getTombstoned());
+            });
+            return null;
+        });
+        result.setNotFound(new ArrayList<>(requested));
+        return result;
+    }
+
+    /**
+     * Small sessions go in two bulk statements; sessions above the async threshold are
+     * tombstoned here and their messages purged in chunks by {@link SessionPurger}.
+     */
+    private BatchDeleteResult delete(List<SessionSize> sessions) {
+        List<Long> immediate = new ArrayList<>();
+        List<Long> tombstoned = new ArrayList<>();
+        for (SessionSize session : sessions) {
+            long messageCount = session.getMessageCount() != null ? session.getMessageCount() : 0;
+            (messageCount >= asyncDeleteThreshold ? tombstoned : immediate).add(session.getId());
+        }
+
+        for (SessionSize session : sessions) {
+            writeBehind.discardSession(session.getId());
+        }
+        if (!immediate.isEmpty()) {
+            messageStore.deleteBySessionIds(immediate);
+            sessionRepo.deleteByIdIn(immediate);
+        }
+        if (!tombstoned.isEmpty()) {
+            sessionRepo.tombstone(tombstoned, new Date());
+        }
+        outbox.sessionsDeleted(sessions);
+        // Files, caches and peers only learn of the delete once it is committed
+        afterCommit(() -> {
+            for (SessionSize session : sessions) {
+                Long sessionId = session.getId();
+                messageArchive.discard(sessionId);
+                replicaRouter.recordWrite(sessionId, session.getUserId());
+                sessionCache.invalidate(sessionId);
+                conversationBuffer.evict(sessionId);
+                historyIndexer.removeSession(sessionId);
+                sessionWriters.forget(sessionId);
+                clusterBus.sessionChanged(sessionId);
+            }
+        });
+
+        return BatchDeleteResult.builder()
+                .deleted(immediate.size())
+                .tombstoned(tombstoned.size())
+                .build();
+    }
+
+    /**
+     * Run an action once the current transaction commits, or now if there is none
+     */
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
     }
 
     /**
@@ -101,22 +250,150 @@ public class ChatSessionService {
     public ChatMessage addMessage(Long sessionId, String sender, String content, String context) {
         log.info("Service: Adding message to session {}: sender={}, content={}", sessionId, sender, content);
 
-        if (!sessionRepo.existsById(sessionId)) {
-            throw new SessionNotFoundException(String.valueOf(sessionId));
+        return writeSession(sessionId, () -> {
+            SessionMetadata session = requireHot(sessionId);
+            if (sender == null || sender.trim().isEmpty()) {
+                throw new InvalidInputException("Sender cannot be empty");
+            }
+            if (content == null || content.trim().isEmpty()) {
+                throw new InvalidInputException("Message content cannot be empty");
+            }
+
+            ChatMessageDTO dto = new ChatMessageDTO(sender, content, context);
+            ChatMessage msg = modelMapper.map(dto, ChatMessage.class);
+            msg.setSessionId(sessionId);
+            blobStore.externalize(msg);
+
+            ChatMessage saved = sessionWriters.appendMessage(msg);
+            replicaRouter.recordWrite(sessionId, session.userId());
+            historyIndexer.enqueue(saved, session.userId());
+            conversationBuffer.onWrite(saved);
+            clusterBus.sessionChanged(sessionId);
+            return saved;
+        });
+    }
+
+    /**
+     * Add many messages, possibly across sessions, in one transaction per shard.
+     * Session existence is checked with one set query per shard before anything is
+     * written, and rows are JDBC-batched.
+     */
+    public BulkInsertResult addMessagesBulk(List<BulkMessageDTO> items) {
+        log.info("Service: Bulk adding {} messages", items == null ? 0 : items.size());
+
+        if (items == null || items.isEmpty()) {
+            throw new InvalidInputException("Messages cannot be empty");
+        }
+        long start = System.nanoTime();
+
+        Set<Long> sessionIds = new HashSet<>();
+        for (BulkMessageDTO item : items) {
+            if (item.getSessionId() == null) {
+                throw new InvalidInputException("Session ID cannot be empty");
+            }
+            if (item.getSender() == null || item.getSender().trim().isEmpty()) {
+                throw new InvalidInputException("Sender cannot be empty");
+            }
+            if (item.getContent() == null || item.getContent().trim().isEmpty()) {
+                throw new InvalidInputException("Message content cannot be empty");
+            }
+            sessionIds.add(item.getSessionId());
+        }
+
+        int inserted = shardRouter.writeSessions(sessionIds, () -> {
+            Map<Integer, List<Long>> byShard = shardRouter.groupSessions(sessionIds);
+            Map<Long, ChatSessionRepository.SessionOwner> owners = new HashMap<>();
+            byShard.forEach((shard, ids) -> shardRouter.onShard(shard, () -> sessionRepo.findOwnersByIdIn(ids))
+                    .forEach(owner -> owners.put(owner.getId(), owner)));
+            if (owners.size() != sessionIds.size()) {
+                Set<Long> missing = new TreeSet<>(sessionIds);
+                missing.removeAll(owners.keySet());
+                throw new SessionNotFoundException(
+                        missing.stream().map(String::valueOf).collect(Collectors.joining(",")));
+            }
+
+            int count = 0;
+            for (Map.Entry<Integer, List<Long>> group : byShard.entrySet()) {
+                Set<Long> shardSessions = new HashSet<>(group.getValue());
+                List<BulkMessageDTO> shardItems = items.stream()
+                        .filter(item -> shardSessions.contains(item.getSessionId()))
+                        .toList();
+                count += shardRouter.onShard(group.getKey(),
+                        () -> transactionTemplate.execute(status -> insertBulk(shardItems, owners)));
+            }
+            return count;
+        });
+
+        long elapsedNanos = System.nanoTime() - start;
+        BulkInsertResult result = BulkInsertResult.builder()
+                .inserted(inserted)
+                .sessions(sessionIds.size())
+                .elapsedMillis(elapsedNanos / 1_000_000)
+                .rowsPerSecond(elapsedNanos == 0 ? 0.0 : inserted * 1_000_000_000.0 / elapsedNanos)
+                .build();
+        log.info("Service: Bulk inserted {} messages into {} sessions ({} rows/sec)",
+                result.getInserted(), result.getSessions(), Math.round(result.getRowsPerSecond()));
+        return result;
+    }
+
+    private int insertBulk(List<BulkMessageDTO> items, Map<Long, ChatSessionRepository.SessionOwner> owners) {
+        List<ChatMessage> messages = new ArrayList<>(items.size());
+        Map<Long, List<ChatMessage>> bySession = new LinkedHashMap<>();
+        for (BulkMessageDTO item : items) {
+            ChatMessage msg = new ChatMessage();
+            msg.setSessionId(item.getSessionId());
+            msg.setSender(item.getSender());
+            msg.setContent(item.getContent());
+            msg.setContext(item.getContext());
+            blobStore.externalize(msg);
+            messages.add(msg);
+            bySession.computeIfAbsent(item.getSessionId(), id -> new ArrayList<>()).add(msg);
+        }
+        for (Long sessionId : bySession.keySet()) {
+            if (owners.get(sessionId).getArchivedAt() != null) {
+                messageArchive.rehydrate(sessionId, owners.get(sessionId).getUserId());
+            }
         }
-        if (sender == null || sender.trim().isEmpty()) {
-            throw new InvalidInputException("Sender cannot be empty");
+        // Sequence numbers and timestamps still come from each session's single writer
+        bySession.forEach(sessionWriters::reserve);
+        messageStore.saveAll(messages);
+        for (Long sessionId : bySession.keySet()) {
+            replicaRouter.recordWrite(sessionId, owners.get(sessionId).getUserId());
+            clusterBus.sessionChanged(sessionId);
         }
-        if (content == null || content.trim().isEmpty()) {
-            throw new InvalidInputException("Message content cannot be empty");
+        for (ChatMessage msg : messages) {
+            historyIndexer.enqueue(msg, owners.get(msg.getSessionId()).getUserId());
+            conversationBuffer.onWrite(msg);
         }
+        return messages.size();
+    }
+
+    /**
+     * Run a write against a session's shard; the shard is resolved only once
+     * any cutover moving its owner has finished
+     */
+    private <T> T writeSession(Long sessionId, Supplier<T> write) {
+        return shardRouter.writeSession(sessionId, () -> shardRouter.onSession(sessionId, write));
+    }
 
-        ChatMessageDTO dto = new ChatMessageDTO(sender, content, context);
-        ChatMessage msg = modelMapper.map(dto, ChatMessage.class);
-        msg.setSessionId(sessionId);
-        msg.setTimestamp(new Date());
+    /**
+     * Keep reads of a changed session, and of its owner's listings, on the primary for a while
+     */
+    private void recordWrite(Long sessionId) {
+        replicaRouter.recordWrite(sessionId, shardRouter.onSession(sessionId, () -> sessionCache.get(sessionId))
+                .map(SessionMetadata::userId).orElse(null));
+    }
 
-        return messageRepo.save(msg);
+    /**
+     * Resolve a live session, bringing its messages back from the cold tier if archived
+     */
+    private SessionMetadata requireHot(Long sessionId) {
+        SessionMetadata session = sessionCache.get(sessionId)
+                .orElseThrow(() -> new SessionNotFoundException(String.valueOf(sessionId)));
+        if (session.archived()) {
+            messageArchive.rehydrate(sessionId, session.userId());
+        }
+        return session;
     }
 
     /**
@@ -125,18 +402,129 @@ public class ChatSessionService {
     public List<ChatMessage> getMessages(Long sessionId, int skip, int limit) {
         log.info("Service: Retrieving messages for session {} (skip={}, limit={})", sessionId, skip, limit);
 
-        if (!sessionRepo.existsById(sessionId)) {
-            throw new SessionNotFoundException(String.valueOf(sessionId));
+        return shardRouter.onSession(sessionId, () -> {
+            requireHot(sessionId);
+            if (skip < 0) {
+                throw new InvalidInputException("Skip value cannot be negative");
+            }
+            if (limit <= 0 || limit > 100) {
+                throw new InvalidInputException("Limit value must be between 1 and 100");
+            }
+
+            writeBehind.flushSession(sessionId);
+            return replicaRouter.readSession(sessionId, () -> messageStore.findPage(sessionId, skip, limit));
+        });
+    }
+
+    /**
+     * Retrieve one message with its out-of-line context and full content loaded.
+     * Listings only carry the blob references.
+     */
+    public ChatMessage getMessage(Long sessionId, Long messageId) {
+        log.info("Service: Retrieving message {} of session {}", messageId, sessionId);
+
+        return shardRouter.onSession(sessionId, () -> {
+            requireHot(sessionId);
+            writeBehind.flushSession(sessionId);
+            ChatMessage message = replicaRouter.readSession(sessionId, () -> messageStore.findById(sessionId, messageId))
+                    .orElseThrow(() -> new MessageNotFoundException(String.valueOf(messageId)));
+            return blobStore.resolve(message);
+        });
+    }
+
+    /**
+     * Retrieve a page of messages using keyset pagination.
+     * With no cursor the oldest page is returned, or the newest page when {@code latest} is set.
+     */
+    public MessagePage getMessagePage(Long sessionId, String after, String before, boolean latest, int limit) {
+        log.info("Service: Retrieving message page for session {} (after={}, before={}, latest={}, limit={})",
+                sessionId, after, before, latest, limit);
+
+        return shardRouter.onSession(sessionId, () -> {
+            requireHot(sessionId);
+            if (limit <= 0 || limit > 100) {
+                throw new InvalidInputException("Limit value must be between 1 and 100");
+            }
+            if ((after != null ? 1 : 0) + (before != null ? 1 : 0) + (latest ? 1 : 0) > 1) {
+                throw new InvalidInputException("Only one of after, before or latest may be given");
+            }
+
+            writeBehind.flushSession(sessionId);
+
+            List<ChatMessage> rows;
+            boolean hasMore;
+            String nextCursor = null;
+            String prevCursor = null;
+
+            if (before != null || latest) {
+                if (before != null) {
+                    MessageCursor cursor = MessageCursor.decode(before);
+                    rows = replicaRouter.readSession(sessionId,
+                            () -> messageStore.findBefore(sessionId, cursor.timestamp(), cursor.id(), limit + 1));
+                } else {
+                    rows = replicaRouter.readSession(sessionId, () -> messageStore.findLatest(sessionId, limit + 1));
+                }
+                hasMore = rows.size() > limit;
+                rows = new ArrayList<>(rows.subList(0, Math.min(limit, rows.size())));
+                Collections.reverse(rows);
+                if (hasMore) {
+                    prevCursor = MessageCursor.of(rows.get(0)).encode();
+                }
+                if (before != null && !rows.isEmpty()) {
+                    nextCursor = MessageCursor.of(rows.get(rows.size() - 1)).encode();
+                }
+            } else {
+                if (after != null) {
+                    MessageCursor cursor = MessageCursor.decode(after);
+                    rows = replicaRouter.readSession(sessionId,
+                            () -> messageStore.findAfter(sessionId, cursor.timestamp(), cursor.id(), limit + 1));
+                } else {
+                    rows = replicaRouter.readSession(sessionId, () -> messageStore.findOldest(sessionId, limit + 1));
+                }
+                hasMore = rows.size() > limit;
+                rows = rows.subList(0, Math.min(limit, rows.size()));
+                if (hasMore) {
+                    nextCursor = MessageCursor.of(rows.get(rows.size() - 1)).encode();
+                }
+                if (after != null && !rows.isEmpty()) {
+                    prevCursor = MessageCursor.of(rows.get(0)).encode();
+                }
+            }
+
+            return MessagePage.builder()
+                    .messages(rows)
+                    .nextCursor(nextCursor)
+                    .prevCursor(prevCursor)
+                    .build();
+        });
+    }
+
+    /**
+     * Retrieve the most recent messages of a session, oldest first
+     */
+    public List<ChatMessage> getLatestMessages(Long sessionId, int limit) {
+        return conversationBuffer.getLatest(sessionId, limit,
+                n -> shardRouter.onSession(sessionId, () -> loadLatestMessages(sessionId, n)));
+    }
+
+    private List<ChatMessage> loadLatestMessages(Long sessionId, int limit) {
+        List<ChatMessage> pending = writeBehind.pendingFor(sessionId);
+        if (pending.isEmpty()) {
+            return getMessagePage(sessionId, null, null, true, limit).getMessages();
         }
-        if (skip < 0) {
-            throw new InvalidInputException("Skip value cannot be negative");
+
+        // Merge queued write-behind messages instead of forcing a flush on the chat path
+        requireHot(sessionId);
+        Map<Long, ChatMessage> merged = new LinkedHashMap<>();
+        for (ChatMessage msg : replicaRouter.readSession(sessionId, () -> messageStore.findLatest(sessionId, limit))) {
+            merged.put(msg.getId(), msg);
         }
-        if (limit <= 0 || limit > 100) {
-            throw new InvalidInputException("Limit value must be between 1 and 100");
+        for (ChatMessage msg : pending) {
+            merged.put(msg.getId(), msg);
         }
-
-        int page = skip / limit;
-        return messageRepo.findBySessionIdOrderByTimestampAsc(sessionId, PageRequest.of(page, limit));
+        List<ChatMessage> messages = new ArrayList<>(merged.values());
+        messages.sort(Comparator.comparing(ChatMessage::getTimestamp).thenComparing(ChatMessage::getId));
+        return new ArrayList<>(messages.subList(Math.max(0, messages.size() - limit), messages.size()));
     }
 
     /**
@@ -144,7 +532,9 @@ public class ChatSessionService {
      */
     public ChatSession getSessionById(Long sessionId) {
         log.info("Service: Retrieving session {}", sessionId);
-        return sessionRepo.findById(sessionId)
+        return shardRouter.onSession(sessionId,
+                        () -> replicaRouter.readSession(sessionId, () -> sessionRepo.findById(sessionId)))
+                .filter(session -> session.getDeletedAt() == null)
                 .orElseThrow(() -> new SessionNotFoundException(String.valueOf(sessionId)));
     }
 
@@ -158,6 +548,108 @@ public class ChatSessionService {
             throw new InvalidInputException("User ID cannot be empty");
         }
 
-        return sessionRepo.findByUserId(userId);
+        return shardRouter.onUser(userId,
+                () -> replicaRouter.readUser(userId, () -> sessionRepo.findByUserIdOrderByActivity(userId)));
+    }
+
+    /**
+     * Get one page of a user's sessions, most recently updated first
+     */
+    public SessionPage getSessionPage(String userId, boolean favoritesFirst, String cursor, int limit) {
+        log.info("Service: Retrieving session page for user {} (favoritesFirst={}, cursor={}, limit={})",
+                userId, favoritesFirst, cursor, limit);
+
+        if (userId == null || userId.trim().isEmpty()) {
+            throw new InvalidInputException("User ID cannot be empty");
+        }
+        if (limit <= 0 || limit > 100) {
+            throw new InvalidInputException("Limit value must be between 1 and 100");
+        }
+
+        SessionCursor position = cursor != null ? SessionCursor.decode(cursor) : null;
+        List<SessionSummaryView> rows = shardRouter.onUser(userId, () -> replicaRouter.readUser(userId, () -> {
+            if (favoritesFirst) {
+                return position == null
+                        ? sessionRepo.findSummariesFavoritesFirst(userId, limit + 1)
+                        : sessionRepo.findSummariesFavoritesFirstAfter(userId, position.favorite(),
+                                position.updatedAt(), position.id(), limit + 1);
+            }
+            return position == null
+                    ? sessionRepo.findSummaries(userId, limit + 1)
+                    : sessionRepo.findSummariesAfter(userId, position.updatedAt(), position.id(), limit + 1);
+        }));
+
+        List<SessionSummary> sessions = rows.stream()
+                .limit(limit)
+                .map(this::toSummary)
+                .collect(Collectors.toList());
+        String nextCursor = rows.size() > limit
+                ? SessionCursor.of(sessions.get(sessions.size() - 1)).encode()
+                : null;
+
+        return SessionPage.builder()
+                .sessions(sessions)
+                .nextCursor(nextCursor)
+                .build();
+    }
+
+    private SessionSummary toSummary(SessionSummaryView row) {
+        return SessionSummary.builder()
+                .id(row.getId())
+                .name(row.getName())
+                .favorite(Boolean.TRUE.equals(row.getFavorite()))
+                .updatedAt(row.getUpdatedAt())
+                .messageCount(row.getMessageCount() != null ? row.getMessageCount() : 0)
+                .lastMessageAt(row.getLastMessageAt())
+                .build();
+    }
+
+    /**
+     * Search a user's indexed chat history
+     */
+    public List<HistorySearchResult> searchHistory(String userId, String query, int limit) {
+        log.info("Service: Searching history for user {} (limit={})", userId, limit);
+
+        if (userId == null || userId.trim().isEmpty()) {
+            throw new InvalidInputException("User ID cannot be empty");
+        }
+        if (query == null || query.trim().isEmpty()) {
+            throw new InvalidInputException("Search query cannot be empty");
+        }
+        if (limit <= 0 || limit > 100) {
+            throw new InvalidInputException("Limit value must be between 1 and 100");
+        }
+
+        return retrievalIndex.searchUserHistory(userId, query, limit).stream()
+                .map(hit -> HistorySearchResult.builder()
+                        .messageId(hit.chunk().getMessageId())
+                        .sessionId(hit.chunk().getSessionId())
+                        .sender(hit.chunk().getSender())
+                        .content(hit.chunk().getText())
+                        .timestamp(hit.chunk().getTimestamp())
+                        .score(hit.score())
+                        .build())
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Full-text search over a user's messages, ranked and keyset-paginated
+     */
+    public MessageSearchPage searchMessages(String userId, String query, String cursor, int limit) {
+        log.info("Service: Full-text search for user {} (cursor={}, limit={})", userId, cursor, limit);
+
+        if (userId == null || userId.trim().isEmpty()) {
+            throw new InvalidInputException("User ID cannot be empty");
+        }
+        if (query == null || query.trim().isEmpty()) {
+            throw new InvalidInputException("Search query cannot be empty");
+        }
+        if (limit <= 0 || limit > 100) {
+            throw new InvalidInputException("Limit value must be between 1 and 100");
+        }
+
+        SearchCursor after = cursor != null ? SearchCursor.decode(cursor) : SearchCursor.FIRST;
+        return shardRouter.onUser(userId,
+                () -> replicaRouter.readUser(userId, () -> messageSearch.search(userId, query, after, limit)));
     }
 }
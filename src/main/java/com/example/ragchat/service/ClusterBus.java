@@ -0,0 +1,252 @@
+package com.example.ragchat.service;
+
+import com.example.ragchat.dto.ClusterStats;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCallback;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cross-node invalidation over Postgres LISTEN/NOTIFY.
+ *
+ * Writes record the sessions they changed; the IDs are batched and sent as one
+ * NOTIFY per flush interval. Every node listens on a dedicated connection and drops
+ * its cached metadata, buffered history and writer clock for sessions changed
+ * elsewhere. Shard directory changes make the other nodes reload the directory.
+ * If the listening connection drops, notifications sent meanwhile are lost, so a
+ * reconnect clears the local caches.
+ */
+@Service
+@Slf4j
+public class ClusterBus {
+
+    static final String CHANNEL = "chat_cluster";
+
+    // NOTIFY payloads must stay below 8000 bytes
+    private static final int MAX_PAYLOAD = 7000;
+
+    private final ClusterMembership membership;
+    private final SessionMetadataCache sessionCache;
+    private final ConversationBuffer conversationBuffer;
+    private final SessionWriteExecutor sessionWriters;
+    private final ShardRouter shardRouter;
+    private final JdbcTemplate jdbcTemplate;
+    private final String url;
+    private final String username;
+    private final String password;
+    private final long reconnectMillis;
+
+    private final Set<Long> pending = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean running = new AtomicBoolean();
+    private volatile Thread listener;
+    private volatile Connection connection;
+    private volatile boolean listening;
+
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong applied = new AtomicLong();
+
+    public ClusterBus(ClusterMembership membership,
+                      SessionMetadataCache sessionCache,
+                      ConversationBuffer conversationBuffer,
+                      SessionWriteExecutor sessionWriters,
+                      ShardRouter shardRouter,
+                      @Qualifier("primaryDataSource") DataSource primary,
+                      @Value("${spring.datasource.url:}") String url,
+                      @Value("${spring.datasource.username:}") String username,
+                      @Value("${spring.datasource.password:}") String password,
+                      @Value("${chat.cluster.reconnect-ms:2000}") long reconnectMillis) {
+        this.membership = membership;
+        this.sessionCache = sessionCache;
+        this.conversationBuffer = conversationBuffer;
+        this.sessionWriters = sessionWriters;
+        this.shardRouter = shardRouter;
+        this.jdbcTemplate = primary != null ? new JdbcTemplate(primary) : null;
+        this.url = url;
+        this.username = username;
+        this.password = password;
+        this.reconnectMillis = reconnectMillis;
+    }
+
+    /**
+     * Tell the other nodes that a session's metadata or messages changed
+     */
+    public void sessionChanged(Long sessionId) {
+        if (membership.isEnabled()) {
+            pending.add(sessionId);
+        }
+    }
+
+    /**
+     * Tell the other nodes to reload the shard directory now; sent immediately
+     */
+    public void directoryChanged() {
+        if (membership.isEnabled()) {
+            notify(membership.self() + "|d|");
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${chat.cluster.notify-batch-ms:50}")
+    public void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        String prefix = membership.self() + "|s|";
+        StringBuilder payload = new StringBuilder(prefix);
+        Iterator<Long> it = pending.iterator();
+        while (it.hasNext()) {
+            Long sessionId = it.next();
+            it.remove();
+            if (payload.length() > MAX_PAYLOAD) {
+                notify(payload.toString());
+                payload.setLength(prefix.length());
+            }
+            if (payload.length() > prefix.length()) {
+                payload.append(',');
+            }
+            payload.append(sessionId);
+        }
+        notify(payload.toString());
+    }
+
+    private void notify(String payload) {
+        try {
+            jdbcTemplate.execute("SELECT pg_notify(?, ?)", (PreparedStatementCallback<Boolean>) ps -> {
+                ps.setString(1, CHANNEL);
+                ps.setString(2, payload);
+                return ps.execute();
+            });
+            sent.incrementAndGet();
+        } catch (DataAccessException e) {
+            // Peers fall back to their cache TTLs for these sessions
+            log.warn("Cluster notify failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Apply a notification from the channel; ones this node sent itself are ignored
+     */
+    void apply(String payload) {
+        String[] parts = payload.split("\\|", 3);
+        if (parts.length < 3 || parts[0].equals(membership.self())) {
+            return;
+        }
+        received.incrementAndGet();
+        if ("d".equals(parts[1])) {
+            shardRouter.refreshDirectory();
+            return;
+        }
+        for (String id : parts[2].split(",")) {
+            if (id.isEmpty()) {
+                continue;
+            }
+            Long sessionId = Long.valueOf(id);
+            sessionCache.invalidate(sessionId);
+            conversationBuffer.evict(sessionId);
+            sessionWriters.forget(sessionId);
+            applied.incrementAndGet();
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!membership.isEnabled() || !running.compareAndSet(false, true)) {
+            return;
+        }
+        listener = new Thread(this::listen, "cluster-listener");
+        listener.setDaemon(true);
+        listener.start();
+    }
+
+    private void listen() {
+        boolean connectedBefore = false;
+        while (running.get()) {
+            try (Connection conn = DriverManager.getConnection(url, username, password)) {
+                connection = conn;
+                try (Statement statement = conn.createStatement()) {
+                    statement.execute("LISTEN " + CHANNEL);
+                }
+                if (connectedBefore) {
+                    // Changes made elsewhere while disconnected were not seen
+                    sessionCache.invalidateAll();
+                    conversationBuffer.evictAll();
+                    log.info("Cluster listener reconnected; local caches cleared");
+                }
+                connectedBefore = true;
+                listening = true;
+                PGConnection pg = conn.unwrap(PGConnection.class);
+                while (running.get()) {
+                    PGNotification[] notifications = pg.getNotifications(1000);
+                    if (notifications != null) {
+                        for (PGNotification notification : notifications) {
+                            apply(notification.getParameter());
+                        }
+                    }
+                }
+            } catch (SQLException | RuntimeException e) {
+                if (running.get()) {
+                    log.warn("Cluster listener failed, reconnecting: {}", e.getMessage());
+                }
+            } finally {
+                listening = false;
+                connection = null;
+            }
+            sleep();
+        }
+    }
+
+    private void sleep() {
+        try {
+            Thread.sleep(reconnectMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            running.set(false);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (!running.compareAndSet(true, false)) {
+            return;
+        }
+        flush();
+        Connection conn = connection;
+        if (conn != null) {
+            try {
+                conn.close();
+            } catch (SQLException e) {
+                log.debug("Closing cluster listener connection: {}", e.getMessage());
+            }
+        }
+        listener.interrupt();
+    }
+
+    public ClusterStats getStats() {
+        ClusterStats stats = membership.getStats();
+        stats.setListening(listening);
+        stats.setNotificationsSent(sent.get());
+        stats.setNotificationsReceived(received.get());
+        stats.setInvalidationsApplied(applied.get());
+        return stats;
+    }
+}
@@ -0,0 +1,231 @@
+package com.example.ragchat.service;
+
+import com.example.ragchat.dto.ClusterNodeStats;
+import com.example.ragchat.dto.ClusterStats;
+import com.example.ragchat.util.HashRing;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cluster mode: the set of live application nodes and which one owns each session.
+ *
+ * Nodes are identified by the base URL peers use to reach them. They come either
+ * from a static peer list or from heartbeats in the cluster_nodes table. Sessions
+ * map to an owner on a consistent-hash ring of the live nodes, so a node joining or
+ * leaving moves only its share of sessions. Sending a session's requests to its owner
+ * keeps the single writer, history buffer and metadata cache of that session on one node.
+ *
+ * When cluster mode is off this node owns every session.
+ */
+@Service
+@Slf4j
+public class ClusterMembership {
+
+    public static final String FORWARDED_HEADER = "X-Cluster-Forwarded";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean enabled;
+    private final String self;
+    private final boolean databaseDiscovery;
+    private final Set<String> staticPeers = new TreeSet<>();
+    private final int virtualNodes;
+    private final long nodeTtlMillis;
+    private final long peerRetryNanos;
+
+    private volatile Set<String> known;
+    private volatile HashRing<String> ring;
+    // Peers that failed a forward, with the time they may be tried again
+    private final Map<String, Long> downUntil = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> forwarded = new ConcurrentHashMap<>();
+
+    private final AtomicLong servedLocally = new AtomicLong();
+    private final AtomicLong receivedForwards = new AtomicLong();
+    private final AtomicLong forwardFailures = new AtomicLong();
+
+    public ClusterMembership(@Qualifier("primaryDataSource") DataSource primary,
+                             @Value("${chat.cluster.enabled:false}") boolean enabled,
+                             @Value("${chat.cluster.advertise-url:http://localhost:${server.port:8080}}") String self,
+                             @Value("${chat.cluster.discovery:static}") String discovery,
+                             @Value("${chat.cluster.peers:}") List<String> peers,
+                             @Value("${chat.cluster.virtual-nodes:128}") int virtualNodes,
+                             @Value("${chat.cluster.node-ttl-ms:15000}") long nodeTtlMillis,
+                             @Value("${chat.cluster.peer-retry-ms:10000}") long peerRetryMillis) {
+        if (!"static".equals(discovery) && !"database".equals(discovery)) {
+            throw new IllegalStateException("chat.cluster.discovery must be static or database");
+        }
+        this.jdbcTemplate = primary != null ? new JdbcTemplate(primary) : null;
+        this.enabled = enabled;
+        this.self = normalize(self);
+        this.databaseDiscovery = "database".equals(discovery);
+        this.virtualNodes = virtualNodes;
+        this.nodeTtlMillis = nodeTtlMillis;
+        this.peerRetryNanos = TimeUnit.MILLISECONDS.toNanos(peerRetryMillis);
+        for (String peer : peers) {
+            if (!peer.isBlank()) {
+                staticPeers.add(normalize(peer));
+            }
+        }
+        Set<String> initial = new TreeSet<>(staticPeers);
+        initial.add(this.self);
+        this.known = initial;
+        rebuild();
+        if (enabled) {
+            log.info("Cluster mode: node {}, {} discovery, {} known node(s)", this.self, discovery, known.size());
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public String self() {
+        return self;
+    }
+
+    /**
+     * Base URL of the node that owns a session
+     */
+    public String ownerOf(Long sessionId) {
+        if (!enabled) {
+            return self;
+        }
+        String owner = ring.get(String.valueOf(sessionId));
+        return owner != null ? owner : self;
+    }
+
+    public boolean isLocal(Long sessionId) {
+        return self.equals(ownerOf(sessionId));
+    }
+
+    public void recordLocal(boolean forwardedHere) {
+        servedLocally.incrementAndGet();
+        if (forwardedHere) {
+            receivedForwards.incrementAndGet();
+        }
+    }
+
+    public void recordForward(String node) {
+        forwarded.computeIfAbsent(node, n -> new AtomicLong()).incrementAndGet();
+    }
+
+    /**
+     * Take a peer off the ring after a failed forward; it is tried again after the retry delay
+     */
+    public void markDown(String node) {
+        if (self.equals(node)) {
+            return;
+        }
+        forwardFailures.incrementAndGet();
+        if (downUntil.put(node, System.nanoTime() + peerRetryNanos) == null) {
+            log.warn("Cluster node {} unreachable, serving its sessions elsewhere", node);
+            rebuild();
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void join() {
+        heartbeat();
+    }
+
+    /**
+     * Refresh the live node set: heartbeat and read peers in database mode, and bring
+     * peers back whose retry delay has passed
+     */
+    @Scheduled(fixedDelayString = "${chat.cluster.heartbeat-ms:5000}")
+    public void heartbeat() {
+        if (!enabled) {
+            return;
+        }
+        if (databaseDiscovery) {
+            try {
+                jdbcTemplate.update("INSERT INTO cluster_nodes (url, heartbeat_at) VALUES (?, now()) " +
+                        "ON CONFLICT (url) DO UPDATE SET heartbeat_at = now()", self);
+                Set<String> live = new TreeSet<>(jdbcTemplate.queryForList(
+                        "SELECT url FROM cluster_nodes WHERE heartbeat_at > now() - ? * interval '1 millisecond'",
+                        String.class, nodeTtlMillis));
+                live.add(self);
+                if (!live.equals(known)) {
+                    log.info("Cluster nodes changed: {}", live);
+                    known = live;
+                }
+            } catch (DataAccessException e) {
+                // Keep routing with the last known node set
+                log.warn("Cluster heartbeat failed: {}", e.getMessage());
+            }
+        }
+        long now = System.nanoTime();
+        downUntil.entrySet().removeIf(down -> down.getValue() - now <= 0);
+        rebuild();
+    }
+
+    private synchronized void rebuild() {
+        HashRing<String> next = new HashRing<>(virtualNodes);
+        for (String node : known) {
+            if (!downUntil.containsKey(node)) {
+                next.add(node, node);
+            }
+        }
+        ring = next;
+    }
+
+    @PreDestroy
+    public void leave() {
+        if (enabled && databaseDiscovery) {
+            try {
+                jdbcTemplate.update("DELETE FROM cluster_nodes WHERE url = ?", self);
+            } catch (DataAccessException e) {
+                log.warn("Could not deregister cluster node {}: {}", self, e.getMessage());
+            }
+        }
+    }
+
+    public ClusterStats getStats() {
+        Map<String, Double> shares = ring.shares();
+        List<ClusterNodeStats> nodes = new ArrayList<>();
+        for (String node : known) {
+            AtomicLong count = forwarded.get(node);
+            nodes.add(ClusterNodeStats.builder()
+                    .url(node)
+                    .local(self.equals(node))
+                    .healthy(!downUntil.containsKey(node))
+                    .ringShare(shares.getOrDefault(node, 0.0))
+                    .forwarded(count != null ? count.get() : 0)
+                    .build());
+        }
+        return ClusterStats.builder()
+                .enabled(enabled)
+                .self(self)
+                .discovery(databaseDiscovery ? "database" : "static")
+                .servedLocally(servedLocally.get())
+                .receivedForwards(receivedForwards.get())
+                .forwardFailures(forwardFailures.get())
+                .nodes(nodes)
+                .build();
+    }
+
+    private static String normalize(String url) {
+        String trimmed = url.trim();
+        if (trimmed.isEmpty()) {
+            throw new IllegalStateException("Cluster node URL cannot be empty");
+        }
+        return trimmed.endsWith("/") ? trimmed.substring(0, trimmed.length() - 1) : trimmed;
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.ragchat.service;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Base64;
+
+/**
+ * Cluster mode: signs requests forwarded to a peer and recognises them on arrival.
+ *
+ * The {@link ClusterMembership#FORWARDED_HEADER} carries the sending node, a timestamp
+ * and an HMAC-SHA256 of both plus the method and URI, keyed with the secret shared by
+ * all nodes. A header that does not verify, or is older than the allowed skew, is
+ * treated as sent by a client: it is ignored and never passed on.
+ */
+@Service
+public class ClusterPeerAuth {
+
+    // Request attribute holding the verification result, so every filter reuses it
+    private static final String VERIFIED_ATTRIBUTE = ClusterPeerAuth.class.getName() + ".verified";
+
+    private final boolean enabled;
+    private final SecretKeySpec key;
+    private final long maxSkewMillis;
+
+    public ClusterPeerAuth(@Value("${chat.cluster.enabled:false}") boolean enabled,
+                           @Value("${chat.cluster.secret:}") String secret,
+                           @Value("${chat.cluster.forward-max-skew-ms:300000}") long maxSkewMillis) {
+        if (enabled && secret.isBlank()) {
+            throw new IllegalStateException("chat.cluster.secret is required in cluster mode");
+        }
+        this.enabled = enabled;
+        this.key = secret.isBlank() ? null : new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA256");
+        this.maxSkewMillis = maxSkewMillis;
+    }
+
+    /**
+     * Header value for a request this node forwards to a peer
+     */
+    public String sign(String origin, String method, String uri) {
+        return sign(origin, method, uri, System.currentTimeMillis());
+    }
+
+    String sign(String origin, String method, String uri, long timestamp) {
+        return origin + " " + timestamp + " " + mac(origin, timestamp, method, uri);
+    }
+
+    /**
+     * Whether the request was forwarded by a peer holding the cluster secret
+     */
+    public boolean isPeerForwarded(HttpServletRequest request) {
+        if (!enabled) {
+            return false;
+        }
+        Boolean verified = (Boolean) request.getAttribute(VERIFIED_ATTRIBUTE);
+        if (verified == null) {
+            String uri = request.getRequestURI()
+                    + (request.getQueryString() != null ? "?" + request.getQueryString() : "");
+            verified = verify(request.getHeader(ClusterMembership.FORWARDED_HEADER), request.getMethod(), uri,
+                    System.currentTimeMillis());
+            request.setAttribute(VERIFIED_ATTRIBUTE, verified);
+        }
+        return verified;
+    }
+
+    boolean verify(String header, String method, String uri, long now) {
+        if (header == null) {
+            return false;
+        }
+        String[] parts = header.split(" ");
+        if (parts.length != 3) {
+            return false;
+        }
+        long timestamp;
+        try {
+            timestamp = Long.parseLong(parts[1]);
+        } catch (NumberFormatException e) {
+            return false;
+        }
+        if (Math.abs(now - timestamp) > maxSkewMillis) {
+            return false;
+        }
+        byte[] expected = mac(parts[0], timestamp, method, uri).getBytes(StandardCharsets.US_ASCII);
+        return MessageDigest.isEqual(expected, parts[2].getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private String mac(String origin, long timestamp, String method, String uri) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(key);
+            byte[] digest = mac.doFinal((origin + "\n" + timestamp + "\n" + method + "\n" + uri)
+                    .getBytes(StandardCharsets.UTF_8));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(digest);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 unavailable", e);
+        }
+    }
+}
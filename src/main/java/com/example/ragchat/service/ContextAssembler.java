@@ -0,0 +1,168 @@
+package com.example.ragchat.service;
+
+import com.example.ragchat.model.KnowledgeChunk;
+import com.example.ragchat.service.RetrievalIndex.ScoredChunk;
+import com.example.ragchat.util.TextVectors;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds the text of the "Context:" system message from retrieved chunks.
+ *
+ * Candidates are re-ranked with maximal marginal relevance, packed greedily under a
+ * token budget, and adjacent chunks of the same document are merged. Results are
+ * cached per (query fingerprint, corpus version, budget).
+ */
+@Service
+@Slf4j
+public class ContextAssembler {
+
+    private final RetrievalIndex index;
+    private final boolean enabled;
+    private final int tokenBudget;
+    private final int candidateCount;
+    private final double lambda;
+    private final Map<String, String> cache;
+
+    public ContextAssembler(RetrievalIndex index,
+                            @Value("${retrieval.context.enabled:true}") boolean enabled,
+                            @Value("${retrieval.context.token-budget:1500}") int tokenBudget,
+                            @Value("${retrieval.context.candidates:50}") int candidateCount,
+                            @Value("${retrieval.context.mmr-lambda:0.7}") double lambda,
+                            @Value("${retrieval.context.cache-size:1000}") int cacheSize) {
+        this.index = index;
+        this.enabled = enabled;
+        this.tokenBudget = tokenBudget;
+        this.candidateCount = candidateCount;
+        this.lambda = lambda;
+        this.cache = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > cacheSize;
+            }
+        });
+    }
+
+    /**
+     * Combine caller-supplied context with retrieved chunks that fit in the remaining budget
+     */
+    public String assemble(String query, String providedContext) {
+        boolean hasProvided = providedContext != null && !providedContext.trim().isEmpty();
+        if (!enabled || index.size() == 0) {
+            return providedContext;
+        }
+
+        int budget = tokenBudget - (hasProvided ? TextVectors.estimateTokens(providedContext) : 0);
+        if (budget <= 0) {
+            return providedContext;
+        }
+
+        String retrieved = retrieve(query, budget);
+        if (retrieved.isEmpty()) {
+            return providedContext;
+        }
+        return hasProvided ? providedContext + "\n\n" + retrieved : retrieved;
+    }
+
+    /**
+     * Retrieved context for a query within the given token budget
+     */
+    public String retrieve(String query, int budget) {
+        String key = fingerprint(query) + ":" + index.version() + ":" + budget;
+        String cached = cache.get(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        List<ScoredChunk> selected = selectMmr(index.search(query, candidateCount), budget);
+        String context = render(selected);
+        cache.put(key, context);
+        log.debug("Assembled context for query: {} chunks, ~{} tokens", selected.size(),
+                TextVectors.estimateTokens(context));
+        return context;
+    }
+
+    /**
+     * Greedy MMR selection; candidates that no longer fit in the budget are skipped
+     */
+    List<ScoredChunk> selectMmr(List<ScoredChunk> candidates, int budget) {
+        List<ScoredChunk> remaining = new ArrayList<>(candidates);
+        List<ScoredChunk> selected = new ArrayList<>();
+        int used = 0;
+
+        while (!remaining.isEmpty()) {
+            ScoredChunk best = null;
+            double bestScore = Double.NEGATIVE_INFINITY;
+            for (ScoredChunk candidate : remaining) {
+                double redundancy = 0;
+                for (ScoredChunk chosen : selected) {
+                    redundancy = Math.max(redundancy, TextVectors.cosine(candidate.vector(), chosen.vector()));
+                }
+                double mmr = lambda * candidate.score() - (1 - lambda) * redundancy;
+                if (mmr > bestScore) {
+                    bestScore = mmr;
+                    best = candidate;
+                }
+            }
+            remaining.remove(best);
+
+            int cost = TextVectors.estimateTokens(best.chunk().getText());
+            if (used + cost <= budget) {
+                selected.add(best);
+                used += cost;
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * Merge runs of adjacent chunks from the same document, keeping MMR order of the runs
+     */
+    String render(List<ScoredChunk> selected) {
+        Map<String, List<KnowledgeChunk>> byDocument = new LinkedHashMap<>();
+        for (ScoredChunk scored : selected) {
+            byDocument.computeIfAbsent(scored.chunk().getDocumentId(), d -> new ArrayList<>()).add(scored.chunk());
+        }
+
+        List<String> passages = new ArrayList<>();
+        for (List<KnowledgeChunk> chunks : byDocument.values()) {
+            chunks.sort(Comparator.comparingInt(KnowledgeChunk::getPosition));
+            StringBuilder passage = new StringBuilder(chunks.get(0).getText());
+            for (int i = 1; i < chunks.size(); i++) {
+                if (chunks.get(i).getPosition() == chunks.get(i - 1).getPosition() + 1) {
+                    passage.append(' ').append(chunks.get(i).getText());
+                } else {
+                    passages.add(passage.toString());
+                    passage = new StringBuilder(chunks.get(i).getText());
+                }
+            }
+            passages.add(passage.toString());
+        }
+        return String.join("\n\n", passages);
+    }
+
+    /**
+     * SHA-256 of the normalized query terms, so trivially different phrasings share an entry
+     */
+    private static String fingerprint(String query) {
+        String normalized = String.join(" ", TextVectors.tokenize(query));
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(normalized.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
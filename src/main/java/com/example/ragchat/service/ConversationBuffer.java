@@ -0,0 +1,285 @@
+package com.example.ragchat.service;
+
+import com.example.ragchat.dto.CacheStats;
+import com.example.ragchat.model.ChatMessage;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
+
+/**
+ * Per-session ring buffer of the most recent turns, used to build LLM history without
+ * touching the database for active conversations.
+ *
+ * A session's ring is loaded lazily on first access and then kept current by every
+ * local write. Rings are evicted least-recently-used when the global memory budget
+ * is exceeded. Content can be held as UTF-8 byte arrays, which roughly halves heap
+ * use for non-Latin text at the cost of decoding on read.
+ */
+@Service
+@Slf4j
+public class ConversationBuffer {
+
+    private static final int ENTRY_OVERHEAD_BYTES = 64;
+
+    private final boolean enabled;
+    private final int turns;
+    private final long maxBytes;
+    private final boolean compact;
+    private final LinkedHashMap<Long, Ring> rings = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final AtomicLong usedBytes = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public ConversationBuffer(@Value("${chat.history-buffer.enabled:true}") boolean enabled,
+                              @Value("${chat.history-buffer.turns:20}") int turns,
+                              @Value("${chat.history-buffer.max-bytes:67108864}") long maxBytes,
+                              @Value("${chat.history-buffer.compact:false}") boolean compact) {
+        this.enabled = enabled;
+        this.turns = turns;
+        this.maxBytes = maxBytes;
+        this.compact = compact;
+    }
+
+    /**
+     * Latest messages of a session, oldest first. The loader is called with a message
+     * count when the session is not buffered yet or more turns are asked for than are kept.
+     */
+    public List<ChatMessage> getLatest(Long sessionId, int limit, IntFunction<List<ChatMessage>> loader) {
+        if (!enabled || limit > turns) {
+            return loader.apply(limit);
+        }
+
+        Ring ring;
+        boolean created = false;
+        synchronized (rings) {
+            ring = rings.get(sessionId);
+            if (ring == null) {
+                ring = new Ring(sessionId);
+                rings.put(sessionId, ring);
+                created = true;
+            }
+        }
+
+        if (!ring.loaded) {
+            misses.incrementAndGet();
+            List<ChatMessage> loaded;
+            try {
+                loaded = loader.apply(turns);
+            } catch (RuntimeException e) {
+                evict(sessionId);
+                throw e;
+            }
+            synchronized (ring) {
+                // Merge with anything written while we were loading
+                for (ChatMessage msg : loaded) {
+                    ring.insert(msg);
+                }
+                ring.loaded = true;
+            }
+            enforceBudget();
+        } else {
+            hits.incrementAndGet();
+        }
+        if (created) {
+            log.debug("Buffered history for session {}", sessionId);
+        }
+        synchronized (ring) {
+            if (ring.loaded) {
+                return ring.latest(limit);
+            }
+        }
+        // Evicted between loading and reading
+        return loader.apply(limit);
+    }
+
+    /**
+     * Record a persisted message; only sessions that are already buffered are updated
+     */
+    public void onWrite(ChatMessage message) {
+        if (!enabled) {
+            return;
+        }
+        Ring ring;
+        synchronized (rings) {
+            ring = rings.get(message.getSessionId());
+        }
+        if (ring == null) {
+            return;
+        }
+        synchronized (ring) {
+            ring.insert(message);
+        }
+        enforceBudget();
+    }
+
+    public void evict(Long sessionId) {
+        Ring ring;
+        synchronized (rings) {
+            ring = rings.remove(sessionId);
+        }
+        if (ring != null) {
+            synchronized (ring) {
+                ring.clear();
+            }
+        }
+    }
+
+    /**
+     * Drop every buffered session, e.g. after missing change notifications from other nodes
+     */
+    public void evictAll() {
+        List<Ring> dropped;
+        synchronized (rings) {
+            dropped = new ArrayList<>(rings.values());
+            rings.clear();
+        }
+        for (Ring ring : dropped) {
+            synchronized (ring) {
+                ring.clear();
+            }
+        }
+    }
+
+    public CacheStats getStats() {
+        int size;
+        synchronized (rings) {
+            size = rings.size();
+        }
+        return CacheStats.builder()
+                .size(size)
+                .hits(hits.get())
+                .misses(misses.get())
+                .evictions(evictions.get())
+                .memoryBytes(usedBytes.get())
+                .build();
+    }
+
+    private void enforceBudget() {
+        while (usedBytes.get() > maxBytes) {
+            Ring victim;
+            synchronized (rings) {
+                Iterator<Ring> it = rings.values().iterator();
+                if (!it.hasNext()) {
+                    return;
+                }
+                victim = it.next();
+                it.remove();
+            }
+            synchronized (victim) {
+                victim.clear();
+            }
+            evictions.incrementAndGet();
+        }
+    }
+
+    /**
+     * Fixed-capacity ring of turns kept in (timestamp, id) order. Guarded by its own monitor.
+     */
+    private class Ring {
+        private final Long sessionId;
+        private final long[] ids = new long[turns];
+        private final long[] timestamps = new long[turns];
+        private final String[] senders = new String[turns];
+        private final Object[] contents = new Object[turns];
+        private final long[] sizes = new long[turns];
+        private int head = 0;
+        private int size = 0;
+        private volatile boolean loaded = false;
+
+        Ring(Long sessionId) {
+            this.sessionId = sessionId;
+        }
+
+        void insert(ChatMessage message) {
+            long id = message.getId();
+            long ts = message.getTimestamp().getTime();
+            for (int i = 0; i < size; i++) {
+                if (ids[slot(i)] == id) {
+                    return;
+                }
+            }
+            // Older than everything kept and the ring is full: not part of the latest turns
+            if (size == turns && compare(ts, id, slot(0)) < 0) {
+                return;
+            }
+
+            if (size == turns) {
+                usedBytes.addAndGet(-sizes[head]);
+                head = (head + 1) % turns;
+                size--;
+            }
+            int pos = size;
+            while (pos > 0 && compare(ts, id, slot(pos - 1)) < 0) {
+                copy(slot(pos - 1), slot(pos));
+                pos--;
+            }
+            int target = slot(pos);
+            ids[target] = id;
+            timestamps[target] = ts;
+            senders[target] = message.getSender();
+            contents[target] = compact ? message.getContent().getBytes(StandardCharsets.UTF_8) : message.getContent();
+            sizes[target] = estimate(contents[target]);
+            usedBytes.addAndGet(sizes[target]);
+            size++;
+        }
+
+        List<ChatMessage> latest(int limit) {
+            List<ChatMessage> result = new ArrayList<>(Math.min(limit, size));
+            for (int i = Math.max(0, size - limit); i < size; i++) {
+                int s = slot(i);
+                ChatMessage msg = new ChatMessage();
+                msg.setId(ids[s]);
+                msg.setSessionId(sessionId);
+                msg.setSender(senders[s]);
+                msg.setContent(contents[s] instanceof byte[] bytes
+                        ? new String(bytes, StandardCharsets.UTF_8) : (String) contents[s]);
+                msg.setTimestamp(new Date(timestamps[s]));
+                result.add(msg);
+            }
+            return result;
+        }
+
+        void clear() {
+            for (int i = 0; i < size; i++) {
+                usedBytes.addAndGet(-sizes[slot(i)]);
+                contents[slot(i)] = null;
+            }
+            size = 0;
+            head = 0;
+            loaded = false;
+        }
+
+        private int slot(int logical) {
+            return (head + logical) % turns;
+        }
+
+        private int compare(long ts, long id, int slot) {
+            int byTime = Long.compare(ts, timestamps[slot]);
+            return byTime != 0 ? byTime : Long.compare(id, ids[slot]);
+        }
+
+        private void copy(int from, int to) {
+            ids[to] = ids[from];
+            timestamps[to] = timestamps[from];
+            senders[to] = senders[from];
+            contents[to] = contents[from];
+            sizes[to] = sizes[from];
+        }
+
+        private long estimate(Object content) {
+            long payload = content instanceof byte[] bytes ? bytes.length + 16 : ((String) content).length() * 2L + 40;
+            return payload + ENTRY_OVERHEAD_BYTES;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.example.ragchat.service;
+
+import com.example.ragchat.model.OutboxEvent;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Appends events as NDJSON to numbered segment files, starting a new segment once
+ * the current one reaches chat.outbox.file.segment-bytes. Each batch is forced to
+ * disk before it counts as delivered. A torn last line left by a crash is cut off
+ * when the segment is reopened.
+ */
+@Service
+@ConditionalOnProperty(name = "chat.outbox.sink", havingValue = "file", matchIfMissing = true)
+@Slf4j
+public class FileOutboxSink implements OutboxSink {
+
+    private static final Pattern SEGMENT = Pattern.compile("events-(\\d{10})\\.ndjson");
+
+    private final ObjectMapper objectMapper;
+    private final Path directory;
+    private final long segmentBytes;
+
+    private FileChannel channel;
+    private int segment;
+    private long size;
+
+    public FileOutboxSink(ObjectMapper objectMapper,
+                          @Value("${chat.outbox.file.directory:data/outbox}") String directory,
+                          @Value("${chat.outbox.file.segment-bytes:67108864}") long segmentBytes) {
+        this.objectMapper = objectMapper;
+        this.directory = Paths.get(directory);
+        this.segmentBytes = segmentBytes;
+    }
+
+    @Override
+    public String name() {
+        return "file";
+    }
+
+    @Override
+    public synchronized void deliver(List<OutboxEvent> events) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(events.size() * 256);
+        for (OutboxEvent event : events) {
+            out.write(objectMapper.writeValueAsBytes(event));
+            out.write('\n');
+        }
+        if (channel == null) {
+            open(latestSegment());
+        } else if (size > 0 && size + out.size() > segmentBytes) {
+            channel.close();
+            open(segment + 1);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(out.toByteArray());
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        channel.force(false);
+        size += out.size();
+    }
+
+    private int latestSegment() throws IOException {
+        Files.createDirectories(directory);
+        int latest = 1;
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Matcher matcher = SEGMENT.matcher(file.getFileName().toString());
+                if (matcher.matches()) {
+                    latest = Math.max(latest, Integer.parseInt(matcher.group(1)));
+                }
+            }
+        }
+        return latest;
+    }
+
+    private void open(int number) throws IOException {
+        Path file = directory.resolve(String.format("events-%010d.ndjson", number));
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segment = number;
+        size = completeLength(channel);
+        channel.truncate(size);
+        channel.position(size);
+        log.info("Outbox segment {} opened at {} bytes", file, size);
+    }
+
+    /**
+     * Length up to and including the last newline
+     */
+    private static long completeLength(FileChannel channel) throws IOException {
+        long end = channel.size();
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        while (end > 0) {
+            long start = Math.max(0, end - buffer.capacity());
+            buffer.clear().limit((int) (end - start));
+            channel.read(buffer, start);
+            for (int i = buffer.position() - 1; i >= 0; i--) {
+                if (buffer.get(i) == '\n') {
+                    return start + i + 1;
+                }
+            }
+            end = start;
+        }
+        return 0;
+    }
+
+    @PreDestroy
+    public synchronized void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package com.example.ragchat.service;
+
+import com.example.ragchat.model.ChatMessage;
+import com.example.ragchat.model.KnowledgeChunk;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Feeds persisted chat messages into the retrieval index off the request thread.
+ *
+ * Messages go through a bounded queue that is drained in batches by a single
+ * background worker. When the queue is full the message is dropped from the index
+ * (and counted) rather than blocking the write path. Session deletions are applied
+ * immediately and remembered so that messages still in flight are not resurrected.
+ *
+ * The index lives in memory, so on startup the worker first backfills it with the
+ * most recent messages in chat_messages, up to the index's history limit. Messages
+ * written meanwhile are queued as usual; indexing one twice replaces its chunk.
+ */
+@Service
+@Slf4j
+public class HistoryIndexer {
+
+    private static final String BACKFILL_SQL =
+            "SELECT * FROM (SELECT m.id, m.session_id, m.sender, m.content, m.timestamp, s.user_id " +
+            "FROM chat_messages m JOIN chat_sessions s ON s.id = m.session_id " +
+            "WHERE s.deleted_at IS NULL AND m.timestamp >= ? ORDER BY m.timestamp DESC LIMIT ?) recent " +
+            // Oldest first, so the index evicts the oldest if shards together exceed its limit
+            "ORDER BY timestamp";
+
+    private final RetrievalIndex index;
+    private final JdbcTemplate jdbcTemplate;
+    private final ShardRouter shardRouter;
+    private final boolean enabled;
+    private final boolean backfill;
+    private final long backfillMillis;
+    private final int backfillLimit;
+    private final int batchSize;
+    private final long pollMillis;
+    private final BlockingQueue<KnowledgeChunk> queue;
+    private final Queue<Long> pendingDeletes = new ConcurrentLinkedQueue<>();
+    private final Set<Long> deletedSessions;
+
+    private final AtomicLong enqueued = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong indexed = new AtomicLong();
+    private final AtomicLong backfilled = new AtomicLong();
+
+    private volatile boolean running;
+    private Thread worker;
+
+    public HistoryIndexer(RetrievalIndex index,
+                          JdbcTemplate jdbcTemplate,
+                          ShardRouter shardRouter,
+                          @Value("${history.index.enabled:true}") boolean enabled,
+                          @Value("${history.index.queue-capacity:10000}") int queueCapacity,
+                          @Value("${history.index.batch-size:256}") int batchSize,
+                          @Value("${history.index.poll-ms:200}") long pollMillis,
+                          @Value("${history.index.deleted-sessions-tracked:10000}") int deletedSessionsTracked,
+                          @Value("${history.index.backfill-days:30}") long backfillDays,
+                          @Value("${history.index.max-chunks:200000}") int backfillLimit,
+                          @Value("${chat.storage.backend:postgres}") String storageBackend) {
+        this.index = index;
+        this.jdbcTemplate = jdbcTemplate;
+        this.shardRouter = shardRouter;
+        this.enabled = enabled;
+        // Other message stores keep no chat_messages table to read back from
+        this.backfill = backfillDays > 0 && "postgres".equals(storageBackend);
+        this.backfillMillis = TimeUnit.DAYS.toMillis(backfillDays);
+        this.backfillLimit = backfillLimit;
+        this.batchSize = batchSize;
+        this.pollMillis = pollMillis;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.deletedSessions = Collections.newSetFromMap(Collections.synchronizedMap(
+                new LinkedHashMap<>(16, 0.75f, false) {
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<Long, Boolean> eldest) {
+                        return size() > deletedSessionsTracked;
+                    }
+                }));
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        running = true;
+        worker = new Thread(this::run, "history-indexer");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        if (worker != null) {
+            worker.interrupt();
+            worker.join(TimeUnit.SECONDS.toMillis(5));
+        }
+    }
+
+    /**
+     * Queue a persisted message for indexing; never blocks
+     */
+    public void enqueue(ChatMessage message, String userId) {
+        if (!enabled || message.getId() == null) {
+            return;
+        }
+        KnowledgeChunk chunk = new KnowledgeChunk();
+        chunk.setId(index.nextChunkId());
+        chunk.setUserId(userId);
+        chunk.setSessionId(message.getSessionId());
+        chunk.setMessageId(message.getId());
+        chunk.setSender(message.getSender());
+        chunk.setTimestamp(message.getTimestamp());
+        chunk.setText(message.getContent());
+
+        if (queue.offer(chunk)) {
+            enqueued.incrementAndGet();
+        } else {
+            dropped.incrementAndGet();
+            log.warn("History index queue full, message {} will not be searchable", message.getId());
+        }
+    }
+
+    /**
+     * Remove a session's messages from the index
+     */
+    public void removeSession(Long sessionId) {
+        if (!enabled) {
+            return;
+        }
+        deletedSessions.add(sessionId);
+        pendingDeletes.add(sessionId);
+        index.removeSession(sessionId);
+    }
+
+    public int queueDepth() {
+        return queue.size();
+    }
+
+    public long droppedCount() {
+        return dropped.get();
+    }
+
+    public long indexedCount() {
+        return indexed.get();
+    }
+
+    public long backfilledCount() {
+        return backfilled.get();
+    }
+
+    private void run() {
+        if (backfill) {
+            try {
+                backfill();
+            } catch (RuntimeException e) {
+                log.error("History index backfill failed; only new messages will be searchable", e);
+            }
+        }
+        List<KnowledgeChunk> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                KnowledgeChunk first = queue.poll(pollMillis, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch, batchSize - 1);
+                    indexBatch(batch);
+                    batch.clear();
+                }
+                applyDeletes();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                log.error("History indexing batch failed: {}", e.getMessage(), e);
+                batch.clear();
+            }
+        }
+    }
+
+    private void indexBatch(List<KnowledgeChunk> batch) {
+        for (KnowledgeChunk chunk : batch) {
+            if (!deletedSessions.contains(chunk.getSessionId())) {
+                index.add(chunk);
+            }
+        }
+        indexed.addAndGet(batch.size());
+        log.debug("Indexed {} chat messages, queue depth {}", batch.size(), queue.size());
+    }
+
+    /**
+     * Rebuild the index from the most recent messages of every shard
+     */
+    void backfill() {
+        Timestamp since = new Timestamp(System.currentTimeMillis() - backfillMillis);
+        shardRouter.forEachShard(() -> jdbcTemplate.query(BACKFILL_SQL, rs -> {
+            if (!running) {
+                return;
+            }
+            KnowledgeChunk chunk = new KnowledgeChunk();
+            chunk.setId(index.nextChunkId());
+            chunk.setUserId(rs.getString("user_id"));
+            chunk.setSessionId(rs.getLong("session_id"));
+            chunk.setMessageId(rs.getLong("id"));
+            chunk.setSender(rs.getString("sender"));
+            chunk.setTimestamp(new Date(rs.getTimestamp("timestamp").getTime()));
+            chunk.setText(rs.getString("content"));
+            if (!deletedSessions.contains(chunk.getSessionId())) {
+                index.add(chunk);
+                backfilled.incrementAndGet();
+            }
+        }, since, backfillLimit));
+        log.info("History index backfilled with {} messages", backfilled.get());
+    }
+
+    /**
+     * Sweep again for sessions deleted while their messages were being indexed
+     */
+    private void applyDeletes() {
+        Long sessionId;
+        while ((sessionId = pendingDeletes.poll()) != null) {
+            index.removeSession(sessionId);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.ragchat.service;
+
+import com.example.ragchat.dto.HistorySearchResult;
+import com.example.ragchat.dto.MessageSearchPage;
+import com.example.ragchat.model.KnowledgeChunk;
+import com.example.ragchat.util.SearchCursor;
+import com.example.ragchat.util.TextVectors;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Search backend for deployments that cannot add database indexes: ranks the
+ * per-user postings of the in-process {@link RetrievalIndex}, which the
+ * {@link HistoryIndexer} keeps current. Only messages written since startup are covered.
+ */
+@Service
+@ConditionalOnProperty(name = "chat.search.backend", havingValue = "memory")
+@RequiredArgsConstructor
+public class InMemoryMessageSearch implements MessageSearchBackend {
+
+    private static final Pattern WORD = Pattern.compile("\\w+");
+
+    private final RetrievalIndex retrievalIndex;
+
+    private static final Comparator<RetrievalIndex.ScoredChunk> RANKING =
+            Comparator.comparingDouble(RetrievalIndex.ScoredChunk::score)
+                    .thenComparing(hit -> hit.chunk().getSessionId())
+                    .thenComparing(hit -> hit.chunk().getMessageId())
+                    .reversed();
+
+    @Override
+    public MessageSearchPage search(String userId, String query, SearchCursor after, int limit) {
+        List<RetrievalIndex.ScoredChunk> hits = new ArrayList<>(
+                retrievalIndex.searchUserHistory(userId, query, Integer.MAX_VALUE));
+        hits.sort(RANKING);
+
+        Set<String> terms = new HashSet<>(TextVectors.tokenize(query));
+        List<HistorySearchResult> results = new ArrayList<>(limit);
+        String nextCursor = null;
+        for (RetrievalIndex.ScoredChunk hit : hits) {
+            KnowledgeChunk chunk = hit.chunk();
+            if (!after.precedes(hit.score(), chunk.getSessionId(), chunk.getMessageId())) {
+                continue;
+            }
+            if (results.size() == limit) {
+                HistorySearchResult last = results.get(limit - 1);
+                nextCursor = new SearchCursor(last.getScore(), last.getSessionId(), last.getMessageId()).encode();
+                break;
+            }
+            results.add(HistorySearchResult.builder()
+                    .messageId(chunk.getMessageId())
+                    .sessionId(chunk.getSessionId())
+                    .sender(chunk.getSender())
+                    .content(chunk.getText())
+                    .snippet(highlight(chunk.getText(), terms))
+                    .timestamp(chunk.getTimestamp())
+                    .score(hit.score())
+                    .build());
+        }
+        return MessageSearchPage.builder()
+                .results(results)
+                .nextCursor(nextCursor)
+                .build();
+    }
+
+    static String highlight(String text, Set<String> terms) {
+        Matcher matcher = WORD.matcher(text);
+        StringBuilder out = new StringBuilder(text.length() + 16);
+        int last = 0;
+        while (matcher.find()) {
+            if (terms.contains(matcher.group().toLowerCase(Locale.ROOT))) {
+                out.append(text, last, matcher.start())
+                        .append("<mark>").append(matcher.group()).append("</mark>");
+                last = matcher.end();
+            }
+        }
+        return out.append(text, last, text.length()).toString();
+    }
+}
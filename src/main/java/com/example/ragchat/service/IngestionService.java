@@ -0,0 +1,165 @@
+package com.example.ragchat.service;
+
+import com.example.ragchat.dto.IngestionStats;
+import com.example.ragchat.exception.InvalidInputException;
+import com.example.ragchat.model.KnowledgeChunk;
+import com.example.ragchat.util.MinHashDeduplicator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Splits documents into chunks and indexes them, dropping near-duplicate chunks
+ * (estimated Jaccard similarity above the configured threshold) on the way in.
+ */
+@Service
+@Slf4j
+public class IngestionService {
+
+    private final RetrievalIndex index;
+    private final MinHashDeduplicator deduplicator;
+    private final boolean dedupEnabled;
+    private final int chunkSize;
+
+    private final AtomicLong chunksReceived = new AtomicLong();
+    private final AtomicLong chunksIndexed = new AtomicLong();
+    private final AtomicLong duplicatesDropped = new AtomicLong();
+    private final AtomicLong bytesReceived = new AtomicLong();
+    private final AtomicLong bytesIndexed = new AtomicLong();
+    private final AtomicLong dedupNanos = new AtomicLong();
+
+    public IngestionService(RetrievalIndex index,
+                            @Value("${ingest.chunk.size:1000}") int chunkSize,
+                            @Value("${ingest.dedup.enabled:true}") boolean dedupEnabled,
+                            @Value("${ingest.dedup.jaccard-threshold:0.8}") double threshold,
+                            @Value("${ingest.dedup.num-hashes:128}") int numHashes,
+                            @Value("${ingest.dedup.bands:16}") int bands,
+                            @Value("${ingest.dedup.max-tracked-chunks:100000}") int maxTrackedChunks) {
+        this(index, chunkSize, dedupEnabled, new MinHashDeduplicator(numHashes, bands, threshold, maxTrackedChunks));
+    }
+
+    IngestionService(RetrievalIndex index, int chunkSize, boolean dedupEnabled, MinHashDeduplicator deduplicator) {
+        this.index = index;
+        this.chunkSize = chunkSize;
+        this.dedupEnabled = dedupEnabled;
+        this.deduplicator = deduplicator;
+    }
+
+    /**
+     * Ingest a document, returning the number of chunks that were indexed
+     */
+    public int ingestDocument(String documentId, String text) {
+        log.info("Service: Ingesting document {} ({} chars)", documentId, text == null ? 0 : text.length());
+
+        if (documentId == null || documentId.trim().isEmpty()) {
+            throw new InvalidInputException("Document ID cannot be empty");
+        }
+        if (text == null || text.trim().isEmpty()) {
+            throw new InvalidInputException("Document text cannot be empty");
+        }
+
+        int indexed = 0;
+        int position = 0;
+        int start = 0;
+        while (start < text.length()) {
+            int end = chunkEnd(text, start);
+            String chunkText = text.substring(start, end).trim();
+            start = end;
+            if (chunkText.isEmpty()) {
+                continue;
+            }
+            if (ingestChunk(documentId, position++, chunkText)) {
+                indexed++;
+            }
+        }
+        log.debug("Service: Document {} produced {} chunks, {} indexed", documentId, position, indexed);
+        return indexed;
+    }
+
+    /**
+     * Run a single chunk through the dedup stage and into the index
+     */
+    boolean ingestChunk(String documentId, int position, String text) {
+        long size = text.getBytes(StandardCharsets.UTF_8).length;
+        chunksReceived.incrementAndGet();
+        bytesReceived.addAndGet(size);
+
+        long chunkId = index.nextChunkId();
+        if (dedupEnabled) {
+            long startNanos = System.nanoTime();
+            Optional<Long> duplicateOf = deduplicator.checkAndRegister(chunkId, text);
+            while (duplicateOf.isPresent()) {
+                Optional<KnowledgeChunk> retained = index.get(duplicateOf.get());
+                if (retained.isPresent()) {
+                    dedupNanos.addAndGet(System.nanoTime() - startNanos);
+                    mergeInto(retained.get(), documentId);
+                    duplicatesDropped.incrementAndGet();
+                    return false;
+                }
+                // Retained chunk was removed from the index; stop matching against it and
+                // check again, since another retained chunk may still match
+                deduplicator.remove(duplicateOf.get());
+                duplicateOf = deduplicator.checkAndRegister(chunkId, text);
+            }
+            dedupNanos.addAndGet(System.nanoTime() - startNanos);
+        }
+
+        KnowledgeChunk chunk = new KnowledgeChunk();
+        chunk.setId(chunkId);
+        chunk.setDocumentId(documentId);
+        chunk.setPosition(position);
+        chunk.setText(text);
+        chunk.getMergedDocuments().add(documentId);
+        index.add(chunk);
+
+        chunksIndexed.incrementAndGet();
+        bytesIndexed.addAndGet(size);
+        return true;
+    }
+
+    public IngestionStats getStats() {
+        long received = bytesReceived.get();
+        long indexed = bytesIndexed.get();
+        long nanos = dedupNanos.get();
+        return IngestionStats.builder()
+                .chunksReceived(chunksReceived.get())
+                .chunksIndexed(chunksIndexed.get())
+                .duplicatesDropped(duplicatesDropped.get())
+                .bytesReceived(received)
+                .bytesIndexed(indexed)
+                .indexSizeSavings(received == 0 ? 0.0 : 1.0 - (double) indexed / received)
+                .dedupChunksPerSecond(nanos == 0 ? 0.0 : chunksReceived.get() * 1_000_000_000.0 / nanos)
+                .trackedSignatures(deduplicator.trackedChunks())
+                .build();
+    }
+
+    private void mergeInto(KnowledgeChunk retained, String documentId) {
+        synchronized (retained) {
+            retained.getMergedDocuments().add(documentId);
+            retained.setDuplicateCount(retained.getDuplicateCount() + 1);
+        }
+    }
+
+    /**
+     * Prefer to cut at a paragraph or sentence boundary inside the chunk window
+     */
+    private int chunkEnd(String text, int start) {
+        int limit = Math.min(text.length(), start + chunkSize);
+        if (limit == text.length()) {
+            return limit;
+        }
+        int paragraph = text.lastIndexOf("\n\n", limit);
+        if (paragraph > start) {
+            return paragraph + 2;
+        }
+        int sentence = text.lastIndexOf(". ", limit);
+        if (sentence > start) {
+            return sentence + 2;
+        }
+        return limit;
+    }
+}
@@ -32,10 +32,12 @@ public class LLMService {
 
     private final RestTemplate restTemplate;
     private final ObjectMapper objectMapper;
+    private final ContextAssembler contextAssembler;
 
-    public LLMService() {
+    public LLMService(ContextAssembler contextAssembler) {
         this.restTemplate = new RestTemplate();
         this.objectMapper = new ObjectMapper();
+        this.contextAssembler = contextAssembler;
     }
 
     /**
@@ -55,6 +57,8 @@ public class LLMService {
         }
 
         try {
+            context = contextAssembler.assemble(userMessage, context);
+
             // Detect API type and use appropriate format
             if (isOpenAICompatible()) {
                 return queryOpenAIFormat(userMessage, context);
@@ -242,6 +246,8 @@ public class LLMService {
         log.info("Sending query with conversation history");
 
         try {
+            context = contextAssembler.assemble(userMessage, context);
+
             if (isOpenAICompatible()) {
                 return queryOpenAIFormatWithHistory(userMessage, context, conversationHistory);
             } else {
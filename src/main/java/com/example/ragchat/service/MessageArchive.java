@@ -0,0 +1,461 @@
+package com.example.ragchat.service;
+
+import com.example.ragchat.dto.ArchiveStats;
+import com.example.ragchat.model.ChatMessage;
+import com.example.ragchat.repository.ChatSessionRepository;
+import com.example.ragchat.util.ShardContext;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Cold tier for idle sessions.
+ *
+ * A scheduled job moves the messages of sessions idle past a threshold out of
+ * chat_messages into one gzip-compressed, column-oriented segment file per session
+ * and marks the session archived. Any read or write of an archived session first
+ * rehydrates it: the segment is inserted back and removed. Both directions run on
+ * the session's single writer so they never interleave with appends.
+ */
+@Service
+@Slf4j
+public class MessageArchive {
+
+    private static final int SEGMENT_VERSION = 2;
+
+    // Segment record components in the order read() decodes them
+    private static final List<String> SEGMENT_COLUMNS = List.of("ids", "seqs", "senders", "contents", "contexts",
+            "contextRefs", "contentRefs", "timestamps");
+
+    private static final String SELECT_SQL =
+            "SELECT id, seq, sender, content, context, context_ref, content_ref, timestamp FROM chat_messages " +
+            "WHERE session_id = ? ORDER BY id";
+
+    private static final String INSERT_SQL =
+            "INSERT INTO chat_messages (id, session_id, seq, sender, content, context, context_ref, content_ref, timestamp) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?) ON CONFLICT (session_id, id) DO NOTHING";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final ChatSessionRepository sessionRepo;
+    private final MessageWriteBehindQueue writeBehind;
+    private final SessionWriteExecutor sessionWriters;
+    private final SessionMetadataCache sessionCache;
+    private final ConversationBuffer conversationBuffer;
+    private final ShardRouter shardRouter;
+    private final ClusterBus clusterBus;
+    private final ReplicaRouter replicaRouter;
+    private final boolean enabled;
+    private final Path directory;
+    private final long idleMillis;
+    private final int sessionsPerRun;
+
+    private final AtomicLong archivedSessions = new AtomicLong();
+    private final AtomicLong archivedMessages = new AtomicLong();
+    private final AtomicLong rehydratedSessions = new AtomicLong();
+    private final AtomicLong rehydratedMessages = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    public MessageArchive(JdbcTemplate jdbcTemplate,
+                          PlatformTransactionManager transactionManager,
+                          ObjectMapper objectMapper,
+                          ChatSessionRepository sessionRepo,
+                          MessageWriteBehindQueue writeBehind,
+                          SessionWriteExecutor sessionWriters,
+                          SessionMetadataCache sessionCache,
+                          ConversationBuffer conversationBuffer,
+                          ShardRouter shardRouter,
+                          ClusterBus clusterBus,
+                          ReplicaRouter replicaRouter,
+                          @Value("${chat.archive.enabled:false}") boolean enabled,
+                          @Value("${chat.archive.directory:data/archive}") String directory,
+                          @Value("${chat.archive.idle-days:90}") long idleDays,
+                          @Value("${chat.archive.sessions-per-run:100}") int sessionsPerRun,
+                          @Value("${chat.storage.backend:postgres}") String storageBackend) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.objectMapper = objectMapper;
+        this.sessionRepo = sessionRepo;
+        this.writeBehind = writeBehind;
+        this.sessionWriters = sessionWriters;
+        this.sessionCache = sessionCache;
+        this.conversationBuffer = conversationBuffer;
+        this.shardRouter = shardRouter;
+        this.clusterBus = clusterBus;
+        this.replicaRouter = replicaRouter;
+        // Segments are cut from chat_messages; other message stores are never archived
+        this.enabled = enabled && "postgres".equals(storageBackend);
+        this.directory = Paths.get(directory);
+        this.idleMillis = TimeUnit.DAYS.toMillis(idleDays);
+        this.sessionsPerRun = Math.max(1, sessionsPerRun);
+    }
+
+    @Scheduled(initialDelayString = "${chat.archive.initial-delay-ms:600000}",
+               fixedDelayString = "${chat.archive.interval-ms:3600000}")
+    public void archiveIdleSessions() {
+        if (!enabled) {
+            return;
+        }
+        shardRouter.forEachShard(this::archiveShard);
+    }
+
+    private void archiveShard() {
+        Date cutoff = new Date(System.currentTimeMillis() - idleMillis);
+        for (Long sessionId : sessionRepo.findArchiveCandidates(cutoff, sessionsPerRun)) {
+            if (shardRouter.shardOfSession(sessionId) != ShardContext.current()) {
+                // Source copy of a moved session, waiting for the rebalancer to purge it
+                continue;
+            }
+            try {
+                sessionWriters.execute(sessionId, () -> archive(sessionId));
+            } catch (RuntimeException e) {
+                failures.incrementAndGet();
+                log.error("Failed to archive session {}", sessionId, e);
+            }
+        }
+    }
+
+    /**
+     * Move the messages of an archived session back into chat_messages. The session and
+     * its owner are pinned to the primary, since replicas may not have the restored rows yet.
+     */
+    public void rehydrate(Long sessionId, String userId) {
+        int restored = sessionWriters.execute(sessionId, () -> restore(sessionId));
+        replicaRouter.recordWrite(sessionId, userId);
+        sessionCache.invalidate(sessionId);
+        clusterBus.sessionChanged(sessionId);
+        if (restored > 0) {
+            log.info("Rehydrated session {} ({} messages)", sessionId, restored);
+        }
+    }
+
+    /**
+     * Stream the messages of an archived session from its segment in id order, leaving
+     * it archived. Returns false when there is no segment, e.g. it was rehydrated meanwhile.
+     *
+     * Each column is decoded by its own parser over the one open file, advanced in
+     * lockstep, so memory does not depend on the size of the segment.
+     */
+    public boolean read(Long sessionId, MessageConsumer consumer) throws IOException {
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(segmentPath(sessionId), StandardOpenOption.READ);
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+        List<Column> columns = new ArrayList<>(SEGMENT_COLUMNS.size());
+        try (channel) {
+            for (String name : SEGMENT_COLUMNS) {
+                columns.add(new Column(objectMapper.getFactory().createParser(
+                        new GZIPInputStream(positionalStream(channel), 8192)), name));
+            }
+            while (true) {
+                Long id = columns.get(0).nextLong();
+                if (id == null) {
+                    return true;
+                }
+                ChatMessage msg = new ChatMessage();
+                msg.setId(id);
+                msg.setSessionId(sessionId);
+                msg.setSeq(columns.get(1).nextLong());
+                msg.setSender(columns.get(2).nextText());
+                msg.setContent(columns.get(3).nextText());
+                msg.setContext(columns.get(4).nextText());
+                msg.setContextRef(columns.get(5).nextText());
+                msg.setContentRef(columns.get(6).nextText());
+                msg.setTimestamp(new Date(columns.get(7).nextLong()));
+                consumer.accept(msg);
+            }
+        } finally {
+            for (Column column : columns) {
+                column.parser.close();
+            }
+        }
+    }
+
+    /**
+     * Drop the segment of a deleted session, if any
+     */
+    public void discard(Long sessionId) {
+        try {
+            Files.deleteIfExists(segmentPath(sessionId));
+        } catch (IOException e) {
+            log.warn("Could not remove archive segment of session {}", sessionId, e);
+        }
+    }
+
+    public ArchiveStats getStats() {
+        return ArchiveStats.builder()
+                .enabled(enabled)
+                .archivedSessions(archivedSessions.get())
+                .archivedMessages(archivedMessages.get())
+                .rehydratedSessions(rehydratedSessions.get())
+                .rehydratedMessages(rehydratedMessages.get())
+                .failures(failures.get())
+                .build();
+    }
+
+    private int archive(Long sessionId) {
+        if (!writeBehind.flushSession(sessionId)) {
+            // Queued messages would land after the segment is cut; try again next run
+            return 0;
+        }
+        List<ChatMessage> messages = jdbcTemplate.query(SELECT_SQL, (rs, i) -> {
+            ChatMessage msg = new ChatMessage();
+            msg.setId(rs.getLong("id"));
+            msg.setSessionId(sessionId);
+            msg.setSeq((Long) rs.getObject("seq"));
+            msg.setSender(rs.getString("sender"));
+            msg.setContent(rs.getString("content"));
+            msg.setContext(rs.getString("context"));
+            msg.setContextRef(rs.getString("context_ref"));
+            msg.setContentRef(rs.getString("content_ref"));
+            msg.setTimestamp(new Date(rs.getTimestamp("timestamp").getTime()));
+            return msg;
+        }, sessionId);
+        if (messages.isEmpty()) {
+            return 0;
+        }
+
+        // The segment is durable before any row is removed
+        Path segment = segmentPath(sessionId);
+        writeSegment(segment, Segment.of(messages));
+
+        Long[] archivedIds = messages.stream().map(ChatMessage::getId).toArray(Long[]::new);
+        Boolean marked = transactionTemplate.execute(status -> {
+            // Exactly the rows in the segment; anything else keeps the session from being marked
+            jdbcTemplate.update("DELETE FROM chat_messages WHERE session_id = ? AND id = ANY(?)",
+                    sessionId, archivedIds);
+            int updated = jdbcTemplate.update(
+                    "UPDATE chat_sessions SET archived_at = ? WHERE id = ? AND deleted_at IS NULL " +
+                    "AND NOT EXISTS (SELECT 1 FROM chat_messages WHERE session_id = ?)",
+                    new Timestamp(System.currentTimeMillis()), sessionId, sessionId);
+            if (updated == 0) {
+                // Rows arrived outside the session writer (e.g. bulk import); try again next run
+                status.setRollbackOnly();
+                return false;
+            }
+            return true;
+        });
+        if (!Boolean.TRUE.equals(marked)) {
+            discard(sessionId);
+            return 0;
+        }
+
+        sessionCache.invalidate(sessionId);
+        conversationBuffer.evict(sessionId);
+        clusterBus.sessionChanged(sessionId);
+        archivedSessions.incrementAndGet();
+        archivedMessages.addAndGet(messages.size());
+        log.info("Archived session {} ({} messages)", sessionId, messages.size());
+        return messages.size();
+    }
+
+    private int restore(Long sessionId) {
+        Path segmentPath = segmentPath(sessionId);
+        List<ChatMessage> messages = Files.exists(segmentPath)
+                ? readSegment(segmentPath).toMessages(sessionId)
+                : List.of();
+
+        transactionTemplate.executeWithoutResult(status -> {
+            if (!messages.isEmpty()) {
+                jdbcTemplate.batchUpdate(INSERT_SQL, messages, messages.size(), (ps, msg) -> {
+                    ps.setLong(1, msg.getId());
+                    ps.setLong(2, sessionId);
+                    ps.setObject(3, msg.getSeq());
+                    ps.setString(4, msg.getSender());
+                    ps.setString(5, msg.getContent());
+                    ps.setString(6, msg.getContext());
+                    ps.setString(7, msg.getContextRef());
+                    ps.setString(8, msg.getContentRef());
+                    ps.setTimestamp(9, new Timestamp(msg.getTimestamp().getTime()));
+                });
+            }
+            jdbcTemplate.update("UPDATE chat_sessions SET archived_at = NULL WHERE id = ?", sessionId);
+        });
+        discard(sessionId);
+
+        if (!messages.isEmpty()) {
+            rehydratedSessions.incrementAndGet();
+            rehydratedMessages.addAndGet(messages.size());
+        }
+        return messages.size();
+    }
+
+    private Path segmentPath(Long sessionId) {
+        return directory.resolve(String.format("%02x", sessionId & 0xff)).resolve(sessionId + ".seg.gz");
+    }
+
+    private void writeSegment(Path path, Segment segment) {
+        try {
+            Files.createDirectories(path.getParent());
+            Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+            try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(tmp))) {
+                objectMapper.writeValue(out, segment);
+            }
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write archive segment " + path, e);
+        }
+    }
+
+    /**
+     * Reads the channel from the start without moving its shared position, so several
+     * streams can decode the same file independently
+     */
+    private static InputStream positionalStream(FileChannel channel) {
+        return new InputStream() {
+            private long position;
+
+            @Override
+            public int read() throws IOException {
+                byte[] one = new byte[1];
+                return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+                int n = channel.read(ByteBuffer.wrap(buffer, offset, length), position);
+                if (n > 0) {
+                    position += n;
+                }
+                return n;
+            }
+        };
+    }
+
+    private Segment readSegment(Path path) {
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(path))) {
+            return objectMapper.readValue(in, Segment.class);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read archive segment " + path, e);
+        }
+    }
+
+    /**
+     * Receives the messages of a segment as they are decoded
+     */
+    @FunctionalInterface
+    public interface MessageConsumer {
+        void accept(ChatMessage message) throws IOException;
+    }
+
+    /**
+     * One column of a segment, positioned at its array. A column missing from an older
+     * segment version reads as nulls.
+     */
+    private static final class Column {
+        private final JsonParser parser;
+        private final boolean present;
+
+        Column(JsonParser parser, String name) throws IOException {
+            this.parser = parser;
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Archive segment is not an object");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                boolean match = name.equals(parser.currentName());
+                JsonToken value = parser.nextToken();
+                if (match) {
+                    this.present = value == JsonToken.START_ARRAY;
+                    return;
+                }
+                parser.skipChildren();
+            }
+            this.present = false;
+        }
+
+        Long nextLong() throws IOException {
+            JsonToken token = present ? parser.nextToken() : JsonToken.VALUE_NULL;
+            return token == JsonToken.VALUE_NULL || token == JsonToken.END_ARRAY ? null : parser.getLongValue();
+        }
+
+        String nextText() throws IOException {
+            JsonToken token = present ? parser.nextToken() : JsonToken.VALUE_NULL;
+            return token == JsonToken.VALUE_NULL || token == JsonToken.END_ARRAY ? null : parser.getText();
+        }
+    }
+
+    /**
+     * Column-oriented layout: values of one column sit next to each other, which
+     * compresses considerably better than row-by-row JSON. Rows are in id order.
+     * Version 1 segments have no blob reference columns.
+     */
+    record Segment(int version, List<Long> ids, List<Long> seqs, List<String> senders,
+                   List<String> contents, List<String> contexts, List<String> contextRefs,
+                   List<String> contentRefs, List<Long> timestamps) {
+
+        static Segment of(List<ChatMessage> messages) {
+            int n = messages.size();
+            List<Long> ids = new ArrayList<>(n);
+            List<Long> seqs = new ArrayList<>(n);
+            List<String> senders = new ArrayList<>(n);
+            List<String> contents = new ArrayList<>(n);
+            List<String> contexts = new ArrayList<>(n);
+            List<String> contextRefs = new ArrayList<>(n);
+            List<String> contentRefs = new ArrayList<>(n);
+            List<Long> timestamps = new ArrayList<>(n);
+            for (ChatMessage msg : messages) {
+                ids.add(msg.getId());
+                seqs.add(msg.getSeq());
+                senders.add(msg.getSender());
+                contents.add(msg.getContent());
+                contexts.add(msg.getContext());
+                contextRefs.add(msg.getContextRef());
+                contentRefs.add(msg.getContentRef());
+                timestamps.add(msg.getTimestamp().getTime());
+            }
+            return new Segment(SEGMENT_VERSION, ids, seqs, senders, contents, contexts,
+                    contextRefs, contentRefs, timestamps);
+        }
+
+        List<ChatMessage> toMessages(Long sessionId) {
+            List<ChatMessage> messages = new ArrayList<>(ids.size());
+            for (int i = 0; i < ids.size(); i++) {
+                ChatMessage msg = new ChatMessage();
+                msg.setId(ids.get(i));
+                msg.setSessionId(sessionId);
+                msg.setSeq(seqs.get(i));
+                msg.setSender(senders.get(i));
+                msg.setContent(contents.get(i));
+                msg.setContext(contexts.get(i));
+                if (contextRefs != null) {
+                    msg.setContextRef(contextRefs.get(i));
+                    msg.setContentRef(contentRefs.get(i));
+                }
+                msg.setTimestamp(new Date(timestamps.get(i)));
+                messages.add(msg);
+            }
+            return messages;
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.example.ragchat.service;
+
+import com.example.ragchat.dto.MessageSearchPage;
+import com.example.ragchat.util.SearchCursor;
+
+/**
+ * Ranked full-text search over one user's messages, selected by chat.search.backend
+ */
+public interface MessageSearchBackend {
+
+    /**
+     * Hits ranked by descending score, strictly after {@code after}, at most {@code limit}
+     */
+    MessageSearchPage search(String userId, String query, SearchCursor after, int limit);
+}
@@ -0,0 +1,634 @@
+package com.example.ragchat.service;
+
+import com.example.ragchat.dto.WriteBehindStats;
+import com.example.ragchat.model.ChatMessage;
+import com.example.ragchat.model.SessionStatsDelta;
+import com.example.ragchat.repository.MessageIdAllocator;
+import com.example.ragchat.repository.OutboxRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Optional write-behind path for chat messages.
+ *
+ * A message is journaled to a local append-only file, given an ID from the pooled
+ * message sequence and returned immediately; a background writer inserts queued
+ * messages into Postgres in batches. Inserts are idempotent (ON CONFLICT on the
+ * session and preassigned ID) so the journal can simply be replayed in full after a crash.
+ *
+ * The journal is written in segments of about chat.write-behind.segment-bytes; a
+ * segment is deleted once every message in it is flushed. Only the writer thread
+ * talks to the database. A batch that keeps failing is split to isolate rows that
+ * can never be inserted, and those, or a batch still failing after the retries,
+ * go to a dead-letter file that is retried at the next start.
+ */
+@Service
+@Slf4j
+public class MessageWriteBehindQueue {
+
+    private static final String INSERT_SQL =
+            "INSERT INTO chat_messages (id, session_id, seq, sender, content, context, context_ref, content_ref, timestamp) " +
+            "SELECT ?, ?, ?, ?, ?, ?, ?, ?, ? WHERE EXISTS (SELECT 1 FROM chat_sessions WHERE id = ? AND deleted_at IS NULL) " +
+            "ON CONFLICT (session_id, id) DO NOTHING";
+
+    private static final String STATS_SQL =
+            "UPDATE chat_sessions SET message_count = message_count + ?, " +
+            "last_message_at = GREATEST(COALESCE(last_message_at, ?), ?), " +
+            "prompt_tokens = prompt_tokens + ?, completion_tokens = completion_tokens + ? WHERE id = ?";
+
+    private static final long FLUSH_WAIT_NANOS = TimeUnit.SECONDS.toNanos(5);
+    private static final int MAX_BACKOFF_DOUBLINGS = 5;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final MessageIdAllocator idAllocator;
+    private final OutboxRepository outbox;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final boolean enabled;
+    private final Path journalPath;
+    private final Path deadLetterPath;
+    private final boolean fsync;
+    private final int batchSize;
+    private final long pollMillis;
+    private final long segmentBytes;
+    private final int maxAttempts;
+    private final long retryBackoffMillis;
+
+    private final BlockingQueue<Entry> queue;
+    private final Map<Long, List<ChatMessage>> pendingBySession = new ConcurrentHashMap<>();
+    private final Object journalLock = new Object();
+    private final Object flushLock = new Object();
+    private final Object deadLetterLock = new Object();
+    // Unflushed messages per journal segment; guarded by journalLock
+    private final TreeMap<Long, Integer> segments = new TreeMap<>();
+    private long segment;
+    private FileChannel journal;
+
+    private final AtomicLong appended = new AtomicLong();
+    private final AtomicLong flushed = new AtomicLong();
+    private final AtomicLong flushBatches = new AtomicLong();
+    private final AtomicLong flushFailures = new AtomicLong();
+    private final AtomicLong deadLettered = new AtomicLong();
+    // Rows that could be neither written nor dead-lettered; their journal file must stay
+    private final AtomicLong deadLetterFailures = new AtomicLong();
+    private final AtomicLong syncFallbacks = new AtomicLong();
+    private final AtomicLong flushNanosTotal = new AtomicLong();
+    private volatile long lastFlushNanos;
+
+    private volatile boolean running;
+    private Thread writer;
+
+    public MessageWriteBehindQueue(JdbcTemplate jdbcTemplate,
+                                   MessageIdAllocator idAllocator,
+                                   OutboxRepository outbox,
+                                   PlatformTransactionManager transactionManager,
+                                   ObjectMapper objectMapper,
+                                   @Value("${chat.write-behind.enabled:false}") boolean enabled,
+                                   @Value("${chat.write-behind.journal-path:data/write-behind.journal}") String journalPath,
+                                   @Value("${chat.write-behind.fsync:true}") boolean fsync,
+                                   @Value("${chat.write-behind.queue-capacity:50000}") int queueCapacity,
+                                   @Value("${chat.write-behind.batch-size:500}") int batchSize,
+                                   @Value("${chat.write-behind.poll-ms:50}") long pollMillis,
+                                   @Value("${chat.write-behind.segment-bytes:16777216}") long segmentBytes,
+                                   @Value("${chat.write-behind.max-attempts:5}") int maxAttempts,
+                                   @Value("${chat.write-behind.retry-backoff-ms:1000}") long retryBackoffMillis) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.idAllocator = idAllocator;
+        this.outbox = outbox;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.objectMapper = objectMapper;
+        this.enabled = enabled;
+        this.journalPath = Paths.get(journalPath);
+        this.deadLetterPath = Paths.get(journalPath + ".dead");
+        this.fsync = fsync;
+        this.batchSize = batchSize;
+        this.pollMillis = pollMillis;
+        this.segmentBytes = Math.max(1, segmentBytes);
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.retryBackoffMillis = retryBackoffMillis;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        if (journalPath.getParent() != null) {
+            Files.createDirectories(journalPath.getParent());
+        }
+        replayDeadLetters();
+        long last = replayJournal();
+        synchronized (journalLock) {
+            openSegment(last + 1);
+        }
+
+        running = true;
+        writer = new Thread(this::run, "message-write-behind");
+        writer.setDaemon(true);
+        writer.start();
+        log.info("Write-behind enabled, journal at {}", journalPath.toAbsolutePath());
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException, IOException {
+        running = false;
+        if (writer == null) {
+            return;
+        }
+        writer.interrupt();
+        writer.join(TimeUnit.SECONDS.toMillis(5));
+        // Anything this cannot flush stays in the journal for the next start
+        flushAll();
+        synchronized (journalLock) {
+            journal.close();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Journal and queue a message. Returns false when the queue is full, in which case
+     * the caller should write the message synchronously.
+     */
+    public boolean append(ChatMessage message) {
+        if (!enabled) {
+            return false;
+        }
+        message.setId(idAllocator.next());
+
+        try {
+            byte[] line = (objectMapper.writeValueAsString(message) + "\n").getBytes(StandardCharsets.UTF_8);
+            // Only appenders add to the queue and they serialize here, so capacity checked
+            // under the lock is still there when we offer
+            synchronized (journalLock) {
+                if (queue.remainingCapacity() == 0) {
+                    message.setId(null);
+                    syncFallbacks.incrementAndGet();
+                    return false;
+                }
+                if (journal.size() >= segmentBytes) {
+                    journal.close();
+                    openSegment(segment + 1);
+                    deleteDrainedSegments();
+                }
+                ByteBuffer buffer = ByteBuffer.wrap(line);
+                while (buffer.hasRemaining()) {
+                    journal.write(buffer);
+                }
+                if (fsync) {
+                    journal.force(false);
+                }
+                segments.merge(segment, 1, Integer::sum);
+                pendingBySession.computeIfAbsent(message.getSessionId(), s -> new CopyOnWriteArrayList<>()).add(message);
+                queue.offer(new Entry(message, segment));
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to journal message: " + e.getMessage(), e);
+        }
+        appended.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Messages of a session that are queued but not yet in Postgres, oldest first
+     */
+    public List<ChatMessage> pendingFor(Long sessionId) {
+        List<ChatMessage> pending = pendingBySession.get(sessionId);
+        if (pending == null || pending.isEmpty()) {
+            return List.of();
+        }
+        List<ChatMessage> copy = new ArrayList<>(pending);
+        copy.sort(Comparator.comparing(ChatMessage::getTimestamp).thenComparing(ChatMessage::getId));
+        return copy;
+    }
+
+    /**
+     * Wait up to five seconds for the writer to make every queued message of the session
+     * visible to database reads; returns false if some are still queued. The caller's
+     * thread never writes to the database itself.
+     */
+    public boolean flushSession(Long sessionId) {
+        long deadline = System.nanoTime() + FLUSH_WAIT_NANOS;
+        synchronized (flushLock) {
+            while (pendingBySession.containsKey(sessionId)) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    log.warn("Write-behind messages of session {} not flushed within {} ms", sessionId,
+                            TimeUnit.NANOSECONDS.toMillis(FLUSH_WAIT_NANOS));
+                    return false;
+                }
+                try {
+                    TimeUnit.NANOSECONDS.timedWait(flushLock, remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Drop queued messages of a deleted session
+     */
+    public void discardSession(Long sessionId) {
+        List<ChatMessage> pending = pendingBySession.remove(sessionId);
+        if (pending == null) {
+            return;
+        }
+        List<Entry> removed = new ArrayList<>();
+        queue.removeIf(entry -> {
+            if (sessionId.equals(entry.message().getSessionId())) {
+                removed.add(entry);
+                return true;
+            }
+            return false;
+        });
+        release(removed);
+    }
+
+    public WriteBehindStats getStats() {
+        long batches = flushBatches.get();
+        long journalBytes = 0;
+        int journalSegments = 0;
+        synchronized (journalLock) {
+            for (Long seg : segments.keySet()) {
+                try {
+                    journalBytes += Files.size(segmentPath(seg));
+                    journalSegments++;
+                } catch (IOException e) {
+                    log.debug("Could not read journal segment size: {}", e.getMessage());
+                }
+            }
+        }
+        return WriteBehindStats.builder()
+                .enabled(enabled)
+                .queueDepth(queue.size())
+                .appended(appended.get())
+                .flushed(flushed.get())
+                .flushBatches(batches)
+                .flushFailures(flushFailures.get())
+                .deadLettered(deadLettered.get())
+                .syncFallbacks(syncFallbacks.get())
+                .lastFlushMillis(lastFlushNanos / 1_000_000.0)
+                .avgFlushMillis(batches == 0 ? 0.0 : flushNanosTotal.get() / 1_000_000.0 / batches)
+                .journalBytes(journalBytes)
+                .journalSegments(journalSegments)
+                .build();
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                Entry first = queue.poll(pollMillis, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    List<Entry> batch = new ArrayList<>(batchSize);
+                    batch.add(first);
+                    queue.drainTo(batch, batchSize - 1);
+                    if (!flush(batch)) {
+                        // Interrupted while backing off; the batch stays in the journal
+                        return;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void flushAll() {
+        List<Entry> batch = new ArrayList<>(batchSize);
+        while (queue.drainTo(batch, batchSize) > 0) {
+            if (!flush(batch)) {
+                return;
+            }
+            batch = new ArrayList<>(batchSize);
+        }
+    }
+
+    /**
+     * Insert a batch, retrying failures a bounded number of times with backoff. Rows the
+     * database rejects are isolated by splitting the batch and dead-lettered one by one.
+     * Returns false only when interrupted, leaving the batch to the journal.
+     */
+    private boolean flush(List<Entry> batch) {
+        for (int attempt = 1; ; attempt++) {
+            long start = System.nanoTime();
+            try {
+                insert(batch.stream().map(Entry::message).toList());
+            } catch (RuntimeException e) {
+                flushFailures.incrementAndGet();
+                if (rejected(e)) {
+                    if (batch.size() == 1) {
+                        deadLetter(batch, e);
+                        return true;
+                    }
+                    int half = batch.size() / 2;
+                    return flush(batch.subList(0, half)) && flush(batch.subList(half, batch.size()));
+                }
+                if (attempt >= maxAttempts) {
+                    log.error("Write-behind flush of {} messages failed {} times, dead-lettering: {}",
+                            batch.size(), attempt, e.getMessage());
+                    deadLetter(batch, e);
+                    return true;
+                }
+                long backoff = retryBackoffMillis << Math.min(attempt - 1, MAX_BACKOFF_DOUBLINGS);
+                log.warn("Write-behind flush of {} messages failed, retrying in {} ms: {}",
+                        batch.size(), backoff, e.getMessage());
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+                continue;
+            }
+            long elapsed = System.nanoTime() - start;
+            lastFlushNanos = elapsed;
+            flushNanosTotal.addAndGet(elapsed);
+            flushBatches.incrementAndGet();
+            flushed.addAndGet(batch.size());
+            complete(batch);
+            release(batch);
+            return true;
+        }
+    }
+
+    /**
+     * Whether the database refused the rows themselves, so retrying the same rows cannot help
+     */
+    private static boolean rejected(RuntimeException e) {
+        return e instanceof DataIntegrityViolationException || !(e instanceof DataAccessException);
+    }
+
+    private void insert(List<ChatMessage> batch) {
+        transactionTemplate.executeWithoutResult(status -> {
+            int[][] counts = jdbcTemplate.batchUpdate(INSERT_SQL, batch, batch.size(),
+                    (ps, msg) -> {
+                        ps.setLong(1, msg.getId());
+                        ps.setLong(2, msg.getSessionId());
+                        ps.setObject(3, msg.getSeq());
+                        ps.setString(4, msg.getSender());
+                        ps.setString(5, msg.getContent());
+                        ps.setString(6, msg.getContext());
+                        ps.setString(7, msg.getContextRef());
+                        ps.setString(8, msg.getContentRef());
+                        ps.setTimestamp(9, new Timestamp(msg.getTimestamp().getTime()));
+                        ps.setLong(10, msg.getSessionId());
+                    });
+            applyStats(batch, counts);
+            // A replayed journal entry may emit its event again; delivery is at-least-once anyway
+            outbox.messagesAdded(batch);
+        });
+    }
+
+    /**
+     * Adds only rows that were actually inserted to the session statistics, so a
+     * replayed journal entry that hits ON CONFLICT is not counted twice.
+     */
+    private void applyStats(List<ChatMessage> batch, int[][] counts) {
+        List<ChatMessage> inserted = new ArrayList<>(batch.size());
+        int i = 0;
+        for (int[] chunk : counts) {
+            for (int count : chunk) {
+                if (count > 0) {
+                    inserted.add(batch.get(i));
+                }
+                i++;
+            }
+        }
+        SessionStatsDelta.of(inserted).forEach((sessionId, delta) -> jdbcTemplate.update(STATS_SQL,
+                delta.getMessageCount(),
+                new Timestamp(delta.getLastMessageAt().getTime()),
+                new Timestamp(delta.getLastMessageAt().getTime()),
+                delta.getPromptTokens(),
+                delta.getCompletionTokens(),
+                sessionId));
+    }
+
+    /**
+     * Set rows aside durably so they stop holding up their session and their journal segment
+     */
+    private void deadLetter(List<Entry> batch, RuntimeException cause) {
+        deadLettered.addAndGet(batch.size());
+        try {
+            synchronized (deadLetterLock) {
+                try (FileChannel file = FileChannel.open(deadLetterPath, StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                    for (Entry entry : batch) {
+                        ByteBuffer line = ByteBuffer.wrap((objectMapper.writeValueAsString(entry.message()) + "\n")
+                                .getBytes(StandardCharsets.UTF_8));
+                        while (line.hasRemaining()) {
+                            file.write(line);
+                        }
+                        log.error("Dead-lettered write-behind message {} of session {}: {}",
+                                entry.message().getId(), entry.message().getSessionId(), cause.getMessage());
+                    }
+                    file.force(false);
+                }
+            }
+        } catch (IOException e) {
+            // Keep the journal segment, so the rows are replayed at the next start
+            deadLetterFailures.addAndGet(batch.size());
+            log.error("Could not write {} messages to {}, leaving them in the journal: {}", batch.size(),
+                    deadLetterPath, e.getMessage());
+            complete(batch);
+            return;
+        }
+        complete(batch);
+        release(batch);
+    }
+
+    /**
+     * The rows no longer wait in the queue; wake readers waiting for their session
+     */
+    private void complete(List<Entry> batch) {
+        for (Entry entry : batch) {
+            ChatMessage msg = entry.message();
+            pendingBySession.computeIfPresent(msg.getSessionId(), (id, pending) -> {
+                pending.remove(msg);
+                return pending.isEmpty() ? null : pending;
+            });
+        }
+        synchronized (flushLock) {
+            flushLock.notifyAll();
+        }
+    }
+
+    /**
+     * Count rows out of their journal segments and delete segments left with none
+     */
+    private void release(List<Entry> batch) {
+        synchronized (journalLock) {
+            for (Entry entry : batch) {
+                segments.computeIfPresent(entry.segment(), (seg, count) -> count - 1);
+            }
+            deleteDrainedSegments();
+        }
+    }
+
+    private void deleteDrainedSegments() {
+        segments.entrySet().removeIf(e -> {
+            if (e.getValue() > 0) {
+                return false;
+            }
+            try {
+                if (e.getKey() == segment) {
+                    // The open segment is reused from the start rather than deleted
+                    journal.truncate(0);
+                    journal.position(0);
+                    return false;
+                }
+                Files.deleteIfExists(segmentPath(e.getKey()));
+                return true;
+            } catch (IOException ex) {
+                log.warn("Could not remove write-behind journal segment {}: {}", e.getKey(), ex.getMessage());
+                return false;
+            }
+        });
+    }
+
+    private void openSegment(long seg) throws IOException {
+        segment = seg;
+        journal = FileChannel.open(segmentPath(seg), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        segments.put(seg, 0);
+    }
+
+    private Path segmentPath(long seg) {
+        return Paths.get(String.format("%s.%06d", journalPath, seg));
+    }
+
+    /**
+     * Replay every journal segment left by the previous run, oldest first, and delete it
+     * unless some of its rows could not be set aside; returns the highest segment number found
+     */
+    private long replayJournal() throws IOException {
+        TreeMap<Long, Path> found = new TreeMap<>();
+        // A journal written before segmenting sorts first
+        if (Files.exists(journalPath)) {
+            found.put(-1L, journalPath);
+        }
+        Path dir = journalPath.toAbsolutePath().getParent();
+        String prefix = journalPath.getFileName() + ".";
+        try (Stream<Path> files = Files.list(dir)) {
+            files.forEach(file -> {
+                String name = file.getFileName().toString();
+                if (name.startsWith(prefix) && name.substring(prefix.length()).matches("\\d+")) {
+                    found.put(Long.parseLong(name.substring(prefix.length())), file);
+                }
+            });
+        }
+        for (Path file : found.values()) {
+            long failures = deadLetterFailures.get();
+            int replayed = replay(file);
+            if (deadLetterFailures.get() != failures) {
+                log.error("Keeping {} for the next start: {} of its messages were neither written nor dead-lettered",
+                        file, deadLetterFailures.get() - failures);
+                continue;
+            }
+            Files.delete(file);
+            if (replayed > 0) {
+                log.info("Replayed {} journaled messages from {}", replayed, file);
+            }
+        }
+        return found.isEmpty() ? 0 : Math.max(0, found.lastKey());
+    }
+
+    /**
+     * Retry dead-lettered rows once per start; rows failing again are dead-lettered again
+     */
+    private void replayDeadLetters() throws IOException {
+        Path replaying = Paths.get(deadLetterPath + ".replay");
+        if (Files.exists(deadLetterPath) && !Files.exists(replaying)) {
+            Files.move(deadLetterPath, replaying, StandardCopyOption.ATOMIC_MOVE);
+        }
+        if (Files.exists(replaying)) {
+            long failures = deadLetterFailures.get();
+            int replayed = replay(replaying);
+            if (deadLetterFailures.get() != failures) {
+                log.error("Keeping {} for the next start: dead-lettered messages could not be set aside again",
+                        replaying);
+                return;
+            }
+            Files.delete(replaying);
+            log.info("Retried {} dead-lettered messages, {} failed again", replayed, deadLettered.get());
+        }
+    }
+
+    private int replay(Path file) throws IOException {
+        List<Entry> batch = new ArrayList<>(batchSize);
+        int replayed = 0;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                try {
+                    batch.add(new Entry(objectMapper.readValue(line, ChatMessage.class), -1));
+                } catch (IOException e) {
+                    // A torn final line from a crash mid-write was never acknowledged
+                    log.warn("Skipping unreadable write-behind journal entry");
+                    continue;
+                }
+                if (batch.size() == batchSize) {
+                    replayBatch(batch);
+                    replayed += batch.size();
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            replayBatch(batch);
+            replayed += batch.size();
+        }
+        return replayed;
+    }
+
+    private void replayBatch(List<Entry> batch) {
+        if (!flush(batch)) {
+            throw new IllegalStateException("Interrupted while replaying the write-behind journal");
+        }
+    }
+
+    private record Entry(ChatMessage message, long segment) {
+    }
+}
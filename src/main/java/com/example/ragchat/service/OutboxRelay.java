@@ -0,0 +1,142 @@
+package com.example.ragchat.service;
+
+import com.example.ragchat.dto.OutboxStats;
+import com.example.ragchat.model.OutboxEvent;
+import com.example.ragchat.repository.OutboxRepository;
+import com.example.ragchat.repository.OutboxRepository.Offset;
+import com.example.ragchat.util.ShardContext;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Delivers outbox events to the configured sink, at least once and in order per shard.
+ *
+ * Each batch is one transaction: lock the consumer's offset row, fetch the next
+ * events in (txId, id) order, deliver them, advance the offset and delete what every
+ * consumer has received. A sink failure rolls the whole batch back so it is sent
+ * again after a backoff. The row lock lets several instances run the relay for the
+ * same consumer without delivering a batch twice in the normal case.
+ */
+@Service
+@Slf4j
+public class OutboxRelay {
+
+    private final OutboxRepository outbox;
+    private final OutboxSink sink;
+    private final ShardRouter shardRouter;
+    private final TransactionTemplate transactionTemplate;
+    private final String consumer;
+    private final int batchSize;
+    private final int maxBatchesPerPoll;
+    private final long maxBackoffMillis;
+
+    private volatile long retryAt;
+    private volatile long backoffMillis;
+    private volatile String lastError;
+
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private volatile long lastBatchNanos;
+
+    public OutboxRelay(OutboxRepository outbox,
+                       OutboxSink sink,
+                       ShardRouter shardRouter,
+                       PlatformTransactionManager transactionManager,
+                       @Value("${chat.outbox.consumer:default}") String consumer,
+                       @Value("${chat.outbox.batch-size:500}") int batchSize,
+                       @Value("${chat.outbox.max-batches-per-poll:20}") int maxBatchesPerPoll,
+                       @Value("${chat.outbox.max-backoff-ms:60000}") long maxBackoffMillis) {
+        this.outbox = outbox;
+        this.sink = sink;
+        this.shardRouter = shardRouter;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.consumer = consumer;
+        this.batchSize = batchSize;
+        this.maxBatchesPerPoll = maxBatchesPerPoll;
+        this.maxBackoffMillis = maxBackoffMillis;
+    }
+
+    @Scheduled(fixedDelayString = "${chat.outbox.poll-ms:500}")
+    public void relay() {
+        if (!outbox.isEnabled() || System.currentTimeMillis() < retryAt) {
+            return;
+        }
+        try {
+            shardRouter.forEachShard(this::relayShard);
+            backoffMillis = 0;
+        } catch (RuntimeException e) {
+            failures.incrementAndGet();
+            lastError = e.getMessage();
+            backoffMillis = Math.min(maxBackoffMillis, Math.max(1000, backoffMillis * 2));
+            retryAt = System.currentTimeMillis() + backoffMillis;
+            log.warn("Outbox delivery to {} failed, retrying in {} ms: {}", sink.name(), backoffMillis,
+                    e.getMessage());
+        }
+    }
+
+    private void relayShard() {
+        for (int i = 0; i < maxBatchesPerPoll; i++) {
+            Integer sent = transactionTemplate.execute(status -> deliverBatch());
+            if (sent == null || sent < batchSize) {
+                return;
+            }
+        }
+    }
+
+    private int deliverBatch() {
+        Optional<Offset> offset = outbox.lockOffset(consumer);
+        if (offset.isEmpty()) {
+            // Another instance is relaying this shard for the same consumer
+            return 0;
+        }
+        List<OutboxEvent> events = outbox.fetch(offset.get(), batchSize);
+        if (events.isEmpty()) {
+            return 0;
+        }
+        int shard = ShardContext.current();
+        events.forEach(event -> event.setShard(shard));
+
+        long start = System.nanoTime();
+        try {
+            sink.deliver(events);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        lastBatchNanos = System.nanoTime() - start;
+
+        outbox.commit(consumer, events.get(events.size() - 1), events.size());
+        outbox.deleteDelivered();
+        delivered.addAndGet(events.size());
+        batches.incrementAndGet();
+        return events.size();
+    }
+
+    public OutboxStats getStats() {
+        long[] backlog = new long[1];
+        if (outbox.isEnabled()) {
+            shardRouter.forEachShard(() -> backlog[0] += outbox.backlog());
+        }
+        return OutboxStats.builder()
+                .enabled(outbox.isEnabled())
+                .sink(sink.name())
+                .consumer(consumer)
+                .backlog(backlog[0])
+                .delivered(delivered.get())
+                .batches(batches.get())
+                .failures(failures.get())
+                .lastBatchMillis(lastBatchNanos / 1_000_000)
+                .lastError(lastError)
+                .build();
+    }
+}
@@ -0,0 +1,20 @@
+package com.example.ragchat.service;
+
+import com.example.ragchat.model.OutboxEvent;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Destination of the outbox relay, selected by chat.outbox.sink
+ */
+public interface OutboxSink {
+
+    String name();
+
+    /**
+     * Deliver a batch in order; returning normally means the batch is durably accepted.
+     * A failed batch is delivered again, so a batch may be seen more than once.
+     */
+    void deliver(List<OutboxEvent> events) throws IOException;
+}
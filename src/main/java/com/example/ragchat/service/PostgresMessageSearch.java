@@ -0,0 +1,73 @@
+package com.example.ragchat.service;
+
+import com.example.ragchat.dto.HistorySearchResult;
+import com.example.ragchat.dto.MessageSearchPage;
+import com.example.ragchat.util.SearchCursor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Full-text search backed by the generated content_tsv column and its GIN index.
+ *
+ * Matches are restricted to the user's live sessions, ranked with ts_rank_cd and
+ * paged by keyset on (rank, session_id, id). Only the rows of the returned page go
+ * through ts_headline, which is the expensive part.
+ */
+@Service
+@ConditionalOnProperty(name = "chat.search.backend", havingValue = "postgres", matchIfMissing = true)
+public class PostgresMessageSearch implements MessageSearchBackend {
+
+    private static final String SEARCH_SQL =
+            "SELECT p.id, p.session_id, p.sender, p.content, p.timestamp, p.rank, " +
+            "       ts_headline('english', p.content, p.query, ?) AS snippet " +
+            "FROM (SELECT m.id, m.session_id, m.sender, m.content, m.timestamp, q.query, " +
+            "             ts_rank_cd(m.content_tsv, q.query) AS rank " +
+            "      FROM chat_messages m CROSS JOIN (SELECT websearch_to_tsquery('english', ?) AS query) q " +
+            "      WHERE m.session_id IN (SELECT id FROM chat_sessions WHERE user_id = ? AND deleted_at IS NULL) " +
+            "        AND m.content_tsv @@ q.query " +
+            "        AND (ts_rank_cd(m.content_tsv, q.query), m.session_id, m.id) < (CAST(? AS real), ?, ?) " +
+            "      ORDER BY rank DESC, m.session_id DESC, m.id DESC " +
+            "      LIMIT ?) p " +
+            "ORDER BY p.rank DESC, p.session_id DESC, p.id DESC";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final String headlineOptions;
+
+    public PostgresMessageSearch(JdbcTemplate jdbcTemplate,
+                                 @Value("${chat.search.headline-options:StartSel=<mark>, StopSel=</mark>, MaxWords=35, MinWords=15, MaxFragments=2}") String headlineOptions) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.headlineOptions = headlineOptions;
+    }
+
+    @Override
+    public MessageSearchPage search(String userId, String query, SearchCursor after, int limit) {
+        // ts_rank_cd is a real; Float.MAX_VALUE keeps the first-page bound in range
+        double bound = after.score() == Double.MAX_VALUE ? Float.MAX_VALUE : after.score();
+        List<HistorySearchResult> rows = jdbcTemplate.query(SEARCH_SQL, (rs, i) -> HistorySearchResult.builder()
+                        .messageId(rs.getLong("id"))
+                        .sessionId(rs.getLong("session_id"))
+                        .sender(rs.getString("sender"))
+                        .content(rs.getString("content"))
+                        .snippet(rs.getString("snippet"))
+                        .timestamp(new Date(rs.getTimestamp("timestamp").getTime()))
+                        .score(rs.getFloat("rank"))
+                        .build(),
+                headlineOptions, query, userId, bound, after.sessionId(), after.messageId(), limit + 1);
+
+        String nextCursor = null;
+        if (rows.size() > limit) {
+            rows = rows.subList(0, limit);
+            HistorySearchResult last = rows.get(limit - 1);
+            nextCursor = new SearchCursor(last.getScore(), last.getSessionId(), last.getMessageId()).encode();
+        }
+        return MessageSearchPage.builder()
+                .results(rows)
+                .nextCursor(nextCursor)
+                .build();
+    }
+}
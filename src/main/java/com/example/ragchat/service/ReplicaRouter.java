@@ -0,0 +1,250 @@
+package com.example.ragchat.service;
+
+import com.example.ragchat.dto.ReplicaStats;
+import com.example.ragchat.dto.RoutingStats;
+import com.zaxxer.hikari.HikariDataSource;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Chooses the database for each new connection: the primary, or a read replica
+ * for reads wrapped in {@link #readSession} / {@link #readUser}.
+ *
+ * Replicas are polled for replay lag and skipped while unreachable or too far
+ * behind. A session or user written within the pin window keeps reading from the
+ * primary so a client always sees its own writes; the window widens with the
+ * observed lag.
+ */
+@Service
+@Slf4j
+public class ReplicaRouter {
+
+    // Zero when caught up; replay timestamp age alone would grow on an idle primary
+    private static final String LAG_SQL =
+            "SELECT CASE WHEN NOT pg_is_in_recovery() OR pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() " +
+            "THEN 0 ELSE COALESCE(EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()) * 1000, 0) END";
+
+    private final DataSource primary;
+    private final List<Replica> replicas = new ArrayList<>();
+    private final long pinMillis;
+    private final long maxLagMillis;
+
+    private final ThreadLocal<Boolean> replicaRead = new ThreadLocal<>();
+    private final Map<String, Long> recentWrites = new ConcurrentHashMap<>();
+    private final AtomicInteger nextReplica = new AtomicInteger();
+
+    private final AtomicLong primaryConnections = new AtomicLong();
+    private final AtomicLong pinnedReads = new AtomicLong();
+    private final AtomicLong fallbackReads = new AtomicLong();
+
+    private volatile long observedLagMillis;
+
+    public ReplicaRouter(@Qualifier("primaryDataSource") DataSource primary,
+                         @Value("${chat.datasource.replicas:}") List<String> replicaUrls,
+                         @Value("${spring.datasource.username:}") String username,
+                         @Value("${spring.datasource.password:}") String password,
+                         @Value("${chat.datasource.replica-pool-size:10}") int poolSize,
+                         @Value("${chat.datasource.pin-ms:5000}") long pinMillis,
+                         @Value("${chat.datasource.max-lag-ms:10000}") long maxLagMillis) {
+        this.primary = primary;
+        this.pinMillis = pinMillis;
+        this.maxLagMillis = maxLagMillis;
+        for (String url : replicaUrls) {
+            if (url.isBlank()) {
+                continue;
+            }
+            HikariDataSource pool = new HikariDataSource();
+            pool.setPoolName("replica-" + replicas.size());
+            pool.setJdbcUrl(url.trim());
+            pool.setUsername(username);
+            pool.setPassword(password);
+            pool.setMaximumPoolSize(poolSize);
+            pool.setReadOnly(true);
+            // Do not block startup on a replica that is down; the lag check marks it unhealthy
+            pool.setInitializationFailTimeout(-1);
+            addReplica(pool.getPoolName(), pool);
+        }
+        log.info("Read routing: {} replica(s), pin window {} ms, max lag {} ms", replicas.size(), pinMillis,
+                maxLagMillis);
+    }
+
+    /**
+     * Register a replica; it receives reads once a lag check has passed
+     */
+    void addReplica(String name, DataSource dataSource) {
+        replicas.add(new Replica(name, dataSource));
+    }
+
+    /**
+     * Run a read of one session, on a replica unless the session was written recently
+     */
+    public <T> T readSession(Long sessionId, Supplier<T> query) {
+        return read("s:" + sessionId, query);
+    }
+
+    /**
+     * Run a read of a user's sessions, on a replica unless the user wrote recently
+     */
+    public <T> T readUser(String userId, Supplier<T> query) {
+        return read("u:" + userId, query);
+    }
+
+    /**
+     * Pin a session and its owner to the primary for the pin window
+     */
+    public void recordWrite(Long sessionId, String userId) {
+        if (replicas.isEmpty()) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (sessionId != null) {
+            recentWrites.put("s:" + sessionId, now);
+        }
+        if (userId != null) {
+            recentWrites.put("u:" + userId, now);
+        }
+    }
+
+    private <T> T read(String key, Supplier<T> query) {
+        if (replicas.isEmpty()) {
+            return query.get();
+        }
+        Long writtenAt = recentWrites.get(key);
+        if (writtenAt != null && System.nanoTime() - writtenAt < pinWindowNanos()) {
+            pinnedReads.incrementAndGet();
+            return query.get();
+        }
+
+        Boolean previous = replicaRead.get();
+        replicaRead.set(Boolean.TRUE);
+        try {
+            return query.get();
+        } finally {
+            if (previous == null) {
+                replicaRead.remove();
+            } else {
+                replicaRead.set(previous);
+            }
+        }
+    }
+
+    /**
+     * Target for a new connection; called by the routing data source
+     */
+    public DataSource select() {
+        boolean writeTransaction = TransactionSynchronizationManager.isActualTransactionActive()
+                && !TransactionSynchronizationManager.isCurrentTransactionReadOnly();
+        if (Boolean.TRUE.equals(replicaRead.get()) && !writeTransaction) {
+            int size = replicas.size();
+            int start = Math.floorMod(nextReplica.getAndIncrement(), size);
+            for (int i = 0; i < size; i++) {
+                Replica replica = replicas.get((start + i) % size);
+                if (replica.healthy) {
+                    replica.routed.incrementAndGet();
+                    return replica.dataSource;
+                }
+            }
+            fallbackReads.incrementAndGet();
+        }
+        primaryConnections.incrementAndGet();
+        return primary;
+    }
+
+    @Scheduled(fixedDelayString = "${chat.datasource.lag-check-ms:1000}")
+    public void checkLag() {
+        long maxLag = 0;
+        for (Replica replica : replicas) {
+            boolean wasHealthy = replica.healthy;
+            try {
+                JdbcTemplate jdbc = new JdbcTemplate(replica.dataSource);
+                jdbc.setQueryTimeout(2);
+                Double lag = jdbc.queryForObject(LAG_SQL, Double.class);
+                replica.lagMillis = lag != null ? lag.longValue() : 0;
+                replica.healthy = replica.lagMillis <= maxLagMillis;
+            } catch (DataAccessException e) {
+                replica.healthy = false;
+                if (wasHealthy) {
+                    log.warn("Replica {} unavailable: {}", replica.name, e.getMessage());
+                }
+            }
+            if (replica.healthy) {
+                maxLag = Math.max(maxLag, replica.lagMillis);
+            } else if (wasHealthy) {
+                log.warn("Replica {} removed from read routing (lag {} ms)", replica.name, replica.lagMillis);
+            }
+        }
+        observedLagMillis = maxLag;
+
+        long window = pinWindowNanos();
+        long now = System.nanoTime();
+        recentWrites.values().removeIf(writtenAt -> now - writtenAt >= window);
+    }
+
+    private long pinWindowNanos() {
+        // Twice the observed lag leaves room for lag growing between checks
+        return TimeUnit.MILLISECONDS.toNanos(Math.max(pinMillis, 2 * observedLagMillis));
+    }
+
+    public RoutingStats getStats() {
+        List<ReplicaStats> replicaStats = new ArrayList<>();
+        long replicaConnections = 0;
+        for (Replica replica : replicas) {
+            long routed = replica.routed.get();
+            replicaConnections += routed;
+            replicaStats.add(ReplicaStats.builder()
+                    .name(replica.name)
+                    .healthy(replica.healthy)
+                    .lagMillis(replica.lagMillis)
+                    .routedReads(routed)
+                    .build());
+        }
+        return RoutingStats.builder()
+                .primaryConnections(primaryConnections.get())
+                .replicaConnections(replicaConnections)
+                .pinnedReads(pinnedReads.get())
+                .fallbackReads(fallbackReads.get())
+                .pinWindowMillis(TimeUnit.NANOSECONDS.toMillis(pinWindowNanos()))
+                .pinnedKeys(recentWrites.size())
+                .replicas(replicaStats)
+                .build();
+    }
+
+    @PreDestroy
+    public void close() {
+        for (Replica replica : replicas) {
+            if (replica.dataSource instanceof HikariDataSource pool) {
+                pool.close();
+            }
+        }
+    }
+
+    private static final class Replica {
+        final String name;
+        final DataSource dataSource;
+        final AtomicLong routed = new AtomicLong();
+        volatile boolean healthy;
+        volatile long lagMillis;
+
+        Replica(String name, DataSource dataSource) {
+            this.name = name;
+            this.dataSource = dataSource;
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package com.example.ragchat.service;
+
+import com.example.ragchat.model.KnowledgeChunk;
+import com.example.ragchat.util.TextVectors;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process store of knowledge chunks available for retrieval.
+ *
+ * Chunks are kept with a normalized term vector and an inverted index; search pulls
+ * candidates from the postings of the query terms and ranks them by cosine similarity.
+ * Postings are partitioned by scope: shared knowledge lives in the global scope and
+ * chat history in one scope per user, so a search never sees another user's messages.
+ *
+ * Chat history is bounded: past the limit the least recently indexed messages are
+ * evicted. A message is indexed at most once, so re-indexing it replaces its chunk.
+ * Postings and session sets are dropped as soon as they become empty.
+ */
+@Service
+@Slf4j
+public class RetrievalIndex {
+
+    private static final String GLOBAL_SCOPE = "";
+
+    private final Map<Long, KnowledgeChunk> chunks = new ConcurrentHashMap<>();
+    private final Map<Long, Map<String, Double>> vectors = new ConcurrentHashMap<>();
+    private final Map<String, Map<String, Set<Long>>> postingsByScope = new ConcurrentHashMap<>();
+    private final Map<Long, Set<Long>> sessionChunks = new ConcurrentHashMap<>();
+    private final Map<Long, Long> messageChunks = new ConcurrentHashMap<>();
+    // History chunk IDs in indexing order, for eviction; guarded by itself
+    private final Map<Long, Boolean> historyOrder = new LinkedHashMap<>();
+    private final int maxHistoryChunks;
+    private final AtomicLong idSequence = new AtomicLong();
+    private final AtomicLong storedBytes = new AtomicLong();
+    private final AtomicLong version = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public RetrievalIndex(@Value("${history.index.max-chunks:200000}") int maxHistoryChunks) {
+        this.maxHistoryChunks = maxHistoryChunks;
+    }
+
+    public long nextChunkId() {
+        return idSequence.incrementAndGet();
+    }
+
+    /**
+     * Add a chunk to the index
+     */
+    public void add(KnowledgeChunk chunk) {
+        remove(chunk.getId());
+        if (chunk.getMessageId() != null) {
+            Long previous = messageChunks.put(chunk.getMessageId(), chunk.getId());
+            if (previous != null) {
+                remove(previous);
+            }
+        }
+
+        Map<String, Double> vector = TextVectors.vectorize(chunk.getText());
+        chunks.put(chunk.getId(), chunk);
+        vectors.put(chunk.getId(), vector);
+        postingsByScope.compute(scopeOf(chunk), (scope, postings) -> {
+            Map<String, Set<Long>> target = postings != null ? postings : new ConcurrentHashMap<>();
+            for (String term : vector.keySet()) {
+                target.compute(term, (t, ids) -> {
+                    Set<Long> set = ids != null ? ids : ConcurrentHashMap.newKeySet();
+                    set.add(chunk.getId());
+                    return set;
+                });
+            }
+            return target;
+        });
+        if (chunk.getSessionId() != null) {
+            sessionChunks.compute(chunk.getSessionId(), (s, ids) -> {
+                Set<Long> set = ids != null ? ids : ConcurrentHashMap.newKeySet();
+                set.add(chunk.getId());
+                return set;
+            });
+        }
+        storedBytes.addAndGet(sizeOf(chunk));
+        bumpVersion(chunk);
+        if (chunk.getUserId() != null) {
+            evictBeyondLimit(chunk.getId());
+        }
+    }
+
+    private void evictBeyondLimit(Long added) {
+        List<Long> evicted = new ArrayList<>();
+        synchronized (historyOrder) {
+            historyOrder.put(added, Boolean.TRUE);
+            Iterator<Long> oldest = historyOrder.keySet().iterator();
+            while (historyOrder.size() - evicted.size() > maxHistoryChunks && oldest.hasNext()) {
+                evicted.add(oldest.next());
+            }
+        }
+        for (Long id : evicted) {
+            remove(id);
+            evictions.incrementAndGet();
+        }
+    }
+
+    public Optional<KnowledgeChunk> get(Long chunkId) {
+        return Optional.ofNullable(chunks.get(chunkId));
+    }
+
+    /**
+     * Remove a chunk from the index
+     */
+    public void remove(Long chunkId) {
+        KnowledgeChunk removed = chunks.remove(chunkId);
+        if (removed == null) {
+            return;
+        }
+        Map<String, Double> vector = vectors.remove(chunkId);
+        if (vector != null) {
+            postingsByScope.computeIfPresent(scopeOf(removed), (scope, postings) -> {
+                for (String term : vector.keySet()) {
+                    postings.computeIfPresent(term, (t, ids) -> {
+                        ids.remove(chunkId);
+                        return ids.isEmpty() ? null : ids;
+                    });
+                }
+                return postings.isEmpty() ? null : postings;
+            });
+        }
+        if (removed.getSessionId() != null) {
+            sessionChunks.computeIfPresent(removed.getSessionId(), (s, ids) -> {
+                ids.remove(chunkId);
+                return ids.isEmpty() ? null : ids;
+            });
+        }
+        if (removed.getMessageId() != null) {
+            messageChunks.remove(removed.getMessageId(), chunkId);
+        }
+        if (removed.getUserId() != null) {
+            synchronized (historyOrder) {
+                historyOrder.remove(chunkId);
+            }
+        }
+        storedBytes.addAndGet(-sizeOf(removed));
+        bumpVersion(removed);
+    }
+
+    /**
+     * Remove every indexed message of a session
+     */
+    public int removeSession(Long sessionId) {
+        Set<Long> ids = sessionChunks.get(sessionId);
+        if (ids == null) {
+            return 0;
+        }
+        List<Long> removed = new ArrayList<>(ids);
+        for (Long id : removed) {
+            remove(id);
+        }
+        return removed.size();
+    }
+
+    /**
+     * Rank shared knowledge chunks by cosine similarity to the query
+     */
+    public List<ScoredChunk> search(String query, int limit) {
+        return search(GLOBAL_SCOPE, query, limit);
+    }
+
+    /**
+     * Rank a user's indexed chat messages by cosine similarity to the query
+     */
+    public List<ScoredChunk> searchUserHistory(String userId, String query, int limit) {
+        return search(userScope(userId), query, limit);
+    }
+
+    private List<ScoredChunk> search(String scope, String query, int limit) {
+        Map<String, Set<Long>> postings = postingsByScope.get(scope);
+        if (postings == null) {
+            return new ArrayList<>();
+        }
+        Map<String, Double> queryVector = TextVectors.vectorize(query);
+
+        Set<Long> candidates = new HashSet<>();
+        for (String term : queryVector.keySet()) {
+            Set<Long> ids = postings.get(term);
+            if (ids != null) {
+                candidates.addAll(ids);
+            }
+        }
+
+        List<ScoredChunk> results = new ArrayList<>(candidates.size());
+        for (Long id : candidates) {
+            KnowledgeChunk chunk = chunks.get(id);
+            Map<String, Double> vector = vectors.get(id);
+            if (chunk != null && vector != null) {
+                results.add(new ScoredChunk(chunk, vector, TextVectors.cosine(queryVector, vector)));
+            }
+        }
+        results.sort(Comparator.comparingDouble(ScoredChunk::score).reversed());
+        return results.size() > limit ? new ArrayList<>(results.subList(0, limit)) : results;
+    }
+
+    public Collection<KnowledgeChunk> all() {
+        return chunks.values();
+    }
+
+    public int size() {
+        return chunks.size();
+    }
+
+    public long storedBytes() {
+        return storedBytes.get();
+    }
+
+    /**
+     * History chunks evicted to stay within the limit
+     */
+    public long evictions() {
+        return evictions.get();
+    }
+
+    /**
+     * Monotonic counter bumped on every change to the shared knowledge corpus
+     */
+    public long version() {
+        return version.get();
+    }
+
+    private void bumpVersion(KnowledgeChunk chunk) {
+        if (chunk.getUserId() == null) {
+            version.incrementAndGet();
+        }
+    }
+
+    private static String scopeOf(KnowledgeChunk chunk) {
+        return chunk.getUserId() == null ? GLOBAL_SCOPE : userScope(chunk.getUserId());
+    }
+
+    private static String userScope(String userId) {
+        return "user:" + userId;
+    }
+
+    static long sizeOf(KnowledgeChunk chunk) {
+        return chunk.getText().getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    public record ScoredChunk(KnowledgeChunk chunk, Map<String, Double> vector, double score) {
+    }
+}
@@ -0,0 +1,169 @@
+package com.example.ragchat.service;
+
+import com.example.ragchat.dto.CacheStats;
+import com.example.ragchat.model.ChatSession;
+import com.example.ragchat.model.SessionMetadata;
+import com.example.ragchat.repository.ChatSessionRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded LRU cache of session metadata, including negative entries for missing IDs.
+ *
+ * Entries expire after a TTL so that changes made by other instances are picked up
+ * even without explicit invalidation; local mutations invalidate immediately.
+ *
+ * A miss stamps a loading entry with a new generation before reading the database,
+ * and the loaded value is installed only if that entry is still in place. An
+ * invalidation or put that lands while the load runs replaces or removes it, so a
+ * value read before the change can never be cached after it.
+ */
+@Service
+@Slf4j
+public class SessionMetadataCache {
+
+    private final ChatSessionRepository sessionRepo;
+    private final boolean enabled;
+    private final long ttlNanos;
+    private final long negativeTtlNanos;
+    private final Map<Long, Entry> entries;
+    // Guarded by entries
+    private long generation;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong negativeHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public SessionMetadataCache(ChatSessionRepository sessionRepo,
+                                @Value("${session.cache.enabled:true}") boolean enabled,
+                                @Value("${session.cache.max-size:100000}") int maxSize,
+                                @Value("${session.cache.ttl-seconds:300}") long ttlSeconds,
+                                @Value("${session.cache.negative-ttl-seconds:30}") long negativeTtlSeconds) {
+        this.sessionRepo = sessionRepo;
+        this.enabled = enabled;
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+        this.negativeTtlNanos = TimeUnit.SECONDS.toNanos(negativeTtlSeconds);
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+                if (size() > maxSize) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Look up session metadata, loading from the database on a miss
+     */
+    public Optional<SessionMetadata> get(Long sessionId) {
+        if (!enabled) {
+            return load(sessionId);
+        }
+
+        long now = System.nanoTime();
+        synchronized (entries) {
+            Entry entry = entries.get(sessionId);
+            if (entry != null && entry.expiresAt - now > 0) {
+                if (entry.metadata == null) {
+                    negativeHits.incrementAndGet();
+                    return Optional.empty();
+                }
+                hits.incrementAndGet();
+                return Optional.of(entry.metadata);
+            }
+        }
+
+        misses.incrementAndGet();
+        Entry loading;
+        synchronized (entries) {
+            loading = new Entry(null, now, ++generation);
+            entries.put(sessionId, loading);
+        }
+        Optional<SessionMetadata> loaded = load(sessionId);
+        synchronized (entries) {
+            Entry current = entries.get(sessionId);
+            if (current != null && current.generation == loading.generation) {
+                entries.put(sessionId, new Entry(loaded.orElse(null),
+                        now + (loaded.isPresent() ? ttlNanos : negativeTtlNanos), loading.generation));
+            }
+        }
+        return loaded;
+    }
+
+    // Tombstoned sessions are treated as gone while their rows are purged
+    private Optional<SessionMetadata> load(Long sessionId) {
+        return sessionRepo.findById(sessionId)
+                .filter(session -> session.getDeletedAt() == null)
+                .map(SessionMetadata::of);
+    }
+
+    public boolean exists(Long sessionId) {
+        return get(sessionId).isPresent();
+    }
+
+    /**
+     * Record the current state of a session this instance just wrote
+     */
+    public void put(ChatSession session) {
+        if (!enabled) {
+            return;
+        }
+        synchronized (entries) {
+            entries.put(session.getId(), new Entry(SessionMetadata.of(session), System.nanoTime() + ttlNanos,
+                    ++generation));
+        }
+    }
+
+    public void invalidate(Long sessionId) {
+        if (!enabled) {
+            return;
+        }
+        synchronized (entries) {
+            entries.remove(sessionId);
+        }
+        invalidations.incrementAndGet();
+    }
+
+    public void invalidateAll() {
+        if (!enabled) {
+            return;
+        }
+        synchronized (entries) {
+            entries.clear();
+        }
+        invalidations.incrementAndGet();
+    }
+
+    public CacheStats getStats() {
+        int size;
+        synchronized (entries) {
+            size = entries.size();
+        }
+        return CacheStats.builder()
+                .size(size)
+                .hits(hits.get())
+                .negativeHits(negativeHits.get())
+                .misses(misses.get())
+                .evictions(evictions.get())
+                .invalidations(invalidations.get())
+                .build();
+    }
+
+    /**
+     * A cached value; while its load runs an entry is already expired and holds no value
+     */
+    private record Entry(SessionMetadata metadata, long expiresAt, long generation) {
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.ragchat.service;
+
+import com.example.ragchat.repository.MessageStore;
+import com.example.ragchat.repository.ChatSessionRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+
+/**
+ * Background purge of tombstoned sessions.
+ *
+ * Messages are deleted in fixed-size chunks, each in its own short transaction, so
+ * removing a huge session never holds locks for long; the session row goes last.
+ * Purging resumes from wherever it stopped, since tombstones live in the database.
+ */
+@Service
+@Slf4j
+public class SessionPurger {
+
+    private final ChatSessionRepository sessionRepo;
+    private final MessageStore messageStore;
+    private final ShardRouter shardRouter;
+    private final int chunkSize;
+    private final int sessionsPerRun;
+
+    public SessionPurger(ChatSessionRepository sessionRepo,
+                         MessageStore messageStore,
+                         ShardRouter shardRouter,
+                         @Value("${session.delete.purge-chunk-size:5000}") int chunkSize,
+                         @Value("${session.delete.purge-sessions-per-run:10}") int sessionsPerRun) {
+        this.sessionRepo = sessionRepo;
+        this.messageStore = messageStore;
+        this.shardRouter = shardRouter;
+        this.chunkSize = Math.max(1, chunkSize);
+        this.sessionsPerRun = Math.max(1, sessionsPerRun);
+    }
+
+    @Scheduled(fixedDelayString = "${session.delete.purge-interval-ms:5000}")
+    public void purge() {
+        shardRouter.forEachShard(this::purgeShard);
+    }
+
+    private void purgeShard() {
+        List<Long> sessionIds = sessionRepo.findTombstonedIds(sessionsPerRun);
+        for (Long sessionId : sessionIds) {
+            try {
+                purgeSession(sessionId);
+            } catch (RuntimeException e) {
+                log.error("Failed to purge session {}, will retry", sessionId, e);
+            }
+        }
+    }
+
+    void purgeSession(Long sessionId) {
+        long purged = 0;
+        int deleted;
+        do {
+            deleted = messageStore.deleteChunk(sessionId, chunkSize);
+            purged += deleted;
+        } while (deleted == chunkSize);
+        sessionRepo.deleteTombstoned(sessionId);
+        log.info("Purged tombstoned session {} ({} messages)", sessionId, purged);
+    }
+}
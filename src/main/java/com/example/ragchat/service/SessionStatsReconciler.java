@@ -0,0 +1,138 @@
+package com.example.ragchat.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Collection;
+
+/**
+ * Background repair of the denormalized session statistics.
+ *
+ * The write path keeps the counters current; this job recomputes them from
+ * chat_messages in session-id ranges and rewrites only rows that have drifted,
+ * e.g. after messages were removed outside the service or a write-behind flush
+ * could not report per-row results. Archived sessions are skipped, since their
+ * messages are not in chat_messages.
+ *
+ * Each recount runs under the session row locks: the rows are locked by one
+ * statement and recounted by the next, whose snapshot then includes every message
+ * whose counter increment committed first. Writers that come later wait for the
+ * repair and apply their increment on top of it.
+ */
+@Service
+@Slf4j
+public class SessionStatsReconciler {
+
+    private static final String RECONCILE_TEMPLATE =
+            "UPDATE chat_sessions s " +
+            "SET message_count = a.cnt, last_message_at = a.last_at, " +
+            "    prompt_tokens = a.prompt, completion_tokens = a.completion " +
+            "FROM (SELECT cs.id, " +
+            "             COUNT(m.id) AS cnt, " +
+            "             MAX(m.timestamp) AS last_at, " +
+            "             COALESCE(SUM((LENGTH(m.content) + 3) / 4) FILTER (WHERE m.sender <> 'assistant'), 0) AS prompt, " +
+            "             COALESCE(SUM((LENGTH(m.content) + 3) / 4) FILTER (WHERE m.sender = 'assistant'), 0) AS completion " +
+            "      FROM chat_sessions cs LEFT JOIN chat_messages m ON m.session_id = cs.id " +
+            "      WHERE %s AND cs.archived_at IS NULL " +
+            "      GROUP BY cs.id) a " +
+            "WHERE s.id = a.id " +
+            "  AND (s.message_count <> a.cnt " +
+            "       OR s.last_message_at IS DISTINCT FROM a.last_at " +
+            "       OR s.prompt_tokens <> a.prompt " +
+            "       OR s.completion_tokens <> a.completion)";
+
+    // Does not conflict with the key-share locks taken by message inserts, only with counter updates
+    private static final String LOCK_TEMPLATE =
+            "SELECT cs.id FROM chat_sessions cs WHERE %s AND cs.archived_at IS NULL ORDER BY cs.id FOR NO KEY UPDATE";
+
+    private static final String RANGE = "cs.id >= ? AND cs.id < ?";
+
+    private static final String SESSIONS = "cs.id = ANY(?)";
+
+    private static final String LOCK_SQL = String.format(LOCK_TEMPLATE, RANGE);
+
+    private static final String RECONCILE_SQL = String.format(RECONCILE_TEMPLATE, RANGE);
+
+    private static final String LOCK_SESSIONS_SQL = String.format(LOCK_TEMPLATE, SESSIONS);
+
+    private static final String RECONCILE_SESSIONS_SQL = String.format(RECONCILE_TEMPLATE, SESSIONS);
+
+    private static final String NEXT_CHUNK_SQL =
+            "SELECT id FROM chat_sessions WHERE id >= ? ORDER BY id OFFSET ? LIMIT 1";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ShardRouter shardRouter;
+    private final boolean enabled;
+    private final long chunkSize;
+
+    public SessionStatsReconciler(JdbcTemplate jdbcTemplate,
+                                  PlatformTransactionManager transactionManager,
+                                  ShardRouter shardRouter,
+                                  @Value("${session.stats.reconcile.enabled:true}") boolean enabled,
+                                  @Value("${session.stats.reconcile.chunk-size:1000}") long chunkSize,
+                                  @Value("${chat.storage.backend:postgres}") String storageBackend) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.shardRouter = shardRouter;
+        // Recounts from chat_messages, so it only applies to the Postgres message store
+        this.enabled = enabled && "postgres".equals(storageBackend);
+        this.chunkSize = Math.max(1, chunkSize);
+    }
+
+    @Scheduled(initialDelayString = "${session.stats.reconcile.initial-delay-ms:300000}",
+               fixedDelayString = "${session.stats.reconcile.interval-ms:3600000}")
+    public void reconcile() {
+        if (!enabled) {
+            return;
+        }
+        shardRouter.forEachShard(this::reconcileShard);
+    }
+
+    /**
+     * Recompute the statistics of the given sessions on the current shard now,
+     * e.g. after rows were copied in from another shard; returns the sessions repaired
+     */
+    public int reconcile(Collection<Long> sessionIds) {
+        if (!enabled || sessionIds.isEmpty()) {
+            return 0;
+        }
+        return reconcileLocked(LOCK_SESSIONS_SQL, RECONCILE_SESSIONS_SQL, (Object) sessionIds.toArray(new Long[0]));
+    }
+
+    private void reconcileShard() {
+        long repaired = 0;
+        // One short transaction per chunk of ids instead of one long lock over the whole table.
+        // Chunks are found by position: ids on a shard can span several allocation ranges.
+        long from = Long.MIN_VALUE;
+        while (true) {
+            Long next = jdbcTemplate.query(NEXT_CHUNK_SQL, rs -> rs.next() ? rs.getLong(1) : null, from, chunkSize);
+            repaired += reconcileLocked(LOCK_SQL, RECONCILE_SQL, from, next != null ? next : Long.MAX_VALUE);
+            if (next == null) {
+                break;
+            }
+            from = next;
+        }
+        if (repaired > 0) {
+            log.warn("Session statistics reconciliation repaired {} sessions", repaired);
+        } else {
+            log.debug("Session statistics reconciliation found no drift");
+        }
+    }
+
+    private int reconcileLocked(String lockSql, String reconcileSql, Object... args) {
+        Integer repaired = transactionTemplate.execute(status -> {
+            if (jdbcTemplate.queryForList(lockSql, Long.class, args).isEmpty()) {
+                return 0;
+            }
+            // A new statement, so the recount sees messages committed while waiting for the locks
+            return jdbcTemplate.update(reconcileSql, args);
+        });
+        return repaired != null ? repaired : 0;
+    }
+}
@@ -0,0 +1,488 @@
+package com.example.ragchat.service;
+
+import com.example.ragchat.dto.ImportResult;
+import com.example.ragchat.exception.InvalidInputException;
+import com.example.ragchat.exception.SessionNotFoundException;
+import com.example.ragchat.model.ChatMessage;
+import com.example.ragchat.model.ChatSession;
+import com.example.ragchat.repository.MessageStore;
+import com.example.ragchat.repository.OutboxRepository;
+import com.example.ragchat.repository.ChatSessionRepository;
+import com.example.ragchat.util.ExportCursor;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Streaming NDJSON export and import of all sessions of a user.
+ *
+ * Export reads through a server-side cursor (fixed fetch size inside a read-only
+ * transaction) and writes each row as it arrives, so heap use does not depend on
+ * volume. The stream is ordered by (session_id, id), the primary key of every
+ * partition, and periodically emits a checkpoint cursor to resume from. Import
+ * parses one line at a time and commits messages in JDBC batches.
+ *
+ * Line types: session, message, checkpoint and a final end line with throughput.
+ */
+@Service
+@Slf4j
+public class SessionTransferService {
+
+    private static final String EXPORT_COLUMNS =
+            "SELECT s.id AS s_id, s.name, s.favorite, s.created_at, s.updated_at, " +
+            "       m.id, m.seq, m.sender, m.content, m.context, m.context_ref, m.content_ref, m.timestamp " +
+            "FROM chat_sessions s JOIN chat_messages m ON m.session_id = s.id ";
+
+    private static final String EXPORT_SQL = EXPORT_COLUMNS +
+            "WHERE s.user_id = ? AND s.deleted_at IS NULL AND (m.session_id, m.id) > (?, ?) " +
+            "ORDER BY m.session_id, m.id";
+
+    private static final String SESSION_EXPORT_SQL = EXPORT_COLUMNS +
+            "WHERE s.id = ? AND s.deleted_at IS NULL AND (m.session_id, m.id) > (?, ?) " +
+            "ORDER BY m.id";
+
+    private static final String ARCHIVED_SESSIONS_SQL =
+            "SELECT id, name, favorite, created_at, updated_at FROM chat_sessions " +
+            "WHERE user_id = ? AND deleted_at IS NULL AND archived_at IS NOT NULL AND id >= ? " +
+            "ORDER BY id";
+
+    private final JdbcTemplate cursorTemplate;
+    private final TransactionTemplate readOnlyTransaction;
+    private final TransactionTemplate writeTransaction;
+    private final ObjectMapper objectMapper;
+    private final ChatSessionRepository sessionRepo;
+    private final MessageStore messageStore;
+    private final SessionMetadataCache sessionCache;
+    private final MessageArchive messageArchive;
+    private final BlobStore blobStore;
+    private final ReplicaRouter replicaRouter;
+    private final ShardRouter shardRouter;
+    private final OutboxRepository outbox;
+    private final int checkpointEvery;
+    private final int importBatchSize;
+    private final boolean exportSupported;
+
+    public SessionTransferService(DataSource dataSource,
+                                  PlatformTransactionManager transactionManager,
+                                  ObjectMapper objectMapper,
+                                  ChatSessionRepository sessionRepo,
+                                  MessageStore messageStore,
+                                  SessionMetadataCache sessionCache,
+                                  MessageArchive messageArchive,
+                                  BlobStore blobStore,
+                                  ReplicaRouter replicaRouter,
+                                  ShardRouter shardRouter,
+                                  OutboxRepository outbox,
+                                  @Value("${chat.transfer.fetch-size:1000}") int fetchSize,
+                                  @Value("${chat.transfer.checkpoint-every:1000}") int checkpointEvery,
+                                  @Value("${chat.transfer.import-batch-size:1000}") int importBatchSize,
+                                  @Value("${chat.storage.backend:postgres}") String storageBackend) {
+        this(cursorTemplate(dataSource, fetchSize), transactionManager, objectMapper, sessionRepo, messageStore,
+                sessionCache, messageArchive, blobStore, replicaRouter, shardRouter, outbox, checkpointEvery,
+                importBatchSize, storageBackend);
+    }
+
+    SessionTransferService(JdbcTemplate cursorTemplate,
+                           PlatformTransactionManager transactionManager,
+                           ObjectMapper objectMapper,
+                           ChatSessionRepository sessionRepo,
+                           MessageStore messageStore,
+                           SessionMetadataCache sessionCache,
+                           MessageArchive messageArchive,
+                           BlobStore blobStore,
+                           ReplicaRouter replicaRouter,
+                           ShardRouter shardRouter,
+                           OutboxRepository outbox,
+                           int checkpointEvery,
+                           int importBatchSize,
+                           String storageBackend) {
+        this.cursorTemplate = cursorTemplate;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.writeTransaction = new TransactionTemplate(transactionManager);
+        this.objectMapper = objectMapper;
+        this.sessionRepo = sessionRepo;
+        this.messageStore = messageStore;
+        this.sessionCache = sessionCache;
+        this.messageArchive = messageArchive;
+        this.blobStore = blobStore;
+        this.replicaRouter = replicaRouter;
+        this.shardRouter = shardRouter;
+        this.outbox = outbox;
+        this.checkpointEvery = Math.max(1, checkpointEvery);
+        this.importBatchSize = Math.max(1, importBatchSize);
+        this.exportSupported = "postgres".equals(storageBackend);
+    }
+
+    private static JdbcTemplate cursorTemplate(DataSource dataSource, int fetchSize) {
+        // The Postgres driver only streams with a fetch size when autocommit is off
+        JdbcTemplate template = new JdbcTemplate(dataSource);
+        template.setFetchSize(fetchSize);
+        return template;
+    }
+
+    /**
+     * Write every message of a user as NDJSON, starting after the given cursor
+     */
+    public void export(String userId, String after, OutputStream out) throws IOException {
+        if (userId == null || userId.trim().isEmpty()) {
+            throw new InvalidInputException("User ID cannot be empty");
+        }
+        if (!exportSupported) {
+            throw new InvalidInputException("Export requires chat.storage.backend=postgres");
+        }
+        ExportCursor start = after != null ? ExportCursor.decode(after) : new ExportCursor(0, 0);
+        try {
+            shardRouter.onUser(userId, () -> {
+                try {
+                    exportFromShard(userId, start, out);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return null;
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private void exportFromShard(String userId, ExportCursor start, OutputStream out) throws IOException {
+        long startNanos = System.nanoTime();
+        JsonGenerator json = objectMapper.getFactory().createGenerator(out);
+        // Lines are terminated explicitly; no separator between root values
+        json.setRootValueSeparator(null);
+        ExportState state = new ExportState(json);
+        try {
+            readOnlyTransaction.executeWithoutResult(status -> {
+                try {
+                    exportRows(state, userId, start);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            // Client went away; nothing to roll back for a read-only export
+            throw e.getCause();
+        }
+
+        long elapsedNanos = System.nanoTime() - startNanos;
+        double rowsPerSecond = elapsedNanos == 0 ? 0.0 : state.rows * 1_000_000_000.0 / elapsedNanos;
+        if (state.last != null) {
+            writeCheckpoint(json, state.last);
+        }
+        json.writeStartObject();
+        json.writeStringField("type", "end");
+        json.writeNumberField("rows", state.rows);
+        json.writeNumberField("elapsedMillis", elapsedNanos / 1_000_000);
+        json.writeNumberField("rowsPerSecond", Math.round(rowsPerSecond));
+        json.writeEndObject();
+        json.writeRaw('\n');
+        json.flush();
+        log.info("Exported {} messages for user {} ({} rows/sec)", state.rows, userId, Math.round(rowsPerSecond));
+    }
+
+    /**
+     * Load NDJSON produced by {@link #export} into new sessions of a user.
+     * Pass the last source and target session of an interrupted import to continue it.
+     */
+    public ImportResult importMessages(String userId, InputStream in,
+                                       Long resumeSourceSessionId, Long resumeTargetSessionId) {
+        if (userId == null || userId.trim().isEmpty()) {
+            throw new InvalidInputException("User ID cannot be empty");
+        }
+        if ((resumeSourceSessionId == null) != (resumeTargetSessionId == null)) {
+            throw new InvalidInputException("resumeSourceSessionId and resumeTargetSessionId must be given together");
+        }
+
+        // Only source session id -> new id is kept, so memory grows with sessions, not messages
+        Map<Long, Long> sessionIds = new HashMap<>();
+        if (resumeSourceSessionId != null) {
+            ChatSession target = shardRouter.onSession(resumeTargetSessionId,
+                            () -> sessionRepo.findById(resumeTargetSessionId))
+                    .filter(session -> session.getDeletedAt() == null && userId.equals(session.getUserId()))
+                    .orElseThrow(() -> new SessionNotFoundException(String.valueOf(resumeTargetSessionId)));
+            sessionIds.put(resumeSourceSessionId, target.getId());
+        }
+
+        long startNanos = System.nanoTime();
+        ImportState state = new ImportState();
+        String error = null;
+        try (MappingIterator<JsonNode> lines = objectMapper.readerFor(JsonNode.class).readValues(in)) {
+            while (lines.hasNextValue()) {
+                JsonNode line = lines.nextValue();
+                switch (line.path("type").asText()) {
+                    case "session" -> importSession(userId, line, sessionIds);
+                    case "message" -> {
+                        state.batch.add(toMessage(line, sessionIds, state));
+                        if (state.batch.size() >= importBatchSize) {
+                            commit(userId, state);
+                        }
+                    }
+                    case "checkpoint", "end" -> { }
+                    default -> throw new InvalidInputException("Unknown line type: " + line.path("type").asText());
+                }
+            }
+            commit(userId, state);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Import for user {} stopped after {} messages: {}", userId, state.imported, e.getMessage());
+            error = e.getMessage();
+        }
+
+        long elapsedNanos = System.nanoTime() - startNanos;
+        ImportResult result = ImportResult.builder()
+                .completed(error == null)
+                .error(error)
+                .imported(state.imported)
+                .sessions(sessionIds.size())
+                .elapsedMillis(elapsedNanos / 1_000_000)
+                .rowsPerSecond(elapsedNanos == 0 ? 0.0 : state.imported * 1_000_000_000.0 / elapsedNanos)
+                .lastCursor(state.lastCommitted != null ? state.lastCommitted.encode() : null)
+                .lastSourceSessionId(state.lastCommitted != null ? state.lastCommitted.sessionId() : null)
+                .lastTargetSessionId(state.lastCommitted != null
+                        ? sessionIds.get(state.lastCommitted.sessionId()) : null)
+                .build();
+        log.info("Imported {} messages into {} sessions for user {} ({} rows/sec)",
+                result.getImported(), result.getSessions(), userId, Math.round(result.getRowsPerSecond()));
+        return result;
+    }
+
+    /**
+     * Archived sessions have no rows in chat_messages. Their segments are streamed in place,
+     * without rehydrating, as the stream passes their position in (session_id, id) order.
+     */
+    private void exportRows(ExportState state, String userId, ExportCursor start) throws IOException {
+        Deque<ArchivedSession> archived = new ArrayDeque<>(cursorTemplate.query(ARCHIVED_SESSIONS_SQL,
+                (rs, rowNum) -> new ArchivedSession(rs.getLong("id"), rs.getString("name"),
+                        rs.getBoolean("favorite"), rs.getTimestamp("created_at"), rs.getTimestamp("updated_at")),
+                userId, start.sessionId()));
+        cursorTemplate.query(EXPORT_SQL, rs -> {
+            try {
+                long sessionId = rs.getLong("s_id");
+                writeArchived(state, archived, sessionId, start);
+                if (!archived.isEmpty() && archived.peekFirst().id() == sessionId) {
+                    // Rehydrated after the listing; its rows are in this stream
+                    archived.pollFirst();
+                }
+                writeRow(state, rs);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, userId, start.sessionId(), start.messageId());
+        writeArchived(state, archived, Long.MAX_VALUE, start);
+    }
+
+    private void writeArchived(ExportState state, Deque<ArchivedSession> archived, long before,
+                               ExportCursor start) throws IOException {
+        while (!archived.isEmpty() && archived.peekFirst().id() < before) {
+            ArchivedSession session = archived.pollFirst();
+            boolean found = messageArchive.read(session.id(), msg -> {
+                if (session.id() == start.sessionId() && msg.getId() <= start.messageId()) {
+                    return;
+                }
+                if (state.last == null || state.last.sessionId() != session.id()) {
+                    writeSession(state.json, session.id(), session.name(), session.favorite(),
+                            session.createdAt(), session.updatedAt());
+                }
+                writeMessage(state, session.id(), msg.getId(), msg.getSeq(), msg.getSender(),
+                        resolve(state, msg.getContentRef(), msg.getContent()),
+                        resolve(state, msg.getContextRef(), msg.getContext()), msg.getTimestamp());
+            });
+            if (!found) {
+                // Rehydrated since the stream started: the segment is only removed once its rows are committed
+                cursorTemplate.query(SESSION_EXPORT_SQL, rs -> {
+                    try {
+                        writeRow(state, rs);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }, session.id(), start.sessionId(), start.messageId());
+            }
+        }
+    }
+
+    private void writeRow(ExportState state, ResultSet rs) throws SQLException, IOException {
+        long sessionId = rs.getLong("s_id");
+        if (state.last == null || state.last.sessionId() != sessionId) {
+            writeSession(state.json, sessionId, rs.getString("name"), rs.getBoolean("favorite"),
+                    rs.getTimestamp("created_at"), rs.getTimestamp("updated_at"));
+        }
+        long seq = rs.getLong("seq");
+        Long nullableSeq = rs.wasNull() ? null : seq;
+        writeMessage(state, sessionId, rs.getLong("id"), nullableSeq, rs.getString("sender"),
+                resolve(state, rs.getString("content_ref"), rs.getString("content")),
+                resolve(state, rs.getString("context_ref"), rs.getString("context")),
+                rs.getTimestamp("timestamp"));
+    }
+
+    private void writeSession(JsonGenerator json, long sessionId, String name, boolean favorite,
+                              Date createdAt, Date updatedAt) throws IOException {
+        json.writeStartObject();
+        json.writeStringField("type", "session");
+        json.writeNumberField("id", sessionId);
+        json.writeStringField("name", name);
+        json.writeBooleanField("favorite", favorite);
+        json.writeNumberField("createdAt", createdAt.getTime());
+        json.writeNumberField("updatedAt", updatedAt.getTime());
+        json.writeEndObject();
+        json.writeRaw('\n');
+    }
+
+    private void writeMessage(ExportState state, long sessionId, long messageId, Long seq, String sender,
+                              String content, String context, Date timestamp) throws IOException {
+        JsonGenerator json = state.json;
+        json.writeStartObject();
+        json.writeStringField("type", "message");
+        json.writeNumberField("sessionId", sessionId);
+        json.writeNumberField("id", messageId);
+        if (seq != null) {
+            json.writeNumberField("seq", seq);
+        }
+        json.writeStringField("sender", sender);
+        json.writeStringField("content", content);
+        if (context != null) {
+            json.writeStringField("context", context);
+        }
+        json.writeNumberField("timestamp", timestamp.getTime());
+        json.writeEndObject();
+        json.writeRaw('\n');
+
+        state.last = new ExportCursor(sessionId, messageId);
+        if (++state.rows % checkpointEvery == 0) {
+            writeCheckpoint(json, state.last);
+        }
+    }
+
+    private String resolve(ExportState state, String ref, String inline) {
+        if (ref == null) {
+            return inline;
+        }
+        // Repeated context within an export is fetched once; the cache is bounded
+        return state.blobs.computeIfAbsent(ref, hash -> blobStore.get(hash).orElse(inline));
+    }
+
+    private void writeCheckpoint(JsonGenerator json, ExportCursor cursor) throws IOException {
+        json.writeStartObject();
+        json.writeStringField("type", "checkpoint");
+        json.writeStringField("cursor", cursor.encode());
+        json.writeEndObject();
+        json.writeRaw('\n');
+        json.flush();
+    }
+
+    private void importSession(String userId, JsonNode line, Map<Long, Long> sessionIds) {
+        long sourceId = line.path("id").asLong();
+        if (sessionIds.containsKey(sourceId)) {
+            return;
+        }
+        String name = line.path("name").asText(null);
+        if (name == null || name.trim().isEmpty()) {
+            throw new InvalidInputException("Session name cannot be empty");
+        }
+        ChatSession session = new ChatSession();
+        session.setUserId(userId);
+        session.setName(name);
+        session.setFavorite(line.path("favorite").asBoolean(false));
+        session.setCreatedAt(new Date(line.path("createdAt").asLong(System.currentTimeMillis())));
+        session.setUpdatedAt(new Date(line.path("updatedAt").asLong(System.currentTimeMillis())));
+        // Shard resolved inside the write so an import racing a rebalance follows the user
+        ChatSession saved = shardRouter.writeUser(userId, () -> shardRouter.onUser(userId,
+                () -> writeTransaction.execute(status -> {
+                    ChatSession created = sessionRepo.save(session);
+                    outbox.sessionCreated(created);
+                    return created;
+                })));
+        sessionCache.put(saved);
+        replicaRouter.recordWrite(saved.getId(), userId);
+        sessionIds.put(sourceId, saved.getId());
+    }
+
+    private ChatMessage toMessage(JsonNode line, Map<Long, Long> sessionIds, ImportState state) {
+        long sourceSessionId = line.path("sessionId").asLong();
+        Long targetSessionId = sessionIds.get(sourceSessionId);
+        if (targetSessionId == null) {
+            throw new InvalidInputException("Message references session " + sourceSessionId +
+                    " before its session line");
+        }
+        String sender = line.path("sender").asText(null);
+        String content = line.path("content").asText(null);
+        if (sender == null || sender.trim().isEmpty()) {
+            throw new InvalidInputException("Sender cannot be empty");
+        }
+        if (content == null || content.trim().isEmpty()) {
+            throw new InvalidInputException("Message content cannot be empty");
+        }
+
+        ChatMessage msg = new ChatMessage();
+        msg.setSessionId(targetSessionId);
+        msg.setSeq(line.hasNonNull("seq") ? line.get("seq").asLong() : null);
+        msg.setSender(sender);
+        msg.setContent(content);
+        msg.setContext(line.path("context").asText(null));
+        msg.setTimestamp(new Date(line.path("timestamp").asLong(System.currentTimeMillis())));
+        state.pendingCursor = new ExportCursor(sourceSessionId, line.path("id").asLong());
+        return msg;
+    }
+
+    private void commit(String userId, ImportState state) {
+        if (state.batch.isEmpty()) {
+            return;
+        }
+        // Blobs are written with their messages, on the same shard
+        shardRouter.writeUser(userId, () -> shardRouter.onUser(userId, () -> {
+            state.batch.forEach(blobStore::externalize);
+            return messageStore.saveAll(state.batch);
+        }));
+        state.imported += state.batch.size();
+        state.lastCommitted = state.pendingCursor;
+        state.batch = new ArrayList<>(importBatchSize);
+    }
+
+    private static final class ExportState {
+        final JsonGenerator json;
+        final Map<String, String> blobs = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > 64;
+            }
+        };
+        ExportCursor last;
+        long rows;
+
+        ExportState(JsonGenerator json) {
+            this.json = json;
+        }
+    }
+
+    private record ArchivedSession(long id, String name, boolean favorite, Date createdAt, Date updatedAt) {
+    }
+
+    private static final class ImportState {
+        List<ChatMessage> batch = new ArrayList<>();
+        ExportCursor pendingCursor;
+        ExportCursor lastCommitted;
+        long imported;
+    }
+}
@@ -0,0 +1,340 @@
+package com.example.ragchat.service;
+
+import com.example.ragchat.model.ChatMessage;
+import com.example.ragchat.repository.MessageStore;
+import com.example.ragchat.util.ShardContext;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Single writer per session: every mutation of a session runs on one worker thread,
+ * chosen by striping the session ID over a fixed pool.
+ *
+ * Because a session only ever has one writer, the worker can hand out per-session
+ * sequence numbers and strictly increasing timestamps from memory, which makes
+ * history order deterministic without row locks. Message appends that queue up
+ * behind each other are coalesced into one batched insert.
+ */
+@Service
+@Slf4j
+public class SessionWriteExecutor {
+
+    private final MessageStore messageStore;
+    private final MessageWriteBehindQueue writeBehind;
+    private final int workerCount;
+    private final int batchSize;
+    private final long timeoutMillis;
+    private final int trackedSessionsPerWorker;
+    private final List<Worker> workers = new ArrayList<>();
+
+    public SessionWriteExecutor(MessageStore messageStore,
+                                MessageWriteBehindQueue writeBehind,
+                                @Value("${chat.session-writers.workers:8}") int workerCount,
+                                @Value("${chat.session-writers.batch-size:500}") int batchSize,
+                                @Value("${chat.session-writers.timeout-ms:10000}") long timeoutMillis,
+                                @Value("${chat.session-writers.tracked-sessions:10000}") int trackedSessionsPerWorker) {
+        this.messageStore = messageStore;
+        this.writeBehind = writeBehind;
+        this.workerCount = workerCount;
+        this.batchSize = batchSize;
+        this.timeoutMillis = timeoutMillis;
+        this.trackedSessionsPerWorker = trackedSessionsPerWorker;
+    }
+
+    @PostConstruct
+    public void start() {
+        for (int i = 0; i < workerCount; i++) {
+            Worker worker = new Worker();
+            Thread thread = new Thread(worker, "session-writer-" + i);
+            thread.setDaemon(true);
+            worker.thread = thread;
+            workers.add(worker);
+            thread.start();
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        for (Worker worker : workers) {
+            worker.thread.interrupt();
+        }
+    }
+
+    /**
+     * Persist a message on its session's writer, assigning seq and timestamp
+     */
+    public ChatMessage appendMessage(ChatMessage message) {
+        return await(submit(message.getSessionId(), new AppendTask(message)));
+    }
+
+    /**
+     * Reserve {@code count} consecutive sequence numbers for messages written outside the
+     * session's writer (bulk import). Assigns seq and a timestamp to each message in order.
+     */
+    public void reserve(Long sessionId, List<ChatMessage> messages) {
+        await(submit(sessionId, new MutationTask<Void>(worker -> {
+            SessionClock clock = worker.clock(sessionId);
+            for (ChatMessage msg : messages) {
+                msg.setSeq(++clock.lastSeq);
+                msg.setTimestamp(new Date(clock.nextTimestamp(System.currentTimeMillis())));
+            }
+            return null;
+        })));
+    }
+
+    /**
+     * Run an arbitrary mutation on the session's writer and wait for its result
+     */
+    public <T> T execute(Long sessionId, Supplier<T> mutation) {
+        return await(submit(sessionId, new MutationTask<>(worker -> mutation.get())));
+    }
+
+    /**
+     * Drop cached sequence state of a deleted session
+     */
+    public void forget(Long sessionId) {
+        submit(sessionId, new MutationTask<Void>(worker -> {
+            worker.clocks.remove(sessionId);
+            return null;
+        }));
+    }
+
+    private <T, K extends Task<T>> K submit(Long sessionId, K task) {
+        task.sessionId = sessionId;
+        // Workers run the task against the submitter's shard
+        task.shard = ShardContext.current();
+        workers.get(Math.floorMod(Long.hashCode(sessionId), workers.size())).queue.add(task);
+        return task;
+    }
+
+    /**
+     * Wait for a task's result. A task still queued when the timeout expires is withdrawn,
+     * so the caller's failure means nothing was applied; one the writer already started
+     * is waited for, so the caller sees what it actually did.
+     */
+    private <T> T await(Task<T> task) {
+        try {
+            try {
+                return task.future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                if (task.cancel()) {
+                    throw new IllegalStateException("Timed out waiting for session writer");
+                }
+                log.warn("Session {} write still running after {} ms", task.sessionId, timeoutMillis);
+                return task.future.get();
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted waiting for session writer");
+        }
+    }
+
+    private abstract static class Task<T> {
+        private static final int QUEUED = 0;
+        private static final int STARTED = 1;
+        private static final int CANCELLED = 2;
+
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        final AtomicInteger state = new AtomicInteger(QUEUED);
+        Long sessionId;
+        int shard;
+
+        /**
+         * Claim the task for the writer; false if its caller already gave up on it
+         */
+        boolean start() {
+            return state.compareAndSet(QUEUED, STARTED);
+        }
+
+        boolean cancel() {
+            return state.compareAndSet(QUEUED, CANCELLED);
+        }
+    }
+
+    private static class MutationTask<T> extends Task<T> {
+        final Function<Worker, T> body;
+
+        MutationTask(Function<Worker, T> body) {
+            this.body = body;
+        }
+    }
+
+    private static class AppendTask extends Task<ChatMessage> {
+        final ChatMessage message;
+
+        AppendTask(ChatMessage message) {
+            this.message = message;
+        }
+    }
+
+    private static class SessionClock {
+        long lastSeq;
+        long lastTimestamp;
+
+        long nextTimestamp(long now) {
+            lastTimestamp = Math.max(now, lastTimestamp + 1);
+            return lastTimestamp;
+        }
+    }
+
+    private class Worker implements Runnable {
+        final BlockingQueue<Task<?>> queue = new LinkedBlockingQueue<>();
+        final Map<Long, SessionClock> clocks = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, SessionClock> eldest) {
+                return size() > trackedSessionsPerWorker;
+            }
+        };
+        Thread thread;
+
+        @Override
+        public void run() {
+            List<Task<?>> drained = new ArrayList<>();
+            while (!Thread.currentThread().isInterrupted()) {
+                try {
+                    drained.add(queue.take());
+                    queue.drainTo(drained, batchSize - 1);
+                    process(drained);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    drained.clear();
+                }
+            }
+        }
+
+        /**
+         * Run tasks in arrival order, coalescing consecutive appends into one batch
+         */
+        private void process(List<Task<?>> tasks) {
+            List<AppendTask> appends = new ArrayList<>();
+            for (Task<?> task : tasks) {
+                if (!task.start()) {
+                    continue;
+                }
+                if (task instanceof AppendTask append) {
+                    appends.add(append);
+                } else if (task instanceof MutationTask<?> mutation) {
+                    flushAppends(appends);
+                    runTask(mutation);
+                }
+            }
+            flushAppends(appends);
+        }
+
+        private <T> void runTask(MutationTask<T> task) {
+            try {
+                task.future.complete(ShardContext.call(task.shard, () -> task.body.apply(this)));
+            } catch (RuntimeException e) {
+                task.future.completeExceptionally(e);
+            }
+        }
+
+        private void flushAppends(List<AppendTask> appends) {
+            if (appends.isEmpty()) {
+                return;
+            }
+            List<AppendTask> direct = new ArrayList<>(appends.size());
+            for (AppendTask task : appends) {
+                ChatMessage msg = task.message;
+                try {
+                    SessionClock clock = ShardContext.call(task.shard, () -> clock(task.sessionId));
+                    msg.setSeq(++clock.lastSeq);
+                    msg.setTimestamp(new Date(clock.nextTimestamp(System.currentTimeMillis())));
+                    if (writeBehind.append(msg)) {
+                        task.future.complete(msg);
+                    } else {
+                        direct.add(task);
+                    }
+                } catch (RuntimeException e) {
+                    clocks.remove(task.sessionId);
+                    task.future.completeExceptionally(e);
+                }
+            }
+            appends.clear();
+            if (direct.isEmpty()) {
+                return;
+            }
+
+            Map<Integer, List<AppendTask>> byShard = new LinkedHashMap<>();
+            for (AppendTask task : direct) {
+                byShard.computeIfAbsent(task.shard, shard -> new ArrayList<>()).add(task);
+            }
+            byShard.forEach(this::persist);
+        }
+
+        private void persist(int shard, List<AppendTask> tasks) {
+            try {
+                ShardContext.call(shard, () -> messageStore.saveAll(tasks.stream().map(task -> task.message).toList()));
+                for (AppendTask task : tasks) {
+                    task.future.complete(task.message);
+                }
+            } catch (RuntimeException e) {
+                if (tasks.size() == 1) {
+                    fail(tasks.get(0), e);
+                    return;
+                }
+                // The batch spans unrelated requests; retry each so only the offending one fails
+                log.warn("Failed to persist {} coalesced messages, retrying one by one: {}", tasks.size(), e.getMessage());
+                for (AppendTask task : tasks) {
+                    task.message.setId(null);
+                    try {
+                        ShardContext.call(shard, () -> messageStore.saveAll(List.of(task.message)));
+                        task.future.complete(task.message);
+                    } catch (RuntimeException single) {
+                        fail(task, single);
+                    }
+                }
+            }
+        }
+
+        private void fail(AppendTask task, RuntimeException e) {
+            log.error("Failed to persist message for session {}: {}", task.sessionId, e.getMessage());
+            // Sequence state is ahead of what was persisted; reload it next time
+            clocks.remove(task.sessionId);
+            task.message.setId(null);
+            task.future.completeExceptionally(e);
+        }
+
+        SessionClock clock(Long sessionId) {
+            SessionClock clock = clocks.get(sessionId);
+            if (clock != null) {
+                return clock;
+            }
+            clock = new SessionClock();
+            List<ChatMessage> latest = new ArrayList<>(messageStore.findLatest(sessionId, 1));
+            latest.addAll(writeBehind.pendingFor(sessionId));
+            for (ChatMessage msg : latest) {
+                if (msg.getSeq() != null) {
+                    clock.lastSeq = Math.max(clock.lastSeq, msg.getSeq());
+                }
+                clock.lastTimestamp = Math.max(clock.lastTimestamp, msg.getTimestamp().getTime());
+            }
+            clocks.put(sessionId, clock);
+            return clock;
+        }
+    }
+}
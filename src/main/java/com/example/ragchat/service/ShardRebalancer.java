@@ -0,0 +1,309 @@
+package com.example.ragchat.service;
+
+import com.example.ragchat.dto.ShardMoveResult;
+import com.example.ragchat.exception.InvalidInputException;
+import com.example.ragchat.repository.ShardCopyRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Moves a user and all their sessions to another shard while the service stays online.
+ *
+ * The user's rows are copied to the target and then re-synced in passes until a
+ * pass finds nothing new; writes keep going to the source meanwhile. After the first
+ * pass only sessions whose row changed are re-read, since every message write also
+ * updates its session's statistics. The cutover then holds the writes of this user
+ * only, for one more such delta, switches the directory and releases them.
+ *
+ * Other instances keep routing by their cached directory until they refresh it, so
+ * the source copy is kept for a grace period longer than the refresh interval. Then
+ * messages that still landed on the source are copied over, sessions created there
+ * are moved and given a grace period of their own, and the rest of the source copy
+ * is removed. A restart before that leaves an unreferenced copy on the source.
+ */
+@Service
+@Slf4j
+public class ShardRebalancer {
+
+    private final ShardRouter shardRouter;
+    private final ShardCopyRepository rows;
+    private final SessionStatsReconciler statsReconciler;
+    private final SessionMetadataCache sessionCache;
+    private final ClusterBus clusterBus;
+    private final int maxPasses;
+    private final int batchSize;
+    private final long purgeGraceMillis;
+    private final Set<String> moving = ConcurrentHashMap.newKeySet();
+    private final Map<String, PendingPurge> pendingPurges = new ConcurrentHashMap<>();
+
+    public ShardRebalancer(ShardRouter shardRouter,
+                           ShardCopyRepository rows,
+                           SessionStatsReconciler statsReconciler,
+                           SessionMetadataCache sessionCache,
+                           ClusterBus clusterBus,
+                           @Value("${chat.shards.rebalance.max-passes:5}") int maxPasses,
+                           @Value("${chat.shards.rebalance.batch-size:1000}") int batchSize,
+                           @Value("${chat.shards.rebalance.purge-grace-ms:90000}") long purgeGraceMillis,
+                           @Value("${chat.shards.directory-refresh-ms:30000}") long directoryRefreshMillis) {
+        if (purgeGraceMillis <= directoryRefreshMillis) {
+            throw new IllegalStateException("chat.shards.rebalance.purge-grace-ms must be longer than " +
+                    "chat.shards.directory-refresh-ms");
+        }
+        this.shardRouter = shardRouter;
+        this.rows = rows;
+        this.statsReconciler = statsReconciler;
+        this.sessionCache = sessionCache;
+        this.clusterBus = clusterBus;
+        this.maxPasses = Math.max(1, maxPasses);
+        this.batchSize = Math.max(1, batchSize);
+        this.purgeGraceMillis = purgeGraceMillis;
+    }
+
+    public ShardMoveResult moveUser(String userId, int target) {
+        if (userId == null || userId.trim().isEmpty()) {
+            throw new InvalidInputException("User ID cannot be empty");
+        }
+        if (target < 0 || target >= shardRouter.shardCount()) {
+            throw new InvalidInputException("Target shard must be between 0 and " + (shardRouter.shardCount() - 1));
+        }
+        int source = shardRouter.shardOfUser(userId);
+        if (source == target) {
+            throw new InvalidInputException("User " + userId + " is already on shard " + target);
+        }
+        if (!moving.add(userId)) {
+            throw new InvalidInputException("User " + userId + " is already being moved");
+        }
+
+        long startNanos = System.nanoTime();
+        shardRouter.beginMove();
+        boolean purgePending = false;
+        try {
+            // The first pass compares every session, in case an earlier move stopped part way
+            long copied = sync(userId, source, target, true);
+            int passes = 1;
+            long changed = copied;
+            while (changed > 0 && passes < maxPasses) {
+                changed = sync(userId, source, target, false);
+                copied += changed;
+                passes++;
+            }
+
+            long[] finalCopied = new long[1];
+            long cutoverStart = System.nanoTime();
+            List<Long> sessionIds = shardRouter.cutover(userId, target,
+                    () -> shardRouter.onShard(source, () -> rows.findSessionIds(userId)),
+                    () -> finalCopied[0] = sync(userId, source, target, false));
+            long cutoverMillis = (System.nanoTime() - cutoverStart) / 1_000_000;
+            copied += finalCopied[0];
+
+            clusterBus.directoryChanged();
+            sessionIds.forEach(sessionCache::invalidate);
+            sessionIds.forEach(clusterBus::sessionChanged);
+
+            long purgeAt = System.currentTimeMillis() + purgeGraceMillis;
+            pendingPurges.put(userId, new PendingPurge(userId, source, target, Set.copyOf(sessionIds), purgeAt));
+            purgePending = true;
+
+            ShardMoveResult result = ShardMoveResult.builder()
+                    .userId(userId)
+                    .sourceShard(source)
+                    .targetShard(target)
+                    .sessions(sessionIds.size())
+                    .messagesCopied(copied)
+                    .passes(passes + 1)
+                    .cutoverMillis(cutoverMillis)
+                    .elapsedMillis((System.nanoTime() - startNanos) / 1_000_000)
+                    .sourcePurgeAt(new Date(purgeAt))
+                    .build();
+            log.info("Moved user {} from shard {} to {}: {} sessions, {} rows, cutover {} ms",
+                    userId, source, target, result.getSessions(), copied, cutoverMillis);
+            return result;
+        } finally {
+            if (!purgePending) {
+                shardRouter.endMove();
+                moving.remove(userId);
+            }
+        }
+    }
+
+    /**
+     * Finish moves whose grace period has passed
+     */
+    @Scheduled(fixedDelayString = "${chat.shards.rebalance.purge-check-ms:5000}")
+    public void purgeMovedSources() {
+        purgeMovedSources(System.currentTimeMillis());
+    }
+
+    void purgeMovedSources(long now) {
+        for (PendingPurge pending : pendingPurges.values()) {
+            if (pending.purgeAt() > now) {
+                continue;
+            }
+            try {
+                PendingPurge next = purge(pending, now);
+                if (next != null) {
+                    pendingPurges.put(pending.userId(), next);
+                } else {
+                    pendingPurges.remove(pending.userId());
+                    shardRouter.endMove();
+                    moving.remove(pending.userId());
+                }
+            } catch (RuntimeException e) {
+                // The source copy is still there; try again after another grace period
+                pendingPurges.put(pending.userId(), pending.withPurgeAt(now + purgeGraceMillis));
+                log.error("Failed to purge shard {} copy of user {}", pending.source(), pending.userId(), e);
+            }
+        }
+    }
+
+    /**
+     * Re-sync what other instances wrote to the source since the cutover, then remove the
+     * source copy; returns the follow-up for sessions found created on the source, if any
+     */
+    private PendingPurge purge(PendingPurge pending, long now) {
+        String userId = pending.userId();
+        int source = pending.source();
+        int target = pending.target();
+        Set<Long> onTarget = new HashSet<>(shardRouter.onShard(target, () -> rows.findSessionIds(userId)));
+        List<Long> purged = new ArrayList<>();
+        List<Long> created = new ArrayList<>();
+        for (Long sessionId : shardRouter.onShard(source, () -> rows.findSessionIds(userId))) {
+            (pending.sessionIds().contains(sessionId) ? purged : created).add(sessionId);
+        }
+
+        // The target owns moved sessions now: only add what is missing there, never overwrite
+        List<Long> lateWrites = new ArrayList<>();
+        for (Long sessionId : purged) {
+            if (onTarget.contains(sessionId) && syncMessages(sessionId, source, target, false) > 0) {
+                lateWrites.add(sessionId);
+            }
+        }
+        if (!lateWrites.isEmpty()) {
+            shardRouter.onShard(target, () -> statsReconciler.reconcile(lateWrites));
+            log.warn("Copied late writes of {} sessions of user {} from shard {}", lateWrites.size(), userId, source);
+        }
+
+        // Sessions created on the source are not in the directory yet, so every instance still
+        // routes them there; move them now and purge them only after their own grace period
+        if (!created.isEmpty()) {
+            List<Object[]> sessions = shardRouter.onShard(source, () -> rows.findSessions(userId)).stream()
+                    .filter(session -> created.contains(((Number) session[0]).longValue()))
+                    .toList();
+            shardRouter.onShard(target, () -> rows.upsertSessions(sessions));
+            for (Long sessionId : created) {
+                syncMessages(sessionId, source, target, true);
+            }
+            shardRouter.relocateSessions(created, target);
+            clusterBus.directoryChanged();
+            log.warn("Moved {} sessions of user {} created on shard {} after the cutover", created.size(), userId,
+                    source);
+        }
+
+        shardRouter.onShard(source, () -> {
+            purged.forEach(rows::deleteSession);
+            return null;
+        });
+        lateWrites.forEach(sessionCache::invalidate);
+        lateWrites.forEach(clusterBus::sessionChanged);
+        created.forEach(sessionCache::invalidate);
+        created.forEach(clusterBus::sessionChanged);
+        log.info("Purged shard {} copy of user {}: {} sessions", source, userId, purged.size());
+
+        return created.isEmpty() ? null
+                : new PendingPurge(userId, source, target, Set.copyOf(created), now + purgeGraceMillis);
+    }
+
+    /**
+     * Make the target's copy of the user match the source; returns the rows changed.
+     * Unless {@code full} is set, messages are compared only for sessions whose row changed.
+     */
+    private long sync(String userId, int source, int target, boolean full) {
+        // Session rows are read before their messages, so a message written in between
+        // shows up as a changed session row in the next pass
+        List<Object[]> sessions = shardRouter.onShard(source, () -> rows.findSessions(userId));
+        Set<Long> sourceIds = new LinkedHashSet<>();
+        sessions.forEach(session -> sourceIds.add(((Number) session[0]).longValue()));
+
+        long changed = 0;
+        List<Long> toCompare = new ArrayList<>();
+        int[] counts = shardRouter.onShard(target, () -> rows.upsertSessions(sessions));
+        for (int i = 0; i < sessions.size(); i++) {
+            int count = Math.max(counts[i], 0);
+            changed += count;
+            if (full || count > 0) {
+                toCompare.add(((Number) sessions.get(i)[0]).longValue());
+            }
+        }
+        // Sessions deleted on the source since the last pass
+        for (Long stale : shardRouter.onShard(target, () -> rows.findSessionIds(userId))) {
+            if (!sourceIds.contains(stale)) {
+                changed += shardRouter.onShard(target, () -> rows.deleteSession(stale));
+            }
+        }
+        for (Long sessionId : toCompare) {
+            changed += syncMessages(sessionId, source, target, true);
+        }
+        return changed;
+    }
+
+    /**
+     * Copy a session's messages missing on the target, with their blobs; with {@code mirror}
+     * also remove target messages no longer on the source. Returns the rows changed.
+     */
+    private long syncMessages(Long sessionId, int source, int target, boolean mirror) {
+        Set<Long> present = shardRouter.onShard(target, () -> rows.findMessageIds(sessionId));
+        Set<Long> sourceIds = shardRouter.onShard(source, () -> rows.findMessageIds(sessionId));
+        List<Long> missing = sourceIds.stream().filter(id -> !present.contains(id)).toList();
+
+        long changed = 0;
+        for (int from = 0; from < missing.size(); from += batchSize) {
+            List<Long> ids = missing.subList(from, Math.min(missing.size(), from + batchSize));
+            List<Object[]> batch = shardRouter.onShard(source, () -> rows.findMessages(sessionId, ids));
+            Set<String> blobRefs = new LinkedHashSet<>();
+            for (Object[] row : batch) {
+                if (row[ShardCopyRepository.CONTEXT_REF] != null) {
+                    blobRefs.add((String) row[ShardCopyRepository.CONTEXT_REF]);
+                }
+                if (row[ShardCopyRepository.CONTENT_REF] != null) {
+                    blobRefs.add((String) row[ShardCopyRepository.CONTENT_REF]);
+                }
+            }
+            // Blobs first, so no copied message ever references a missing blob
+            for (String hash : blobRefs) {
+                shardRouter.onShard(source, () -> rows.findBlob(hash))
+                        .ifPresent(blob -> shardRouter.onShard(target, () -> {
+                            rows.insertBlob(blob);
+                            return null;
+                        }));
+            }
+            changed += shardRouter.onShard(target, () -> rows.insertMessages(batch));
+        }
+
+        if (mirror) {
+            // Messages removed on the source (purged or archived) since the last pass
+            List<Long> removed = present.stream().filter(id -> !sourceIds.contains(id)).toList();
+            if (!removed.isEmpty()) {
+                changed += shardRouter.onShard(target, () -> rows.deleteMessages(sessionId, removed));
+            }
+        }
+        return changed;
+    }
+
+    private record PendingPurge(String userId, int source, int target, Set<Long> sessionIds, long purgeAt) {
+
+        PendingPurge withPurgeAt(long at) {
+            return new PendingPurge(userId, source, target, sessionIds, at);
+        }
+    }
+}
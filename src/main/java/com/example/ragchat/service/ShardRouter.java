@@ -0,0 +1,414 @@
+package com.example.ragchat.service;
+
+import com.example.ragchat.dto.ShardStats;
+import com.example.ragchat.dto.ShardingStats;
+import com.example.ragchat.exception.InvalidInputException;
+import com.example.ragchat.exception.SessionNotFoundException;
+import com.example.ragchat.util.HashRing;
+import com.example.ragchat.util.ShardContext;
+import com.zaxxer.hikari.HikariDataSource;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.flywaydb.core.Flyway;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+/**
+ * Places users on shards and runs database work against the right one.
+ *
+ * Shard 0 is the configured spring.datasource; further shards come from
+ * chat.shards.urls and are migrated with the same Flyway scripts at startup.
+ * A user's shard is found on a consistent-hash ring of userId, so adding a
+ * shard moves only about 1/N of the users. A session's shard is encoded in its
+ * ID (see {@link ShardContext}). Users moved by the {@link ShardRebalancer} and
+ * their sessions are listed in a small directory on shard 0 held in memory.
+ *
+ * With a single shard every method is a pass-through.
+ */
+@Service
+@Slf4j
+public class ShardRouter {
+
+    private final DataSource primary;
+    private final List<DataSource> shards = new ArrayList<>();
+    private final HashRing<Integer> ring;
+    private final int virtualNodes;
+
+    private volatile Map<String, Integer> movedUsers = Map.of();
+    private volatile Map<Long, Integer> relocatedSessions = Map.of();
+
+    // Writes hold the read side of their user's or sessions' stripes; a cutover takes
+    // the write side of the moving user's stripes only, for its final delta
+    private static final int GATE_STRIPES = 1024;
+    private final ReentrantReadWriteLock[] gates = new ReentrantReadWriteLock[GATE_STRIPES];
+    private final AtomicInteger activeMoves = new AtomicInteger();
+    private final Map<Integer, AtomicLong> connections = new ConcurrentHashMap<>();
+
+    public ShardRouter(@Qualifier("primaryDataSource") DataSource primary,
+                       @Value("${chat.shards.urls:}") List<String> shardUrls,
+                       @Value("${spring.datasource.username:}") String username,
+                       @Value("${spring.datasource.password:}") String password,
+                       @Value("${chat.shards.pool-size:10}") int poolSize,
+                       @Value("${chat.shards.virtual-nodes:128}") int virtualNodes,
+                       @Value("${spring.flyway.enabled:true}") boolean migrate,
+                       @Value("${chat.write-behind.enabled:false}") boolean writeBehindEnabled) {
+        this.primary = primary;
+        this.virtualNodes = Math.max(1, virtualNodes);
+        this.ring = new HashRing<>(this.virtualNodes);
+        for (int i = 0; i < GATE_STRIPES; i++) {
+            gates[i] = new ReentrantReadWriteLock();
+        }
+        addShard(primary);
+        for (String url : shardUrls) {
+            if (url.isBlank()) {
+                continue;
+            }
+            int index = shards.size();
+            HikariDataSource pool = new HikariDataSource();
+            pool.setPoolName("shard-" + index);
+            pool.setJdbcUrl(url.trim());
+            pool.setUsername(username);
+            pool.setPassword(password);
+            pool.setMaximumPoolSize(poolSize);
+            if (migrate) {
+                Flyway.configure()
+                        .dataSource(pool)
+                        .baselineOnMigrate(true)
+                        .baselineVersion("0")
+                        .placeholders(Map.of("shard_index", String.valueOf(index)))
+                        .load()
+                        .migrate();
+            }
+            addShard(pool);
+        }
+        if (shards.size() > 1 && writeBehindEnabled) {
+            throw new IllegalStateException("chat.write-behind.enabled is not supported with chat.shards.urls");
+        }
+        log.info("Sharding: {} shard(s), {} virtual nodes each", shards.size(), this.virtualNodes);
+    }
+
+    /**
+     * Register the next shard and its points on the ring
+     */
+    void addShard(DataSource dataSource) {
+        int shard = shards.size();
+        if (shard >= ShardContext.MAX_SHARDS) {
+            throw new IllegalStateException("At most " + ShardContext.MAX_SHARDS + " shards are supported");
+        }
+        shards.add(dataSource);
+        ring.add(shard, "shard-" + shard);
+        connections.put(shard, new AtomicLong());
+    }
+
+    public int shardCount() {
+        return shards.size();
+    }
+
+    public boolean isSharded() {
+        return shards.size() > 1;
+    }
+
+    public int shardOfUser(String userId) {
+        if (!isSharded()) {
+            return 0;
+        }
+        Integer moved = movedUsers.get(userId);
+        if (moved != null) {
+            return moved;
+        }
+        return ringShard(userId);
+    }
+
+    private int ringShard(String userId) {
+        return ring.get(userId);
+    }
+
+    /**
+     * Shard holding a session; IDs outside every configured shard cannot exist
+     */
+    public int shardOfSession(Long sessionId) {
+        if (!isSharded()) {
+            return 0;
+        }
+        Integer relocated = relocatedSessions.get(sessionId);
+        if (relocated != null) {
+            return relocated;
+        }
+        int home = ShardContext.homeShard(sessionId);
+        if (home >= shards.size()) {
+            throw new SessionNotFoundException(String.valueOf(sessionId));
+        }
+        return home;
+    }
+
+    public <T> T onShard(int shard, Supplier<T> work) {
+        if (shard < 0 || shard >= shards.size()) {
+            throw new InvalidInputException("Unknown shard " + shard);
+        }
+        return ShardContext.call(shard, work);
+    }
+
+    public <T> T onSession(Long sessionId, Supplier<T> work) {
+        return isSharded() ? ShardContext.call(shardOfSession(sessionId), work) : work.get();
+    }
+
+    public <T> T onUser(String userId, Supplier<T> work) {
+        return isSharded() ? ShardContext.call(shardOfUser(userId), work) : work.get();
+    }
+
+    /**
+     * Run a background job once per shard
+     */
+    public void forEachShard(Runnable job) {
+        for (int shard = 0; shard < shards.size(); shard++) {
+            ShardContext.call(shard, () -> {
+                job.run();
+                return null;
+            });
+        }
+    }
+
+    /**
+     * Group session IDs by the shard holding them, in first-seen order
+     */
+    public Map<Integer, List<Long>> groupSessions(Collection<Long> sessionIds) {
+        Map<Integer, List<Long>> groups = new LinkedHashMap<>();
+        for (Long sessionId : sessionIds) {
+            int shard;
+            try {
+                shard = shardOfSession(sessionId);
+            } catch (SessionNotFoundException e) {
+                // Reported as not found by the caller's lookup on shard 0
+                shard = 0;
+            }
+            groups.computeIfAbsent(shard, s -> new ArrayList<>()).add(sessionId);
+        }
+        return groups;
+    }
+
+    /**
+     * Run a write for a user. Shard lookups must happen inside it so that a write
+     * waiting on a cutover goes to the shard the user was moved to.
+     */
+    public <T> T writeUser(String userId, Supplier<T> work) {
+        return isSharded() ? gated(new int[] {stripe(userId)}, work) : work.get();
+    }
+
+    /**
+     * Run a write for a session; waits only while that session's owner is cut over
+     */
+    public <T> T writeSession(Long sessionId, Supplier<T> work) {
+        return isSharded() ? gated(new int[] {stripe(sessionId)}, work) : work.get();
+    }
+
+    public <T> T writeSessions(Collection<Long> sessionIds, Supplier<T> work) {
+        if (!isSharded()) {
+            return work.get();
+        }
+        return gated(stripes(sessionIds.stream().mapToInt(ShardRouter::stripe)), work);
+    }
+
+    private <T> T gated(int[] stripes, Supplier<T> work) {
+        // Stripes are always taken in ascending order, so multi-session writes cannot deadlock a cutover
+        for (int i = 0; i < stripes.length; i++) {
+            gates[stripes[i]].readLock().lock();
+        }
+        try {
+            return work.get();
+        } finally {
+            for (int i = stripes.length - 1; i >= 0; i--) {
+                gates[stripes[i]].readLock().unlock();
+            }
+        }
+    }
+
+    private static int stripe(Object key) {
+        return Math.floorMod(key.hashCode() * 0x9E3779B9, GATE_STRIPES);
+    }
+
+    private static int[] stripes(IntStream stripes) {
+        return stripes.distinct().sorted().toArray();
+    }
+
+    /**
+     * Target for a new connection; shard 0 defers to the replica routing
+     */
+    public DataSource select(Supplier<DataSource> shardZero) {
+        int shard = ShardContext.current();
+        connections.get(shard).incrementAndGet();
+        return shard == 0 ? shardZero.get() : shards.get(shard);
+    }
+
+    void beginMove() {
+        activeMoves.incrementAndGet();
+    }
+
+    void endMove() {
+        activeMoves.decrementAndGet();
+    }
+
+    /**
+     * Hold the writes of a user and their sessions, run the final delta, then point them at
+     * the target; returns the sessions moved. Other users' writes are not held.
+     *
+     * The sessions are listed before taking the gate so that their stripes can be locked in
+     * order; the gate is retaken if the list changed in between.
+     */
+    List<Long> cutover(String userId, int target, Supplier<List<Long>> sessionsOnSource, Runnable finalSync) {
+        List<Long> sessionIds = sessionsOnSource.get();
+        while (true) {
+            int[] stripes = stripes(IntStream.concat(IntStream.of(stripe(userId)),
+                    sessionIds.stream().mapToInt(ShardRouter::stripe)));
+            for (int stripe : stripes) {
+                gates[stripe].writeLock().lock();
+            }
+            try {
+                List<Long> current = sessionsOnSource.get();
+                if (!current.stream().allMatch(id -> Arrays.binarySearch(stripes, stripe(id)) >= 0)) {
+                    sessionIds = current;
+                    continue;
+                }
+                finalSync.run();
+                JdbcTemplate directory = new JdbcTemplate(primary);
+                int hashed = ringShard(userId);
+                if (hashed == target) {
+                    directory.update("DELETE FROM shard_users WHERE user_id = ?", userId);
+                } else {
+                    directory.update("INSERT INTO shard_users (user_id, shard) VALUES (?, ?) " +
+                            "ON CONFLICT (user_id) DO UPDATE SET shard = EXCLUDED.shard", userId, target);
+                }
+                synchronized (this) {
+                    Map<String, Integer> users = new HashMap<>(movedUsers);
+                    if (hashed == target) {
+                        users.remove(userId);
+                    } else {
+                        users.put(userId, target);
+                    }
+                    movedUsers = Map.copyOf(users);
+                }
+                relocateSessions(current, target);
+                return current;
+            } finally {
+                for (int i = stripes.length - 1; i >= 0; i--) {
+                    gates[stripes[i]].writeLock().unlock();
+                }
+            }
+        }
+    }
+
+    /**
+     * Point sessions at a shard in the directory
+     */
+    void relocateSessions(Collection<Long> sessionIds, int target) {
+        JdbcTemplate directory = new JdbcTemplate(primary);
+        for (Long sessionId : sessionIds) {
+            if (ShardContext.homeShard(sessionId) == target) {
+                directory.update("DELETE FROM shard_sessions WHERE session_id = ?", sessionId);
+            } else {
+                directory.update("INSERT INTO shard_sessions (session_id, shard) VALUES (?, ?) " +
+                        "ON CONFLICT (session_id) DO UPDATE SET shard = EXCLUDED.shard", sessionId, target);
+            }
+        }
+        synchronized (this) {
+            Map<Long, Integer> sessions = new HashMap<>(relocatedSessions);
+            for (Long sessionId : sessionIds) {
+                if (ShardContext.homeShard(sessionId) == target) {
+                    sessions.remove(sessionId);
+                } else {
+                    sessions.put(sessionId, target);
+                }
+            }
+            relocatedSessions = Map.copyOf(sessions);
+        }
+    }
+
+    /**
+     * Reload the directory; picks up moves made by other instances
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(initialDelayString = "${chat.shards.directory-refresh-ms:30000}",
+               fixedDelayString = "${chat.shards.directory-refresh-ms:30000}")
+    public void refreshDirectory() {
+        if (!isSharded()) {
+            return;
+        }
+        try {
+            JdbcTemplate directory = new JdbcTemplate(primary);
+            Map<String, Integer> users = new HashMap<>();
+            directory.query("SELECT user_id, shard FROM shard_users",
+                    rs -> {
+                        users.put(rs.getString(1), rs.getInt(2));
+                    });
+            Map<Long, Integer> sessions = new HashMap<>();
+            directory.query("SELECT session_id, shard FROM shard_sessions",
+                    rs -> {
+                        sessions.put(rs.getLong(1), rs.getInt(2));
+                    });
+            synchronized (this) {
+                movedUsers = Map.copyOf(users);
+                relocatedSessions = Map.copyOf(sessions);
+            }
+        } catch (DataAccessException e) {
+            log.warn("Failed to load shard directory: {}", e.getMessage());
+        }
+    }
+
+    public ShardingStats getStats() {
+        Map<Integer, Double> ringShares = ring.shares();
+
+        Map<Integer, Long> movedIn = new HashMap<>();
+        Map<Integer, Long> movedOut = new HashMap<>();
+        movedUsers.forEach((userId, shard) -> {
+            movedOut.merge(ringShard(userId), 1L, Long::sum);
+            movedIn.merge(shard, 1L, Long::sum);
+        });
+
+        List<ShardStats> stats = new ArrayList<>();
+        for (int shard = 0; shard < shards.size(); shard++) {
+            stats.add(ShardStats.builder()
+                    .shard(shard)
+                    .connections(connections.get(shard).get())
+                    .ringShare(ringShares.getOrDefault(shard, 0.0))
+                    .usersMovedIn(movedIn.getOrDefault(shard, 0L))
+                    .usersMovedOut(movedOut.getOrDefault(shard, 0L))
+                    .build());
+        }
+        return ShardingStats.builder()
+                .shardCount(shards.size())
+                .movedUsers(movedUsers.size())
+                .relocatedSessions(relocatedSessions.size())
+                .activeMoves(activeMoves.get())
+                .shards(stats)
+                .build();
+    }
+
+    @PreDestroy
+    public void close() {
+        for (int shard = 1; shard < shards.size(); shard++) {
+            if (shards.get(shard) instanceof HikariDataSource pool) {
+                pool.close();
+            }
+        }
+    }
+}
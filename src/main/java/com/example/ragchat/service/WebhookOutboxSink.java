@@ -0,0 +1,75 @@
+package com.example.ragchat.service;
+
+import com.example.ragchat.model.OutboxEvent;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * POSTs each batch as an NDJSON body to chat.outbox.webhook.url. Any 2xx response
+ * acknowledges the batch; anything else is retried by the relay.
+ */
+@Service
+@ConditionalOnProperty(name = "chat.outbox.sink", havingValue = "webhook")
+public class WebhookOutboxSink implements OutboxSink {
+
+    private final ObjectMapper objectMapper;
+    private final URI url;
+    private final String consumer;
+    private final Duration timeout;
+    private final HttpClient client;
+
+    public WebhookOutboxSink(ObjectMapper objectMapper,
+                             @Value("${chat.outbox.webhook.url:}") String url,
+                             @Value("${chat.outbox.consumer:default}") String consumer,
+                             @Value("${chat.outbox.webhook.timeout-ms:10000}") long timeoutMillis) {
+        if (url.isBlank()) {
+            throw new IllegalStateException("chat.outbox.webhook.url is required for the webhook sink");
+        }
+        this.objectMapper = objectMapper;
+        this.url = URI.create(url);
+        this.consumer = consumer;
+        this.timeout = Duration.ofMillis(timeoutMillis);
+        this.client = HttpClient.newBuilder().connectTimeout(timeout).build();
+    }
+
+    @Override
+    public String name() {
+        return "webhook";
+    }
+
+    @Override
+    public void deliver(List<OutboxEvent> events) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream(events.size() * 256);
+        for (OutboxEvent event : events) {
+            body.write(objectMapper.writeValueAsBytes(event));
+            body.write('\n');
+        }
+        HttpRequest request = HttpRequest.newBuilder(url)
+                .timeout(timeout)
+                .header("Content-Type", "application/x-ndjson")
+                .header("X-Outbox-Consumer", consumer)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body.toByteArray()))
+                .build();
+        HttpResponse<Void> response;
+        try {
+            response = client.send(request, HttpResponse.BodyHandlers.discarding());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while delivering outbox batch", e);
+        }
+        if (response.statusCode() / 100 != 2) {
+            throw new IOException("Webhook answered " + response.statusCode());
+        }
+    }
+}
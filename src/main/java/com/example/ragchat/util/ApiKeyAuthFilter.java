@@ -1,76 +1,71 @@
 package com.example.ragchat.util;
 
-import org.springframework.beans.factory.annotation.Value;
+import com.example.ragchat.config.FilterOrder;
+import com.example.ragchat.model.ApiKeyInfo;
+import com.example.ragchat.service.ApiKeyRegistry;
+import org.springframework.core.annotation.Order;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 import jakarta.servlet.*;
 import jakarta.servlet.http.*;
 import java.io.IOException;
-import java.util.Arrays;
 import java.util.List;
-import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.Optional;
 
 @Component
+@Order(FilterOrder.AUTH)
 public class ApiKeyAuthFilter extends OncePerRequestFilter {
 
-    @Value("${api.keys}")
-    private String apiKeys;
-
     // Paths that don't require API key authentication
-    private static final List<String> EXCLUDED_PATHS = Arrays.asList(
+    private static final PathPrefixTrie EXCLUDED_PATHS = new PathPrefixTrie(List.of(
             "/api/health",
             "/swagger-ui",
             "/v3/api-docs",
             "/swagger-resources",
             "/webjars"
-    );
+    ));
+
+    private final ApiKeyRegistry registry;
+
+    public ApiKeyAuthFilter(ApiKeyRegistry registry) {
+        this.registry = registry;
+    }
 
     @Override
     protected void doFilterInternal(HttpServletRequest request,
                                     HttpServletResponse response,
                                     FilterChain filterChain) throws ServletException, IOException {
 
-        String requestURI = request.getRequestURI();
-
         // Skip authentication for excluded paths
-        if (shouldSkipAuthentication(requestURI)) {
+        if (EXCLUDED_PATHS.matchesPrefix(request.getRequestURI())) {
             filterChain.doFilter(request, response);
             return;
         }
 
         // Get API key from header
-        String providedApiKey = request.getHeader("X-API-KEY");
+        String providedApiKey = request.getHeader(ApiKeyRegistry.HEADER);
 
         // Validate API key
         if (providedApiKey == null || providedApiKey.trim().isEmpty()) {
+            registry.recordRejected();
             sendUnauthorizedResponse(response, "Missing API Key");
             return;
         }
 
-        // Check if provided key is in the list of valid keys
-        Set<String> validKeys = Arrays.stream(apiKeys.split(","))
-                .map(String::trim)
-                .collect(Collectors.toSet());
-
-        if (!validKeys.contains(providedApiKey)) {
+        // Look the key up by digest; later filters read the same result from the request
+        Optional<ApiKeyInfo> key = registry.resolve(request);
+        if (key.isEmpty()) {
+            registry.recordRejected();
             sendUnauthorizedResponse(response, "Invalid API Key");
             return;
         }
+        registry.recordRequest(key.get());
 
         // API key is valid, continue with the request
         filterChain.doFilter(request, response);
     }
 
-    /**
-     * Check if the request path should skip authentication
-     */
-    private boolean shouldSkipAuthentication(String requestURI) {
-        return EXCLUDED_PATHS.stream()
-                .anyMatch(requestURI::startsWith);
-    }
-
     /**
      * Send unauthorized response with proper JSON format
      */
@@ -79,4 +74,4 @@ public class ApiKeyAuthFilter extends OncePerRequestFilter {
         response.setContentType(MediaType.APPLICATION_JSON_VALUE);
         response.getWriter().write(String.format("{\"error\": \"%s\", \"status\": 401}", message));
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,28 @@
+package com.example.ragchat.util;
+
+import com.example.ragchat.exception.InvalidInputException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Opaque resume position of a user export: the last (sessionId, messageId) written
+ */
+public record ExportCursor(long sessionId, long messageId) {
+
+    public String encode() {
+        String raw = sessionId + ":" + messageId;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static ExportCursor decode(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = raw.indexOf(':');
+            return new ExportCursor(Long.parseLong(raw.substring(0, separator)),
+                    Long.parseLong(raw.substring(separator + 1)));
+        } catch (RuntimeException e) {
+            throw new InvalidInputException("Invalid cursor: " + cursor);
+        }
+    }
+}
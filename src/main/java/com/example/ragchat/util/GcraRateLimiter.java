@@ -0,0 +1,168 @@
+package com.example.ragchat.util;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free rate limiter using the generic cell rate algorithm (GCRA), the
+ * continuous form of a token bucket.
+ *
+ * Each key holds a single "theoretical arrival time" in an AtomicLong, advanced by
+ * one emission interval per allowed request with a CAS loop, so checks never block.
+ * A key whose arrival time has passed is indistinguishable from a new key and can be
+ * dropped; the number of tracked keys is capped, and keys beyond the cap share one
+ * overflow bucket rather than growing the map.
+ */
+public class GcraRateLimiter {
+
+    private static final long SWEEP_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final int limit;
+    private final long periodNanos;
+    private final long emissionNanos;
+    private final long toleranceNanos;
+    private final int maxKeys;
+    private final long origin = System.nanoTime();
+
+    private final Map<String, AtomicLong> arrivals = new ConcurrentHashMap<>();
+    private final AtomicLong overflow = new AtomicLong();
+    private final AtomicLong lastSweep = new AtomicLong(-SWEEP_INTERVAL_NANOS);
+    private final AtomicLong overflowed = new AtomicLong();
+
+    /**
+     * @param limit  requests per period, and the largest burst
+     * @param period length of the period
+     */
+    public GcraRateLimiter(int limit, long period, TimeUnit unit, int maxKeys) {
+        if (limit <= 0 || period <= 0) {
+            throw new IllegalArgumentException("Rate limit and period must be positive");
+        }
+        this.limit = limit;
+        this.periodNanos = unit.toNanos(period);
+        this.emissionNanos = periodNanos / limit;
+        this.toleranceNanos = emissionNanos * limit;
+        this.maxKeys = maxKeys;
+    }
+
+    public Decision tryAcquire(String key) {
+        return tryAcquire(key, now());
+    }
+
+    Decision tryAcquire(String key, long now) {
+        AtomicLong arrival = bucket(key, now);
+        while (true) {
+            long tat = arrival.get();
+            long next = Math.max(tat, now) + emissionNanos;
+            long ahead = next - now;
+            if (ahead > toleranceNanos) {
+                return new Decision(false, limit, remaining(Math.max(tat, now) - now), tat - now,
+                        ahead - toleranceNanos);
+            }
+            if (arrival.compareAndSet(tat, next)) {
+                return new Decision(true, limit, remaining(ahead), ahead, 0);
+            }
+        }
+    }
+
+    /**
+     * Drain a key's bucket to at least the state whose arrival time lies ahead nanos
+     * past now; used to apply consumption seen elsewhere. Never refills a bucket.
+     */
+    void raiseTo(String key, long ahead, long now) {
+        AtomicLong arrival = tracked(key, now);
+        if (arrival == null) {
+            return;
+        }
+        long target = now + ahead;
+        while (true) {
+            long tat = arrival.get();
+            if (tat >= target || arrival.compareAndSet(tat, target)) {
+                return;
+            }
+        }
+    }
+
+    private AtomicLong bucket(String key, long now) {
+        AtomicLong arrival = tracked(key, now);
+        if (arrival == null) {
+            overflowed.incrementAndGet();
+            return overflow;
+        }
+        return arrival;
+    }
+
+    private AtomicLong tracked(String key, long now) {
+        AtomicLong arrival = arrivals.get(key);
+        if (arrival != null) {
+            return arrival;
+        }
+        if (arrivals.size() >= maxKeys) {
+            evictIdle(now, true);
+            if (arrivals.size() >= maxKeys) {
+                return null;
+            }
+        }
+        // A key first seen at time now starts with a full bucket
+        AtomicLong created = new AtomicLong(now);
+        arrival = arrivals.putIfAbsent(key, created);
+        return arrival != null ? arrival : created;
+    }
+
+    /**
+     * Drop keys whose bucket has refilled. A request racing the removal is counted
+     * against the dropped bucket, which at worst grants that key one extra request.
+     */
+    public int evictIdle() {
+        return evictIdle(now(), false);
+    }
+
+    private int evictIdle(long now, boolean throttled) {
+        long last = lastSweep.get();
+        if (throttled && now - last < SWEEP_INTERVAL_NANOS) {
+            return 0;
+        }
+        if (!lastSweep.compareAndSet(last, now)) {
+            return 0;
+        }
+        int before = arrivals.size();
+        arrivals.values().removeIf(arrival -> arrival.get() <= now);
+        return before - arrivals.size();
+    }
+
+    private int remaining(long ahead) {
+        return (int) Math.max(0, (toleranceNanos - ahead) / emissionNanos);
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public long getPeriodSeconds() {
+        return TimeUnit.NANOSECONDS.toSeconds(periodNanos);
+    }
+
+    public int trackedKeys() {
+        return arrivals.size();
+    }
+
+    public long overflowed() {
+        return overflowed.get();
+    }
+
+    long getEmissionNanos() {
+        return emissionNanos;
+    }
+
+    long now() {
+        return System.nanoTime() - origin;
+    }
+
+    /**
+     * Outcome of a check. Durations are nanoseconds: resetNanos until the bucket is
+     * full again, retryAfterNanos until a denied request would be allowed.
+     */
+    public record Decision(boolean allowed, int limit, int remaining, long resetNanos, long retryAfterNanos) {
+    }
+}
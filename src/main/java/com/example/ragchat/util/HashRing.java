@@ -0,0 +1,81 @@
+package com.example.ragchat.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Consistent-hash ring with virtual nodes.
+ *
+ * Each node is placed at several points; a key belongs to the first point at or
+ * after its hash. Adding or removing a node only moves the keys in its ranges.
+ * Not thread-safe for writes: build the ring fully before sharing it.
+ */
+public class HashRing<T> {
+
+    private final NavigableMap<Long, T> points = new TreeMap<>();
+    private final int virtualNodes;
+
+    public HashRing(int virtualNodes) {
+        this.virtualNodes = Math.max(1, virtualNodes);
+    }
+
+    /**
+     * Place a node on the ring; the name must be stable across restarts and instances
+     */
+    public void add(T node, String name) {
+        for (int v = 0; v < virtualNodes; v++) {
+            points.put(hash(name + "#" + v), node);
+        }
+    }
+
+    public boolean isEmpty() {
+        return points.isEmpty();
+    }
+
+    public T get(String key) {
+        if (points.isEmpty()) {
+            return null;
+        }
+        Map.Entry<Long, T> owner = points.ceilingEntry(hash(key));
+        return (owner != null ? owner : points.firstEntry()).getValue();
+    }
+
+    /**
+     * Fraction of the hash space owned by each node
+     */
+    public Map<T, Double> shares() {
+        Map<T, Double> shares = new HashMap<>();
+        if (points.isEmpty()) {
+            return shares;
+        }
+        double previous = Long.MIN_VALUE;
+        for (Map.Entry<Long, T> point : points.entrySet()) {
+            // Each point owns the hash range since the previous point
+            shares.merge(point.getValue(), (point.getKey() - previous) / 0x1p64, Double::sum);
+            previous = point.getKey();
+        }
+        // The wrap-around range belongs to the first point
+        shares.merge(points.firstEntry().getValue(), ((double) Long.MAX_VALUE - previous) / 0x1p64, Double::sum);
+        return shares;
+    }
+
+    /**
+     * 64-bit FNV-1a with a murmur finalizer, so similar keys spread over the ring
+     */
+    public static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
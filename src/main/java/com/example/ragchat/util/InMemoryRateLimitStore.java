@@ -0,0 +1,37 @@
+package com.example.ragchat.util;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Rate limit store held in memory, for limiters sharing a process and for simulations
+ * driven by their own clock.
+ */
+public class InMemoryRateLimitStore implements RateLimitStore {
+
+    private final Map<String, Long> arrivals = new ConcurrentHashMap<>();
+    private final LongSupplier clock;
+
+    public InMemoryRateLimitStore() {
+        this(System::nanoTime);
+    }
+
+    public InMemoryRateLimitStore(LongSupplier clock) {
+        this.clock = clock;
+    }
+
+    @Override
+    public synchronized Map<String, Long> consume(String limiter, Map<String, Long> consumed, long emissionNanos) {
+        long now = clock.getAsLong();
+        Map<String, Long> ahead = new HashMap<>();
+        consumed.forEach((key, count) -> {
+            long tat = Math.max(arrivals.getOrDefault(limiter + '\u0000' + key, now), now) + count * emissionNanos;
+            arrivals.put(limiter + '\u0000' + key, tat);
+            ahead.put(key, tat - now);
+        });
+        arrivals.values().removeIf(tat -> tat <= now);
+        return ahead;
+    }
+}
@@ -0,0 +1,34 @@
+package com.example.ragchat.util;
+
+import com.example.ragchat.exception.InvalidInputException;
+import com.example.ragchat.model.ChatMessage;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Date;
+
+/**
+ * Opaque keyset cursor over a message's (timestamp, id) position
+ */
+public record MessageCursor(Date timestamp, Long id) {
+
+    public static MessageCursor of(ChatMessage message) {
+        return new MessageCursor(message.getTimestamp(), message.getId());
+    }
+
+    public String encode() {
+        String raw = timestamp.getTime() + ":" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static MessageCursor decode(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = raw.indexOf(':');
+            return new MessageCursor(new Date(Long.parseLong(raw.substring(0, separator))),
+                    Long.parseLong(raw.substring(separator + 1)));
+        } catch (RuntimeException e) {
+            throw new InvalidInputException("Invalid cursor: " + cursor);
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package com.example.ragchat.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Streaming near-duplicate detector based on MinHash signatures and LSH banding.
+ *
+ * Memory is bounded: at most {@code maxTrackedChunks} signatures are kept and the
+ * band tables are capped accordingly, evicting the least recently touched entries.
+ * Instances are thread-safe.
+ */
+public class MinHashDeduplicator {
+
+    private static final int SHINGLE_SIZE = 3;
+
+    private final int numHashes;
+    private final int bands;
+    private final int rowsPerBand;
+    private final double threshold;
+    private final long[] seeds;
+
+    private final Map<Long, long[]> signatures;
+    private final Map<Long, Long> bandBuckets;
+
+    public MinHashDeduplicator(int numHashes, int bands, double threshold, int maxTrackedChunks) {
+        if (numHashes <= 0 || bands <= 0 || numHashes % bands != 0) {
+            throw new IllegalArgumentException("numHashes must be a positive multiple of bands");
+        }
+        if (threshold <= 0 || threshold > 1) {
+            throw new IllegalArgumentException("Jaccard threshold must be in (0, 1]");
+        }
+        if (maxTrackedChunks <= 0) {
+            throw new IllegalArgumentException("maxTrackedChunks must be positive");
+        }
+        this.numHashes = numHashes;
+        this.bands = bands;
+        this.rowsPerBand = numHashes / bands;
+        this.threshold = threshold;
+        this.seeds = new long[numHashes];
+        long seed = 0x9E3779B97F4A7C15L;
+        for (int i = 0; i < numHashes; i++) {
+            seed = mix(seed + i);
+            seeds[i] = seed;
+        }
+        this.signatures = new LruMap<>(maxTrackedChunks);
+        this.bandBuckets = new LruMap<>(maxTrackedChunks * bands);
+    }
+
+    /**
+     * Check a chunk against everything seen so far. Returns the ID of the retained
+     * chunk it duplicates, or registers it under {@code chunkId} and returns empty.
+     */
+    public synchronized Optional<Long> checkAndRegister(long chunkId, String text) {
+        long[] signature = signature(text);
+        long[] bandKeys = new long[bands];
+        for (int b = 0; b < bands; b++) {
+            bandKeys[b] = bandKey(signature, b);
+            Long candidate = bandBuckets.get(bandKeys[b]);
+            if (candidate == null) {
+                continue;
+            }
+            long[] other = signatures.get(candidate);
+            if (other != null && estimateJaccard(signature, other) >= threshold) {
+                return Optional.of(candidate);
+            }
+        }
+
+        signatures.put(chunkId, signature);
+        for (int b = 0; b < bands; b++) {
+            bandBuckets.put(bandKeys[b], chunkId);
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Forget a chunk so it no longer absorbs future duplicates
+     */
+    public synchronized void remove(long chunkId) {
+        long[] signature = signatures.remove(chunkId);
+        if (signature == null) {
+            return;
+        }
+        for (int b = 0; b < bands; b++) {
+            bandBuckets.remove(bandKey(signature, b), chunkId);
+        }
+    }
+
+    public synchronized int trackedChunks() {
+        return signatures.size();
+    }
+
+    /**
+     * Compute the MinHash signature of a text over lower-cased word shingles
+     */
+    public long[] signature(String text) {
+        long[] signature = new long[numHashes];
+        Arrays.fill(signature, Long.MAX_VALUE);
+        for (long shingle : shingleHashes(text)) {
+            for (int i = 0; i < numHashes; i++) {
+                long h = mix(shingle ^ seeds[i]);
+                if (h < signature[i]) {
+                    signature[i] = h;
+                }
+            }
+        }
+        return signature;
+    }
+
+    public static double estimateJaccard(long[] a, long[] b) {
+        int same = 0;
+        for (int i = 0; i < a.length; i++) {
+            if (a[i] == b[i]) {
+                same++;
+            }
+        }
+        return (double) same / a.length;
+    }
+
+    private long bandKey(long[] signature, int band) {
+        long h = band + 1;
+        int start = band * rowsPerBand;
+        for (int i = start; i < start + rowsPerBand; i++) {
+            h = mix(h * 31 + signature[i]);
+        }
+        return h;
+    }
+
+    private static List<Long> shingleHashes(String text) {
+        String[] words = text.toLowerCase(Locale.ROOT).split("\\W+");
+        List<String> tokens = new ArrayList<>(words.length);
+        for (String word : words) {
+            if (!word.isEmpty()) {
+                tokens.add(word);
+            }
+        }
+
+        List<Long> hashes = new ArrayList<>();
+        if (tokens.size() < SHINGLE_SIZE) {
+            hashes.add(fnv1a(String.join(" ", tokens)));
+            return hashes;
+        }
+        for (int i = 0; i + SHINGLE_SIZE <= tokens.size(); i++) {
+            hashes.add(fnv1a(String.join(" ", tokens.subList(i, i + SHINGLE_SIZE))));
+        }
+        return hashes;
+    }
+
+    private static long fnv1a(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= (b & 0xff);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * SplitMix64 finalizer
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    private static class LruMap<K, V> extends LinkedHashMap<K, V> {
+        private final int maxEntries;
+
+        LruMap(int maxEntries) {
+            super(16, 0.75f, true);
+            this.maxEntries = maxEntries;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+            return size() > maxEntries;
+        }
+    }
+}
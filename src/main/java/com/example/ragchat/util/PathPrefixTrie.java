@@ -0,0 +1,75 @@
+package com.example.ragchat.util;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Immutable character trie answering whether a path starts with any of a fixed set
+ * of prefixes, in one pass over the path whatever the number of prefixes.
+ */
+public final class PathPrefixTrie {
+
+    private final Node root;
+
+    public PathPrefixTrie(Collection<String> prefixes) {
+        Builder builder = new Builder();
+        for (String prefix : prefixes) {
+            Builder node = builder;
+            for (int i = 0; i < prefix.length(); i++) {
+                node = node.children.computeIfAbsent(prefix.charAt(i), c -> new Builder());
+            }
+            node.terminal = true;
+        }
+        this.root = builder.freeze();
+    }
+
+    public boolean matchesPrefix(String path) {
+        Node node = root;
+        for (int i = 0; !node.terminal; i++) {
+            if (i == path.length()) {
+                return false;
+            }
+            node = node.child(path.charAt(i));
+            if (node == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static final class Node {
+        // Sorted labels, searched by bisection; children[i] follows labels[i]
+        private final char[] labels;
+        private final Node[] children;
+        private final boolean terminal;
+
+        private Node(char[] labels, Node[] children, boolean terminal) {
+            this.labels = labels;
+            this.children = children;
+            this.terminal = terminal;
+        }
+
+        private Node child(char c) {
+            int i = Arrays.binarySearch(labels, c);
+            return i >= 0 ? children[i] : null;
+        }
+    }
+
+    private static final class Builder {
+        private final Map<Character, Builder> children = new TreeMap<>();
+        private boolean terminal;
+
+        private Node freeze() {
+            char[] labels = new char[children.size()];
+            Node[] nodes = new Node[children.size()];
+            int i = 0;
+            for (Map.Entry<Character, Builder> entry : children.entrySet()) {
+                labels[i] = entry.getKey();
+                nodes[i++] = entry.getValue().freeze();
+            }
+            return new Node(labels, nodes, terminal);
+        }
+    }
+}
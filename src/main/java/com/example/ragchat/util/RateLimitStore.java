@@ -0,0 +1,18 @@
+package com.example.ragchat.util;
+
+import java.util.Map;
+
+/**
+ * Shared rate limit state that several processes reconcile their local buckets against.
+ */
+public interface RateLimitStore {
+
+    /**
+     * Charge requests already admitted locally to the shared bucket of each key.
+     *
+     * @param consumed      admitted requests per key since the last call
+     * @param emissionNanos cost of one request, the limiter's period divided by its limit
+     * @return per key, how many nanoseconds the shared bucket's arrival time now lies ahead of the present
+     */
+    Map<String, Long> consume(String limiter, Map<String, Long> consumed, long emissionNanos);
+}
@@ -0,0 +1,45 @@
+package com.example.ragchat.util;
+
+import com.example.ragchat.exception.InvalidInputException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Opaque keyset cursor over a search hit's (score, sessionId, messageId) position
+ */
+public record SearchCursor(double score, long sessionId, long messageId) {
+
+    // Sorts before every real hit, used for the first page
+    public static final SearchCursor FIRST = new SearchCursor(Double.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE);
+
+    /**
+     * Whether a hit at the given position comes after this cursor in descending order
+     */
+    public boolean precedes(double hitScore, long hitSessionId, long hitMessageId) {
+        if (hitScore != score) {
+            return hitScore < score;
+        }
+        if (hitSessionId != sessionId) {
+            return hitSessionId < sessionId;
+        }
+        return hitMessageId < messageId;
+    }
+
+    public String encode() {
+        String raw = score + ":" + sessionId + ":" + messageId;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static SearchCursor decode(String cursor) {
+        try {
+            String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(":");
+            if (parts.length != 3) {
+                throw new IllegalArgumentException();
+            }
+            return new SearchCursor(Double.parseDouble(parts[0]), Long.parseLong(parts[1]), Long.parseLong(parts[2]));
+        } catch (RuntimeException e) {
+            throw new InvalidInputException("Invalid cursor: " + cursor);
+        }
+    }
+}
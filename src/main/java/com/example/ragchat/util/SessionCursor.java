@@ -0,0 +1,37 @@
+package com.example.ragchat.util;
+
+import com.example.ragchat.dto.SessionSummary;
+import com.example.ragchat.exception.InvalidInputException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Date;
+
+/**
+ * Opaque keyset cursor over a session's (favorite, updatedAt, id) position
+ */
+public record SessionCursor(boolean favorite, Date updatedAt, Long id) {
+
+    public static SessionCursor of(SessionSummary session) {
+        return new SessionCursor(session.isFavorite(), session.getUpdatedAt(), session.getId());
+    }
+
+    public String encode() {
+        String raw = (favorite ? 1 : 0) + ":" + updatedAt.getTime() + ":" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static SessionCursor decode(String cursor) {
+        try {
+            String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(":");
+            if (parts.length != 3) {
+                throw new IllegalArgumentException();
+            }
+            return new SessionCursor("1".equals(parts[0]),
+                    new Date(Long.parseLong(parts[1])),
+                    Long.parseLong(parts[2]));
+        } catch (RuntimeException e) {
+            throw new InvalidInputException("Invalid cursor: " + cursor);
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.ragchat.util;
+
+import java.util.function.Supplier;
+
+/**
+ * Shard the current thread's database work runs against; shard 0 when none is set.
+ *
+ * Session IDs carry their home shard in the bits above {@link #SHARD_SHIFT}: every
+ * shard allocates session and message IDs from its own range, so IDs never collide
+ * and stay below 2^53 for JSON clients.
+ */
+public final class ShardContext {
+
+    public static final int SHARD_SHIFT = 48;
+    public static final int MAX_SHARDS = 32;
+
+    private static final ThreadLocal<Integer> CURRENT = new ThreadLocal<>();
+
+    private ShardContext() {
+    }
+
+    public static int current() {
+        Integer shard = CURRENT.get();
+        return shard != null ? shard : 0;
+    }
+
+    /**
+     * Run work against a shard, restoring the previous shard afterwards
+     */
+    public static <T> T call(int shard, Supplier<T> work) {
+        Integer previous = CURRENT.get();
+        CURRENT.set(shard);
+        try {
+            return work.get();
+        } finally {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+
+    public static int homeShard(long id) {
+        return (int) (id >>> SHARD_SHIFT);
+    }
+
+    public static long firstId(int shard) {
+        return (long) shard << SHARD_SHIFT;
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.ragchat.util;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * GCRA limiter whose budget is shared with other processes through a RateLimitStore.
+ *
+ * Requests are still decided against the local bucket, so a check costs no network
+ * round trip. Admitted requests are counted per key and charged to the store in one
+ * batch per sync; the store answers with the shared bucket's state, and the local
+ * bucket is drained to match it. Between syncs each process can admit what its own
+ * bucket allows, so the shared limit is overshot by at most one sync interval of
+ * traffic per process, and the overshoot is paid back from later budget.
+ */
+public class SharedRateLimiter extends GcraRateLimiter {
+
+    private final String name;
+    private final RateLimitStore store;
+    private final Map<String, Long> pending = new ConcurrentHashMap<>();
+
+    public SharedRateLimiter(String name, int limit, long period, TimeUnit unit, int maxKeys, RateLimitStore store) {
+        super(limit, period, unit, maxKeys);
+        this.name = name;
+        this.store = store;
+    }
+
+    @Override
+    Decision tryAcquire(String key, long now) {
+        Decision decision = super.tryAcquire(key, now);
+        if (decision.allowed()) {
+            pending.merge(key, 1L, Long::sum);
+        }
+        return decision;
+    }
+
+    /**
+     * Report requests admitted since the last sync and apply those admitted elsewhere.
+     * On failure the counts are kept for the next attempt and the exception is rethrown.
+     *
+     * @return number of keys synced
+     */
+    public int sync() {
+        return sync(now());
+    }
+
+    synchronized int sync(long now) {
+        // Sorted, so concurrent batches from several processes update rows in the same order
+        Map<String, Long> batch = new TreeMap<>();
+        for (String key : pending.keySet()) {
+            Long count = pending.remove(key);
+            if (count != null) {
+                batch.put(key, count);
+            }
+        }
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        Map<String, Long> ahead;
+        try {
+            ahead = store.consume(name, batch, getEmissionNanos());
+        } catch (RuntimeException e) {
+            batch.forEach((key, count) -> pending.merge(key, count, Long::sum));
+            throw e;
+        }
+        ahead.forEach((key, nanos) -> raiseTo(key, nanos, now));
+        return batch.size();
+    }
+
+    public int pendingKeys() {
+        return pending.size();
+    }
+}
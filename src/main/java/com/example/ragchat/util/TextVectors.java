@@ -0,0 +1,74 @@
+package com.example.ragchat.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Tokenization and sparse term-frequency vectors used for lexical similarity
+ */
+public final class TextVectors {
+
+    private TextVectors() {
+    }
+
+    public static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) {
+            return tokens;
+        }
+        for (String token : text.toLowerCase(Locale.ROOT).split("\\W+")) {
+            if (token.length() > 1) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * L2-normalized term-frequency vector
+     */
+    public static Map<String, Double> vectorize(String text) {
+        Map<String, Double> vector = new HashMap<>();
+        for (String token : tokenize(text)) {
+            vector.merge(token, 1.0, Double::sum);
+        }
+        double norm = 0;
+        for (double value : vector.values()) {
+            norm += value * value;
+        }
+        if (norm > 0) {
+            double scale = 1.0 / Math.sqrt(norm);
+            vector.replaceAll((term, value) -> value * scale);
+        }
+        return vector;
+    }
+
+    /**
+     * Cosine similarity of two normalized vectors
+     */
+    public static double cosine(Map<String, Double> a, Map<String, Double> b) {
+        if (a.size() > b.size()) {
+            Map<String, Double> swap = a;
+            a = b;
+            b = swap;
+        }
+        double dot = 0;
+        for (Map.Entry<String, Double> entry : a.entrySet()) {
+            Double other = b.get(entry.getKey());
+            if (other != null) {
+                dot += entry.getValue() * other;
+            }
+        }
+        return dot;
+    }
+
+    /**
+     * Rough token count (about four characters per token for English text)
+     */
+    public static int estimateTokens(String text) {
+        return text == null ? 0 : (text.length() + 3) / 4;
+    }
+}
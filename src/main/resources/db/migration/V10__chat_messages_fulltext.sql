@@ -0,0 +1,8 @@
+-- Full-text search over message content: stored generated tsvector plus a GIN index.
+-- Adding a stored generated column rewrites each partition once.
+ALTER TABLE chat_messages
+    ADD COLUMN IF NOT EXISTS content_tsv tsvector
+    GENERATED ALWAYS AS (to_tsvector('english', content)) STORED;
+
+CREATE INDEX IF NOT EXISTS idx_chat_messages_content_tsv
+    ON chat_messages USING GIN (content_tsv);
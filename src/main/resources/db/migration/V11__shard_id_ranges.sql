@@ -0,0 +1,26 @@
+-- Sharding: each shard hands out session and message IDs from its own range starting at
+-- shard_index << 48, so a session ID names its home shard and IDs never collide across shards.
+-- Message blocks are pooled (allocationSize 50), so that sequence starts a full block in.
+-- No-op on shard 0, which keeps its existing IDs.
+DO $$
+BEGIN
+    IF ${shard_index} > 0 THEN
+        PERFORM setval(pg_get_serial_sequence('chat_sessions', 'id'),
+                       GREATEST((${shard_index}::bigint << 48),
+                                (SELECT COALESCE(MAX(id), 0) FROM chat_sessions)) + 1, false);
+        PERFORM setval('chat_messages_seq',
+                       GREATEST((${shard_index}::bigint << 48),
+                                (SELECT COALESCE(MAX(id), 0) FROM chat_messages)) + 50, false);
+    END IF;
+END $$;
+
+-- Directory of users and sessions moved off their hashed or home shard (read from shard 0)
+CREATE TABLE IF NOT EXISTS shard_users (
+    user_id VARCHAR(255) PRIMARY KEY,
+    shard   INT NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS shard_sessions (
+    session_id BIGINT PRIMARY KEY,
+    shard      INT    NOT NULL
+);
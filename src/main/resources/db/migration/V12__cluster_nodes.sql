@@ -0,0 +1,6 @@
+-- Live application nodes for database discovery in cluster mode; rows expire by heartbeat age
+CREATE TABLE IF NOT EXISTS cluster_nodes (
+    url          VARCHAR(255) PRIMARY KEY,
+    started_at   TIMESTAMP(6) NOT NULL DEFAULT now(),
+    heartbeat_at TIMESTAMP(6) NOT NULL DEFAULT now()
+);
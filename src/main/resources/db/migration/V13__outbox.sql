@@ -0,0 +1,25 @@
+-- Transactional outbox: change events written in the same transaction as the change.
+-- tx_id lets the relay read only events whose writing transactions have all finished,
+-- so events never appear behind a consumer's offset.
+CREATE TABLE IF NOT EXISTS outbox_events (
+    id         BIGINT GENERATED ALWAYS AS IDENTITY,
+    tx_id      BIGINT       NOT NULL DEFAULT txid_current(),
+    event_type VARCHAR(32)  NOT NULL,
+    session_id BIGINT       NOT NULL,
+    user_id    VARCHAR(255),
+    payload    TEXT         NOT NULL,
+    created_at TIMESTAMP(6) NOT NULL DEFAULT now(),
+    PRIMARY KEY (tx_id, id)
+);
+
+-- Rows are inserted and deleted constantly; vacuum early so the queue stays small
+ALTER TABLE outbox_events SET (autovacuum_vacuum_scale_factor = 0.01, autovacuum_vacuum_threshold = 1000);
+
+-- Delivery position of each named consumer
+CREATE TABLE IF NOT EXISTS outbox_offsets (
+    consumer   VARCHAR(64)  PRIMARY KEY,
+    tx_id      BIGINT       NOT NULL DEFAULT 0,
+    event_id   BIGINT       NOT NULL DEFAULT 0,
+    delivered  BIGINT       NOT NULL DEFAULT 0,
+    updated_at TIMESTAMP(6) NOT NULL DEFAULT now()
+);
@@ -0,0 +1,12 @@
+-- Shared rate limit buckets: one GCRA arrival time per limiter and client, in
+-- microseconds since the epoch by the database clock. A row whose arrival time has
+-- passed is a full bucket and may be deleted. Unlogged: losing it on a crash only
+-- resets budgets, and it takes no WAL.
+CREATE UNLOGGED TABLE IF NOT EXISTS rate_limits (
+    limiter    VARCHAR(32) NOT NULL,
+    client_key VARCHAR(64) NOT NULL,
+    tat_us     BIGINT      NOT NULL,
+    PRIMARY KEY (limiter, client_key)
+);
+
+ALTER TABLE rate_limits SET (autovacuum_vacuum_scale_factor = 0.01, autovacuum_vacuum_threshold = 1000);
@@ -0,0 +1,12 @@
+-- API keys loaded by the key registry when api.keys.db-enabled is set. Only the
+-- SHA-256 digest of each key is stored.
+CREATE TABLE IF NOT EXISTS api_keys (
+    id                       VARCHAR(64)  PRIMARY KEY,
+    key_sha256               CHAR(64)     NOT NULL UNIQUE,
+    tenant                   VARCHAR(255),
+    tier                     VARCHAR(32),
+    requests_per_minute      INTEGER,
+    chat_requests_per_minute INTEGER,
+    enabled                  BOOLEAN      NOT NULL DEFAULT TRUE,
+    created_at               TIMESTAMP(6) NOT NULL DEFAULT now()
+);
@@ -0,0 +1,18 @@
+-- Baseline of the schema previously created by hibernate ddl-auto; no-op on existing databases
+CREATE TABLE IF NOT EXISTS chat_sessions (
+    id         BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    user_id    VARCHAR(255) NOT NULL,
+    name       VARCHAR(255) NOT NULL,
+    favorite   BOOLEAN      NOT NULL,
+    created_at TIMESTAMP(6) NOT NULL,
+    updated_at TIMESTAMP(6) NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS chat_messages (
+    id         BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    session_id BIGINT        NOT NULL,
+    sender     VARCHAR(255)  NOT NULL,
+    content    VARCHAR(1000) NOT NULL,
+    context    VARCHAR(1000),
+    timestamp  TIMESTAMP(6)  NOT NULL
+);
@@ -0,0 +1,4 @@
+-- Supports keyset pagination: WHERE session_id = ? AND (timestamp, id) > (?, ?) ORDER BY timestamp, id
+-- CONCURRENTLY avoids blocking writes on large tables; Flyway runs this migration outside a transaction
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_chat_messages_session_ts_id
+    ON chat_messages (session_id, timestamp, id);
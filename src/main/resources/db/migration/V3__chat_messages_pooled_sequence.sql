@@ -0,0 +1,5 @@
+-- Replace the IDENTITY column with a pooled sequence (increment = JPA allocationSize 50)
+-- so Hibernate can assign IDs up front and batch inserts
+CREATE SEQUENCE IF NOT EXISTS chat_messages_seq INCREMENT BY 50;
+SELECT setval('chat_messages_seq', (SELECT COALESCE(MAX(id), 0) + 50 FROM chat_messages));
+ALTER TABLE chat_messages ALTER COLUMN id DROP IDENTITY IF EXISTS;
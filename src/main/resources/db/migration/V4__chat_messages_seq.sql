@@ -0,0 +1,9 @@
+-- Per-session message sequence assigned by the session's single writer; backfill existing rows
+ALTER TABLE chat_messages ADD COLUMN IF NOT EXISTS seq BIGINT;
+
+UPDATE chat_messages m
+SET seq = r.rn
+FROM (SELECT id, ROW_NUMBER() OVER (PARTITION BY session_id ORDER BY timestamp, id) AS rn
+      FROM chat_messages) r
+WHERE m.id = r.id
+  AND m.seq IS NULL;
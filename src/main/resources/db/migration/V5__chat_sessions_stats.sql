@@ -0,0 +1,23 @@
+-- Denormalized per-session statistics maintained by the message write path; backfill existing rows
+ALTER TABLE chat_sessions ADD COLUMN IF NOT EXISTS message_count BIGINT NOT NULL DEFAULT 0;
+ALTER TABLE chat_sessions ADD COLUMN IF NOT EXISTS last_message_at TIMESTAMP;
+ALTER TABLE chat_sessions ADD COLUMN IF NOT EXISTS prompt_tokens BIGINT NOT NULL DEFAULT 0;
+ALTER TABLE chat_sessions ADD COLUMN IF NOT EXISTS completion_tokens BIGINT NOT NULL DEFAULT 0;
+
+UPDATE chat_sessions s
+SET message_count = a.cnt,
+    last_message_at = a.last_at,
+    prompt_tokens = a.prompt,
+    completion_tokens = a.completion
+FROM (SELECT session_id,
+             COUNT(*) AS cnt,
+             MAX(timestamp) AS last_at,
+             COALESCE(SUM((LENGTH(content) + 3) / 4) FILTER (WHERE sender <> 'assistant'), 0) AS prompt,
+             COALESCE(SUM((LENGTH(content) + 3) / 4) FILTER (WHERE sender = 'assistant'), 0) AS completion
+      FROM chat_messages
+      GROUP BY session_id) a
+WHERE s.id = a.session_id;
+
+-- Serves "sessions of a user by last activity" as a single index scan
+CREATE INDEX IF NOT EXISTS idx_chat_sessions_user_last_message
+    ON chat_sessions (user_id, last_message_at DESC NULLS LAST, id DESC);
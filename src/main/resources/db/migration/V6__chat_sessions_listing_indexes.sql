@@ -0,0 +1,10 @@
+-- Covering indexes for paginated session listing: the projected columns are INCLUDEd so
+-- a page is served by an index-only scan, whatever the number of sessions per user.
+-- CONCURRENTLY avoids blocking writes; Flyway runs this migration outside a transaction
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_chat_sessions_user_fav_updated
+    ON chat_sessions (user_id, favorite DESC, updated_at DESC, id DESC)
+    INCLUDE (name, message_count, last_message_at);
+
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_chat_sessions_user_updated
+    ON chat_sessions (user_id, updated_at DESC, id DESC)
+    INCLUDE (name, favorite, message_count, last_message_at);
@@ -0,0 +1,7 @@
+-- Tombstone for sessions whose messages are purged in the background
+ALTER TABLE chat_sessions ADD COLUMN IF NOT EXISTS deleted_at TIMESTAMP;
+
+-- Lets the purger find pending tombstones without scanning live sessions
+CREATE INDEX IF NOT EXISTS idx_chat_sessions_deleted_at
+    ON chat_sessions (deleted_at)
+    WHERE deleted_at IS NOT NULL;
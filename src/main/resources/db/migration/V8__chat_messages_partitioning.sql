@@ -0,0 +1,49 @@
+-- Hash-partition chat_messages by session_id. Every message query is scoped to one session,
+-- so reads prune to a single partition while vacuum and index maintenance work on 16 small
+-- tables instead of one ever-growing heap. The primary key must contain the partition key.
+--
+-- The conversion below copies the whole table while holding an ACCESS EXCLUSIVE lock on it:
+-- reads and writes of messages block until it finishes. That is fine for new or small
+-- databases. Large ones should first run db/online/chat_messages_partitioning.sql, which
+-- converts the table in the background with a short lock only for the final swap; this
+-- migration then finds chat_messages already partitioned and skips the copy.
+DO $$
+BEGIN
+    IF EXISTS (SELECT 1 FROM pg_partitioned_table WHERE partrelid = 'chat_messages'::regclass) THEN
+        RETURN;
+    END IF;
+
+    ALTER TABLE chat_messages RENAME TO chat_messages_unpartitioned;
+
+    CREATE TABLE chat_messages (
+        id         BIGINT        NOT NULL,
+        session_id BIGINT        NOT NULL,
+        seq        BIGINT,
+        sender     VARCHAR(255)  NOT NULL,
+        content    VARCHAR(1000) NOT NULL,
+        context    VARCHAR(1000),
+        timestamp  TIMESTAMP(6)  NOT NULL,
+        PRIMARY KEY (session_id, id)
+    ) PARTITION BY HASH (session_id);
+
+    FOR i IN 0..15 LOOP
+        EXECUTE format('CREATE TABLE chat_messages_p%s PARTITION OF chat_messages ' ||
+                       'FOR VALUES WITH (MODULUS 16, REMAINDER %s)', i, i);
+    END LOOP;
+
+    INSERT INTO chat_messages (id, session_id, seq, sender, content, context, timestamp)
+    SELECT id, session_id, seq, sender, content, context, timestamp
+    FROM chat_messages_unpartitioned;
+
+    DROP TABLE chat_messages_unpartitioned;
+END $$;
+
+CREATE INDEX IF NOT EXISTS idx_chat_messages_session_ts_id
+    ON chat_messages (session_id, timestamp, id);
+
+-- Cold-tier archival: sessions whose messages were moved to a compressed segment file
+ALTER TABLE chat_sessions ADD COLUMN IF NOT EXISTS archived_at TIMESTAMP;
+
+CREATE INDEX IF NOT EXISTS idx_chat_sessions_archive_candidates
+    ON chat_sessions (last_message_at)
+    WHERE archived_at IS NULL AND deleted_at IS NULL;
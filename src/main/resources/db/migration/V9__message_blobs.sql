@@ -0,0 +1,14 @@
+-- Content-addressed, compressed storage for large context and oversized content
+CREATE TABLE IF NOT EXISTS message_blobs (
+    hash       VARCHAR(64)  PRIMARY KEY,
+    codec      SMALLINT     NOT NULL,
+    raw_length INTEGER      NOT NULL,
+    data       BYTEA        NOT NULL,
+    created_at TIMESTAMP(6) NOT NULL DEFAULT now()
+);
+
+-- Blob data is already compressed; skip TOAST's own compression attempt
+ALTER TABLE message_blobs ALTER COLUMN data SET STORAGE EXTERNAL;
+
+ALTER TABLE chat_messages ADD COLUMN IF NOT EXISTS context_ref VARCHAR(64);
+ALTER TABLE chat_messages ADD COLUMN IF NOT EXISTS content_ref VARCHAR(64);
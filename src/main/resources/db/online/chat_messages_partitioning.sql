@@ -0,0 +1,87 @@
+-- Online conversion of chat_messages to the hash-partitioned layout of V8, for databases too
+-- large to copy under V8's exclusive lock. Run with psql against a database at V7, before
+-- upgrading to a release containing V8:
+--
+--   psql -v ON_ERROR_STOP=1 -f chat_messages_partitioning.sql
+--
+-- 1. A partitioned shadow table is created and a trigger mirrors every write into it.
+-- 2. Existing rows are copied in id batches, each committed on its own, so the
+--    application keeps reading and writing chat_messages throughout.
+-- 3. The tables are swapped in one short transaction. The old table is kept as
+--    chat_messages_unpartitioned until you drop it.
+--
+-- V8 then sees chat_messages is already partitioned and only adds its indexes and columns.
+-- If it is interrupted before the swap, the script can simply be run again.
+
+CREATE TABLE IF NOT EXISTS chat_messages_partitioned (
+    id         BIGINT        NOT NULL,
+    session_id BIGINT        NOT NULL,
+    seq        BIGINT,
+    sender     VARCHAR(255)  NOT NULL,
+    content    VARCHAR(1000) NOT NULL,
+    context    VARCHAR(1000),
+    timestamp  TIMESTAMP(6)  NOT NULL,
+    PRIMARY KEY (session_id, id)
+) PARTITION BY HASH (session_id);
+
+DO $$
+BEGIN
+    FOR i IN 0..15 LOOP
+        EXECUTE format('CREATE TABLE IF NOT EXISTS chat_messages_p%s PARTITION OF chat_messages_partitioned ' ||
+                       'FOR VALUES WITH (MODULUS 16, REMAINDER %s)', i, i);
+    END LOOP;
+END $$;
+
+CREATE OR REPLACE FUNCTION chat_messages_mirror() RETURNS trigger AS $$
+BEGIN
+    IF TG_OP IN ('UPDATE', 'DELETE') THEN
+        DELETE FROM chat_messages_partitioned WHERE session_id = OLD.session_id AND id = OLD.id;
+    END IF;
+    IF TG_OP IN ('INSERT', 'UPDATE') THEN
+        INSERT INTO chat_messages_partitioned (id, session_id, seq, sender, content, context, timestamp)
+        VALUES (NEW.id, NEW.session_id, NEW.seq, NEW.sender, NEW.content, NEW.context, NEW.timestamp)
+        ON CONFLICT (session_id, id) DO UPDATE
+            SET seq = EXCLUDED.seq, sender = EXCLUDED.sender, content = EXCLUDED.content,
+                context = EXCLUDED.context, timestamp = EXCLUDED.timestamp;
+    END IF;
+    RETURN NULL;
+END $$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS chat_messages_mirror ON chat_messages;
+CREATE TRIGGER chat_messages_mirror AFTER INSERT OR UPDATE OR DELETE ON chat_messages
+    FOR EACH ROW EXECUTE FUNCTION chat_messages_mirror();
+
+-- Backfill rows written before the trigger existed, committing every batch
+CREATE OR REPLACE PROCEDURE chat_messages_backfill(batch_size BIGINT DEFAULT 50000) AS $$
+DECLARE
+    last_id BIGINT := -1;
+    max_id  BIGINT;
+BEGIN
+    SELECT COALESCE(MAX(id), -1) INTO max_id FROM chat_messages;
+    WHILE last_id < max_id LOOP
+        INSERT INTO chat_messages_partitioned (id, session_id, seq, sender, content, context, timestamp)
+        SELECT id, session_id, seq, sender, content, context, timestamp
+        FROM chat_messages
+        WHERE id > last_id AND id <= last_id + batch_size
+        ON CONFLICT (session_id, id) DO NOTHING;
+        last_id := last_id + batch_size;
+        COMMIT;
+    END LOOP;
+END $$ LANGUAGE plpgsql;
+
+CALL chat_messages_backfill();
+
+-- A session deleted while its batch was being copied can leave copied rows behind
+DELETE FROM chat_messages_partitioned p
+WHERE NOT EXISTS (SELECT 1 FROM chat_sessions s WHERE s.id = p.session_id);
+
+-- The only step that blocks message traffic, for as long as two renames take
+BEGIN;
+LOCK TABLE chat_messages IN ACCESS EXCLUSIVE MODE;
+DROP TRIGGER chat_messages_mirror ON chat_messages;
+ALTER TABLE chat_messages RENAME TO chat_messages_unpartitioned;
+ALTER TABLE chat_messages_partitioned RENAME TO chat_messages;
+COMMIT;
+
+DROP PROCEDURE chat_messages_backfill(BIGINT);
+DROP FUNCTION chat_messages_mirror();
@@ -0,0 +1,101 @@
+package com.example.ragchat.config;
+
+import com.example.ragchat.service.AccessLogPipeline;
+import com.example.ragchat.service.ApiKeyRegistry;
+import com.example.ragchat.service.ClusterMembership;
+import com.example.ragchat.service.ClusterPeerAuth;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ApiLoggingFilterTest {
+
+    private final List<String> lines = new CopyOnWriteArrayList<>();
+    private final AccessLogPipeline pipeline = new AccessLogPipeline(16, 16, 256, lines::add);
+    private final ApiKeyRegistry registry = new ApiKeyRegistry("secret-key", null, null);
+    private final ClusterPeerAuth peerAuth = new ClusterPeerAuth(true, "cluster-secret", 300_000);
+
+    @AfterEach
+    void stop() {
+        pipeline.stop();
+    }
+
+    @Test
+    void testLogsKeyIdAndBoundedBodyWithoutBufferingResponse() throws Exception {
+        ApiLoggingFilter filter = new ApiLoggingFilter(pipeline, registry, peerAuth, true, 1.0, 16);
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/sessions");
+        request.addHeader(ApiKeyRegistry.HEADER, "secret-key");
+        request.setContent("{\"name\":\"a long session name\"}".getBytes(StandardCharsets.UTF_8));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filter.doFilter(request, response, new MockFilterChain(new HttpServlet() {
+            @Override
+            protected void service(HttpServletRequest req, HttpServletResponse res) throws IOException {
+                // The handler writes straight to the client's response
+                assertSame(response, res);
+                req.getInputStream().readAllBytes();
+                res.setStatus(201);
+            }
+        }));
+        awaitWritten(1);
+
+        String line = lines.get(0);
+        String keyId = registry.find("secret-key").orElseThrow().getId();
+        assertTrue(line.contains("\"status\":201"), line);
+        assertTrue(line.contains("\"key\":\"" + keyId + "\""), line);
+        assertFalse(line.contains("secret-key"), line);
+        assertTrue(line.contains("\"body\":\"{\\\"name\\\":\\\"a long \",\"bodyTruncated\":true"), line);
+    }
+
+    @Test
+    void testUnsampledSuccessesAreSkippedButErrorsLogged() throws Exception {
+        ApiLoggingFilter filter = new ApiLoggingFilter(pipeline, registry, peerAuth, true, 0.0, 16);
+
+        filter.doFilter(new MockHttpServletRequest("GET", "/api/sessions"), new MockHttpServletResponse(),
+                new MockFilterChain());
+        MockHttpServletResponse notFound = new MockHttpServletResponse();
+        notFound.setStatus(404);
+        filter.doFilter(new MockHttpServletRequest("GET", "/api/sessions/9"), notFound, new MockFilterChain());
+        awaitWritten(1);
+
+        assertEquals(1, pipeline.getStats().getSampledOut());
+        assertTrue(lines.get(0).contains("\"status\":404"));
+    }
+
+    @Test
+    void testPeerForwardedRequestsAreLoggedOnlyByThePeer() throws Exception {
+        ApiLoggingFilter filter = new ApiLoggingFilter(pipeline, registry, peerAuth, true, 1.0, 16);
+        MockHttpServletRequest forwarded = new MockHttpServletRequest("GET", "/api/sessions/9");
+        forwarded.addHeader(ClusterMembership.FORWARDED_HEADER,
+                peerAuth.sign("http://peer:8080", "GET", "/api/sessions/9"));
+        filter.doFilter(forwarded, new MockHttpServletResponse(), new MockFilterChain());
+
+        MockHttpServletRequest spoofed = new MockHttpServletRequest("GET", "/api/sessions/9");
+        spoofed.addHeader(ClusterMembership.FORWARDED_HEADER, "http://peer:8080 0 forged");
+        filter.doFilter(spoofed, new MockHttpServletResponse(), new MockFilterChain());
+        awaitWritten(1);
+
+        assertEquals(1, lines.size());
+    }
+
+    private void awaitWritten(long count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (pipeline.getStats().getWritten() < count && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(count, pipeline.getStats().getWritten());
+    }
+}
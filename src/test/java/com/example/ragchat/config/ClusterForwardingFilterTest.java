@@ -0,0 +1,143 @@
+package com.example.ragchat.config;
+
+import com.example.ragchat.service.ClusterMembership;
+import com.example.ragchat.service.ClusterPeerAuth;
+import com.sun.net.httpserver.HttpServer;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class ClusterForwardingFilterTest {
+
+    private final ClusterMembership membership = mock(ClusterMembership.class);
+    private final ClusterPeerAuth peerAuth = new ClusterPeerAuth(true, "cluster-secret", 300_000);
+    private final ClusterForwardingFilter filter = new ClusterForwardingFilter(membership, peerAuth, 5000);
+    private final List<List<String>> ownerSawHeader = new CopyOnWriteArrayList<>();
+    private HttpServer owner;
+    private String ownerUrl;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        owner = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        owner.createContext("/", exchange -> {
+            ownerSawHeader.add(exchange.getRequestHeaders().get(ClusterMembership.FORWARDED_HEADER));
+            byte[] body = ("served " + exchange.getRequestURI()).getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "text/plain");
+            exchange.sendResponseHeaders(201, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        owner.start();
+        ownerUrl = "http://localhost:" + owner.getAddress().getPort();
+        when(membership.self()).thenReturn("http://self:8080");
+        when(membership.ownerOf(anyLong())).thenReturn(ownerUrl);
+    }
+
+    @AfterEach
+    void tearDown() {
+        owner.stop(0);
+    }
+
+    @Test
+    void testForwardsToOwnerWithSignedHeader() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/sessions/42/messages");
+        request.setQueryString("page=1");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        FilterChain chain = mock(FilterChain.class);
+
+        filter.doFilter(request, response, chain);
+
+        verifyNoInteractions(chain);
+        assertEquals(201, response.getStatus());
+        assertEquals("served /api/sessions/42/messages?page=1", response.getContentAsString());
+        assertEquals("text/plain", response.getHeader("Content-Type"));
+        verify(membership).recordForward(ownerUrl);
+
+        MockHttpServletRequest arriving = new MockHttpServletRequest("GET", "/api/sessions/42/messages");
+        arriving.setQueryString("page=1");
+        arriving.addHeader(ClusterMembership.FORWARDED_HEADER, ownerSawHeader.get(0).get(0));
+        assertTrue(peerAuth.isPeerForwarded(arriving));
+    }
+
+    @Test
+    void testClientSuppliedHeaderIsNeitherTrustedNorPassedOn() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/sessions/42");
+        request.addHeader(ClusterMembership.FORWARDED_HEADER, "http://self:8080");
+        FilterChain chain = mock(FilterChain.class);
+
+        filter.doFilter(request, new MockHttpServletResponse(), chain);
+
+        // Still sent to the owner, carrying only this node's signature
+        verifyNoInteractions(chain);
+        assertEquals(1, ownerSawHeader.get(0).size());
+        assertNotEquals("http://self:8080", ownerSawHeader.get(0).get(0));
+    }
+
+    @Test
+    void testSignedForwardIsServedLocally() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/sessions/42/chat");
+        request.addHeader(ClusterMembership.FORWARDED_HEADER,
+                peerAuth.sign("http://peer:8080", "POST", "/api/sessions/42/chat"));
+        FilterChain chain = mock(FilterChain.class);
+
+        filter.doFilter(request, new MockHttpServletResponse(), chain);
+
+        verify(chain).doFilter(any(), any());
+        verify(membership).recordLocal(true);
+        assertTrue(ownerSawHeader.isEmpty());
+    }
+
+    @Test
+    void testUnreachableOwnerIsServedLocallyWithReplayedBody() throws Exception {
+        owner.stop(0);
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/sessions/42/chat");
+        request.setContent("{\"message\":\"hi\"}".getBytes(StandardCharsets.UTF_8));
+        AtomicReference<String> body = new AtomicReference<>();
+        List<String> events = new CopyOnWriteArrayList<>();
+
+        filter.doFilter(request, new MockHttpServletResponse(), (req, res) -> {
+            ServletInputStream in = req.getInputStream();
+            in.setReadListener(new ReadListener() {
+                @Override
+                public void onDataAvailable() throws IOException {
+                    events.add("data");
+                    body.set(new String(in.readAllBytes(), StandardCharsets.UTF_8));
+                }
+
+                @Override
+                public void onAllDataRead() {
+                    events.add("done");
+                }
+
+                @Override
+                public void onError(Throwable t) {
+                    events.add("error");
+                }
+            });
+            assertEquals(16, ((HttpServletRequest) req).getContentLength());
+        });
+
+        verify(membership).markDown(ownerUrl);
+        assertEquals("{\"message\":\"hi\"}", body.get());
+        assertEquals(List.of("data", "done"), events);
+    }
+}
@@ -0,0 +1,125 @@
+package com.example.ragchat.config;
+
+import com.example.ragchat.service.ApiKeyRegistry;
+import com.example.ragchat.service.ClusterMembership;
+import com.example.ragchat.service.ClusterPeerAuth;
+import com.example.ragchat.util.ApiKeyAuthFilter;
+import com.example.ragchat.util.RateLimitStore;
+import jakarta.servlet.Filter;
+import jakarta.servlet.http.HttpServlet;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.annotation.AnnotationAwareOrderComparator;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RateLimiterConfigTest {
+
+    private final ClusterPeerAuth peerAuth = new ClusterPeerAuth(true, "cluster-secret", 300_000);
+    private RateLimiterConfig filter =
+            new RateLimiterConfig(new ApiKeyRegistry("key-1,key-2", null, null), peerAuth, 3, 1, 100, (RateLimitStore) null);
+
+    @Test
+    void testHeadersDescribeRemainingBudget() throws Exception {
+        MockHttpServletResponse response = call("GET", "/api/sessions", "key-1");
+
+        assertEquals(200, response.getStatus());
+        assertEquals("3", response.getHeader("RateLimit-Limit"));
+        assertEquals("2", response.getHeader("RateLimit-Remaining"));
+        assertEquals("20", response.getHeader("RateLimit-Reset"));
+        assertEquals("3;w=60", response.getHeader("RateLimit-Policy"));
+    }
+
+    @Test
+    void testChatRouteHasItsOwnStricterBudget() throws Exception {
+        assertEquals(200, call("POST", "/api/sessions/7/chat", "key-1").getStatus());
+
+        MockHttpServletResponse denied = call("POST", "/api/sessions/7/chat", "key-1");
+        assertEquals(429, denied.getStatus());
+        assertEquals("60", denied.getHeader("Retry-After"));
+        assertTrue(denied.getContentAsString().contains("\"status\": 429"));
+
+        assertEquals(200, call("GET", "/api/sessions/7/messages", "key-1").getStatus());
+        assertEquals(200, call("POST", "/api/sessions/7/chat", "key-2").getStatus());
+    }
+
+    @Test
+    void testClientsWithoutKeyAreLimitedByAddress() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            assertEquals(200, call("GET", "/api/sessions", null).getStatus());
+        }
+        assertEquals(429, call("GET", "/api/sessions", null).getStatus());
+        assertEquals(200, call("GET", "/api/sessions", "key-1").getStatus());
+    }
+
+    @Test
+    void testKeyQuotasOverrideDefaults(@TempDir Path dir) throws Exception {
+        Path keys = Files.writeString(dir.resolve("keys.txt"), "key-1 id=partner tier=gold rpm=5\n");
+        filter = new RateLimiterConfig(new ApiKeyRegistry("", keys.toString(), null), peerAuth, 3, 1, 100,
+                (RateLimitStore) null);
+
+        MockHttpServletResponse response = call("GET", "/api/sessions", "key-1");
+
+        assertEquals("5", response.getHeader("RateLimit-Limit"));
+        assertEquals("4", response.getHeader("RateLimit-Remaining"));
+        assertEquals("1", call("POST", "/api/sessions/7/chat", "key-1").getHeader("RateLimit-Limit"));
+    }
+
+    @Test
+    void testPeerForwardedRequestsAreNotChargedAgain() throws Exception {
+        assertEquals(200, call("POST", "/api/sessions/7/chat", "key-1").getStatus());
+
+        MockHttpServletRequest forwarded = new MockHttpServletRequest("POST", "/api/sessions/7/chat");
+        forwarded.addHeader("X-API-KEY", "key-1");
+        forwarded.addHeader(ClusterMembership.FORWARDED_HEADER,
+                peerAuth.sign("http://peer:8080", "POST", "/api/sessions/7/chat"));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(forwarded, response, new MockFilterChain());
+        assertEquals(200, response.getStatus());
+
+        // A header without a valid signature is an ordinary client request
+        MockHttpServletRequest spoofed = new MockHttpServletRequest("POST", "/api/sessions/7/chat");
+        spoofed.addHeader("X-API-KEY", "key-1");
+        spoofed.addHeader(ClusterMembership.FORWARDED_HEADER, "http://peer:8080");
+        response = new MockHttpServletResponse();
+        filter.doFilter(spoofed, response, new MockFilterChain());
+        assertEquals(429, response.getStatus());
+    }
+
+    @Test
+    void testGuessedKeysAreLimitedByAddressBeforeAuthentication() throws Exception {
+        ApiKeyRegistry registry = new ApiKeyRegistry("key-1", null, null);
+        List<Filter> filters = new ArrayList<>(List.of(new ApiKeyAuthFilter(registry),
+                new RateLimiterConfig(registry, peerAuth, 3, 1, 100, (RateLimitStore) null)));
+        AnnotationAwareOrderComparator.sort(filters);
+
+        List<Integer> statuses = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/sessions");
+            request.addHeader("X-API-KEY", "guess-" + i);
+            MockHttpServletResponse response = new MockHttpServletResponse();
+            new MockFilterChain(new HttpServlet() { }, filters.toArray(new Filter[0])).doFilter(request, response);
+            statuses.add(response.getStatus());
+        }
+
+        assertEquals(List.of(401, 401, 401, 429), statuses);
+    }
+
+    private MockHttpServletResponse call(String method, String uri, String apiKey) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest(method, uri);
+        if (apiKey != null) {
+            request.addHeader("X-API-KEY", apiKey);
+        }
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, new MockFilterChain());
+        return response;
+    }
+}
@@ -1,12 +1,26 @@
 package com.example.ragchat.controller;
 
+import com.example.ragchat.dto.BatchDeleteRequest;
+import com.example.ragchat.dto.BatchDeleteResult;
+import com.example.ragchat.dto.BulkInsertResult;
+import com.example.ragchat.dto.BulkMessageDTO;
+import com.example.ragchat.dto.BulkMessageRequest;
 import com.example.ragchat.dto.ChatMessageDTO;
 import com.example.ragchat.dto.ChatSessionDTO;
+import com.example.ragchat.dto.HistorySearchResult;
+import com.example.ragchat.dto.MessagePage;
+import com.example.ragchat.dto.MessageSearchPage;
+import com.example.ragchat.dto.SessionPage;
+import com.example.ragchat.dto.SessionSummary;
 import com.example.ragchat.exception.SessionNotFoundException;
 import com.example.ragchat.exception.InvalidInputException;
+import com.example.ragchat.exception.MessageNotFoundException;
 import com.example.ragchat.model.ChatMessage;
 import com.example.ragchat.model.ChatSession;
+import com.example.ragchat.service.AccessLogPipeline;
+import com.example.ragchat.service.ApiKeyRegistry;
 import com.example.ragchat.service.ChatSessionService;
+import com.example.ragchat.service.ClusterPeerAuth;
 import com.example.ragchat.service.LLMService;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.Test;
@@ -44,6 +58,15 @@ class ChatSessionControllerTest {
     @MockBean
     private LLMService llmService;
 
+    @MockBean
+    private ApiKeyRegistry apiKeyRegistry;
+
+    @MockBean
+    private AccessLogPipeline accessLogPipeline;
+
+    @MockBean
+    private ClusterPeerAuth clusterPeerAuth;
+
     @Autowired
     private ObjectMapper objectMapper;
 
@@ -120,6 +143,16 @@ class ChatSessionControllerTest {
                 .andExpect(jsonPath("$.status").value(404));
     }
 
+    @Test
+    void testGetMessage_NotFound() throws Exception {
+        Mockito.when(service.getMessage(1L, 999L))
+                .thenThrow(new MessageNotFoundException("999"));
+
+        mockMvc.perform(get("/api/sessions/1/messages/999"))
+                .andExpect(status().isNotFound())
+                .andExpect(jsonPath("$.status").value(404));
+    }
+
     @Test
     void testGetSessionsByUser_Success() throws Exception {
         ChatSession session1 = new ChatSession();
@@ -209,6 +242,25 @@ class ChatSessionControllerTest {
                 .andExpect(jsonPath("$.status").value(404));
     }
 
+    @Test
+    void testDeleteSessions_Batch() throws Exception {
+        BatchDeleteResult result = BatchDeleteResult.builder()
+                .deleted(1)
+                .tombstoned(1)
+                .notFound(List.of(3L))
+                .build();
+
+        Mockito.when(service.deleteSessions(List.of(1L, 2L, 3L))).thenReturn(result);
+
+        mockMvc.perform(post("/api/sessions/batch-delete")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(new BatchDeleteRequest(List.of(1L, 2L, 3L)))))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.deleted").value(1))
+                .andExpect(jsonPath("$.tombstoned").value(1))
+                .andExpect(jsonPath("$.notFound[0]").value(3));
+    }
+
     @Test
     void testAddMessage_Success() throws Exception {
         ChatMessageDTO dto = new ChatMessageDTO("user", "Hello, AI!", "Some context");
@@ -259,4 +311,131 @@ class ChatSessionControllerTest {
                 .andExpect(jsonPath("$[0].content").value("Hello"))
                 .andExpect(jsonPath("$[1].content").value("Hi there!"));
     }
+
+    @Test
+    void testSearchHistory_Success() throws Exception {
+        HistorySearchResult hit = HistorySearchResult.builder()
+                .messageId(7L)
+                .sessionId(1L)
+                .sender("user")
+                .content("We decided to ship on Friday")
+                .score(0.8)
+                .build();
+
+        Mockito.when(service.searchHistory("user1", "what did we decide", 10))
+                .thenReturn(List.of(hit));
+
+        mockMvc.perform(get("/api/history/search")
+                        .param("userId", "user1")
+                        .param("query", "what did we decide"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].messageId").value(7))
+                .andExpect(jsonPath("$[0].sessionId").value(1));
+    }
+
+    @Test
+    void testGetMessagePage_Latest() throws Exception {
+        ChatMessage msg = new ChatMessage();
+        msg.setId(5L);
+        msg.setSessionId(1L);
+        msg.setSender("user");
+        msg.setContent("Latest");
+        msg.setTimestamp(new Date());
+
+        MessagePage page = MessagePage.builder()
+                .messages(List.of(msg))
+                .prevCursor("abc")
+                .build();
+
+        Mockito.when(service.getMessagePage(1L, null, null, true, 20)).thenReturn(page);
+
+        mockMvc.perform(get("/api/sessions/1/messages/page")
+                        .param("latest", "true"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.messages", hasSize(1)))
+                .andExpect(jsonPath("$.messages[0].content").value("Latest"))
+                .andExpect(jsonPath("$.prevCursor").value("abc"))
+                .andExpect(jsonPath("$.nextCursor").doesNotExist());
+    }
+
+    @Test
+    void testGetSessionPage_FavoritesFirst() throws Exception {
+        SessionSummary summary = SessionSummary.builder()
+                .id(7L)
+                .name("Pinned")
+                .favorite(true)
+                .updatedAt(new Date())
+                .messageCount(3)
+                .build();
+        SessionPage page = SessionPage.builder()
+                .sessions(List.of(summary))
+                .nextCursor("next")
+                .build();
+
+        Mockito.when(service.getSessionPage("user1", true, null, 20)).thenReturn(page);
+
+        mockMvc.perform(get("/api/sessions/page")
+                        .param("userId", "user1")
+                        .param("favoritesFirst", "true"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.sessions", hasSize(1)))
+                .andExpect(jsonPath("$.sessions[0].name").value("Pinned"))
+                .andExpect(jsonPath("$.sessions[0].messageCount").value(3))
+                .andExpect(jsonPath("$.nextCursor").value("next"));
+    }
+
+    @Test
+    void testSearchMessages_Highlighted() throws Exception {
+        HistorySearchResult hit = HistorySearchResult.builder()
+                .messageId(5L)
+                .sessionId(1L)
+                .sender("user")
+                .content("How do I rotate keys?")
+                .snippet("How do I <mark>rotate</mark> keys?")
+                .score(0.4)
+                .build();
+        MessageSearchPage page = MessageSearchPage.builder()
+                .results(List.of(hit))
+                .nextCursor("more")
+                .build();
+
+        Mockito.when(service.searchMessages("user1", "rotate", null, 20)).thenReturn(page);
+
+        mockMvc.perform(get("/api/search/messages")
+                        .param("userId", "user1")
+                        .param("q", "rotate"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.results[0].snippet").value("How do I <mark>rotate</mark> keys?"))
+                .andExpect(jsonPath("$.nextCursor").value("more"));
+    }
+
+    @Test
+    void testAddMessagesBulk_Success() throws Exception {
+        BulkMessageRequest request = new BulkMessageRequest(List.of(
+                new BulkMessageDTO(1L, "user", "Hello", null),
+                new BulkMessageDTO(2L, "assistant", "Hi", null)));
+        BulkInsertResult result = BulkInsertResult.builder().inserted(2).sessions(2).build();
+
+        Mockito.when(service.addMessagesBulk(anyList())).thenReturn(result);
+
+        mockMvc.perform(post("/api/messages/bulk")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$.inserted").value(2))
+                .andExpect(jsonPath("$.sessions").value(2));
+    }
+
+    @Test
+    void testAddMessagesBulk_ValidationError_MissingSessionId() throws Exception {
+        BulkMessageRequest request = new BulkMessageRequest(List.of(
+                new BulkMessageDTO(null, "user", "Hello", null)));
+
+        mockMvc.perform(post("/api/messages/bulk")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.status").value(400));
+    }
 }
@@ -0,0 +1,114 @@
+package com.example.ragchat.repository;
+
+import com.example.ragchat.model.ChatMessage;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import de.flapdoodle.embed.mongo.distribution.Version;
+import de.flapdoodle.embed.mongo.transitions.Mongod;
+import de.flapdoodle.embed.mongo.transitions.RunningMongodProcess;
+import de.flapdoodle.reverse.TransitionWalker;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class MongoBucketMessageStoreTest {
+
+    private static TransitionWalker.ReachedState<RunningMongodProcess> mongod;
+    private static MongoClient client;
+
+    private final ChatSessionRepository sessionRepo = Mockito.mock(ChatSessionRepository.class);
+    private final OutboxRepository outbox = Mockito.mock(OutboxRepository.class);
+    private MongoBucketMessageStore store;
+
+    @BeforeAll
+    static void startMongo() {
+        try {
+            mongod = Mongod.instance().start(Version.Main.V6_0);
+        } catch (RuntimeException e) {
+            // Needs a mongod binary download; skip where that is not possible
+            abort("Embedded MongoDB unavailable: " + e.getMessage());
+        }
+        var address = mongod.current().getServerAddress();
+        client = MongoClients.create("mongodb://" + address.getHost() + ":" + address.getPort());
+    }
+
+    @AfterAll
+    static void stopMongo() {
+        if (client != null) {
+            client.close();
+        }
+        if (mongod != null) {
+            mongod.close();
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        client.getDatabase("test").getCollection(MongoBucketMessageStore.COLLECTION).drop();
+        MessageIdAllocator ids = Mockito.mock(MessageIdAllocator.class);
+        AtomicLong next = new AtomicLong(1);
+        when(ids.next()).thenAnswer(inv -> next.getAndIncrement());
+        store = new MongoBucketMessageStore(client, ids, sessionRepo, outbox, "test", 60, 4, false);
+    }
+
+    @Test
+    void testMessagesSpillIntoNewBucketsAndReadInOrder() {
+        long base = 1_700_000_000_000L;
+        List<ChatMessage> messages = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            messages.add(message(1L, base + i * 1000L, i + 1));
+        }
+        store.saveAll(messages.subList(0, 3));
+        store.saveAll(messages.subList(3, 10));
+
+        assertEquals(3, client.getDatabase("test").getCollection(MongoBucketMessageStore.COLLECTION)
+                .countDocuments());
+        List<ChatMessage> latest = store.findLatest(1L, 3);
+        assertEquals(List.of(10L, 9L, 8L), latest.stream().map(ChatMessage::getId).toList());
+        assertEquals(List.of(1L, 2L), store.findOldest(1L, 2).stream().map(ChatMessage::getId).toList());
+        assertEquals(List.of(5L, 6L), store.findPage(1L, 4, 2).stream().map(ChatMessage::getId).toList());
+        verify(sessionRepo).addStats(eq(1L), eq(7L), any(), anyLong(), anyLong());
+    }
+
+    @Test
+    void testKeysetPagingAndDelete() {
+        long base = 1_700_000_000_000L;
+        List<ChatMessage> messages = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            // Two hours apart: every message opens its own bucket window
+            messages.add(message(2L, base + i * 7_200_000L, i + 1));
+        }
+        store.saveAll(messages);
+        ChatMessage third = messages.get(2);
+
+        assertEquals(List.of(4L, 5L), store.findAfter(2L, third.getTimestamp(), third.getId(), 2)
+                .stream().map(ChatMessage::getId).toList());
+        assertEquals(List.of(2L, 1L), store.findBefore(2L, third.getTimestamp(), third.getId(), 5)
+                .stream().map(ChatMessage::getId).toList());
+        assertEquals("hello 3", store.findById(2L, 3L).orElseThrow().getContent());
+
+        assertEquals(6, store.deleteBySessionIds(List.of(2L)));
+        assertTrue(store.findLatest(2L, 10).isEmpty());
+    }
+
+    private ChatMessage message(Long sessionId, long timestamp, int n) {
+        ChatMessage msg = new ChatMessage();
+        msg.setSessionId(sessionId);
+        msg.setSender("user");
+        msg.setTimestamp(new Date(timestamp));
+        msg.setContent("hello " + n);
+        return msg;
+    }
+}
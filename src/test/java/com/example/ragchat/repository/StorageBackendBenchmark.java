@@ -0,0 +1,101 @@
+package com.example.ragchat.repository;
+
+import com.example.ragchat.model.ChatMessage;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Write and read throughput of the Postgres and Mongo message stores on the same workload.
+ *
+ * Needs the configured Postgres and a MongoDB at benchmark.mongo-uri:
+ * mvn test -Dtest=StorageBackendBenchmark -Dbenchmark.enabled=true
+ */
+@SpringBootTest
+@EnabledIfSystemProperty(named = "benchmark.enabled", matches = "true")
+class StorageBackendBenchmark {
+
+    private static final int SESSIONS = 200;
+    private static final int MESSAGES_PER_SESSION = 200;
+    private static final int TURN_SIZE = 2;
+
+    @Autowired
+    private PostgresMessageStore postgresStore;
+
+    @Autowired
+    private MessageIdAllocator idAllocator;
+
+    @Autowired
+    private ChatSessionRepository sessionRepo;
+
+    @Autowired
+    private OutboxRepository outbox;
+
+    @Test
+    void compareBackends() {
+        try (MongoClient client = MongoClients.create(
+                System.getProperty("benchmark.mongo-uri", "mongodb://localhost:27017"))) {
+            client.getDatabase("ragchat_benchmark").drop();
+            MongoBucketMessageStore mongoStore = new MongoBucketMessageStore(client, idAllocator, sessionRepo, outbox,
+                    "ragchat_benchmark", 60, 200, false);
+
+            run("postgres", postgresStore);
+            run("mongo", mongoStore);
+            client.getDatabase("ragchat_benchmark").drop();
+        }
+    }
+
+    private void run(String name, MessageStore store) {
+        // Session IDs far above real ones; there are no session rows, so stats updates are no-ops
+        long firstSession = 1_000_000_000L + ThreadLocalRandom.current().nextLong(1_000_000);
+        List<Long> sessionIds = new ArrayList<>();
+        for (int s = 0; s < SESSIONS; s++) {
+            sessionIds.add(firstSession + s);
+        }
+
+        long base = System.currentTimeMillis();
+        long start = System.nanoTime();
+        for (int i = 0; i < MESSAGES_PER_SESSION; i += TURN_SIZE) {
+            for (Long sessionId : sessionIds) {
+                List<ChatMessage> turn = new ArrayList<>(TURN_SIZE);
+                for (int t = 0; t < TURN_SIZE; t++) {
+                    turn.add(message(sessionId, i + t, base + (i + t) * 1000L));
+                }
+                store.saveAll(turn);
+            }
+        }
+        double writeSeconds = (System.nanoTime() - start) / 1e9;
+
+        start = System.nanoTime();
+        long read = 0;
+        for (int round = 0; round < 10; round++) {
+            for (Long sessionId : sessionIds) {
+                read += store.findLatest(sessionId, 20).size();
+            }
+        }
+        double readSeconds = (System.nanoTime() - start) / 1e9;
+
+        store.deleteBySessionIds(sessionIds);
+        long written = (long) SESSIONS * MESSAGES_PER_SESSION;
+        System.out.printf("%-8s write %,10.0f msgs/s   latest-20 read %,10.0f msgs/s%n",
+                name, written / writeSeconds, read / readSeconds);
+    }
+
+    private ChatMessage message(Long sessionId, long seq, long timestamp) {
+        ChatMessage msg = new ChatMessage();
+        msg.setSessionId(sessionId);
+        msg.setSeq(seq);
+        msg.setSender(seq % 2 == 0 ? "user" : "assistant");
+        msg.setContent("benchmark message " + seq + " with a typical amount of conversational text");
+        msg.setTimestamp(new Date(timestamp));
+        return msg;
+    }
+}
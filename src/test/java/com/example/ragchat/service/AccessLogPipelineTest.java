@@ -0,0 +1,99 @@
+package com.example.ragchat.service;
+
+import com.example.ragchat.model.AccessLogRecord;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AccessLogPipelineTest {
+
+    private final List<String> lines = new CopyOnWriteArrayList<>();
+    private AccessLogPipeline pipeline;
+
+    @AfterEach
+    void stop() {
+        pipeline.stop();
+    }
+
+    @Test
+    void testRecordsAreWrittenAsJsonLinesInOrder() throws Exception {
+        pipeline = new AccessLogPipeline(8, 8, 256, batch -> lines.addAll(List.of(batch.split("\n"))));
+
+        for (int i = 0; i < 20; i++) {
+            long seq = pipeline.claim();
+            while (seq < 0) {
+                Thread.sleep(1);
+                seq = pipeline.claim();
+            }
+            AccessLogRecord record = pipeline.slot(seq);
+            record.setTimestamp(0);
+            record.setMethod("POST");
+            record.setUri("/api/sessions/" + i);
+            record.setStatus(201);
+            record.setDurationNanos(1_500_000);
+            record.setUserAgent("curl \"quoted\"\n");
+            byte[] body = "{\"content\":\"hello world\"}".getBytes(StandardCharsets.UTF_8);
+            record.setBody(body, body.length);
+            pipeline.publish(seq);
+        }
+        awaitWritten(20);
+
+        assertEquals("{\"ts\":\"1970-01-01T00:00:00Z\",\"method\":\"POST\",\"uri\":\"/api/sessions/0\","
+                + "\"status\":201,\"durationUs\":1500,\"userAgent\":\"curl \\\"quoted\\\"\\n\","
+                + "\"body\":\"{\\\"conten\",\"bodyTruncated\":true}", lines.get(0));
+        for (int i = 0; i < 20; i++) {
+            assertTrue(lines.get(i).contains("\"uri\":\"/api/sessions/" + i + "\""));
+        }
+    }
+
+    @Test
+    void testFullBufferDropsInsteadOfBlocking() throws Exception {
+        CountDownLatch slowDisk = new CountDownLatch(1);
+        pipeline = new AccessLogPipeline(4, 0, 1, batch -> {
+            try {
+                slowDisk.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            lines.add(batch);
+        });
+
+        int accepted = 0;
+        for (int i = 0; i < 100; i++) {
+            long seq = pipeline.claim();
+            if (seq >= 0) {
+                pipeline.slot(seq).setUri("/api/health");
+                pipeline.publish(seq);
+                accepted++;
+            }
+        }
+        // The writer holds at most one record while stuck, the buffer the rest
+        assertTrue(accepted <= 5, "accepted " + accepted);
+        assertEquals(100 - accepted, pipeline.getStats().getDropped());
+
+        slowDisk.countDown();
+        awaitWritten(accepted);
+        assertEquals(accepted, lines.size());
+    }
+
+    @Test
+    void testCapacityMustBePowerOfTwo() {
+        pipeline = new AccessLogPipeline(2, 0, 1, batch -> { });
+        assertThrows(IllegalStateException.class, () -> new AccessLogPipeline(6, 0, 1, batch -> { }));
+    }
+
+    private void awaitWritten(long count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (pipeline.getStats().getWritten() < count && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(count, pipeline.getStats().getWritten());
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.ragchat.service;
+
+import com.example.ragchat.model.ApiKeyInfo;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ApiKeyRegistryTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void testKeysFromPropertyAndFileWithMetadata() throws Exception {
+        String digest = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256")
+                .digest("hashed-secret".getBytes(StandardCharsets.UTF_8)));
+        Path file = Files.writeString(dir.resolve("keys.txt"), """
+                # partner keys
+                plain-secret id=acme tenant=acme tier=gold rpm=120 chat-rpm=30
+
+                sha256:%s tenant=globex
+                """.formatted(digest));
+        ApiKeyRegistry registry = new ApiKeyRegistry("inline-1, inline-2", file.toString(), null);
+
+        ApiKeyInfo acme = registry.find("plain-secret").orElseThrow();
+        assertEquals("acme", acme.getId());
+        assertEquals("gold", acme.getTier());
+        assertEquals(120, acme.getRequestsPerMinute());
+        assertEquals(30, acme.getChatRequestsPerMinute());
+        assertEquals("globex", registry.find("hashed-secret").orElseThrow().getTenant());
+        assertTrue(registry.find("inline-2").isPresent());
+        assertTrue(registry.find("inline-3").isEmpty());
+        assertTrue(registry.find("plain-secre").isEmpty());
+        assertEquals(4, registry.getStats().getKeys());
+    }
+
+    @Test
+    void testFileChangesAreReloadedAndBadFilesKeepOldKeys() throws Exception {
+        Path file = Files.writeString(dir.resolve("keys.txt"), "old-key\n");
+        ApiKeyRegistry registry = new ApiKeyRegistry("", file.toString(), null);
+
+        Files.writeString(file, "new-key id=rotated\n");
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() + 5000));
+        registry.reloadIfChanged();
+        assertTrue(registry.find("old-key").isEmpty());
+        assertEquals("rotated", registry.find("new-key").orElseThrow().getId());
+
+        Files.writeString(file, "new-key rpm=lots\n");
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() + 10000));
+        registry.reloadIfChanged();
+        assertTrue(registry.find("new-key").isPresent());
+        assertEquals(1, registry.getStats().getReloadFailures());
+    }
+
+    @Test
+    void testDuplicateKeysAreRejected() throws Exception {
+        Path file = Files.writeString(dir.resolve("keys.txt"), "shared-key\n");
+
+        assertThrows(IllegalStateException.class, () -> new ApiKeyRegistry("shared-key", file.toString(), null));
+    }
+
+    @Test
+    void testResolveCountsOnceAndRemembersResult() {
+        ApiKeyRegistry registry = new ApiKeyRegistry("secret", null, null);
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/sessions");
+        request.addHeader(ApiKeyRegistry.HEADER, "secret");
+
+        ApiKeyInfo key = registry.resolve(request).orElseThrow();
+        assertSame(key, registry.resolve(request).orElseThrow());
+        registry.recordRequest(key);
+
+        assertEquals(1, registry.getStats().getPerKey().get(0).getRequests());
+    }
+}
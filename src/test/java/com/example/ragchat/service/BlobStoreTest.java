@@ -0,0 +1,91 @@
+package com.example.ragchat.service;
+
+import com.example.ragchat.model.ChatMessage;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionSynchronizationUtils;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class BlobStoreTest {
+
+    private final JdbcTemplate jdbcTemplate = Mockito.mock(JdbcTemplate.class);
+
+    @Test
+    void testRepeatedContextIsStoredOnce() {
+        when(jdbcTemplate.update(anyString(), any(), any(), any(), any())).thenReturn(1);
+        BlobStore store = new BlobStore(jdbcTemplate, 16, 100);
+        String context = "retrieved passage ".repeat(100);
+
+        ChatMessage first = message(context);
+        ChatMessage second = message(context);
+        store.externalize(first);
+        store.externalize(second);
+
+        assertNull(first.getContext());
+        assertEquals(64, first.getContextRef().length());
+        assertEquals(first.getContextRef(), second.getContextRef());
+        verify(jdbcTemplate, times(1)).update(anyString(), any(), any(), any(), any());
+        assertEquals(1, store.getStats().getDedupHits());
+    }
+
+    @Test
+    void testHashOfRolledBackInsertIsNotTrusted() {
+        when(jdbcTemplate.update(anyString(), any(), any(), any(), any())).thenReturn(1);
+        BlobStore store = new BlobStore(jdbcTemplate, 16, 100);
+        String context = "retrieved passage ".repeat(100);
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            store.put(context);
+            TransactionSynchronizationUtils.invokeAfterCompletion(
+                    TransactionSynchronizationManager.getSynchronizations(), TransactionSynchronization.STATUS_ROLLED_BACK);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        // The row went away with the rollback, so the next put writes it again
+        store.put(context);
+        store.put(context);
+        verify(jdbcTemplate, times(2)).update(anyString(), any(), any(), any(), any());
+        assertEquals(1, store.getStats().getDedupHits());
+    }
+
+    @Test
+    void testOversizedContentKeepsPrefixInline() {
+        when(jdbcTemplate.update(anyString(), any(), any(), any(), any())).thenReturn(1);
+        BlobStore store = new BlobStore(jdbcTemplate, 16, 100);
+        ChatMessage msg = message(null);
+        msg.setContent("x".repeat(5000));
+
+        store.externalize(msg);
+
+        assertEquals(1000, msg.getContent().length());
+        assertNotNull(msg.getContentRef());
+    }
+
+    @Test
+    void testDeflateRoundTrip() {
+        String text = "the same context again and again ".repeat(200);
+        byte[] compressed = BlobStore.deflate(text.getBytes(StandardCharsets.UTF_8));
+
+        assertTrue(compressed.length < text.length() / 10);
+        assertEquals(text, BlobStore.decode(BlobStore.CODEC_DEFLATE, compressed));
+    }
+
+    private ChatMessage message(String context) {
+        ChatMessage msg = new ChatMessage();
+        msg.setSessionId(1L);
+        msg.setSender("user");
+        msg.setContent("question");
+        msg.setContext(context);
+        return msg;
+    }
+}
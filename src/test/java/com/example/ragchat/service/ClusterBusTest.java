@@ -0,0 +1,33 @@
+package com.example.ragchat.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.mockito.Mockito.*;
+
+class ClusterBusTest {
+
+    private final ClusterMembership membership = mock(ClusterMembership.class);
+    private final SessionMetadataCache sessionCache = mock(SessionMetadataCache.class);
+    private final ConversationBuffer conversationBuffer = mock(ConversationBuffer.class);
+    private final SessionWriteExecutor sessionWriters = mock(SessionWriteExecutor.class);
+    private final ShardRouter shardRouter = mock(ShardRouter.class);
+    private final ClusterBus bus = new ClusterBus(membership, sessionCache, conversationBuffer, sessionWriters,
+            shardRouter, null, "", "", "", 2000);
+
+    @Test
+    void testRemoteChangesInvalidateLocalStateAndOwnAreIgnored() {
+        when(membership.self()).thenReturn("http://a:8080");
+
+        bus.apply("http://b:8080|s|7,9");
+        bus.apply("http://a:8080|s|11");
+        bus.apply("http://b:8080|d|");
+
+        for (long sessionId : new long[]{7, 9}) {
+            verify(sessionCache).invalidate(sessionId);
+            verify(conversationBuffer).evict(sessionId);
+            verify(sessionWriters).forget(sessionId);
+        }
+        verify(sessionCache, never()).invalidate(11L);
+        verify(shardRouter).refreshDirectory();
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.ragchat.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ClusterMembershipTest {
+
+    private static final List<String> NODES = List.of("http://a:8080", "http://b:8080", "http://c:8080");
+
+    private ClusterMembership node(String self) {
+        return new ClusterMembership(null, true, self, "static", NODES, 128, 15_000, 60_000);
+    }
+
+    @Test
+    void testNodesAgreeOnOwnersAndFailureMovesOnlyThatNodesSessions() {
+        ClusterMembership a = node("http://a:8080");
+        ClusterMembership b = node("http://b:8080/");
+        int[] owned = new int[NODES.size()];
+        for (long sessionId = 1; sessionId <= 3000; sessionId++) {
+            String owner = a.ownerOf(sessionId);
+            assertEquals(owner, b.ownerOf(sessionId));
+            owned[NODES.indexOf(owner)]++;
+        }
+        for (int count : owned) {
+            assertTrue(count > 600, "Unbalanced ownership: " + count);
+        }
+
+        a.markDown("http://c:8080");
+        for (long sessionId = 1; sessionId <= 3000; sessionId++) {
+            String before = b.ownerOf(sessionId);
+            String after = a.ownerOf(sessionId);
+            assertNotEquals("http://c:8080", after);
+            if (!before.equals("http://c:8080")) {
+                assertEquals(before, after);
+            }
+        }
+    }
+
+    @Test
+    void testDisabledClusterOwnsEverySession() {
+        ClusterMembership single = new ClusterMembership(null, false, "http://a:8080", "static", NODES, 128,
+                15_000, 60_000);
+        assertTrue(single.isLocal(42L));
+        assertEquals("http://a:8080", single.ownerOf(42L));
+    }
+}
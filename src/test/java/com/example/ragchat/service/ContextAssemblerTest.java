@@ -0,0 +1,69 @@
+package com.example.ragchat.service;
+
+import com.example.ragchat.model.KnowledgeChunk;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ContextAssemblerTest {
+
+    private RetrievalIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new RetrievalIndex(1000);
+    }
+
+    private void addChunk(String documentId, int position, String text) {
+        KnowledgeChunk chunk = new KnowledgeChunk();
+        chunk.setId(index.nextChunkId());
+        chunk.setDocumentId(documentId);
+        chunk.setPosition(position);
+        chunk.setText(text);
+        index.add(chunk);
+    }
+
+    @Test
+    void testAdjacentChunksAreMerged() {
+        addChunk("doc1", 0, "Postgres partitioning splits a table by range.");
+        addChunk("doc1", 1, "Each partition is vacuumed on its own.");
+        ContextAssembler assembler = new ContextAssembler(index, true, 1000, 10, 0.7, 10);
+
+        String context = assembler.retrieve("postgres partition vacuumed table", 1000);
+
+        assertEquals("Postgres partitioning splits a table by range. Each partition is vacuumed on its own.", context);
+    }
+
+    @Test
+    void testTokenBudgetIsRespected() {
+        addChunk("doc1", 0, "alpha beta gamma ".repeat(20));
+        addChunk("doc2", 0, "alpha beta short");
+        ContextAssembler assembler = new ContextAssembler(index, true, 1000, 10, 0.7, 10);
+
+        String context = assembler.retrieve("alpha beta gamma", 10);
+
+        assertEquals("alpha beta short", context);
+    }
+
+    @Test
+    void testProvidedContextIsKeptFirst() {
+        addChunk("doc1", 0, "Refunds are processed within five business days.");
+        ContextAssembler assembler = new ContextAssembler(index, true, 1000, 10, 0.7, 10);
+
+        String context = assembler.assemble("how long do refunds take", "Order #42");
+
+        assertEquals("Order #42\n\nRefunds are processed within five business days.", context);
+    }
+
+    @Test
+    void testCacheIsInvalidatedByCorpusChange() {
+        addChunk("doc1", 0, "Refunds are processed within five business days.");
+        ContextAssembler assembler = new ContextAssembler(index, true, 1000, 10, 0.7, 10);
+        assembler.retrieve("refunds", 1000);
+
+        addChunk("doc2", 0, "Refunds for digital goods are not available.");
+
+        assertTrue(assembler.retrieve("refunds", 1000).contains("digital goods"));
+    }
+}
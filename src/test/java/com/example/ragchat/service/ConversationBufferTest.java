@@ -0,0 +1,58 @@
+package com.example.ragchat.service;
+
+import com.example.ragchat.model.ChatMessage;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConversationBufferTest {
+
+    private ChatMessage message(long id, long timestamp, String content) {
+        ChatMessage msg = new ChatMessage();
+        msg.setId(id);
+        msg.setSessionId(1L);
+        msg.setSender("user");
+        msg.setContent(content);
+        msg.setTimestamp(new Date(timestamp));
+        return msg;
+    }
+
+    @Test
+    void testLoadsOnceThenServesWrites() {
+        ConversationBuffer buffer = new ConversationBuffer(true, 3, 1_000_000, true);
+        AtomicInteger loads = new AtomicInteger();
+
+        List<ChatMessage> first = buffer.getLatest(1L, 3, n -> {
+            loads.incrementAndGet();
+            return List.of(message(1, 100, "one"), message(2, 200, "two"));
+        });
+        buffer.onWrite(message(3, 300, "three"));
+        buffer.onWrite(message(4, 400, "четыре"));
+        List<ChatMessage> second = buffer.getLatest(1L, 3, n -> {
+            loads.incrementAndGet();
+            return new ArrayList<>();
+        });
+
+        assertEquals(2, first.size());
+        assertEquals(1, loads.get());
+        assertEquals(List.of("two", "three", "четыре"), second.stream().map(ChatMessage::getContent).toList());
+    }
+
+    @Test
+    void testMemoryBudgetEvictsIdleSessions() {
+        ConversationBuffer buffer = new ConversationBuffer(true, 5, 400, false);
+
+        for (long session = 1; session <= 5; session++) {
+            long id = session;
+            buffer.getLatest(session, 5, n -> List.of(message(id, 100, "x".repeat(50))));
+        }
+
+        assertTrue(buffer.getStats().getMemoryBytes() <= 400);
+        assertTrue(buffer.getStats().getEvictions() > 0);
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.ragchat.service;
+
+import com.example.ragchat.model.OutboxEvent;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FileOutboxSinkTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testBatchesRollSegmentsAndTornLineIsDropped() throws Exception {
+        FileOutboxSink sink = new FileOutboxSink(objectMapper, directory.toString(), 200);
+        sink.deliver(List.of(event(1), event(2)));
+        sink.deliver(List.of(event(3)));
+        sink.close();
+
+        Path first = directory.resolve("events-0000000001.ndjson");
+        Path second = directory.resolve("events-0000000002.ndjson");
+        assertEquals(2, Files.readAllLines(first).size());
+        assertEquals(1, Files.readAllLines(second).size());
+        JsonNode line = objectMapper.readTree(Files.readAllLines(first).get(0));
+        assertEquals(OutboxEvent.MESSAGE_ADDED, line.get("type").asText());
+        assertEquals("m1", line.get("data").get("sender").asText());
+
+        // Crash in the middle of a batch
+        Files.write(second, "{\"id\":4,\"ty".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        FileOutboxSink reopened = new FileOutboxSink(objectMapper, directory.toString(), 1000);
+        reopened.deliver(List.of(event(4)));
+        reopened.close();
+
+        List<String> lines = Files.readAllLines(second);
+        assertEquals(2, lines.size());
+        assertEquals(4, objectMapper.readTree(lines.get(1)).get("id").asLong());
+    }
+
+    private static OutboxEvent event(long id) {
+        return OutboxEvent.builder()
+                .txId(100)
+                .id(id)
+                .type(OutboxEvent.MESSAGE_ADDED)
+                .sessionId(7L)
+                .userId("user1")
+                .data("{\"sender\":\"m" + id + "\"}")
+                .build();
+    }
+}
@@ -0,0 +1,141 @@
+package com.example.ragchat.service;
+
+import com.example.ragchat.model.ChatMessage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class HistoryIndexerTest {
+
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final ShardRouter shardRouter = mock(ShardRouter.class);
+    // chat_messages rows as the fake database returns them, oldest first
+    private final List<ChatMessage> rows = new ArrayList<>();
+    private final List<HistoryIndexer> indexers = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        doAnswer(inv -> {
+            ((Runnable) inv.getArgument(0)).run();
+            return null;
+        }).when(shardRouter).forEachShard(any());
+        doAnswer(inv -> {
+            RowCallbackHandler handler = inv.getArgument(1);
+            for (ChatMessage row : rows) {
+                handler.processRow(resultSet(row));
+            }
+            return null;
+        }).when(jdbcTemplate).query(startsWith("SELECT"), any(RowCallbackHandler.class), any(Object[].class));
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        for (HistoryIndexer indexer : indexers) {
+            indexer.stop();
+        }
+    }
+
+    private HistoryIndexer start(RetrievalIndex index) {
+        HistoryIndexer indexer = new HistoryIndexer(index, jdbcTemplate, shardRouter, true, 100, 16, 10, 100,
+                30, 100, "postgres");
+        indexer.start();
+        indexers.add(indexer);
+        return indexer;
+    }
+
+    @Test
+    void testRestartBackfillsIndexWithoutDuplicatingQueuedMessages() throws Exception {
+        rows.add(message(1L, 10L, "alice", "kubernetes rollout failed"));
+        rows.add(message(2L, 20L, "bob", "kubernetes dashboard"));
+        RetrievalIndex index = new RetrievalIndex(100);
+
+        HistoryIndexer indexer = start(index);
+        await(() -> indexer.backfilledCount() == 2);
+        // The same message also arrives through the live path
+        indexer.enqueue(rows.get(0), "alice");
+        await(() -> indexer.indexedCount() == 1);
+
+        List<RetrievalIndex.ScoredChunk> hits = index.searchUserHistory("alice", "kubernetes", 10);
+        assertEquals(1, hits.size());
+        assertEquals(1L, hits.get(0).chunk().getMessageId());
+        assertEquals(2, index.size());
+    }
+
+    @Test
+    void testDeletedSessionIsNotResurrectedByQueuedMessages() throws Exception {
+        RetrievalIndex index = new RetrievalIndex(100);
+        HistoryIndexer indexer = start(index);
+        indexer.enqueue(message(1L, 10L, "alice", "deploy the service"), "alice");
+        await(() -> indexer.indexedCount() == 1);
+
+        indexer.removeSession(10L);
+        indexer.enqueue(message(2L, 10L, "alice", "deploy again"), "alice");
+        await(() -> indexer.indexedCount() == 2);
+
+        assertTrue(index.searchUserHistory("alice", "deploy", 10).isEmpty());
+        assertEquals(0, index.size());
+    }
+
+    @Test
+    void testHistoryIsBoundedAndEvictedTermsLeaveNoPostings() throws Exception {
+        RetrievalIndex index = new RetrievalIndex(3);
+        HistoryIndexer indexer = start(index);
+        String[] texts = {"alpha", "bravo", "charlie", "delta", "echo"};
+        for (int i = 0; i < texts.length; i++) {
+            indexer.enqueue(message((long) i + 1, 10L, "alice", texts[i]), "alice");
+        }
+        await(() -> indexer.indexedCount() == 5);
+
+        assertEquals(3, index.size());
+        assertEquals(2, index.evictions());
+        assertTrue(index.searchUserHistory("alice", "alpha", 10).isEmpty());
+        assertEquals(1, index.searchUserHistory("alice", "echo", 10).size());
+
+        indexer.removeSession(10L);
+        await(() -> index.size() == 0);
+        assertTrue(index.searchUserHistory("alice", "echo", 10).isEmpty());
+    }
+
+    private static ChatMessage message(Long id, Long sessionId, String userId, String content) {
+        ChatMessage msg = new ChatMessage();
+        msg.setId(id);
+        msg.setSessionId(sessionId);
+        msg.setSender(userId);
+        msg.setContent(content);
+        msg.setTimestamp(new Date());
+        return msg;
+    }
+
+    private static ResultSet resultSet(ChatMessage msg) throws Exception {
+        ResultSet rs = mock(ResultSet.class);
+        when(rs.getLong("id")).thenReturn(msg.getId());
+        when(rs.getLong("session_id")).thenReturn(msg.getSessionId());
+        when(rs.getString("user_id")).thenReturn(msg.getSender());
+        when(rs.getString("sender")).thenReturn(msg.getSender());
+        when(rs.getString("content")).thenReturn(msg.getContent());
+        when(rs.getTimestamp("timestamp")).thenReturn(new Timestamp(msg.getTimestamp().getTime()));
+        return rs;
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+}
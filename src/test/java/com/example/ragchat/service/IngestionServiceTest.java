@@ -0,0 +1,60 @@
+package com.example.ragchat.service;
+
+import com.example.ragchat.model.KnowledgeChunk;
+import com.example.ragchat.util.MinHashDeduplicator;
+import org.junit.jupiter.api.Test;
+
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class IngestionServiceTest {
+
+    private static final String BOILERPLATE =
+            "This document is confidential and intended solely for the use of the individual "
+                    + "or entity to whom it is addressed. If you have received this document in error "
+                    + "please notify the sender immediately and delete it from your system.";
+
+    private final RetrievalIndex index = new RetrievalIndex(1000);
+
+    @Test
+    void testDuplicateOfRemovedChunkIsIndexedAndRetainedInItsPlace() {
+        IngestionService service = new IngestionService(index, 1000, true, 0.8, 128, 16, 100);
+        assertEquals(1, service.ingestDocument("doc-a", BOILERPLATE));
+        long first = index.all().iterator().next().getId();
+        index.remove(first);
+
+        assertEquals(1, service.ingestDocument("doc-b", BOILERPLATE));
+        assertEquals(0, service.ingestDocument("doc-c", BOILERPLATE));
+
+        KnowledgeChunk retained = index.all().iterator().next();
+        assertEquals(1, index.size());
+        assertEquals(Set.of("doc-b", "doc-c"), retained.getMergedDocuments());
+        assertEquals(1, service.getStats().getDuplicatesDropped());
+        assertEquals(1, service.getStats().getTrackedSignatures());
+    }
+
+    @Test
+    void testAnotherRetainedChunkMatchingAfterTheStaleOneAbsorbsTheDuplicate() {
+        MinHashDeduplicator deduplicator = mock(MinHashDeduplicator.class);
+        IngestionService service = new IngestionService(index, 1000, true, deduplicator);
+        when(deduplicator.checkAndRegister(anyLong(), anyString())).thenReturn(Optional.empty());
+        assertTrue(service.ingestChunk("doc-a", 0, BOILERPLATE));
+        long live = index.all().iterator().next().getId();
+
+        // Chunk 999 left the index; with it gone the text still matches the live chunk
+        when(deduplicator.checkAndRegister(anyLong(), anyString()))
+                .thenReturn(Optional.of(999L), Optional.of(live));
+
+        assertFalse(service.ingestChunk("doc-b", 0, BOILERPLATE));
+
+        verify(deduplicator).remove(999L);
+        verify(deduplicator, never()).remove(live);
+        assertEquals(1, index.size());
+        assertEquals(Set.of("doc-a", "doc-b"), index.get(live).orElseThrow().getMergedDocuments());
+        assertEquals(1, service.getStats().getDuplicatesDropped());
+    }
+}
@@ -0,0 +1,216 @@
+package com.example.ragchat.service;
+
+import com.example.ragchat.model.ChatMessage;
+import com.example.ragchat.repository.ChatSessionRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class MessageArchiveTest {
+
+    @TempDir
+    Path dir;
+
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final ChatSessionRepository sessionRepo = mock(ChatSessionRepository.class);
+    private final MessageWriteBehindQueue writeBehind = mock(MessageWriteBehindQueue.class);
+    private final SessionWriteExecutor sessionWriters = mock(SessionWriteExecutor.class);
+    private final ShardRouter shardRouter = mock(ShardRouter.class);
+    private final ReplicaRouter replicaRouter = mock(ReplicaRouter.class);
+    // chat_messages rows of session 7 as the fake database holds them
+    private final List<ChatMessage> table = new ArrayList<>();
+    private MessageArchive archive;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() throws Exception {
+        when(sessionRepo.findArchiveCandidates(any(), anyInt())).thenReturn(List.of(7L));
+        when(writeBehind.flushSession(7L)).thenReturn(true);
+        when(sessionWriters.execute(eq(7L), any())).thenAnswer(inv -> ((Supplier<Object>) inv.getArgument(1)).get());
+        doAnswer(inv -> {
+            ((Runnable) inv.getArgument(0)).run();
+            return null;
+        }).when(shardRouter).forEachShard(any());
+
+        when(jdbcTemplate.query(startsWith("SELECT"), any(RowMapper.class), eq(7L))).thenAnswer(inv -> {
+            RowMapper<ChatMessage> mapper = inv.getArgument(1);
+            List<ChatMessage> rows = new ArrayList<>();
+            for (ChatMessage msg : table) {
+                rows.add(mapper.mapRow(resultSet(msg), rows.size()));
+            }
+            return rows;
+        });
+        when(jdbcTemplate.update(startsWith("DELETE FROM chat_messages"), any(Object[].class))).thenAnswer(inv -> {
+            int removed = table.size();
+            table.clear();
+            return removed;
+        });
+        when(jdbcTemplate.update(startsWith("UPDATE chat_sessions"), any(Object[].class)))
+                .thenAnswer(inv -> table.isEmpty() ? 1 : 0);
+        when(jdbcTemplate.batchUpdate(startsWith("INSERT"), anyCollection(), anyInt(),
+                any(ParameterizedPreparedStatementSetter.class))).thenAnswer(inv -> {
+            table.addAll((Collection<ChatMessage>) inv.getArgument(1));
+            return new int[0][];
+        });
+
+        PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+        when(transactionManager.getTransaction(any())).thenAnswer(inv -> new SimpleTransactionStatus());
+        archive = new MessageArchive(jdbcTemplate, transactionManager, new ObjectMapper(),
+                sessionRepo, writeBehind, sessionWriters, mock(SessionMetadataCache.class),
+                mock(ConversationBuffer.class), shardRouter, mock(ClusterBus.class), replicaRouter, true, dir.toString(), 90, 100,
+                "postgres");
+    }
+
+    @Test
+    void testArchiveAndRehydrateRoundTrip() throws Exception {
+        table.add(message(101L, 1L, "user", "hello", null, null, 1_000L));
+        table.add(message(102L, 2L, "assistant", "", "ctx", "blob-b", 2_000L));
+        List<ChatMessage> original = List.copyOf(table);
+
+        archive.archiveIdleSessions();
+
+        assertTrue(table.isEmpty());
+        assertTrue(Files.exists(dir.resolve("07/7.seg.gz")));
+        assertEquals(1, archive.getStats().getArchivedSessions());
+        // Reading the segment leaves the session archived
+        assertEquals(List.of(101L, 102L), read().stream().map(ChatMessage::getId).toList());
+        assertTrue(table.isEmpty());
+
+        archive.rehydrate(7L, "alice");
+
+        assertEquals(2, table.size());
+        for (int i = 0; i < original.size(); i++) {
+            ChatMessage expected = original.get(i);
+            ChatMessage restored = table.get(i);
+            assertEquals(expected.getId(), restored.getId());
+            assertEquals(7L, restored.getSessionId());
+            assertEquals(expected.getSeq(), restored.getSeq());
+            assertEquals(expected.getSender(), restored.getSender());
+            assertEquals(expected.getContent(), restored.getContent());
+            assertEquals(expected.getContextRef(), restored.getContextRef());
+            assertEquals(expected.getContentRef(), restored.getContentRef());
+            assertEquals(expected.getTimestamp(), restored.getTimestamp());
+        }
+        assertFalse(Files.exists(dir.resolve("07/7.seg.gz")));
+        assertFalse(archive.read(7L, msg -> fail("segment was removed")));
+        assertEquals(2, archive.getStats().getRehydratedMessages());
+        // Replicas may not have the restored rows yet
+        verify(replicaRouter).recordWrite(7L, "alice");
+    }
+
+    @Test
+    void testSegmentIsDroppedWhenRowsArriveDuringArchive() {
+        table.add(message(101L, 1L, "user", "hello", null, null, 1_000L));
+        // A bulk import lands between the copy and the delete, so the session is not marked
+        when(jdbcTemplate.update(startsWith("DELETE FROM chat_messages"), any(Object[].class))).thenAnswer(inv -> {
+            table.set(0, message(103L, 3L, "user", "late", null, null, 3_000L));
+            return 1;
+        });
+
+        archive.archiveIdleSessions();
+
+        assertEquals(1, table.size());
+        assertFalse(Files.exists(dir.resolve("07/7.seg.gz")));
+        assertEquals(0, archive.getStats().getArchivedSessions());
+    }
+
+    @Test
+    void testSegmentIsStreamedColumnByColumnInIdOrder() throws Exception {
+        for (long i = 1; i <= 500; i++) {
+            table.add(message(1000 + i, i % 3 == 0 ? null : i, i % 2 == 0 ? "assistant" : "user", "message " + i,
+                    i % 5 == 0 ? "blob-" + i : null, null, i * 1_000L));
+        }
+        List<ChatMessage> original = List.copyOf(table);
+
+        archive.archiveIdleSessions();
+        List<ChatMessage> streamed = read();
+
+        assertEquals(original.size(), streamed.size());
+        for (int i = 0; i < original.size(); i++) {
+            ChatMessage expected = original.get(i);
+            ChatMessage actual = streamed.get(i);
+            assertEquals(expected.getId(), actual.getId());
+            assertEquals(expected.getSeq(), actual.getSeq());
+            assertEquals(expected.getSender(), actual.getSender());
+            assertEquals(expected.getContent(), actual.getContent());
+            assertEquals(expected.getContextRef(), actual.getContextRef());
+            assertNull(actual.getContentRef());
+            assertEquals(expected.getTimestamp(), actual.getTimestamp());
+        }
+    }
+
+    @Test
+    void testVersionOneSegmentStreamsWithoutBlobReferences() throws Exception {
+        Path segment = dir.resolve("07/7.seg.gz");
+        Files.createDirectories(segment.getParent());
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(segment))) {
+            out.write(("{\"version\":1,\"ids\":[5,6],\"seqs\":[1,null],\"senders\":[\"user\",\"assistant\"]," +
+                    "\"contents\":[\"hi\",\"hello\"],\"contexts\":[null,\"ctx\"],\"timestamps\":[1000,2000]}")
+                    .getBytes(StandardCharsets.UTF_8));
+        }
+
+        List<ChatMessage> streamed = read();
+
+        assertEquals(List.of(5L, 6L), streamed.stream().map(ChatMessage::getId).toList());
+        assertNull(streamed.get(1).getSeq());
+        assertEquals("ctx", streamed.get(1).getContext());
+        assertNull(streamed.get(1).getContextRef());
+        assertEquals(new Date(2000), streamed.get(1).getTimestamp());
+    }
+
+    private List<ChatMessage> read() throws Exception {
+        List<ChatMessage> messages = new ArrayList<>();
+        assertTrue(archive.read(7L, messages::add));
+        return messages;
+    }
+
+    private static ChatMessage message(Long id, Long seq, String sender, String content,
+                                       String contextRef, String contentRef, long timestamp) {
+        ChatMessage msg = new ChatMessage();
+        msg.setId(id);
+        msg.setSessionId(7L);
+        msg.setSeq(seq);
+        msg.setSender(sender);
+        msg.setContent(content);
+        msg.setContextRef(contextRef);
+        msg.setContentRef(contentRef);
+        msg.setTimestamp(new Date(timestamp));
+        return msg;
+    }
+
+    private static ResultSet resultSet(ChatMessage msg) throws Exception {
+        ResultSet rs = mock(ResultSet.class);
+        when(rs.getLong("id")).thenReturn(msg.getId());
+        when(rs.getObject("seq")).thenReturn(msg.getSeq());
+        when(rs.getString("sender")).thenReturn(msg.getSender());
+        when(rs.getString("content")).thenReturn(msg.getContent());
+        when(rs.getString("context")).thenReturn(msg.getContext());
+        when(rs.getString("context_ref")).thenReturn(msg.getContextRef());
+        when(rs.getString("content_ref")).thenReturn(msg.getContentRef());
+        when(rs.getTimestamp("timestamp")).thenReturn(new Timestamp(msg.getTimestamp().getTime()));
+        return rs;
+    }
+}
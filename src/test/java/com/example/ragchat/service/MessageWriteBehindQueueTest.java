@@ -0,0 +1,223 @@
+package com.example.ragchat.service;
+
+import com.example.ragchat.model.ChatMessage;
+import com.example.ragchat.repository.MessageIdAllocator;
+import com.example.ragchat.repository.OutboxRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class MessageWriteBehindQueueTest {
+
+    @TempDir
+    Path dir;
+
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final MessageIdAllocator idAllocator = mock(MessageIdAllocator.class);
+    private final AtomicLong ids = new AtomicLong(100);
+    // chat_messages ids and chat_sessions.message_count as the fake database holds them
+    private final Set<Long> table = ConcurrentHashMap.newKeySet();
+    private final Map<Long, Long> messageCounts = new ConcurrentHashMap<>();
+    private final List<MessageWriteBehindQueue> queues = new ArrayList<>();
+    private volatile boolean databaseDown;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        when(idAllocator.next()).thenAnswer(inv -> ids.incrementAndGet());
+        when(jdbcTemplate.batchUpdate(anyString(), anyCollection(), anyInt(), any(ParameterizedPreparedStatementSetter.class)))
+                .thenAnswer(inv -> {
+                    if (databaseDown) {
+                        throw new DataAccessResourceFailureException("connection refused");
+                    }
+                    Collection<ChatMessage> batch = inv.getArgument(1);
+                    if (batch.stream().anyMatch(msg -> msg.getContent().equals("poison"))) {
+                        throw new DataIntegrityViolationException("invalid byte sequence");
+                    }
+                    // ON CONFLICT DO NOTHING: rows already present count 0
+                    return new int[][] {batch.stream().mapToInt(msg -> table.add(msg.getId()) ? 1 : 0).toArray()};
+                });
+        when(jdbcTemplate.update(anyString(), any(Object[].class))).thenAnswer(inv -> {
+            Object[] args = inv.getArguments();
+            messageCounts.merge((Long) args[6], ((Number) args[1]).longValue(), Long::sum);
+            return 1;
+        });
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        databaseDown = false;
+        for (MessageWriteBehindQueue queue : queues) {
+            queue.stop();
+        }
+    }
+
+    private MessageWriteBehindQueue queue(Path journal, long segmentBytes, int maxAttempts) throws Exception {
+        MessageWriteBehindQueue queue = new MessageWriteBehindQueue(jdbcTemplate, idAllocator,
+                mock(OutboxRepository.class), mock(PlatformTransactionManager.class), new ObjectMapper(), true,
+                journal.toString(), false, 100, 10, 5, segmentBytes, maxAttempts, 10);
+        queue.start();
+        queues.add(queue);
+        return queue;
+    }
+
+    private static ChatMessage message(String content) {
+        ChatMessage msg = new ChatMessage();
+        msg.setSessionId(1L);
+        msg.setSender("user");
+        msg.setContent(content);
+        msg.setTimestamp(new Date());
+        return msg;
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+
+    @Test
+    void testFlushSessionMakesQueuedMessagesVisible() throws Exception {
+        MessageWriteBehindQueue queue = queue(dir.resolve("wb.journal"), 1 << 20, 5);
+        ChatMessage a = message("hello");
+        ChatMessage b = message("world");
+
+        assertTrue(queue.append(a));
+        assertTrue(queue.append(b));
+        assertTrue(queue.flushSession(1L));
+
+        assertTrue(table.containsAll(List.of(a.getId(), b.getId())));
+        assertTrue(queue.pendingFor(1L).isEmpty());
+        assertEquals(2L, messageCounts.get(1L));
+    }
+
+    @Test
+    void testJournalReplaysAfterCrashWithoutCountingTwice() throws Exception {
+        databaseDown = true;
+        Path journal = dir.resolve("node/wb.journal");
+        MessageWriteBehindQueue queue = queue(journal, 1 << 20, 1000);
+        ChatMessage a = message("hello");
+        ChatMessage b = message("world");
+        queue.append(a);
+        queue.append(b);
+
+        // Both are durable before append returns
+        Path segment = Path.of(journal + ".000001");
+        assertEquals(2, Files.readAllLines(segment).size());
+        assertEquals(2, queue.pendingFor(1L).size());
+
+        // Crash: a restarted node finds the journal as it was; a reached the database first
+        Path restarted = dir.resolve("restarted/wb.journal");
+        Files.createDirectories(restarted.getParent());
+        Files.copy(segment, Path.of(restarted + ".000001"));
+        table.add(a.getId());
+        databaseDown = false;
+        queue(restarted, 1 << 20, 5);
+
+        assertTrue(table.contains(b.getId()));
+        assertEquals(1L, messageCounts.get(1L));
+        assertFalse(Files.exists(Path.of(restarted + ".000001")));
+    }
+
+    @Test
+    void testRejectedRowIsDeadLetteredWithoutHoldingBackOthers() throws Exception {
+        Path journal = dir.resolve("wb.journal");
+        MessageWriteBehindQueue queue = queue(journal, 1 << 20, 5);
+        ChatMessage good = message("hello");
+        ChatMessage poison = message("poison");
+        ChatMessage later = message("world");
+        queue.append(good);
+        queue.append(poison);
+        queue.append(later);
+
+        assertTrue(queue.flushSession(1L));
+
+        assertEquals(Set.of(good.getId(), later.getId()), table);
+        List<String> dead = Files.readAllLines(Path.of(journal + ".dead"));
+        assertEquals(1, dead.size());
+        assertTrue(dead.get(0).contains("\"id\":" + poison.getId()));
+        assertEquals(1, queue.getStats().getDeadLettered());
+    }
+
+    @Test
+    void testJournalIsKeptWhenRejectedRowCannotBeDeadLettered() throws Exception {
+        Path journal = dir.resolve("wb.journal");
+        Path segment = Path.of(journal + ".000001");
+        ChatMessage poison = message("poison");
+        poison.setId(7L);
+        Files.writeString(segment, new ObjectMapper().writeValueAsString(poison) + "\n");
+        // The dead-letter file cannot be created
+        Path deadLetters = Path.of(journal + ".dead");
+        Files.createSymbolicLink(deadLetters, dir.resolve("missing/wb.journal.dead"));
+
+        MessageWriteBehindQueue queue = queue(journal, 1 << 20, 5);
+
+        assertTrue(Files.exists(segment));
+        assertTrue(table.isEmpty());
+        queue.stop();
+
+        // Once dead-lettering works again the next start sets the row aside and drops the segment
+        Files.delete(deadLetters);
+        queue(journal, 1 << 20, 5);
+
+        assertFalse(Files.exists(segment));
+        assertEquals(1, Files.readAllLines(deadLetters).size());
+    }
+
+    @Test
+    void testRetriesAreBounded() throws Exception {
+        databaseDown = true;
+        MessageWriteBehindQueue queue = queue(dir.resolve("wb.journal"), 1 << 20, 2);
+        queue.append(message("hello"));
+
+        // The writer gives up after its bounded retries and sets the row aside
+        await(() -> queue.getStats().getDeadLettered() == 1);
+        assertTrue(queue.flushSession(1L));
+        assertTrue(table.isEmpty());
+    }
+
+    @Test
+    void testFlushedSegmentsAreDeleted() throws Exception {
+        databaseDown = true;
+        Path journal = dir.resolve("wb.journal");
+        MessageWriteBehindQueue queue = queue(journal, 1, 1000);
+        for (int i = 0; i < 3; i++) {
+            queue.append(message("hello " + i));
+        }
+        assertEquals(3, queue.getStats().getJournalSegments());
+
+        databaseDown = false;
+        assertTrue(queue.flushSession(1L));
+
+        await(() -> queue.getStats().getJournalSegments() == 1);
+        assertFalse(Files.exists(Path.of(journal + ".000001")));
+        assertFalse(Files.exists(Path.of(journal + ".000002")));
+        assertEquals(0, Files.size(Path.of(journal + ".000003")));
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.ragchat.service;
+
+import com.example.ragchat.model.OutboxEvent;
+import com.example.ragchat.repository.OutboxRepository;
+import com.example.ragchat.repository.OutboxRepository.Offset;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class OutboxRelayTest {
+
+    private final OutboxRepository outbox = mock(OutboxRepository.class);
+    private final OutboxSink sink = mock(OutboxSink.class);
+    private final PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+    private final ShardRouter shardRouter = new ShardRouter(null, List.of(), "", "", 10, 128, false, false);
+    private final OutboxRelay relay = new OutboxRelay(outbox, sink, shardRouter, transactionManager, "analytics",
+            2, 10, 60_000);
+
+    @Test
+    void testDeliversInBatchesAndAdvancesOffset() throws Exception {
+        OutboxEvent e1 = event(1);
+        OutboxEvent e2 = event(2);
+        OutboxEvent e3 = event(3);
+        when(outbox.isEnabled()).thenReturn(true);
+        when(outbox.lockOffset("analytics")).thenReturn(Optional.of(new Offset(0, 0)));
+        when(outbox.fetch(any(), eq(2))).thenReturn(List.of(e1, e2), List.of(e3));
+
+        relay.relay();
+
+        verify(sink).deliver(List.of(e1, e2));
+        verify(sink).deliver(List.of(e3));
+        verify(outbox).commit("analytics", e2, 2);
+        verify(outbox).commit("analytics", e3, 1);
+        verify(outbox, times(2)).deleteDelivered();
+        assertEquals(3, relay.getStats().getDelivered());
+    }
+
+    @Test
+    void testFailedBatchIsNotCommittedAndBacksOff() throws Exception {
+        when(outbox.isEnabled()).thenReturn(true);
+        when(outbox.lockOffset("analytics")).thenReturn(Optional.of(new Offset(0, 0)));
+        when(outbox.fetch(any(), eq(2))).thenReturn(List.of(event(1)));
+        doThrow(new IOException("sink down")).when(sink).deliver(anyList());
+
+        relay.relay();
+        relay.relay();
+
+        verify(sink, times(1)).deliver(anyList());
+        verify(outbox, never()).commit(any(), any(), anyInt());
+        verify(transactionManager).rollback(any());
+        assertEquals(1, relay.getStats().getFailures());
+    }
+
+    private static OutboxEvent event(long id) {
+        return OutboxEvent.builder().txId(10).id(id).type(OutboxEvent.MESSAGE_ADDED).sessionId(1L).data("{}").build();
+    }
+}
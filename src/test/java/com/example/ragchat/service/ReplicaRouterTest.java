@@ -0,0 +1,59 @@
+package com.example.ragchat.service;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import javax.sql.DataSource;
+import java.sql.ResultSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class ReplicaRouterTest {
+
+    private final DataSource primary = Mockito.mock(DataSource.class);
+
+    @Test
+    void testReadsUseReplicaUnlessRecentlyWritten() throws Exception {
+        DataSource replica = replicaWithLag(0);
+        ReplicaRouter router = new ReplicaRouter(primary, List.of(), "", "", 10, 60_000, 10_000);
+        router.addReplica("replica-0", replica);
+        router.checkLag();
+
+        assertSame(replica, router.readSession(1L, router::select));
+        assertSame(primary, router.select());
+
+        router.recordWrite(1L, "user1");
+        assertSame(primary, router.readSession(1L, router::select));
+        assertSame(primary, router.readUser("user1", router::select));
+        assertSame(replica, router.readSession(2L, router::select));
+
+        assertEquals(2, router.getStats().getPinnedReads());
+        assertEquals(2, router.getStats().getReplicaConnections());
+    }
+
+    @Test
+    void testLaggingReplicaFallsBackToPrimary() throws Exception {
+        ReplicaRouter router = new ReplicaRouter(primary, List.of(), "", "", 10, 5_000, 10_000);
+        router.addReplica("replica-0", replicaWithLag(30_000));
+        router.checkLag();
+
+        assertSame(primary, router.readSession(1L, router::select));
+        assertFalse(router.getStats().getReplicas().get(0).isHealthy());
+        assertEquals(1, router.getStats().getFallbackReads());
+    }
+
+    /**
+     * In-memory stand-in for a replica that answers the lag query with a fixed value
+     */
+    private DataSource replicaWithLag(double lagMillis) throws Exception {
+        DataSource replica = Mockito.mock(DataSource.class, RETURNS_DEEP_STUBS);
+        ResultSet rs = replica.getConnection().createStatement().executeQuery(anyString());
+        when(rs.next()).thenReturn(true, false);
+        when(rs.getMetaData().getColumnCount()).thenReturn(1);
+        when(rs.getDouble(1)).thenReturn(lagMillis);
+        return replica;
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.ragchat.service;
+
+import com.example.ragchat.model.ChatSession;
+import com.example.ragchat.repository.ChatSessionRepository;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class SessionMetadataCacheTest {
+
+    private final ChatSessionRepository repo = Mockito.mock(ChatSessionRepository.class);
+
+    private ChatSession session(Long id, String name) {
+        ChatSession session = new ChatSession();
+        session.setId(id);
+        session.setUserId("user1");
+        session.setName(name);
+        return session;
+    }
+
+    @Test
+    void testHitAvoidsDatabase() {
+        when(repo.findById(1L)).thenReturn(Optional.of(session(1L, "A")));
+        SessionMetadataCache cache = new SessionMetadataCache(repo, true, 10, 300, 30);
+
+        assertTrue(cache.exists(1L));
+        assertTrue(cache.exists(1L));
+        assertEquals("user1", cache.get(1L).get().userId());
+
+        verify(repo, times(1)).findById(1L);
+    }
+
+    @Test
+    void testMissingIdIsNegativelyCached() {
+        when(repo.findById(999L)).thenReturn(Optional.empty());
+        SessionMetadataCache cache = new SessionMetadataCache(repo, true, 10, 300, 30);
+
+        assertFalse(cache.exists(999L));
+        assertFalse(cache.exists(999L));
+
+        verify(repo, times(1)).findById(999L);
+        assertEquals(1, cache.getStats().getNegativeHits());
+    }
+
+    @Test
+    void testInvalidationDuringLoadIsNotLost() {
+        SessionMetadataCache[] cache = new SessionMetadataCache[1];
+        when(repo.findById(1L)).thenAnswer(inv -> {
+            // The session changes and is invalidated after the stale row was read
+            cache[0].invalidate(1L);
+            return Optional.of(session(1L, "A"));
+        }).thenReturn(Optional.of(session(1L, "B")));
+        cache[0] = new SessionMetadataCache(repo, true, 10, 300, 30);
+
+        assertEquals("A", cache[0].get(1L).get().name());
+
+        assertEquals("B", cache[0].get(1L).get().name());
+        verify(repo, times(2)).findById(1L);
+    }
+
+    @Test
+    void testInvalidateReloads() {
+        when(repo.findById(1L)).thenReturn(Optional.of(session(1L, "A")), Optional.of(session(1L, "B")));
+        SessionMetadataCache cache = new SessionMetadataCache(repo, true, 10, 300, 30);
+        cache.get(1L);
+
+        cache.invalidate(1L);
+
+        assertEquals("B", cache.get(1L).get().name());
+    }
+
+    @Test
+    void testSizeIsBounded() {
+        when(repo.findById(anyLong())).thenAnswer(inv -> Optional.of(session(inv.getArgument(0), "S")));
+        SessionMetadataCache cache = new SessionMetadataCache(repo, true, 3, 300, 30);
+
+        for (long id = 1; id <= 10; id++) {
+            cache.get(id);
+        }
+
+        assertEquals(3, cache.getStats().getSize());
+        assertEquals(7, cache.getStats().getEvictions());
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.ragchat.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class SessionStatsReconcilerTest {
+
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+    private final ShardRouter shardRouter = mock(ShardRouter.class);
+    // Session 1 as the fake database holds it: committed messages and the stored counter
+    private final AtomicLong committedMessages = new AtomicLong(5);
+    private final AtomicLong messageCount = new AtomicLong(3);
+    private SessionStatsReconciler reconciler;
+
+    @BeforeEach
+    void setUp() {
+        when(transactionManager.getTransaction(any())).thenAnswer(inv -> new SimpleTransactionStatus());
+        doAnswer(inv -> {
+            ((Runnable) inv.getArgument(0)).run();
+            return null;
+        }).when(shardRouter).forEachShard(any());
+        when(jdbcTemplate.queryForList(contains("FOR NO KEY UPDATE"), eq(Long.class), any(Object[].class)))
+                .thenReturn(List.of(1L));
+        // The recount takes a fresh snapshot of chat_messages
+        when(jdbcTemplate.update(startsWith("UPDATE chat_sessions"), any(Object[].class))).thenAnswer(inv -> {
+            if (messageCount.get() == committedMessages.get()) {
+                return 0;
+            }
+            messageCount.set(committedMessages.get());
+            return 1;
+        });
+        reconciler = new SessionStatsReconciler(jdbcTemplate, transactionManager, shardRouter, true, 1000, "postgres");
+    }
+
+    @Test
+    void testRecountRunsUnderRowLockAfterConcurrentIncrement() {
+        // A writer holding the row commits one more message and its increment while the lock is awaited
+        when(jdbcTemplate.queryForList(contains("FOR NO KEY UPDATE"), eq(Long.class), any(Object[].class)))
+                .thenAnswer(inv -> {
+                    committedMessages.incrementAndGet();
+                    messageCount.incrementAndGet();
+                    return List.of(1L);
+                });
+
+        assertEquals(1, reconciler.reconcile(List.of(1L)));
+
+        assertEquals(6, messageCount.get());
+        InOrder order = inOrder(transactionManager, jdbcTemplate);
+        order.verify(transactionManager).getTransaction(any());
+        order.verify(jdbcTemplate).queryForList(contains("cs.id = ANY(?)"), eq(Long.class), any(Object[].class));
+        order.verify(jdbcTemplate).update(contains("cs.id = ANY(?)"), any(Object[].class));
+        order.verify(transactionManager).commit(any());
+        // The ids are bound as one array parameter
+        verify(jdbcTemplate).update(contains("cs.id = ANY(?)"), argThat((Object ids) -> ids instanceof Long[] array && Arrays.equals(array, new Long[] {1L})));
+    }
+
+    @Test
+    void testEachChunkIsLockedAndRecountedInItsOwnTransaction() {
+        when(jdbcTemplate.query(startsWith("SELECT id FROM"), any(ResultSetExtractor.class), any(Object[].class)))
+                .thenReturn(500L, (Long) null);
+        List<List<Object>> locked = new ArrayList<>();
+        when(jdbcTemplate.queryForList(contains("FOR NO KEY UPDATE"), eq(Long.class), any(Object[].class)))
+                .thenAnswer(inv -> {
+                    locked.add(List.of(inv.getArguments()).subList(2, 4));
+                    return List.of(1L);
+                });
+
+        reconciler.reconcile();
+
+        assertEquals(List.of(List.of(Long.MIN_VALUE, 500L), List.of(500L, Long.MAX_VALUE)), locked);
+        verify(jdbcTemplate).update(contains("cs.id >= ? AND cs.id < ?"), eq(Long.MIN_VALUE), eq(500L));
+        verify(jdbcTemplate).update(contains("cs.id >= ? AND cs.id < ?"), eq(500L), eq(Long.MAX_VALUE));
+        verify(transactionManager, times(2)).commit(any());
+        assertEquals(5, messageCount.get());
+    }
+
+    @Test
+    void testNothingIsRecountedWhenNoSessionIsLocked() {
+        // Archived or deleted meanwhile
+        when(jdbcTemplate.queryForList(contains("FOR NO KEY UPDATE"), eq(Long.class), any(Object[].class)))
+                .thenReturn(List.of());
+
+        assertEquals(0, reconciler.reconcile(List.of(1L)));
+
+        verify(jdbcTemplate, never()).update(anyString(), any(Object[].class));
+        assertEquals(3, messageCount.get());
+    }
+}
@@ -0,0 +1,295 @@
+package com.example.ragchat.service;
+
+import com.example.ragchat.dto.ImportResult;
+import com.example.ragchat.model.ChatMessage;
+import com.example.ragchat.model.ChatSession;
+import com.example.ragchat.repository.ChatSessionRepository;
+import com.example.ragchat.repository.MessageStore;
+import com.example.ragchat.repository.OutboxRepository;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class SessionTransferServiceTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final JdbcTemplate cursorTemplate = mock(JdbcTemplate.class);
+    private final ChatSessionRepository sessionRepo = mock(ChatSessionRepository.class);
+    private final MessageStore messageStore = mock(MessageStore.class);
+    private final MessageArchive messageArchive = mock(MessageArchive.class);
+    private final BlobStore blobStore = mock(BlobStore.class);
+    private final ShardRouter shardRouter = mock(ShardRouter.class);
+    // Sessions of alice by id; archived ones keep their messages in segments instead of chat_messages
+    private final Map<Long, ChatSession> sessions = new TreeMap<>();
+    private final Map<Long, List<ChatMessage>> rows = new TreeMap<>();
+    private final Map<Long, List<ChatMessage>> segments = new HashMap<>();
+    // Rows committed by a rehydrate that started after the export stream
+    private final Map<Long, List<ChatMessage>> lateRows = new HashMap<>();
+    private final List<ChatSession> savedSessions = new ArrayList<>();
+    private final List<ChatMessage> savedMessages = new ArrayList<>();
+    private final AtomicLong ids = new AtomicLong(1000);
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() throws Exception {
+        when(shardRouter.onUser(anyString(), any())).thenAnswer(inv -> ((Supplier<Object>) inv.getArgument(1)).get());
+        when(shardRouter.writeUser(anyString(), any())).thenAnswer(inv -> ((Supplier<Object>) inv.getArgument(1)).get());
+        when(shardRouter.onSession(anyLong(), any())).thenAnswer(inv -> ((Supplier<Object>) inv.getArgument(1)).get());
+        when(messageArchive.read(anyLong(), any())).thenAnswer(inv -> {
+            List<ChatMessage> segment = segments.get(inv.<Long>getArgument(0));
+            if (segment == null) {
+                return false;
+            }
+            for (ChatMessage msg : segment) {
+                inv.<MessageArchive.MessageConsumer>getArgument(1).accept(msg);
+            }
+            return true;
+        });
+
+        when(cursorTemplate.query(startsWith("SELECT id, name"), any(RowMapper.class), any(Object[].class)))
+                .thenAnswer(inv -> {
+                    RowMapper<Object> mapper = inv.getArgument(1);
+                    long fromSession = (Long) inv.getArguments()[3];
+                    List<Object> result = new ArrayList<>();
+                    for (ChatSession session : sessions.values()) {
+                        if (session.getArchivedAt() != null && session.getId() >= fromSession) {
+                            result.add(mapper.mapRow(sessionResultSet(session), result.size()));
+                        }
+                    }
+                    return result;
+                });
+        doAnswer(inv -> {
+            RowCallbackHandler handler = inv.getArgument(1);
+            Object[] args = inv.getArguments();
+            for (List<ChatMessage> messages : rows.values()) {
+                emit(handler, messages, (Long) args[3], (Long) args[4]);
+            }
+            return null;
+        }).when(cursorTemplate).query(contains("s.user_id = ?"), any(RowCallbackHandler.class), any(Object[].class));
+        doAnswer(inv -> {
+            RowCallbackHandler handler = inv.getArgument(1);
+            Object[] args = inv.getArguments();
+            emit(handler, lateRows.getOrDefault((Long) args[2], List.of()), (Long) args[3], (Long) args[4]);
+            return null;
+        }).when(cursorTemplate).query(contains("s.id = ?"), any(RowCallbackHandler.class), any(Object[].class));
+
+        when(sessionRepo.save(any(ChatSession.class))).thenAnswer(inv -> {
+            ChatSession session = inv.getArgument(0);
+            session.setId(ids.incrementAndGet());
+            savedSessions.add(session);
+            return session;
+        });
+        when(messageStore.saveAll(anyList())).thenAnswer(inv -> {
+            savedMessages.addAll(inv.getArgument(0));
+            return inv.getArgument(0);
+        });
+    }
+
+    private SessionTransferService service(int checkpointEvery) {
+        PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+        when(transactionManager.getTransaction(any())).thenAnswer(inv -> new SimpleTransactionStatus());
+        return new SessionTransferService(cursorTemplate, transactionManager, objectMapper, sessionRepo,
+                messageStore, mock(SessionMetadataCache.class), messageArchive, blobStore, mock(ReplicaRouter.class),
+                shardRouter, mock(OutboxRepository.class), checkpointEvery, 100, "postgres");
+    }
+
+    /**
+     * Hot session 10, archived session 20 and hot session 30
+     */
+    private void givenSessions() {
+        session(10L, "first", false);
+        rows.put(10L, List.of(message(101L, 10L, "user", "hello"), message(102L, 10L, "assistant", "hi there")));
+        session(20L, "archived", true);
+        segments.put(20L, List.of(message(201L, 20L, "user", "old question"),
+                message(202L, 20L, "assistant", "old answer"), message(203L, 20L, "user", "thanks")));
+        session(30L, "latest", false);
+        rows.put(30L, List.of(message(301L, 30L, "user", "newest")));
+    }
+
+    @Test
+    void testExportImportRoundTripReadsArchivedSegmentsInPlace() throws Exception {
+        givenSessions();
+        SessionTransferService service = service(1000);
+
+        byte[] exported = export(service, null);
+        List<JsonNode> lines = lines(exported);
+
+        assertEquals(List.of(101L, 102L, 201L, 202L, 203L, 301L), messageIds(lines));
+        assertEquals(List.of(10L, 20L, 30L), lines.stream()
+                .filter(line -> line.path("type").asText().equals("session"))
+                .map(line -> line.path("id").asLong()).toList());
+        // The archived session stays archived
+        verify(messageArchive, never()).rehydrate(anyLong(), anyString());
+
+        ImportResult result = service.importMessages("bob", new ByteArrayInputStream(exported), null, null);
+
+        assertTrue(result.isCompleted());
+        assertEquals(6, result.getImported());
+        assertEquals(List.of("first", "archived", "latest"), savedSessions.stream().map(ChatSession::getName).toList());
+        assertTrue(savedSessions.stream().allMatch(session -> session.getUserId().equals("bob")));
+        assertEquals(List.of("hello", "hi there", "old question", "old answer", "thanks", "newest"),
+                savedMessages.stream().map(ChatMessage::getContent).toList());
+        assertEquals(savedSessions.get(1).getId(), savedMessages.get(2).getSessionId());
+        assertEquals(30L, result.getLastSourceSessionId());
+        assertEquals(savedSessions.get(2).getId(), result.getLastTargetSessionId());
+    }
+
+    @Test
+    void testResumeFromCheckpointInsideArchivedSession() throws Exception {
+        givenSessions();
+        SessionTransferService service = service(2);
+
+        List<String> checkpoints = lines(export(service, null)).stream()
+                .filter(line -> line.path("type").asText().equals("checkpoint"))
+                .map(line -> line.path("cursor").asText()).toList();
+        // After 102, 202 and 301, then the final position once more
+        assertEquals(4, checkpoints.size());
+
+        byte[] resumed = export(service, checkpoints.get(1));
+        assertEquals(List.of(203L, 301L), messageIds(lines(resumed)));
+
+        // The import continues into the session that already holds the first part
+        ChatSession target = new ChatSession();
+        target.setId(555L);
+        target.setUserId("bob");
+        when(sessionRepo.findById(555L)).thenReturn(Optional.of(target));
+        ImportResult result = service.importMessages("bob", new ByteArrayInputStream(resumed), 20L, 555L);
+
+        assertTrue(result.isCompleted());
+        assertEquals(List.of(555L, savedSessions.get(0).getId()),
+                savedMessages.stream().map(ChatMessage::getSessionId).toList());
+        assertEquals(List.of("latest"), savedSessions.stream().map(ChatSession::getName).toList());
+    }
+
+    @Test
+    void testBlobReferencesAreResolvedOncePerExport() throws Exception {
+        session(10L, "first", false);
+        ChatMessage hot = message(101L, 10L, "assistant", "");
+        hot.setContentRef("content-hash");
+        hot.setContextRef("context-hash");
+        rows.put(10L, List.of(hot));
+        session(20L, "archived", true);
+        ChatMessage archived = message(201L, 20L, "assistant", "short answer");
+        archived.setContextRef("context-hash");
+        segments.put(20L, List.of(archived));
+        when(blobStore.get("content-hash")).thenReturn(Optional.of("long answer"));
+        when(blobStore.get("context-hash")).thenReturn(Optional.of("retrieved documents"));
+
+        List<JsonNode> messages = lines(export(service(1000), null)).stream()
+                .filter(line -> line.path("type").asText().equals("message")).toList();
+
+        assertEquals("long answer", messages.get(0).path("content").asText());
+        assertEquals("retrieved documents", messages.get(0).path("context").asText());
+        assertEquals("short answer", messages.get(1).path("content").asText());
+        assertEquals("retrieved documents", messages.get(1).path("context").asText());
+        verify(blobStore, times(1)).get("context-hash");
+    }
+
+    @Test
+    void testSessionRehydratedDuringExportIsReadFromChatMessages() throws Exception {
+        givenSessions();
+        // The segment is gone by the time the stream reaches it; its rows are committed
+        lateRows.put(20L, segments.remove(20L));
+
+        List<JsonNode> lines = lines(export(service(1000), null));
+
+        assertEquals(List.of(101L, 102L, 201L, 202L, 203L, 301L), messageIds(lines));
+    }
+
+    private byte[] export(SessionTransferService service, String after) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        service.export("alice", after, out);
+        return out.toByteArray();
+    }
+
+    private List<JsonNode> lines(byte[] exported) throws Exception {
+        return objectMapper.readerFor(JsonNode.class).<JsonNode>readValues(exported).readAll();
+    }
+
+    private static List<Long> messageIds(List<JsonNode> lines) {
+        return lines.stream()
+                .filter(line -> line.path("type").asText().equals("message"))
+                .map(line -> line.path("id").asLong()).toList();
+    }
+
+    private void session(Long id, String name, boolean archived) {
+        ChatSession session = new ChatSession();
+        session.setId(id);
+        session.setUserId("alice");
+        session.setName(name);
+        session.setCreatedAt(new Date(1_000L));
+        session.setUpdatedAt(new Date(2_000L));
+        session.setArchivedAt(archived ? new Date(3_000L) : null);
+        sessions.put(id, session);
+    }
+
+    private static ChatMessage message(Long id, Long sessionId, String sender, String content) {
+        ChatMessage msg = new ChatMessage();
+        msg.setId(id);
+        msg.setSessionId(sessionId);
+        msg.setSeq(id % 100);
+        msg.setSender(sender);
+        msg.setContent(content);
+        msg.setTimestamp(new Date(id * 1_000L));
+        return msg;
+    }
+
+    private void emit(RowCallbackHandler handler, List<ChatMessage> messages, long afterSession, long afterMessage)
+            throws Exception {
+        for (ChatMessage msg : messages) {
+            if (msg.getSessionId() > afterSession
+                    || (msg.getSessionId() == afterSession && msg.getId() > afterMessage)) {
+                handler.processRow(rowResultSet(sessions.get(msg.getSessionId()), msg));
+            }
+        }
+    }
+
+    private static ResultSet sessionResultSet(ChatSession session) throws Exception {
+        ResultSet rs = mock(ResultSet.class);
+        when(rs.getLong("id")).thenReturn(session.getId());
+        when(rs.getString("name")).thenReturn(session.getName());
+        when(rs.getBoolean("favorite")).thenReturn(session.isFavorite());
+        when(rs.getTimestamp("created_at")).thenReturn(new Timestamp(session.getCreatedAt().getTime()));
+        when(rs.getTimestamp("updated_at")).thenReturn(new Timestamp(session.getUpdatedAt().getTime()));
+        return rs;
+    }
+
+    private static ResultSet rowResultSet(ChatSession session, ChatMessage msg) throws Exception {
+        ResultSet rs = sessionResultSet(session);
+        when(rs.getLong("s_id")).thenReturn(session.getId());
+        when(rs.getLong("id")).thenReturn(msg.getId());
+        when(rs.getLong("seq")).thenReturn(msg.getSeq());
+        when(rs.wasNull()).thenReturn(false);
+        when(rs.getString("sender")).thenReturn(msg.getSender());
+        when(rs.getString("content")).thenReturn(msg.getContent());
+        when(rs.getString("context")).thenReturn(msg.getContext());
+        when(rs.getString("context_ref")).thenReturn(msg.getContextRef());
+        when(rs.getString("content_ref")).thenReturn(msg.getContentRef());
+        when(rs.getTimestamp("timestamp")).thenReturn(new Timestamp(msg.getTimestamp().getTime()));
+        return rs;
+    }
+}
@@ -0,0 +1,187 @@
+package com.example.ragchat.service;
+
+import com.example.ragchat.model.ChatMessage;
+import com.example.ragchat.repository.MessageStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class SessionWriteExecutorTest {
+
+    private final MessageStore repo = Mockito.mock(MessageStore.class);
+    private final MessageWriteBehindQueue writeBehind = Mockito.mock(MessageWriteBehindQueue.class);
+    private final List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<>());
+    private SessionWriteExecutor executor;
+
+    @BeforeEach
+    void setUp() {
+        ChatMessage last = new ChatMessage();
+        last.setSeq(41L);
+        last.setTimestamp(new Date(System.currentTimeMillis() + 60_000));
+        when(repo.findLatest(eq(1L), eq(1))).thenReturn(List.of(last));
+        when(writeBehind.pendingFor(anyLong())).thenReturn(List.of());
+        when(repo.saveAll(anyList())).thenAnswer(inv -> {
+            List<ChatMessage> batch = inv.getArgument(0);
+            batchSizes.add(batch.size());
+            return batch;
+        });
+
+        executor = new SessionWriteExecutor(repo, writeBehind, 2, 500, 5000, 100);
+        executor.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.stop();
+    }
+
+    @Test
+    void testConcurrentAppendsGetDistinctOrderedSequence() throws Exception {
+        ExecutorService callers = Executors.newFixedThreadPool(8);
+        List<Future<ChatMessage>> futures = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            futures.add(callers.submit(() -> {
+                ChatMessage msg = new ChatMessage();
+                msg.setSessionId(1L);
+                msg.setSender("user");
+                msg.setContent("hi");
+                return executor.appendMessage(msg);
+            }));
+        }
+        List<ChatMessage> written = new ArrayList<>();
+        for (Future<ChatMessage> future : futures) {
+            written.add(future.get());
+        }
+        callers.shutdown();
+
+        written.sort((a, b) -> Long.compare(a.getSeq(), b.getSeq()));
+        for (int i = 0; i < written.size(); i++) {
+            assertEquals(42L + i, written.get(i).getSeq());
+            if (i > 0) {
+                assertTrue(written.get(i).getTimestamp().after(written.get(i - 1).getTimestamp()));
+            }
+        }
+        assertEquals(200, batchSizes.stream().mapToInt(Integer::intValue).sum());
+        verify(repo, times(1)).findLatest(1L, 1);
+    }
+
+    @Test
+    void testReservedBatchGetsConsecutiveSeqAndStrictlyIncreasingTimestamps() {
+        List<ChatMessage> batch = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            batch.add(message(1L, "imported " + i));
+        }
+
+        executor.reserve(1L, batch);
+        ChatMessage next = executor.appendMessage(message(1L, "after import"));
+
+        for (int i = 0; i < batch.size(); i++) {
+            assertEquals(42L + i, batch.get(i).getSeq());
+            if (i > 0) {
+                assertTrue(batch.get(i).getTimestamp().after(batch.get(i - 1).getTimestamp()));
+            }
+        }
+        assertEquals(92L, next.getSeq());
+        assertTrue(next.getTimestamp().after(batch.get(batch.size() - 1).getTimestamp()));
+    }
+
+    @Test
+    void testFailedBatchIsRetriedSoOnlyTheOffendingAppendFails() throws Exception {
+        when(repo.saveAll(anyList())).thenAnswer(inv -> {
+            List<ChatMessage> batch = inv.getArgument(0);
+            if (batch.stream().anyMatch(msg -> msg.getContent().equals("poison"))) {
+                throw new IllegalArgumentException("invalid byte sequence");
+            }
+            batchSizes.add(batch.size());
+            return batch;
+        });
+        CountDownLatch release = new CountDownLatch(1);
+        // Hold the writer so the next three appends are coalesced into one batch
+        ExecutorService callers = Executors.newFixedThreadPool(4);
+        callers.submit(() -> executor.execute(1L, () -> {
+            await(release);
+            return null;
+        }));
+        Thread.sleep(50);
+        List<Future<ChatMessage>> futures = new ArrayList<>();
+        for (String content : List.of("hello", "poison", "world")) {
+            futures.add(callers.submit(() -> executor.appendMessage(message(1L, content))));
+        }
+        Thread.sleep(50);
+        release.countDown();
+
+        assertEquals("hello", futures.get(0).get().getContent());
+        ExecutionException failed = assertThrows(ExecutionException.class, () -> futures.get(1).get());
+        assertInstanceOf(IllegalArgumentException.class, failed.getCause());
+        assertEquals("world", futures.get(2).get().getContent());
+        callers.shutdown();
+    }
+
+    @Test
+    void testTimedOutTaskIsWithdrawnIfNotStarted() throws Exception {
+        SessionWriteExecutor slow = new SessionWriteExecutor(repo, writeBehind, 1, 500, 100, 100);
+        slow.start();
+        try {
+            CountDownLatch release = new CountDownLatch(1);
+            AtomicBoolean ran = new AtomicBoolean();
+            Executors.newSingleThreadExecutor().submit(() -> slow.execute(1L, () -> {
+                await(release);
+                return null;
+            }));
+            Thread.sleep(20);
+
+            assertThrows(IllegalStateException.class, () -> slow.execute(1L, () -> ran.getAndSet(true)));
+            release.countDown();
+
+            // A task already running is waited for rather than reported as failed
+            assertEquals("done", slow.execute(1L, () -> {
+                sleep(300);
+                return "done";
+            }));
+            assertFalse(ran.get());
+        } finally {
+            slow.stop();
+        }
+    }
+
+    private static ChatMessage message(Long sessionId, String content) {
+        ChatMessage msg = new ChatMessage();
+        msg.setSessionId(sessionId);
+        msg.setSender("user");
+        msg.setContent(content);
+        return msg;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
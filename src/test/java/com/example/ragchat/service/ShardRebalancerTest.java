@@ -0,0 +1,291 @@
+package com.example.ragchat.service;
+
+import com.example.ragchat.dto.ShardMoveResult;
+import com.example.ragchat.repository.ShardCopyRepository;
+import com.example.ragchat.util.ShardContext;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class ShardRebalancerTest {
+
+    private final InMemoryRows rows = new InMemoryRows();
+    private final ShardRouter shardRouter = mock(ShardRouter.class);
+    private final SessionStatsReconciler statsReconciler = mock(SessionStatsReconciler.class);
+    private final ClusterBus clusterBus = mock(ClusterBus.class);
+    private final List<String> events = new ArrayList<>();
+    private ShardRebalancer rebalancer;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        when(shardRouter.shardCount()).thenReturn(2);
+        when(shardRouter.shardOfUser("alice")).thenReturn(0);
+        when(shardRouter.onShard(anyInt(), any())).thenAnswer(inv ->
+                ShardContext.call(inv.getArgument(0), (Supplier<Object>) inv.getArgument(1)));
+        when(shardRouter.cutover(eq("alice"), eq(1), any(), any())).thenAnswer(inv -> {
+            events.add("cutover");
+            ((Runnable) inv.getArgument(3)).run();
+            return ((Supplier<List<Long>>) inv.getArgument(2)).get();
+        });
+        rebalancer = new ShardRebalancer(shardRouter, rows, statsReconciler, mock(SessionMetadataCache.class),
+                clusterBus, 5, 2, 60_000, 30_000);
+    }
+
+    @Test
+    void testCopiesUserWithBlobsAndMirrorsDeletes() {
+        rows.addSession(0, 1, 3);
+        rows.addMessage(0, 1, 11, null);
+        rows.addMessage(0, 1, 12, "blob-a");
+        rows.addMessage(0, 1, 13, null);
+        rows.addSession(0, 2, 1);
+        rows.addMessage(0, 2, 21, "blob-b");
+        rows.blobs(0).put("blob-a", new Object[] {"blob-a", "zstd", 10, new byte[] {1}});
+        rows.blobs(0).put("blob-b", new Object[] {"blob-b", "zstd", 20, new byte[] {2}});
+        // Left on the target by an earlier attempt, since deleted on the source
+        rows.addSession(1, 9, 1);
+        rows.addMessage(1, 9, 91, null);
+        rows.addSession(1, 1, 4);
+        rows.addMessage(1, 1, 14, null);
+
+        ShardMoveResult result = rebalancer.moveUser("alice", 1);
+
+        assertEquals(Set.of(11L, 12L, 13L), rows.messages(1, 1).keySet());
+        assertEquals(Set.of(21L), rows.messages(1, 2).keySet());
+        assertFalse(rows.sessions(1).containsKey(9L));
+        assertTrue(rows.messages(1, 9).isEmpty());
+        assertEquals(Set.of("blob-a", "blob-b"), rows.blobs(1).keySet());
+        assertEquals(2, result.getSessions());
+        assertEquals(1, result.getTargetShard());
+        assertNotNull(result.getSourcePurgeAt());
+        verify(clusterBus).directoryChanged();
+    }
+
+    @Test
+    void testLaterPassesOnlyRereadChangedSessions() {
+        rows.addSession(0, 1, 1);
+        rows.addMessage(0, 1, 11, null);
+        rows.addSession(0, 2, 1);
+        rows.addMessage(0, 2, 21, null);
+        // A write lands on the source between the first and second pass
+        rows.beforeSessionRead(2, () -> {
+            rows.addMessage(0, 1, 12, null);
+            rows.sessions(0).get(1L)[6] = 2L;
+        });
+
+        ShardMoveResult result = rebalancer.moveUser("alice", 1);
+
+        assertEquals(Set.of(11L, 12L), rows.messages(1, 1).keySet());
+        assertEquals(4, result.getPasses());
+        // Session 2 never changed, so only the first pass compared its messages
+        assertEquals(1, rows.messageReads(0, 2));
+        assertEquals(2, rows.messageReads(0, 1));
+    }
+
+    @Test
+    void testSourceIsPurgedOnlyAfterGracePeriod() {
+        rows.addSession(0, 1, 1);
+        rows.addMessage(0, 1, 11, null);
+
+        long purgeAt = rebalancer.moveUser("alice", 1).getSourcePurgeAt().getTime();
+        rebalancer.purgeMovedSources(purgeAt - 1);
+
+        assertTrue(rows.sessions(0).containsKey(1L));
+        verify(shardRouter, never()).endMove();
+        assertThrows(RuntimeException.class, () -> rebalancer.moveUser("alice", 1));
+
+        rebalancer.purgeMovedSources(purgeAt);
+
+        assertFalse(rows.sessions(0).containsKey(1L));
+        assertTrue(rows.messages(0, 1).isEmpty());
+        assertEquals(Set.of(11L), rows.messages(1, 1).keySet());
+        assertEquals(List.of("cutover", "delete 0:1"), events);
+        verify(shardRouter).endMove();
+    }
+
+    @Test
+    void testLateWritesAndSessionsOnSourceAreMovedBeforePurge() {
+        rows.addSession(0, 1, 1);
+        rows.addMessage(0, 1, 11, null);
+
+        long purgeAt = rebalancer.moveUser("alice", 1).getSourcePurgeAt().getTime();
+        // An instance still routing by its old directory writes to the source
+        rows.addMessage(0, 1, 12, "blob-late");
+        rows.blobs(0).put("blob-late", new Object[] {"blob-late", "zstd", 5, new byte[] {5}});
+        rows.addSession(0, 3, 1);
+        rows.addMessage(0, 3, 31, null);
+
+        rebalancer.purgeMovedSources(purgeAt);
+
+        assertEquals(Set.of(11L, 12L), rows.messages(1, 1).keySet());
+        assertTrue(rows.blobs(1).containsKey("blob-late"));
+        verify(statsReconciler).reconcile(List.of(1L));
+        assertEquals(Set.of(31L), rows.messages(1, 3).keySet());
+        verify(shardRouter).relocateSessions(List.of(3L), 1);
+        // The new session is still routed to the source by other instances, so it stays for now
+        assertFalse(rows.sessions(0).containsKey(1L));
+        assertTrue(rows.sessions(0).containsKey(3L));
+        verify(shardRouter, never()).endMove();
+
+        rows.addMessage(0, 3, 32, null);
+        rebalancer.purgeMovedSources(purgeAt + 60_000);
+
+        assertEquals(Set.of(31L, 32L), rows.messages(1, 3).keySet());
+        assertFalse(rows.sessions(0).containsKey(3L));
+        verify(shardRouter).endMove();
+    }
+
+    @Test
+    void testGracePeriodMustExceedDirectoryRefresh() {
+        assertThrows(IllegalStateException.class, () -> new ShardRebalancer(shardRouter, rows, statsReconciler,
+                mock(SessionMetadataCache.class), clusterBus, 5, 2, 30_000, 30_000));
+    }
+
+    /**
+     * Two shards of rows, picked by the current {@link ShardContext}
+     */
+    private class InMemoryRows extends ShardCopyRepository {
+
+        private final Map<Integer, Map<Long, Object[]>> sessions = new HashMap<>();
+        private final Map<Integer, Map<Long, Map<Long, Object[]>>> messages = new HashMap<>();
+        private final Map<Integer, Map<String, Object[]>> blobs = new HashMap<>();
+        private final Map<String, Integer> messageReads = new HashMap<>();
+        private int sourceSessionReads;
+        private int hookAtRead;
+        private Runnable hook;
+
+        InMemoryRows() {
+            super(null);
+        }
+
+        Map<Long, Object[]> sessions(int shard) {
+            return sessions.computeIfAbsent(shard, s -> new TreeMap<>());
+        }
+
+        Map<Long, Object[]> messages(int shard, long sessionId) {
+            return messages.computeIfAbsent(shard, s -> new HashMap<>()).computeIfAbsent(sessionId, s -> new TreeMap<>());
+        }
+
+        Map<String, Object[]> blobs(int shard) {
+            return blobs.computeIfAbsent(shard, s -> new HashMap<>());
+        }
+
+        int messageReads(int shard, long sessionId) {
+            return messageReads.getOrDefault(shard + ":" + sessionId, 0);
+        }
+
+        void beforeSessionRead(int read, Runnable hook) {
+            this.hookAtRead = read;
+            this.hook = hook;
+        }
+
+        void addSession(int shard, long id, long messageCount) {
+            sessions(shard).put(id, new Object[] {id, "alice", "Session " + id, false, null, null, messageCount,
+                    null, 0L, 0L, null, null});
+        }
+
+        void addMessage(int shard, long sessionId, long id, String contentRef) {
+            messages(shard, sessionId).put(id, new Object[] {id, sessionId, id, "user", "hello " + id, null, null,
+                    contentRef, null});
+        }
+
+        @Override
+        public List<Object[]> findSessions(String userId) {
+            int shard = ShardContext.current();
+            if (shard == 0 && ++sourceSessionReads == hookAtRead) {
+                hook.run();
+            }
+            return sessions(shard).values().stream()
+                    .filter(row -> userId.equals(row[1]))
+                    .map(Object[]::clone)
+                    .toList();
+        }
+
+        @Override
+        public List<Long> findSessionIds(String userId) {
+            return sessions(ShardContext.current()).values().stream()
+                    .filter(row -> userId.equals(row[1]))
+                    .map(row -> (Long) row[0])
+                    .toList();
+        }
+
+        @Override
+        public int[] upsertSessions(List<Object[]> rows) {
+            Map<Long, Object[]> shard = sessions(ShardContext.current());
+            int[] counts = new int[rows.size()];
+            for (int i = 0; i < rows.size(); i++) {
+                Object[] previous = shard.put((Long) rows.get(i)[0], rows.get(i).clone());
+                counts[i] = Arrays.equals(previous, rows.get(i)) ? 0 : 1;
+            }
+            return counts;
+        }
+
+        @Override
+        public int deleteSession(Long sessionId) {
+            int shard = ShardContext.current();
+            events.add("delete " + shard + ":" + sessionId);
+            messages(shard, sessionId).clear();
+            return sessions(shard).remove(sessionId) != null ? 1 : 0;
+        }
+
+        @Override
+        public Set<Long> findMessageIds(Long sessionId) {
+            int shard = ShardContext.current();
+            messageReads.merge(shard + ":" + sessionId, 1, Integer::sum);
+            return new HashSet<>(messages(shard, sessionId).keySet());
+        }
+
+        @Override
+        public List<Object[]> findMessages(Long sessionId, Collection<Long> ids) {
+            Map<Long, Object[]> session = messages(ShardContext.current(), sessionId);
+            return ids.stream().map(session::get).filter(row -> row != null).toList();
+        }
+
+        @Override
+        public int insertMessages(List<Object[]> rows) {
+            int inserted = 0;
+            for (Object[] row : rows) {
+                Object[] blobRef = {row[ShardCopyRepository.CONTEXT_REF], row[ShardCopyRepository.CONTENT_REF]};
+                for (Object hash : blobRef) {
+                    assertTrue(hash == null || blobs(ShardContext.current()).containsKey(hash),
+                            "Message copied before its blob");
+                }
+                if (messages(ShardContext.current(), (Long) row[1]).putIfAbsent((Long) row[0], row) == null) {
+                    inserted++;
+                }
+            }
+            return inserted;
+        }
+
+        @Override
+        public int deleteMessages(Long sessionId, Collection<Long> ids) {
+            Map<Long, Object[]> session = messages(ShardContext.current(), sessionId);
+            return (int) ids.stream().filter(id -> session.remove(id) != null).count();
+        }
+
+        @Override
+        public Optional<Object[]> findBlob(String hash) {
+            return Optional.ofNullable(blobs(ShardContext.current()).get(hash));
+        }
+
+        @Override
+        public void insertBlob(Object[] blob) {
+            blobs(ShardContext.current()).putIfAbsent((String) blob[0], blob);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.ragchat.service;
+
+import com.example.ragchat.exception.SessionNotFoundException;
+import com.example.ragchat.util.ShardContext;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import javax.sql.DataSource;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ShardRouterTest {
+
+    private final DataSource primary = Mockito.mock(DataSource.class);
+
+    private ShardRouter router(int shards) {
+        ShardRouter router = new ShardRouter(primary, List.of(), "", "", 10, 128, false, false);
+        for (int i = 1; i < shards; i++) {
+            router.addShard(Mockito.mock(DataSource.class));
+        }
+        return router;
+    }
+
+    @Test
+    void testUsersSpreadEvenlyAndAddingShardMovesFewUsers() {
+        ShardRouter four = router(4);
+        ShardRouter five = router(5);
+        int users = 20_000;
+        int[] counts = new int[4];
+        int moved = 0;
+        for (int i = 0; i < users; i++) {
+            String userId = "user" + i;
+            int shard = four.shardOfUser(userId);
+            assertEquals(shard, four.shardOfUser(userId));
+            counts[shard]++;
+            if (five.shardOfUser(userId) != shard) {
+                moved++;
+            }
+        }
+        for (int count : counts) {
+            assertTrue(Math.abs(count - users / 4) < users / 10, "Unbalanced ring: " + count);
+        }
+        // About 1/5 of the users belong to the new shard; nobody else moves
+        assertTrue(moved > users / 8 && moved < users * 3 / 10, "Moved " + moved);
+    }
+
+    @Test
+    void testSessionShardComesFromId() {
+        ShardRouter router = router(3);
+        DataSource shardZero = Mockito.mock(DataSource.class);
+
+        assertEquals(0, router.shardOfSession(42L));
+        assertEquals(2, router.shardOfSession(ShardContext.firstId(2) + 42));
+        assertThrows(SessionNotFoundException.class, () -> router.shardOfSession(ShardContext.firstId(3) + 1));
+
+        assertSame(shardZero, router.onSession(42L, () -> router.select(() -> shardZero)));
+        assertNotSame(shardZero, router.onSession(ShardContext.firstId(2) + 42, () -> router.select(() -> shardZero)));
+        assertEquals(0, ShardContext.current());
+    }
+}
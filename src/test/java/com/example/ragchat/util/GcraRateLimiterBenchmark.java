@@ -0,0 +1,75 @@
+package com.example.ragchat.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Contended throughput of rate limit checks, from a few hot keys to many cold ones.
+ *
+ * mvn test -Dtest=GcraRateLimiterBenchmark -Dbenchmark.enabled=true
+ */
+@EnabledIfSystemProperty(named = "benchmark.enabled", matches = "true")
+class GcraRateLimiterBenchmark {
+
+    private static final int THREADS = Runtime.getRuntime().availableProcessors() * 2;
+    private static final int OPS_PER_THREAD = 2_000_000;
+
+    @Test
+    void measureContention() throws Exception {
+        for (int keys : new int[]{1, 16, 10_000, 1_000_000}) {
+            run(keys);
+            run(keys);
+        }
+    }
+
+    private void run(int keys) throws Exception {
+        GcraRateLimiter limiter = new GcraRateLimiter(1_000_000, 1, TimeUnit.SECONDS, 100_000);
+        String[] names = new String[Math.min(keys, 100_000)];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = "key-" + i;
+        }
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        long[] allowed = new long[THREADS];
+        for (int t = 0; t < THREADS; t++) {
+            int slot = t;
+            Thread thread = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < OPS_PER_THREAD; i++) {
+                    // Keys beyond the name table are fresh strings, exercising the key cap
+                    String key = keys > names.length ? "cold-" + random.nextInt(keys) : names[random.nextInt(keys)];
+                    if (limiter.tryAcquire(key).allowed()) {
+                        allowed[slot]++;
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        long began = System.nanoTime();
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long elapsed = System.nanoTime() - began;
+        long ops = (long) THREADS * OPS_PER_THREAD;
+        long granted = 0;
+        for (long count : allowed) {
+            granted += count;
+        }
+        System.out.printf("keys=%,d threads=%d: %.1f ns/op, %.1f M ops/s, allowed=%,d tracked=%,d overflowed=%,d%n",
+                keys, THREADS, (double) elapsed * THREADS / ops, ops * 1000.0 / elapsed, granted,
+                limiter.trackedKeys(), limiter.overflowed());
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.ragchat.util;
+
+import com.example.ragchat.util.GcraRateLimiter.Decision;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GcraRateLimiterTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    void testBurstThenDeny() {
+        GcraRateLimiter limiter = new GcraRateLimiter(5, 1, TimeUnit.MINUTES, 100);
+
+        for (int i = 0; i < 5; i++) {
+            Decision decision = limiter.tryAcquire("a", 0);
+            assertTrue(decision.allowed());
+            assertEquals(4 - i, decision.remaining());
+        }
+        Decision denied = limiter.tryAcquire("a", 0);
+
+        assertFalse(denied.allowed());
+        assertEquals(0, denied.remaining());
+        assertEquals(12 * SECOND, denied.retryAfterNanos());
+        assertEquals(60 * SECOND, denied.resetNanos());
+    }
+
+    @Test
+    void testBudgetRefillsOverTime() {
+        GcraRateLimiter limiter = new GcraRateLimiter(5, 1, TimeUnit.MINUTES, 100);
+        for (int i = 0; i < 5; i++) {
+            limiter.tryAcquire("a", 0);
+        }
+
+        assertFalse(limiter.tryAcquire("a", 11 * SECOND).allowed());
+        assertTrue(limiter.tryAcquire("a", 12 * SECOND).allowed());
+        assertFalse(limiter.tryAcquire("a", 12 * SECOND).allowed());
+
+        Decision full = limiter.tryAcquire("a", 120 * SECOND);
+        assertTrue(full.allowed());
+        assertEquals(4, full.remaining());
+    }
+
+    @Test
+    void testKeysAreIndependent() {
+        GcraRateLimiter limiter = new GcraRateLimiter(1, 1, TimeUnit.MINUTES, 100);
+
+        assertTrue(limiter.tryAcquire("a", 0).allowed());
+        assertFalse(limiter.tryAcquire("a", 0).allowed());
+        assertTrue(limiter.tryAcquire("b", 0).allowed());
+    }
+
+    @Test
+    void testKeysBeyondCapShareOverflowBudget() {
+        GcraRateLimiter limiter = new GcraRateLimiter(2, 1, TimeUnit.MINUTES, 2);
+        limiter.tryAcquire("a", 0);
+        limiter.tryAcquire("b", 0);
+
+        assertTrue(limiter.tryAcquire("c", 0).allowed());
+        assertTrue(limiter.tryAcquire("d", 0).allowed());
+        assertFalse(limiter.tryAcquire("e", 0).allowed());
+        assertEquals(2, limiter.trackedKeys());
+        assertEquals(3, limiter.overflowed());
+    }
+
+    @Test
+    void testRefilledKeysAreEvictedToMakeRoom() {
+        GcraRateLimiter limiter = new GcraRateLimiter(60, 1, TimeUnit.MINUTES, 2);
+        limiter.tryAcquire("a", 0);
+        limiter.tryAcquire("b", 0);
+
+        // One emission interval later both buckets are full again
+        assertTrue(limiter.tryAcquire("c", 2 * SECOND).allowed());
+
+        assertEquals(1, limiter.trackedKeys());
+        assertEquals(0, limiter.overflowed());
+    }
+}
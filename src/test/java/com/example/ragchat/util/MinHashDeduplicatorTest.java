@@ -0,0 +1,58 @@
+package com.example.ragchat.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MinHashDeduplicatorTest {
+
+    private static final String BOILERPLATE =
+            "This document is confidential and intended solely for the use of the individual "
+                    + "or entity to whom it is addressed. If you have received this document in error "
+                    + "please notify the sender immediately and delete it from your system.";
+
+    @Test
+    void testNearDuplicateIsDetected() {
+        MinHashDeduplicator dedup = new MinHashDeduplicator(128, 16, 0.8, 100);
+
+        assertTrue(dedup.checkAndRegister(1L, BOILERPLATE).isEmpty());
+        Optional<Long> duplicate = dedup.checkAndRegister(2L, BOILERPLATE.replace("immediately", "at once"));
+
+        assertEquals(Optional.of(1L), duplicate);
+        assertEquals(1, dedup.trackedChunks());
+    }
+
+    @Test
+    void testDistinctTextIsRegistered() {
+        MinHashDeduplicator dedup = new MinHashDeduplicator(128, 16, 0.8, 100);
+
+        assertTrue(dedup.checkAndRegister(1L, BOILERPLATE).isEmpty());
+        assertTrue(dedup.checkAndRegister(2L,
+                "Postgres partitions large tables by range, list or hash so that vacuum works on smaller pieces.")
+                .isEmpty());
+        assertEquals(2, dedup.trackedChunks());
+    }
+
+    @Test
+    void testTrackedChunksAreBounded() {
+        MinHashDeduplicator dedup = new MinHashDeduplicator(64, 8, 0.8, 10);
+
+        for (long i = 0; i < 50; i++) {
+            dedup.checkAndRegister(i, "unique chunk number " + i + " with some filler words " + (i * 7919));
+        }
+
+        assertEquals(10, dedup.trackedChunks());
+    }
+
+    @Test
+    void testRemovedChunkNoLongerMatches() {
+        MinHashDeduplicator dedup = new MinHashDeduplicator(128, 16, 0.8, 100);
+        dedup.checkAndRegister(1L, BOILERPLATE);
+
+        dedup.remove(1L);
+
+        assertTrue(dedup.checkAndRegister(2L, BOILERPLATE).isEmpty());
+    }
+}
@@ -0,0 +1,28 @@
+package com.example.ragchat.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PathPrefixTrieTest {
+
+    private final PathPrefixTrie trie = new PathPrefixTrie(List.of("/api/health", "/swagger-ui", "/v3/api-docs"));
+
+    @Test
+    void testMatchesPathsStartingWithAnyPrefix() {
+        assertTrue(trie.matchesPrefix("/api/health"));
+        assertTrue(trie.matchesPrefix("/api/healthz"));
+        assertTrue(trie.matchesPrefix("/swagger-ui/index.html"));
+        assertTrue(trie.matchesPrefix("/v3/api-docs/swagger-config"));
+    }
+
+    @Test
+    void testRejectsOtherPaths() {
+        assertFalse(trie.matchesPrefix("/api/heal"));
+        assertFalse(trie.matchesPrefix("/api/sessions"));
+        assertFalse(trie.matchesPrefix(""));
+        assertFalse(new PathPrefixTrie(List.of()).matchesPrefix("/api/health"));
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.ragchat.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SharedRateLimiterTest {
+
+    private static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private long now;
+
+    @Test
+    void testBudgetSpentOnOneNodeIsChargedOnAnother() {
+        InMemoryRateLimitStore store = new InMemoryRateLimitStore(() -> now);
+        SharedRateLimiter a = new SharedRateLimiter("default", 5, 1, TimeUnit.MINUTES, 100, store);
+        SharedRateLimiter b = new SharedRateLimiter("default", 5, 1, TimeUnit.MINUTES, 100, store);
+
+        for (int i = 0; i < 5; i++) {
+            assertTrue(a.tryAcquire("k", now).allowed());
+        }
+        assertEquals(1, a.sync(now));
+        assertTrue(b.tryAcquire("k", now).allowed());
+        b.sync(now);
+
+        assertFalse(b.tryAcquire("k", now).allowed());
+        assertTrue(b.tryAcquire("other", now).allowed());
+    }
+
+    @Test
+    void testCountsAreKeptWhenStoreFails() {
+        SharedRateLimiter limiter = new SharedRateLimiter("default", 5, 1, TimeUnit.MINUTES, 100,
+                (name, consumed, emission) -> {
+                    throw new IllegalStateException("store down");
+                });
+        limiter.tryAcquire("k", now);
+
+        assertThrows(IllegalStateException.class, () -> limiter.sync(now));
+        assertEquals(1, limiter.pendingKeys());
+    }
+
+    /**
+     * Accuracy against sync interval: four nodes each receive 20 requests/s for one
+     * client limited to 60/min, for ten minutes. The ideal is one burst plus one
+     * request per second. Prints one line per interval.
+     */
+    @Test
+    void testAccuracyBySyncInterval() {
+        long duration = TimeUnit.MINUTES.toNanos(10);
+        long ideal = 60 + TimeUnit.NANOSECONDS.toSeconds(duration);
+
+        long unshared = simulate(4, 0, duration);
+        System.out.printf("sync=never  admitted=%d ideal=%d error=%+.1f%%%n", unshared, ideal,
+                100.0 * (unshared - ideal) / ideal);
+        assertTrue(unshared > 3 * ideal);
+
+        for (long interval : new long[]{100, 1000, 5000, 15000}) {
+            long admitted = simulate(4, interval * MILLIS, duration);
+            double error = 100.0 * (admitted - ideal) / ideal;
+            System.out.printf("sync=%dms admitted=%d ideal=%d error=%+.1f%%%n", interval, admitted, ideal, error);
+            assertTrue(Math.abs(error) < (interval <= 1000 ? 2 : 10), "sync=" + interval + "ms error=" + error);
+        }
+    }
+
+    private long simulate(int nodes, long syncInterval, long duration) {
+        now = 0;
+        RateLimitStore store = new InMemoryRateLimitStore(() -> now);
+        List<GcraRateLimiter> limiters = new ArrayList<>();
+        for (int i = 0; i < nodes; i++) {
+            limiters.add(syncInterval > 0
+                    ? new SharedRateLimiter("default", 60, 1, TimeUnit.MINUTES, 100, store)
+                    : new GcraRateLimiter(60, 1, TimeUnit.MINUTES, 100));
+        }
+        long admitted = 0;
+        long nextSync = syncInterval;
+        for (now = 0; now < duration; now += 50 * MILLIS) {
+            for (GcraRateLimiter limiter : limiters) {
+                if (limiter.tryAcquire("client", now).allowed()) {
+                    admitted++;
+                }
+            }
+            if (syncInterval > 0 && now >= nextSync) {
+                limiters.forEach(limiter -> ((SharedRateLimiter) limiter).sync(now));
+                nextSync += syncInterval;
+            }
+        }
+        return admitted;
+    }
+}